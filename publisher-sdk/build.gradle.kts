@@ -40,25 +40,73 @@ androidLibModule {
     addBuildConfigField<String>("cdbUrl")
     addBuildConfigField<String>("eventUrl")
     addBuildConfigField<Int>("networkTimeoutInMillis")
+    addBuildConfigField<Int>("preconnectTimeoutInMillis")
+
+    // Threads
+    addBuildConfigField<Int>("sdkThreadBudget")
+    addBuildConfigField<Int>("liveBidReservedThreads")
+    addBuildConfigField<Int>("creativeLaneMaxConcurrency")
+    addBuildConfigField<Int>("telemetryLaneMaxConcurrency")
+    addBuildConfigField<Int>("executorMetricsDumpIntervalInMillis")
+
+    // Bid cache
+    addBuildConfigField<Int>("bidCacheDepth")
+    addBuildConfigField<Int>("bidCacheLowWaterMark")
+    addBuildConfigField<Int>("bidCacheMaxAdUnitCount")
+    addBuildConfigField<Int>("bidCacheSweepIntervalInMillis")
+    addBuildConfigField<String>("bidCacheSnapshotFilename")
+    addBuildConfigField<Int>("bidRefreshLeadTimeInMillis")
+    addBuildConfigField<Int>("bidRefreshWindowInMillis")
+    addBuildConfigField<Int>("prefetchDemandSmoothingPercent")
+    addBuildConfigField<Int>("prefetchColdDemandThresholdPercent")
+    addBuildConfigField<Int>("prefetchChunkSizeOnFastNetwork")
+    addBuildConfigField<Int>("prefetchChunkSizeOnSlowNetwork")
+    addBuildConfigField<Int>("bidRequestBatchingWindowInMillis")
+    addBuildConfigField<Int>("bidRequestBatchMaxAdUnitCount")
+    addBuildConfigField<Int>("liveBidLatencySampleCount")
+    addBuildConfigField<Int>("liveBidLatencyMinSampleCount")
+    addBuildConfigField<Int>("liveBidLatencyTargetPercentile")
 
     // Client side metrics
     addBuildConfigField<String>("csmQueueFilename")
     addBuildConfigField<String>("csmDirectoryName")
     addBuildConfigField<Int>("csmBatchSize")
+    addBuildConfigField<Int>("csmBatchMaxBytesOnFastNetwork")
+    addBuildConfigField<Int>("csmBatchMaxBytesOnSlowNetwork")
     addBuildConfigField<Int>("maxSizeOfCsmMetricsFolder")
+    addBuildConfigField<Int>("minSizeOfCsmMetricJournalCompaction")
     addBuildConfigField<Int>("maxSizeOfCsmMetricSendingQueue")
     addBuildConfigField<Int>("estimatedSizeOfCsmMetric")
+    addBuildConfigField<Int>("csmWriteBehindBatchSize")
+    addBuildConfigField<Int>("csmWriteBehindDelayInMillis")
 
     // Advanced Native
     addBuildConfigField<Int>("adChoiceIconWidthInDp")
     addBuildConfigField<Int>("adChoiceIconHeightInDp")
 
+    // Impression pixels
+    addBuildConfigField<String>("pixelQueueFilename")
+    addBuildConfigField<Int>("maxSizeOfPixelSendingQueue")
+    addBuildConfigField<Int>("estimatedSizeOfPixel")
+    addBuildConfigField<Int>("pixelBatchSize")
+    addBuildConfigField<Int>("pixelLaneMaxConcurrency")
+    addBuildConfigField<Int>("pixelMaxAttempts")
+    addBuildConfigField<Int>("pixelRetryBaseDelayInMillis")
+    addBuildConfigField<Int>("pixelRetryMaxDelayInMillis")
+
     // Remote logs
     addBuildConfigField<Int>("remoteLogBatchSize")
     addBuildConfigField<String>("remoteLogQueueFilename")
     addBuildConfigField<Int>("maxSizeOfRemoteLogSendingQueue")
     addBuildConfigField<Int>("estimatedSizeOfRemoteLog")
 
+    // Telemetry
+    addBuildConfigField<Int>("csmFlushThresholdInBytes")
+    addBuildConfigField<Int>("remoteLogFlushThresholdInBytes")
+    addBuildConfigField<Int>("telemetryFlushMaxDelayInMillis")
+    addBuildConfigField<Int>("telemetryRetryBaseDelayInMillis")
+    addBuildConfigField<Int>("telemetryRetryMaxDelayInMillis")
+
     // Misc
     addBuildConfigField<String>("pubSdkSharedPreferences")
     addBuildConfigField<Int>("defaultMinLogLevel")
@@ -44,6 +44,112 @@ preconditionThrowsOnException = false
 // Duration in milliseconds for the network layer to drop a call and consider it timeouted.
 networkTimeoutInMillis = 60 * 1000
 
+// Duration in milliseconds for the connections opened ahead of time to CDB and to the event server,
+// at SDK initialization, so the first calls of the session do not pay the connection setup.
+// A value of 0 or less disables the pre-connection.
+preconnectTimeoutInMillis = 5000
+
+/**
+ * Threads configuration
+ */
+
+// Maximum number of threads used by the SDK for its background work. When they are all busy, queued
+// tasks are started by priority: live bids, prefetch, then creatives, pixels and telemetry.
+sdkThreadBudget = 8
+
+// Number of threads of the budget that only live bids may use. All other work shares the remaining
+// ones, so a live bid never waits for a thread busy with a long prefetch, creative or telemetry call.
+// A value of 0 or less disables the reservation.
+liveBidReservedThreads = 2
+
+// Maximum number of threads of the budget that each non-urgent lane may use at once, so that the
+// remaining ones stay available for bids. They are capped by the threads left by the live bid
+// reservation.
+creativeLaneMaxConcurrency = 3
+telemetryLaneMaxConcurrency = 2
+
+// Duration in milliseconds between two dumps, in debug logs, of the queue depth, thread usage and task
+// timings of the SDK threads. A value of 0 or less disables the dump.
+executorMetricsDumpIntervalInMillis = 0
+
+/**
+ * Bid cache configuration
+ */
+
+// Maximum number of bids kept in cache for a single ad unit. Bids of an ad unit are served in order
+// of expiry, so rapid repeated requests on the same placement (e.g. infinite-scroll feeds) can still
+// be filled while the cache is topped up.
+// A depth of 1 keeps at most one bid per ad unit: each consumed bid is replaced by the next fetched.
+bidCacheDepth = 1
+
+// When, after a consumption, the number of cached bids of an ad unit drops below this mark, a single
+// bid request is sent to top the ad unit back up to the full depth. Should be between 1 and
+// bidCacheDepth.
+bidCacheLowWaterMark = 1
+
+// Maximum number of ad units held in the bid cache. When a new ad unit is cached while the cache is
+// full, the least recently used ad unit is evicted with all its bids.
+// A value of 0 or less disables this limit.
+bidCacheMaxAdUnitCount = 256
+
+// Duration in milliseconds between two sweeps of the expired bids out of the bid cache.
+// A value of 0 or less disables the sweeping: expired bids are then only removed when their ad
+// unit is requested again.
+bidCacheSweepIntervalInMillis = 60 * 1000
+
+// The relative path in application files folder of the snapshot of the bid cache, written when the
+// application goes in background and read back at the next SDK initialization.
+bidCacheSnapshotFilename = 'criteo_bid_cache_snapshot'
+
+// Duration in milliseconds before the expiry of a cached bid at which a new bid is fetched in
+// background, so the ad unit is not left empty when the user comes back to it.
+// A value of 0 or less disables the background refresh.
+bidRefreshLeadTimeInMillis = 30 * 1000
+
+// Duration in milliseconds after a background refresh instant during which other ad units due are
+// refreshed in the same bid request, rather than in their own one.
+bidRefreshWindowInMillis = 10 * 1000
+
+// Weight in percent of the last session in the moving average of the number of bid requests per
+// session of each ad unit. This demand is used to prefetch hot ad units first and skip cold ones.
+// A value of 0 or less disables the demand tracking: all ad units are prefetched in given order.
+prefetchDemandSmoothingPercent = 30
+
+// Demand, in hundredths of bid requests per session, below which a known ad unit is not prefetched.
+// Ad units that were never requested are always prefetched.
+prefetchColdDemandThresholdPercent = 10
+
+// Number of ad units per prefetch bid request on fast networks (wifi, wired, 4G, 5G).
+// This is set given a CDB suggestion: arbitrage is optimized to process 8 slots in parallel.
+prefetchChunkSizeOnFastNetwork = 8
+
+// Number of ad units per prefetch bid request on slow networks (2G, 3G, unknown cellular), so
+// smaller requests are less likely to time out.
+prefetchChunkSizeOnSlowNetwork = 3
+
+// Duration in milliseconds during which ad units missing from the bid cache are collected before
+// being fetched in a single bid request. This coalesces the requests of screens showing many ads.
+// A value of 0 or less disables the batching: each cache miss is fetched in its own request.
+bidRequestBatchingWindowInMillis = 0
+
+// Maximum number of ad units in a batched bid request. A full batch is sent without waiting for
+// the end of the batching window.
+bidRequestBatchMaxAdUnitCount = 8
+
+// Number of recent CDB call durations kept per connection type to predict the latency of live bids.
+// A value of 0 or less disables the latency tracking.
+liveBidLatencySampleCount = 50
+
+// Minimum number of recent CDB call durations on the current connection type before the live bid
+// time budget is adapted.
+liveBidLatencyMinSampleCount = 10
+
+// Percentile of the recent CDB call durations to which the live bid time budget is shortened. If
+// the median duration exceeds the configured budget, live bids are answered from the cache right
+// away while the live response is still cached when it arrives.
+// A value of 0 or less disables the adaptive time budget.
+liveBidLatencyTargetPercentile = 95
+
 /**
  * Client-Side Metrics configuration
  */
@@ -57,25 +163,72 @@ csmQueueFilename = 'criteo_metrics_queue'
 // The batch size of metric files sent, at most, in each CSM requests.
 // Bid requests are only bulked during the prefetch phase and CDB requests are split into chunks of,
 // at most, 8 slots. This means that while CSM requests are emitted without issues, there should be,
-// at most, 8 stored metrics. A batch size of 24 handles potential network issues and keeps the
-// requests' size small (around 4KB given below estimation).
-csmBatchSize = 24
+// at most, 8 stored metrics. Batches are mostly bounded by their size in bytes below, this only
+// bounds the number of feedbacks in a request.
+csmBatchSize = 100
+
+// Maximum size (in bytes) of the serialized metrics sent in each CSM request, depending on the
+// network. The queue is drained with as many requests as needed. 4KB represents ~24 metrics (with
+// ~170 bytes/metric), which keeps requests small on slow networks (2G, 3G, unknown cellular).
+csmBatchMaxBytesOnFastNetwork = 16 * 1024
+csmBatchMaxBytesOnSlowNetwork = 4 * 1024
 
 // Maximum size (in bytes) of metric elements stored in the metrics folder.
 // 48KB represents ~300 metrics (with ~164 bytes/metric) which already represent an extreme case.
 maxSizeOfCsmMetricsFolder = 48 * 1024
 
+// Minimum size (in bytes) of the metric journal before it is compacted.
+// The journal is compacted once obsolete records are the majority of it. Below this size, the
+// journal is kept as is, because compacting it would cost more than the space it takes.
+minSizeOfCsmMetricJournalCompaction = 16 * 1024
+
 // Maximum size (in bytes) of metric elements stored in the metric sending queue.
 // 60KB represents ~360 metrics (with ~170 bytes/metric) which already represent an extreme case.
 estimatedSizeOfCsmMetric = 170
 maxSizeOfCsmMetricSendingQueue = 60 * 1024
 
+// Maximum number of metrics whose updates are buffered in memory before being written in the
+// metrics folder. A bid request is split into chunks of, at most, 8 slots, so a batch of 16 metrics
+// holds around two requests.
+csmWriteBehindBatchSize = 16
+
+// Delay in milliseconds after which buffered updates of metrics are written, even if the batch is
+// not full. Most bids are consumed or expire well after this delay, so their updates are merged
+// only while the CDB call and the caching happen.
+csmWriteBehindDelayInMillis = 5000
+
 /**
  * Width and height in dp of the injected AdChoice icon for advanced native.
  */
 adChoiceIconWidthInDp = 19
 adChoiceIconHeightInDp = 15
 
+/**
+ * Impression pixels configuration
+ */
+
+// The relative path in application folder of the pixel sending queue file
+pixelQueueFilename = 'criteo_pixel_queue'
+
+// Maximum size (in bytes) of pixels stored in the sending queue.
+// 100KB represents ~200 pixels (with ~500 bytes/pixel URL), which already represents a long feed of native ads.
+estimatedSizeOfPixel = 500
+maxSizeOfPixelSendingQueue = 100 * 1024
+
+// Number of pixels taken from the queue in one go. They are then sent concurrently, by at most
+// pixelLaneMaxConcurrency threads of the SDK budget, which reuse the keep-alive connections to the
+// pixel hosts.
+pixelBatchSize = 10
+pixelLaneMaxConcurrency = 2
+
+// Number of attempts to send a pixel before dropping it.
+pixelMaxAttempts = 5
+
+// Delay before sending pixels again after a failure, or when there is no network.
+// It doubles after each consecutive failure, up to the max delay.
+pixelRetryBaseDelayInMillis = 5000
+pixelRetryMaxDelayInMillis = 5 * 60 * 1000
+
 /**
  * Remote logs configuration
  */
@@ -92,6 +245,22 @@ remoteLogQueueFilename = 'criteo_remote_logs_queue'
 estimatedSizeOfRemoteLog = 5000
 maxSizeOfRemoteLogSendingQueue = 250 * 1024
 
+/**
+ * Telemetry sending configuration (CSM and remote logs)
+ */
+
+// Size (in bytes) of the elements waiting in a sending queue from which they are sent right away.
+// Below it, they are sent after the max delay, or when the application goes to background.
+// 4KB is around a full CSM batch, and 20KB is a handful of remote logs with their stacktraces.
+csmFlushThresholdInBytes = 4 * 1024
+remoteLogFlushThresholdInBytes = 20 * 1024
+telemetryFlushMaxDelayInMillis = 30 * 1000
+
+// Delay before sending telemetry again after a failure. It doubles after each consecutive failure,
+// up to the max delay. Meanwhile, no telemetry request competes with bid requests.
+telemetryRetryBaseDelayInMillis = 10 * 1000
+telemetryRetryMaxDelayInMillis = 10 * 60 * 1000
+
 environments {
     debug {
         eventUrl = 'https://an.url.that.does.not.exist'
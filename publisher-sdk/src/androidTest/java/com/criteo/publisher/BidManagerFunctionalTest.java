@@ -21,6 +21,7 @@ import static com.criteo.publisher.util.AdUnitType.CRITEO_BANNER;
 import static com.criteo.publisher.util.CompletableFuture.completedFuture;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
@@ -46,6 +47,7 @@ import static org.mockito.Mockito.when;
 import android.content.Context;
 import androidx.annotation.NonNull;
 import com.criteo.publisher.bid.BidLifecycleListener;
+import com.criteo.publisher.cache.PrefetchPolicy;
 import com.criteo.publisher.cache.SdkCache;
 import com.criteo.publisher.context.ContextData;
 import com.criteo.publisher.context.ContextProvider;
@@ -168,6 +170,9 @@ public class BidManagerFunctionalTest {
   @SpyBean
   private Executor executor;
 
+  @SpyBean
+  private PrefetchPolicy prefetchPolicy;
+
   @Inject
   private Logger logger;
 
@@ -353,23 +358,23 @@ public class BidManagerFunctionalTest {
         mock(AdUnit.class)
     );
 
-    List<List<CacheAdUnit>> mappedAdUnitsChunks = singletonList(Arrays.asList(
+    List<CacheAdUnit> mappedAdUnits = Arrays.asList(
         sampleAdUnit(),
         sampleAdUnit()
-    ));
+    );
 
     CdbResponseSlot slot = givenMockedCdbRespondingSlot();
 
-    doReturn(mappedAdUnitsChunks).when(adUnitMapper).mapToChunks(prefetchAdUnits);
+    doReturn(mappedAdUnits).when(adUnitMapper).mapToCacheAdUnits(prefetchAdUnits);
 
     bidManager.prefetch(prefetchAdUnits);
     waitForIdleState();
 
-    assertShouldCallCdbAndPopulateCacheOnlyOnce(mappedAdUnitsChunks.get(0), slot);
+    assertShouldCallCdbAndPopulateCacheOnlyOnce(mappedAdUnits, slot);
   }
 
   @Test
-  public void prefetch_GivenMapperSplittingIntoChunks_ExecuteChunksIndependently()
+  public void prefetch_GivenPolicySplittingIntoChunks_ExecuteChunksIndependently()
       throws Exception {
     // Remove concurrency. This would make this test really hard to follow.
     // We should wait for idle state of main thread every time because the async task post execution
@@ -397,7 +402,14 @@ public class BidManagerFunctionalTest {
         requestedAdUnits3
     );
 
-    doReturn(mappedAdUnitsChunks).when(adUnitMapper).mapToChunks(prefetchAdUnits);
+    List<CacheAdUnit> mappedAdUnits = Arrays.asList(
+        requestedAdUnits1.get(0),
+        requestedAdUnits2.get(0),
+        requestedAdUnits3.get(0)
+    );
+
+    doReturn(mappedAdUnits).when(adUnitMapper).mapToCacheAdUnits(prefetchAdUnits);
+    doReturn(mappedAdUnitsChunks).when(prefetchPolicy).plan(mappedAdUnits);
 
     CdbResponse response1 = givenMockedCdbResponseWithValidSlot(1);
     CdbResponse response3 = givenMockedCdbResponseWithValidSlot(3);
@@ -422,7 +434,7 @@ public class BidManagerFunctionalTest {
     inOrder.verify(config, never()).refreshConfig(any());
     inOrder.verify(api)
         .loadCdb(argThat(cdb -> requestedAdUnits1.equals(getRequestedAdUnits(cdb))), any());
-    response1.getSlots().forEach(inOrder.verify(cache)::add);
+    response1.getSlots().forEach(slot -> inOrder.verify(cache).add(eq(slot), any()));
     inOrder.verify(bidManager).setTimeToNextCall(1);
 
     // Second call with error
@@ -433,7 +445,7 @@ public class BidManagerFunctionalTest {
     inOrder.verify(config, never()).refreshConfig(any());
     inOrder.verify(api)
         .loadCdb(argThat(cdb -> requestedAdUnits3.equals(getRequestedAdUnits(cdb))), any());
-    response3.getSlots().forEach(inOrder.verify(cache)::add);
+    response3.getSlots().forEach(slot -> inOrder.verify(cache).add(eq(slot), any()));
     inOrder.verify(bidManager).setTimeToNextCall(3);
 
     inOrder.verifyNoMoreInteractions();
@@ -582,7 +594,7 @@ public class BidManagerFunctionalTest {
     CdbResponseSlot bid = bidManager.getBidForAdUnitAndPrefetch(adUnit, contextData);
 
     assertEquals(slot, bid);
-    verify(cache).remove(cacheAdUnit);
+    verify(cache).remove(cacheAdUnit, slot);
     assertListenerIsNotifyForBidConsumed(cacheAdUnit, bid);
   }
 
@@ -640,7 +652,7 @@ public class BidManagerFunctionalTest {
     inOrder.verify(bidManager).getBidForAdUnitAndPrefetch(adUnit, contextData);
     inOrder.verify(api).loadCdb(any(), any());
     inOrder.verify(bidManager).getBidForAdUnitAndPrefetch(adUnit, contextData);
-    inOrder.verify(cache).add(slot);
+    inOrder.verify(cache).add(eq(slot), any());
     inOrder.verify(bidManager).setTimeToNextCall(anyInt());
     inOrder.verifyNoMoreInteractions();
   }
@@ -671,7 +683,7 @@ public class BidManagerFunctionalTest {
     inOrder.verify(bidManager).getBidForAdUnitAndPrefetch(adUnit, contextData);
     inOrder.verify(bidManager).getBidForAdUnitAndPrefetch(adUnit, contextData);
     inOrder.verify(api, timeout(1000)).loadCdb(any(), any());
-    inOrder.verify(cache).add(slot);
+    inOrder.verify(cache).add(eq(slot), any());
     inOrder.verify(bidManager).setTimeToNextCall(anyInt());
     inOrder.verifyNoMoreInteractions();
   }
@@ -734,7 +746,7 @@ public class BidManagerFunctionalTest {
 
     InOrder inOrder = inOrder(cache, slot);
     inOrder.verify(slot).setTimeOfDownload(42);
-    inOrder.verify(cache).add(slot);
+    inOrder.verify(cache).add(eq(slot), any());
   }
 
   @Test
@@ -799,7 +811,7 @@ public class BidManagerFunctionalTest {
     CdbResponseSlot bid = bidManager.getBidForAdUnitAndPrefetch(adUnit, contextData);
 
     assertNull(bid);
-    verify(cache, never()).remove(cacheAdUnit);
+    verify(cache, never()).remove(eq(cacheAdUnit), any());
     assertListenerIsNotNotifyForBidConsumed();
   }
 
@@ -934,7 +946,7 @@ public class BidManagerFunctionalTest {
 
     InOrder inOrder = inOrder(cache, slot);
     inOrder.verify(slot).setTtlInSeconds(DEFAULT_TTL_IN_SECONDS);
-    inOrder.verify(cache).add(slot);
+    inOrder.verify(cache).add(eq(slot), any());
   }
 
   @Test
@@ -948,7 +960,7 @@ public class BidManagerFunctionalTest {
     bidManager.getBidForAdUnitAndPrefetch(adUnit, contextData);
     waitForIdleState();
 
-    verify(cache, never()).add(slot);
+    verify(cache, never()).add(eq(slot), any());
   }
 
   @Test
@@ -978,8 +990,8 @@ public class BidManagerFunctionalTest {
     waitForIdleState();
 
     verify(bidListener).onNoBid();
-    verify(metricSendingQueueConsumer, never()).sendMetricBatch();
-    verify(remoteLogSendingQueueConsumer, never()).sendRemoteLogBatch();
+    verify(metricSendingQueueConsumer, never()).scheduleMetricBatch();
+    verify(remoteLogSendingQueueConsumer, never()).scheduleRemoteLogBatch();
   }
 
   @Test
@@ -999,8 +1011,8 @@ public class BidManagerFunctionalTest {
     waitForIdleState();
 
     verify(bidListener).onNoBid();
-    verify(metricSendingQueueConsumer, never()).sendMetricBatch();
-    verify(remoteLogSendingQueueConsumer, never()).sendRemoteLogBatch();
+    verify(metricSendingQueueConsumer, never()).scheduleMetricBatch();
+    verify(remoteLogSendingQueueConsumer, never()).scheduleRemoteLogBatch();
   }
 
   @Test
@@ -1018,8 +1030,8 @@ public class BidManagerFunctionalTest {
     assertNoLiveBidIsConsumedFromCache();
     assertNoLiveBidIsCached();
     assertShouldNotCallCdbAndNotPopulateCache();
-    verify(metricSendingQueueConsumer).sendMetricBatch();
-    verify(remoteLogSendingQueueConsumer).sendRemoteLogBatch();
+    verify(metricSendingQueueConsumer).scheduleMetricBatch();
+    verify(remoteLogSendingQueueConsumer).scheduleRemoteLogBatch();
   }
 
   @Test
@@ -1038,8 +1050,8 @@ public class BidManagerFunctionalTest {
     assertLiveBidIsConsumedFromCache(cacheAdUnit, cdbResponseSlot);
     assertNoLiveBidIsCached();
     assertShouldNotCallCdbAndNotPopulateCache();
-    verify(metricSendingQueueConsumer).sendMetricBatch();
-    verify(remoteLogSendingQueueConsumer).sendRemoteLogBatch();
+    verify(metricSendingQueueConsumer).scheduleMetricBatch();
+    verify(remoteLogSendingQueueConsumer).scheduleRemoteLogBatch();
   }
 
   @Test
@@ -1058,8 +1070,8 @@ public class BidManagerFunctionalTest {
     assertLiveBidIsConsumedFromCache(cacheAdUnit, cdbResponseSlot);
     assertNoLiveBidIsCached();
     assertShouldNotCallCdbAndNotPopulateCache();
-    verify(metricSendingQueueConsumer).sendMetricBatch();
-    verify(remoteLogSendingQueueConsumer).sendRemoteLogBatch();
+    verify(metricSendingQueueConsumer).scheduleMetricBatch();
+    verify(remoteLogSendingQueueConsumer).scheduleRemoteLogBatch();
   }
 
   @Test
@@ -1078,8 +1090,8 @@ public class BidManagerFunctionalTest {
     assertNoLiveBidIsConsumedFromCache();
     assertNoLiveBidIsCached();
     assertShouldNotCallCdbAndNotPopulateCache();
-    verify(metricSendingQueueConsumer).sendMetricBatch();
-    verify(remoteLogSendingQueueConsumer).sendRemoteLogBatch();
+    verify(metricSendingQueueConsumer).scheduleMetricBatch();
+    verify(remoteLogSendingQueueConsumer).scheduleRemoteLogBatch();
   }
 
   @Test
@@ -1094,8 +1106,8 @@ public class BidManagerFunctionalTest {
     waitForIdleState();
 
     assertShouldCallCdb(singletonList(cacheAdUnit));
-    verify(metricSendingQueueConsumer).sendMetricBatch();
-    verify(remoteLogSendingQueueConsumer).sendRemoteLogBatch();
+    verify(metricSendingQueueConsumer).scheduleMetricBatch();
+    verify(remoteLogSendingQueueConsumer).scheduleRemoteLogBatch();
   }
 
   @Test
@@ -1234,9 +1246,9 @@ public class BidManagerFunctionalTest {
     assertLiveBidIsConsumedFromCache(cacheAdUnit, cachedSlot);
 
     InOrder inOrder = inOrder(cache, newSlot);
-    inOrder.verify(cache).remove(cacheAdUnit);
+    inOrder.verify(cache).remove(cacheAdUnit, cachedSlot);
     inOrder.verify(newSlot).setTimeOfDownload(42);
-    inOrder.verify(cache).add(newSlot);
+    inOrder.verify(cache).add(eq(newSlot), any());
   }
 
   @Test
@@ -1523,6 +1535,29 @@ public class BidManagerFunctionalTest {
     verify(bidLifecycleListener).onBidCached(cdbResponseSlot);
   }
 
+  @Test
+  public void setCacheAdUnits_GivenSlotOfRequestedImpressionId_CacheItUnderRequestedAdUnit() {
+    CacheAdUnit requestedAdUnit = new CacheAdUnit(new AdSize(320, 50), "requested", CRITEO_BANNER);
+    CacheAdUnit detectedAdUnit = new CacheAdUnit(new AdSize(300, 250), "detected", CRITEO_BANNER);
+
+    CdbResponseSlot cdbResponseSlot = givenValidCdbResponseSlot();
+    when(cdbResponseSlot.getImpressionId()).thenReturn("impId");
+    when(cdbResponseSlot.getPlacementId()).thenReturn(detectedAdUnit.getPlacementId());
+    when(cdbResponseSlot.getWidth()).thenReturn(detectedAdUnit.getSize().getWidth());
+    when(cdbResponseSlot.getHeight()).thenReturn(detectedAdUnit.getSize().getHeight());
+
+    CdbRequest cdbRequest = mock(CdbRequest.class);
+    when(cdbRequest.getAdUnitsByImpressionId()).thenReturn(singletonMap("impId", requestedAdUnit));
+
+    bidManager.setCacheAdUnits(cdbRequest, singletonList(cdbResponseSlot));
+
+    verify(cache).add(eq(requestedAdUnit), eq(cdbResponseSlot), any());
+    verify(cache, never()).add(eq(cdbResponseSlot), any());
+    assertThat(cache.peekAdUnit(requestedAdUnit)).isEqualTo(cdbResponseSlot);
+    assertThat(cache.peekAdUnit(detectedAdUnit)).isNull();
+    verify(bidLifecycleListener).onBidCached(cdbResponseSlot);
+  }
+
   @Test
   public void setCacheAdUnits_GivenOneValid_AndOneInvalidCdbResponseSlot_ShouldOnlyTriggerBidCachedForValid() {
     CdbResponseSlot validCdbResponseSlot = givenValidCdbResponseSlot();
@@ -1562,7 +1597,7 @@ public class BidManagerFunctionalTest {
       List<CacheAdUnit> requestedAdUnits,
       CdbResponseSlot slot
   ) throws Exception {
-    verify(cache).add(slot);
+    verify(cache).add(eq(slot), any());
     assertShouldCallCdb(requestedAdUnits);
   }
 
@@ -1573,12 +1608,12 @@ public class BidManagerFunctionalTest {
     }), any());
     verify(bidLifecycleListener).onCdbCallStarted(any());
     verify(bidLifecycleListener).onCdbCallFinished(any(), any());
-    verify(metricSendingQueueConsumer).sendMetricBatch();
-    verify(remoteLogSendingQueueConsumer).sendRemoteLogBatch();
+    verify(metricSendingQueueConsumer).scheduleMetricBatch();
+    verify(remoteLogSendingQueueConsumer).scheduleRemoteLogBatch();
   }
 
   private void assertShouldNotCallCdbAndNotPopulateCache() throws Exception {
-    verify(cache, never()).add(any());
+    verify(cache, never()).add(any(), any());
     verify(api, never()).loadCdb(any(), any());
     verify(bidLifecycleListener, never()).onCdbCallStarted(any());
     verify(bidLifecycleListener, never()).onCdbCallFinished(any(), any());
@@ -1595,28 +1630,28 @@ public class BidManagerFunctionalTest {
 
   private void assertLiveBidIsCached(@NonNull CdbResponseSlot cachedSlot) {
     verify(cachedSlot).setTimeOfDownload(anyLong());
-    verify(cache).add(cachedSlot);
+    verify(cache).add(eq(cachedSlot), any());
     verify(bidLifecycleListener).onBidCached(cachedSlot);
   }
 
   private void assertNoLiveBidIsCached() {
-    verify(cache, never()).add(any());
+    verify(cache, never()).add(any(), any());
     verify(bidLifecycleListener, never()).onBidCached(any());
   }
 
   private void assertLiveBidIsConsumedFromCache(@NonNull CacheAdUnit cacheAdUnit, @NonNull CdbResponseSlot cachedSlot) {
-    verify(cache).remove(cacheAdUnit);
+    verify(cache).remove(cacheAdUnit, cachedSlot);
     verify(bidLifecycleListener).onBidConsumed(cacheAdUnit, cachedSlot);
   }
 
   private void assertNoLiveBidIsConsumedFromCache() {
-    verify(cache, never()).remove(any());
+    verify(cache, never()).remove(any(), any());
     verify(bidLifecycleListener, never()).onBidConsumed(any(), any());
   }
 
   private void assertLiveBidIsConsumedDirectly(@NonNull CacheAdUnit cacheAdUnit, @NonNull CdbResponseSlot directSlot) {
     verify(directSlot).setTimeOfDownload(anyLong());
-    verify(cache, never()).remove(any());
+    verify(cache, never()).remove(any(), any());
     verify(bidLifecycleListener).onBidConsumed(cacheAdUnit, directSlot);
   }
 
@@ -1753,6 +1788,7 @@ public class BidManagerFunctionalTest {
 
     doReturn(toAdUnit).when(adUnitMapper).map(fromAdUnit);
     doReturn(singletonList(singletonList(toAdUnit))).when(adUnitMapper).mapToChunks(singletonList(fromAdUnit));
+    doReturn(singletonList(toAdUnit)).when(adUnitMapper).mapToCacheAdUnits(singletonList(fromAdUnit));
 
     return fromAdUnit;
   }
@@ -1807,7 +1843,7 @@ public class BidManagerFunctionalTest {
   }
 
   private void givenTimeBudgetRespectedWhenFetchingLiveBids() {
-    doNothing().when(liveBidRequestSender).scheduleTimeBudgetExceeded$publisher_sdk_debug(any());
+    doReturn(null).when(liveBidRequestSender).scheduleTimeBudgetExceeded$publisher_sdk_debug(any());
   }
 
   private void givenTimeBudgetExceededWhenFetchingLiveBids() {
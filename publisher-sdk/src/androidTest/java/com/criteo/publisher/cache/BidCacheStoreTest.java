@@ -0,0 +1,264 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.criteo.publisher.cache;
+
+import static com.criteo.publisher.util.AdUnitType.CRITEO_BANNER;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import com.criteo.publisher.Clock;
+import com.criteo.publisher.mock.MockBean;
+import com.criteo.publisher.mock.MockedDependenciesRule;
+import com.criteo.publisher.mock.SpyBean;
+import com.criteo.publisher.model.AdSize;
+import com.criteo.publisher.model.CacheAdUnit;
+import com.criteo.publisher.model.CdbResponseSlot;
+import com.criteo.publisher.privacy.ConsentData;
+import com.criteo.publisher.privacy.UserPrivacyUtil;
+import com.criteo.publisher.util.BuildConfigWrapper;
+import java.io.File;
+import java.util.Collections;
+import javax.inject.Inject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class BidCacheStoreTest {
+
+  @Rule
+  public MockedDependenciesRule mockedDependenciesRule = new MockedDependenciesRule();
+
+  @Inject
+  private Context context;
+
+  @Inject
+  private BuildConfigWrapper buildConfigWrapper;
+
+  @MockBean
+  private Clock clock;
+
+  @SpyBean
+  private SdkCache cache;
+
+  @SpyBean
+  private ConsentData consentData;
+
+  @SpyBean
+  private UserPrivacyUtil userPrivacyUtil;
+
+  @MockBean
+  private BidRefreshScheduler bidRefreshScheduler;
+
+  @Inject
+  private BidCacheStore store;
+
+  private final CacheAdUnit cacheAdUnit = new CacheAdUnit(
+      new AdSize(320, 50),
+      "myAdUnit",
+      CRITEO_BANNER
+  );
+
+  @Before
+  public void setUp() throws Exception {
+    when(clock.getCurrentTimeInMillis()).thenReturn(1000L);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    getSnapshotFile().delete();
+  }
+
+  @Test
+  public void restore_GivenNoSnapshot_DoNothing() throws Exception {
+    store.restore();
+
+    verify(cache, never()).restore(any(), any());
+  }
+
+  @Test
+  public void restore_GivenSavedValidBid_RestoreItAndDeleteSnapshot() throws Exception {
+    cache.put(cacheAdUnit, givenSlot(60));
+    store.save();
+    cache.remove(cacheAdUnit);
+
+    store.restore();
+
+    CdbResponseSlot restoredSlot = cache.peekAdUnit(cacheAdUnit);
+    assertThat(restoredSlot).isNotNull();
+    assertThat(restoredSlot.getDisplayUrl()).isEqualTo("https://criteo.com");
+    assertThat(getSnapshotFile()).doesNotExist();
+  }
+
+  @Test
+  public void restore_GivenSavedValidBid_ScheduleItsRefresh() throws Exception {
+    CdbResponseSlot slot = givenSlot(60);
+    cache.put(cacheAdUnit, slot);
+    store.save();
+    cache.remove(cacheAdUnit);
+
+    store.restore();
+
+    verify(bidRefreshScheduler).schedule(
+        eq(cacheAdUnit),
+        eq(slot.getExpiryTimeInMillis()),
+        any()
+    );
+  }
+
+  @Test
+  public void restore_GivenAlreadyRestored_DoNothing() throws Exception {
+    store.restore();
+    cache.put(cacheAdUnit, givenSlot(60));
+    store.save();
+    cache.remove(cacheAdUnit);
+
+    store.restore();
+
+    assertThat(cache.peekAdUnit(cacheAdUnit)).isNull();
+    assertThat(getSnapshotFile()).exists();
+  }
+
+  @Test
+  public void restoreAsync_GivenSavedValidBid_RestoreItInBackground() throws Exception {
+    cache.put(cacheAdUnit, givenSlot(60));
+    store.save();
+    cache.remove(cacheAdUnit);
+
+    store.restoreAsync();
+    mockedDependenciesRule.waitForIdleState();
+
+    assertThat(cache.peekAdUnit(cacheAdUnit)).isNotNull();
+  }
+
+  @Test
+  public void discardAsync_GivenSnapshotSavedInThisSession_DeleteIt() throws Exception {
+    store.restore();
+    cache.put(cacheAdUnit, givenSlot(60));
+    store.saveAsync();
+    mockedDependenciesRule.waitForIdleState();
+    assertThat(getSnapshotFile()).exists();
+
+    store.discardAsync();
+    mockedDependenciesRule.waitForIdleState();
+
+    assertThat(getSnapshotFile()).doesNotExist();
+  }
+
+  @Test
+  public void discardAsync_GivenSnapshotOfPreviousSession_RestoreItFirst() throws Exception {
+    cache.put(cacheAdUnit, givenSlot(60));
+    store.save();
+    cache.remove(cacheAdUnit);
+
+    store.discardAsync();
+    mockedDependenciesRule.waitForIdleState();
+
+    assertThat(cache.peekAdUnit(cacheAdUnit)).isNotNull();
+    assertThat(getSnapshotFile()).doesNotExist();
+  }
+
+  @Test
+  public void saveAsync_GivenDiscardedBeforeWriting_DoNotWriteSnapshot() throws Exception {
+    store.restore();
+    cache.put(cacheAdUnit, givenSlot(60));
+
+    store.saveAsync();
+    store.discardAsync();
+    mockedDependenciesRule.waitForIdleState();
+
+    assertThat(getSnapshotFile()).doesNotExist();
+  }
+
+  @Test
+  public void save_GivenOnlyExpiredBid_DoNotWriteSnapshot() throws Exception {
+    CdbResponseSlot slot = givenSlot(60);
+    cache.put(cacheAdUnit, slot);
+    when(clock.getCurrentTimeInMillis()).thenReturn(slot.getExpiryTimeInMillis());
+
+    store.save();
+
+    assertThat(getSnapshotFile()).doesNotExist();
+  }
+
+  @Test
+  public void restore_GivenBidExpiredSinceSave_DropIt() throws Exception {
+    CdbResponseSlot slot = givenSlot(60);
+    cache.put(cacheAdUnit, slot);
+    store.save();
+    cache.remove(cacheAdUnit);
+    when(clock.getCurrentTimeInMillis()).thenReturn(slot.getExpiryTimeInMillis());
+
+    store.restore();
+
+    assertThat(cache.peekAdUnit(cacheAdUnit)).isNull();
+  }
+
+  @Test
+  public void restore_GivenPrivacyChangedSinceSave_DropAllBids() throws Exception {
+    cache.put(cacheAdUnit, givenSlot(60));
+    store.save();
+    cache.remove(cacheAdUnit);
+    doReturn("1YYN").when(userPrivacyUtil).getIabUsPrivacyString();
+
+    store.restore();
+
+    assertThat(cache.peekAdUnit(cacheAdUnit)).isNull();
+    assertThat(getSnapshotFile()).doesNotExist();
+  }
+
+  @Test
+  public void restore_GivenAdUnitAlreadyCached_KeepFresherBid() throws Exception {
+    cache.put(cacheAdUnit, givenSlot(60));
+    store.save();
+    CdbResponseSlot freshSlot = givenSlot(120);
+    cache.put(cacheAdUnit, freshSlot);
+
+    store.restore();
+
+    assertThat(cache.peekAdUnit(cacheAdUnit)).isSameAs(freshSlot);
+  }
+
+  private CdbResponseSlot givenSlot(int ttlInSeconds) {
+    CdbResponseSlot slot = new CdbResponseSlot(
+        "impId",
+        "myAdUnit",
+        null,
+        "1.00",
+        "EUR",
+        320,
+        50,
+        "https://criteo.com",
+        null,
+        ttlInSeconds,
+        false,
+        false,
+        0L
+    );
+    slot.setTimeOfDownload(clock.getCurrentTimeInMillis());
+    return slot;
+  }
+
+  private File getSnapshotFile() {
+    return new File(context.getFilesDir(), buildConfigWrapper.getBidCacheSnapshotFilename());
+  }
+}
@@ -14,10 +14,12 @@
  *    limitations under the License.
  */
 
+
 package com.criteo.publisher.csm;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
-import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.spy;
@@ -27,20 +29,17 @@ import android.content.Context;
 import com.criteo.publisher.mock.MockedDependenciesRule;
 import com.criteo.publisher.mock.SpyBean;
 import com.criteo.publisher.util.BuildConfigWrapper;
-import com.criteo.publisher.util.JsonSerializer;
-import com.squareup.tape.ObjectQueue;
 import com.squareup.tape.QueueFile;
 import java.io.File;
 import java.io.FileOutputStream;
-import java.nio.file.Files;
-import java.util.Arrays;
+import java.util.List;
 import javax.inject.Inject;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 
-public class ObjectQueueFactoryTest {
+public class ByteQueueFactoryTest {
 
   @Rule
   public MockedDependenciesRule mockedDependenciesRule = new MockedDependenciesRule();
@@ -50,16 +49,13 @@ public class ObjectQueueFactoryTest {
   @Inject
   private Context context;
 
-  @Inject
-  private JsonSerializer jsonSerializer;
-
   @SpyBean
   private MetricSendingQueueConfiguration configuration;
 
   @SpyBean
   private BuildConfigWrapper buildConfigWrapper;
 
-  private ObjectQueueFactory<Metric> factory;
+  private ByteQueueFactory factory;
 
   @Before
   public void setUp() throws Exception {
@@ -67,14 +63,14 @@ public class ObjectQueueFactoryTest {
 
     queueFile = new File(context.getFilesDir(), "queueFile");
 
-    factory = spy(new ObjectQueueFactory<>(context, jsonSerializer, configuration));
+    factory = spy(new ByteQueueFactory(context, configuration));
 
     doReturn(queueFile).when(factory).getQueueFile();
   }
 
   @After
   public void tearDown() throws Exception {
-    queueFile.delete();
+    delete(queueFile);
   }
 
   @Test
@@ -88,18 +84,17 @@ public class ObjectQueueFactoryTest {
   }
 
   @Test
-  public void create_GivenNotExistingQueueFile_CreateFileAndQueueIsWorking() throws Exception {
-    queueFile.delete();
+  public void create_GivenNotExistingQueueFile_CreateDirectoryAndQueueIsWorking() throws Exception {
+    delete(queueFile);
 
-    ObjectQueue<Metric> queue = factory.create();
+    ByteQueue queue = factory.create();
 
-    assertTrue(queueFile.exists());
-    assertNull(queue.peek());
+    assertTrue(queueFile.isDirectory());
+    assertQueueIsWorking(queue);
   }
 
-
   @Test
-  public void create_GivenStaleQueueFile_RecreateFileAndQueueIsWorking() throws Exception {
+  public void create_GivenStaleQueueFile_RecreateDirectoryAndQueueIsWorking() throws Exception {
     givenDeactivatedPreconditionUtils();
 
     byte[] garbage = new byte[]{42, 13, 37};
@@ -107,59 +102,95 @@ public class ObjectQueueFactoryTest {
       fos.write(garbage);
     }
 
-    ObjectQueue<Metric> metricObjectQueue = factory.create();
+    ByteQueue queue = factory.create();
 
-    byte[] fileContent = Files.readAllBytes(queueFile.toPath());
-    assertTrue(queueFile.exists());
-    assertFalse(Arrays.equals(fileContent, garbage));
-    assertNull(metricObjectQueue.peek());
+    assertTrue(queueFile.isDirectory());
+    assertQueueIsWorking(queue);
   }
 
-  /**
-   * This scenario seems to happen randomly: the queue seems to get stale, maybe when writing
-   * during a crash.
-   */
   @Test
-  public void create_GivenCorruptedQueueFileWithEmptyElements_RecreateFileAndQueueIsWorking() throws Exception {
+  public void create_GivenStaleHeadFile_RecreateDirectoryAndQueueIsWorking() throws Exception {
     givenDeactivatedPreconditionUtils();
 
-    QueueFile rawQueueFile = new QueueFile(queueFile);
-    rawQueueFile.add(new byte[0]);
+    queueFile.mkdirs();
+    try (FileOutputStream fos = new FileOutputStream(new File(queueFile, SegmentedFileQueue.HEAD_FILENAME))) {
+      fos.write(new byte[]{42, 13, 37});
+    }
 
-    ObjectQueue<Metric> metricObjectQueue = factory.create();
+    ByteQueue queue = factory.create();
 
-    assertTrue(queueFile.exists());
-    assertNull(metricObjectQueue.peek());
+    assertTrue(queueFile.isDirectory());
+    assertQueueIsWorking(queue);
   }
 
   @Test
-  public void create_GivenQueueFileIsADirectory_RecreateFileAndQueueIsWorking() throws Exception {
+  public void create_GivenLegacyQueueFile_MoveItsElementsInNewQueue() throws Exception {
+    QueueFile legacyQueueFile = new QueueFile(queueFile);
+    legacyQueueFile.add("element1".getBytes());
+    legacyQueueFile.add("element2".getBytes());
+    legacyQueueFile.close();
+
+    ByteQueue queue = factory.create();
+
+    assertTrue(queueFile.isDirectory());
+    List<byte[]> elements = queue.poll(10);
+    assertEquals(2, elements.size());
+    assertArrayEquals("element1".getBytes(), elements.get(0));
+    assertArrayEquals("element2".getBytes(), elements.get(1));
+  }
+
+  /**
+   * This scenario seems to happen randomly: the queue seems to get stale, maybe when writing
+   * during a crash.
+   */
+  @Test
+  public void create_GivenLegacyQueueFileWithEmptyElements_SkipThemAndQueueIsWorking() throws Exception {
     givenDeactivatedPreconditionUtils();
 
-    queueFile.mkdirs();
+    QueueFile legacyQueueFile = new QueueFile(queueFile);
+    legacyQueueFile.add(new byte[0]);
+    legacyQueueFile.close();
 
-    ObjectQueue<Metric> metricObjectQueue = factory.create();
+    ByteQueue queue = factory.create();
 
-    assertTrue(queueFile.exists());
-    assertFalse(queueFile.isDirectory());
-    assertNull(metricObjectQueue.peek());
+    assertTrue(queueFile.isDirectory());
+    assertQueueIsWorking(queue);
   }
 
   @Test
-  public void create_GivenQueueFileIsADirectoryWithContent_RecreateFileAndQueueIsWorking() throws Exception {
+  public void create_GivenQueueFileIsADirectoryWithContent_IgnoreContentAndQueueIsWorking() throws Exception {
     givenDeactivatedPreconditionUtils();
 
     queueFile.mkdirs();
     new File(queueFile, "dummyContent").createNewFile();
 
-    ObjectQueue<Metric> metricObjectQueue = factory.create();
+    ByteQueue queue = factory.create();
 
-    assertTrue(queueFile.exists());
-    assertFalse(queueFile.isDirectory());
-    assertNull(metricObjectQueue.peek());
+    assertTrue(queueFile.isDirectory());
+    assertQueueIsWorking(queue);
+  }
+
+  private void assertQueueIsWorking(ByteQueue queue) throws Exception {
+    assertEquals(0, queue.size());
+
+    queue.add("element".getBytes());
+    List<byte[]> elements = queue.poll(1);
+
+    assertEquals(1, elements.size());
+    assertArrayEquals("element".getBytes(), elements.get(0));
   }
 
   private void givenDeactivatedPreconditionUtils() {
     when(buildConfigWrapper.preconditionThrowsOnException()).thenReturn(false);
   }
+
+  private static void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File childFile : files) {
+        delete(childFile);
+      }
+    }
+    file.delete();
+  }
 }
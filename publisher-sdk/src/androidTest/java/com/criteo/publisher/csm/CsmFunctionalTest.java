@@ -89,6 +89,8 @@ public class CsmFunctionalTest {
 
   @Before
   public void setUp() throws Exception {
+    // Write metric updates right away, so they are visible once the SDK is idle
+    when(buildConfigWrapper.getCsmWriteBehindBatchSize()).thenReturn(1);
     integrationRegistry.declare(Integration.IN_HOUSE);
     givenConsentGiven();
   }
@@ -31,10 +31,10 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import android.content.Context;
-import com.criteo.publisher.csm.MetricRepository.MetricUpdater;
 import com.criteo.publisher.mock.MockedDependenciesRule;
 import com.criteo.publisher.util.BuildConfigWrapper;
 import com.criteo.publisher.util.JsonSerializer;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -51,7 +51,7 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 
-public class FileMetricRepositoryTest {
+public class JournalMetricRepositoryTest {
 
   @Rule
   public MockedDependenciesRule mockedDependenciesRule = new MockedDependenciesRule();
@@ -67,7 +67,7 @@ public class FileMetricRepositoryTest {
   @Inject
   private JsonSerializer jsonSerializer;
 
-  private FileMetricRepository repository;
+  private JournalMetricRepository repository;
 
   @Before
   public void setUp() throws Exception {
@@ -461,7 +461,7 @@ public class FileMetricRepositoryTest {
   }
 
   @Test
-  public void updateById_GivenIoExceptionDuringReadOfExistingMetric_DoNotUpdateMetric() throws Exception {
+  public void getAllStoredMetrics_GivenIoExceptionDuringReadOfJournaledMetric_DropIt() throws Exception {
     jsonSerializer = spy(jsonSerializer);
 
     repository.addOrUpdateById("id1", builder -> { });
@@ -470,10 +470,11 @@ public class FileMetricRepositoryTest {
 
     doThrow(IOException.class).when(jsonSerializer).read(any(), any());
 
-    MetricUpdater updater = mock(MetricUpdater.class);
-    repository.addOrUpdateById("id1", updater);
+    Collection<Metric> metrics = repository.getAllStoredMetrics();
 
-    verify(updater, never()).update(any());
+    assertTrue(metrics.isEmpty());
+    assertFalse(repository.contains("id1"));
+    assertEquals(0, repository.getTotalSize());
   }
 
   @Test
@@ -488,6 +489,7 @@ public class FileMetricRepositoryTest {
     Collection<Metric> metrics = repository.getAllStoredMetrics();
 
     assertTrue(metrics.isEmpty());
+    assertEquals(0, repository.getIndexedCount());
   }
 
   @Test
@@ -600,6 +602,21 @@ public class FileMetricRepositoryTest {
     assertTrue(metrics.isEmpty());
   }
 
+  @Test
+  public void moveById_GivenSuccessfulMoves_DoNotKeepThemIndexed() throws Exception {
+    for (int i = 0; i < 10; i++) {
+      repository.addOrUpdateById("id" + i, builder -> {});
+    }
+    repository.addOrUpdateById("id10", builder -> {});
+
+    for (int i = 0; i < 10; i++) {
+      repository.moveById("id" + i, metric -> true);
+    }
+
+    assertEquals(1, repository.getIndexedCount());
+    assertTrue(repository.contains("id10"));
+  }
+
   @Test
   public void moveById_GivenRepositoryWithMetricAndUnsuccessfulMove_RollbackMetric() throws Exception {
     MetricMover mover = mock(MetricMover.class);
@@ -619,25 +636,89 @@ public class FileMetricRepositoryTest {
   }
 
   @Test
-  public void moveById_GivenErrorWhenReadingMetric_IgnoreErrorAndDoNotMove() throws Exception {
+  public void moveById_GivenUnknownMetric_DoNotMoveAnything() throws Exception {
     MetricMover mover = mock(MetricMover.class);
     when(mover.offerToDestination(any())).thenReturn(true);
 
-    jsonSerializer = spy(jsonSerializer);
+    repository.addOrUpdateById("id1", builder -> {});
+
+    repository.moveById("id2", mover);
+
+    verify(mover, never()).offerToDestination(any());
+    assertTrue(repository.contains("id1"));
+  }
+
+  @Test
+  public void getAllStoredMetrics_GivenTornRecordAtEndOfJournal_DropOnlyThisRecord() throws Exception {
+    repository.addOrUpdateById("id1", builder -> builder.setCdbCallStartTimestamp(42L));
+
+    try (FileOutputStream fos = new FileOutputStream(directory.getJournalFile(), true)) {
+      fos.write(new byte[] { 0, 0, 1, 0, 1, 2, 3 });
+    }
 
-    repository.addOrUpdateById("id", builder -> {});
+    givenNewRepository();
+    repository.addOrUpdateById("id2", builder -> {});
     givenNewRepository();
 
-    doThrow(IOException.class)
-        .doCallRealMethod()
-        .when(jsonSerializer).read(any(), any());
+    Collection<Metric> metrics = repository.getAllStoredMetrics();
 
-    repository.moveById("id", mover);
+    assertEquals(2, metrics.size());
+    assertTrue(metrics.contains(Metric.builder("id1").setCdbCallStartTimestamp(42L).build()));
+    assertTrue(metrics.contains(Metric.builder("id2").build()));
+  }
+
+  @Test
+  public void getAllStoredMetrics_GivenMetricFilesOfPreviousVersion_ImportThemAndDeleteFiles() throws Exception {
+    Metric metric1 = Metric.builder("id1").setCdbCallStartTimestamp(42L).build();
+    Metric metric2 = Metric.builder("id2").setReadyToSend(true).build();
+    directory.createSyncMetricFile(directory.createMetricFile("id1")).write(metric1);
+    directory.createSyncMetricFile(directory.createMetricFile("id2")).write(metric2);
+
+    Collection<Metric> metrics = repository.getAllStoredMetrics();
+
+    assertEquals(2, metrics.size());
+    assertTrue(metrics.contains(metric1));
+    assertTrue(metrics.contains(metric2));
+    assertTrue(directory.listFiles().isEmpty());
+
+    givenNewRepository();
+
+    assertEquals(metrics.size(), repository.getAllStoredMetrics().size());
+    assertTrue(repository.getAllStoredMetrics().containsAll(metrics));
+  }
+
+  @Test
+  public void getAllStoredMetrics_GivenMetricFileAlreadyImported_KeepJournaledMetric() throws Exception {
+    repository.addOrUpdateById("id", builder -> builder.setCdbCallStartTimestamp(1337L));
+    directory.createSyncMetricFile(directory.createMetricFile("id"))
+        .write(Metric.builder("id").setCdbCallStartTimestamp(42L).build());
+
+    givenNewRepository();
+
+    Collection<Metric> metrics = repository.getAllStoredMetrics();
+
+    assertEquals(1, metrics.size());
+    assertTrue(metrics.contains(Metric.builder("id").setCdbCallStartTimestamp(1337L).build()));
+    assertTrue(directory.listFiles().isEmpty());
+  }
+
+  @Test
+  public void addOrUpdateById_GivenTonsOfUpdates_JournalIsCompacted() throws Exception {
+    int minSizeForCompaction = buildConfigWrapper.getMinSizeOfCsmMetricJournalCompaction();
+
+    for (long i = 0; i < 1000; i++) {
+      long finalI = i;
+      repository.addOrUpdateById("id", builder -> builder.setCdbCallStartTimestamp(finalI));
+    }
+
+    assertTrue(directory.getJournalFile().length() < minSizeForCompaction);
+
+    givenNewRepository();
 
     Collection<Metric> metrics = repository.getAllStoredMetrics();
 
     assertEquals(1, metrics.size());
-    assertTrue(metrics.contains(Metric.builder("id").build()));
+    assertTrue(metrics.contains(Metric.builder("id").setCdbCallStartTimestamp(999L).build()));
   }
 
   private void awaitShortly(CountDownLatch latch) {
@@ -652,7 +733,7 @@ public class FileMetricRepositoryTest {
 
   private void givenNewRepository() {
     directory = new MetricDirectory(context, buildConfigWrapper, jsonSerializer);
-    repository = new FileMetricRepository(directory);
+    repository = new JournalMetricRepository(directory, jsonSerializer, buildConfigWrapper);
   }
 
 }
\ No newline at end of file
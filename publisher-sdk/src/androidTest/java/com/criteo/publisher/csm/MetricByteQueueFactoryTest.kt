@@ -20,7 +20,6 @@ import android.content.Context
 import com.criteo.publisher.mock.MockedDependenciesRule
 import com.criteo.publisher.mock.SpyBean
 import com.criteo.publisher.util.JsonSerializer
-import com.squareup.tape.QueueFile
 import org.assertj.core.api.Assertions.assertThat
 import org.junit.After
 import org.junit.Before
@@ -32,7 +31,7 @@ import org.mockito.kotlin.whenever
 import java.io.File
 import javax.inject.Inject
 
-class MetricObjectQueueFactoryTest {
+class MetricByteQueueFactoryTest {
 
   @Rule
   @JvmField
@@ -49,7 +48,7 @@ class MetricObjectQueueFactoryTest {
   @SpyBean
   private lateinit var configuration: MetricSendingQueueConfiguration
 
-  private lateinit var factory: ObjectQueueFactory<Metric>
+  private lateinit var factory: ByteQueueFactory
 
   @Before
   fun setUp() {
@@ -57,14 +56,14 @@ class MetricObjectQueueFactoryTest {
 
     queueFile = File(context.filesDir, "queueFile")
 
-    factory = spy(ObjectQueueFactory(context, jsonSerializer, configuration)) {
+    factory = spy(ByteQueueFactory(context, configuration)) {
       doReturn(queueFile).whenever(mock).queueFile
     }
   }
 
   @After
   fun tearDown() {
-    queueFile.delete()
+    queueFile.deleteRecursively()
   }
 
   @Test
@@ -74,7 +73,7 @@ class MetricObjectQueueFactoryTest {
     val requiredMetricsForOverflow = maxSize / smallSizeEstimationPerMetrics
     val requiredMetricsForOverflowWithMargin = (requiredMetricsForOverflow * 1.20).toInt()
 
-    val sendingQueue = SendingQueueFactory(factory, configuration).create()
+    val sendingQueue = SendingQueueFactory(factory, jsonSerializer, configuration).create()
 
     for (i in 0 until requiredMetricsForOverflowWithMargin) {
       val metric = Metric.builder("id$i")
@@ -89,12 +88,12 @@ class MetricObjectQueueFactoryTest {
     // The last element can overflow the limit, so we are lenient (up to 1%) on the below condition.
     assertThat(sendingQueue.totalSize * 0.99).isLessThanOrEqualTo(maxSize.toDouble())
 
-    // The queue file grows in power of 2. So it can be, at most, twice larger than expected.
-    // To not waste this memory, the max size should be near a power of 2. We are lenient (up to
-    // 10%) on this condition.
-    assertThat(queueFile.length().toDouble()).isLessThanOrEqualTo(maxSize * 1.10)
+    // Consumed segments are deleted, so only the first segment can hold elements already removed.
+    // We are lenient (up to 10%) on this condition.
+    val diskSize = queueFile.walk().filter { it.isFile }.sumOf { it.length() }
+    assertThat(diskSize.toDouble()).isLessThanOrEqualTo(maxSize * 1.10)
 
     // Verify that the queue can contain, at least, an expected number of elements
-    assertThat(QueueFile(queueFile).size()).isGreaterThanOrEqualTo(300)
+    assertThat(sendingQueue.poll(Int.MAX_VALUE)).hasSizeGreaterThanOrEqualTo(300)
   }
 }
@@ -32,6 +32,7 @@ import com.criteo.publisher.csm.MetricHelper
 import com.criteo.publisher.csm.MetricRepository
 import com.criteo.publisher.csm.MetricSendingQueueConsumer
 import com.criteo.publisher.csm.MetricSendingQueueProducer
+import com.criteo.publisher.csm.MetricWriteBehindBuffer
 import com.criteo.publisher.mock.MockedDependenciesRule
 import com.criteo.publisher.mock.SpyBean
 import com.criteo.publisher.network.PubSdkApi
@@ -72,6 +73,9 @@ class ProfileIdFunctionalTest {
   @SpyBean
   private lateinit var metricRepository: MetricRepository
 
+  @Inject
+  private lateinit var metricWriteBehindBuffer: MetricWriteBehindBuffer
+
   @SpyBean
   private lateinit var consentData: ConsentData
 
@@ -171,7 +175,7 @@ class ProfileIdFunctionalTest {
   @Test
   fun csm_GivenIntegrationSpecificBidConsumedWithUsedSdkByAnotherIntegration_GroupMetricsByProfileId() {
     // Deactivate the CSM sending to show that SDK is handling sending different profile IDs
-    doNothing().whenever(metricSendingQueueConsumer).sendMetricBatch()
+    doNothing().whenever(metricSendingQueueConsumer).scheduleMetricBatch()
 
     givenInitializedCriteo()
 
@@ -186,7 +190,7 @@ class ProfileIdFunctionalTest {
     Criteo.getInstance().loadBid(BANNER_320_480, ContextData()) { /* no-op */ }
     mockedDependenciesRule.waitForIdleState()
 
-    doCallRealMethod().whenever(metricSendingQueueConsumer).sendMetricBatch()
+    doCallRealMethod().whenever(metricSendingQueueConsumer).scheduleMetricBatch()
     triggerMetricRequest()
 
     verify(api).postCsm(check {
@@ -340,6 +344,8 @@ class ProfileIdFunctionalTest {
   }
 
   private fun triggerMetricRequest() {
+    metricWriteBehindBuffer.onApplicationStopped()
+    mockedDependenciesRule.waitForIdleState()
     metricSendingQueueProducer.pushAllInQueue(metricRepository)
     mockedDependenciesRule.waitForIdleState()
     metricSendingQueueConsumer.sendMetricBatch()
@@ -17,11 +17,10 @@
 package com.criteo.publisher.logging
 
 import android.content.Context
-import com.criteo.publisher.csm.ObjectQueueFactory
+import com.criteo.publisher.csm.ByteQueueFactory
 import com.criteo.publisher.csm.SendingQueueFactory
 import com.criteo.publisher.mock.MockedDependenciesRule
 import com.criteo.publisher.util.JsonSerializer
-import com.squareup.tape.QueueFile
 import org.assertj.core.api.Assertions.assertThat
 import org.junit.After
 import org.junit.Before
@@ -33,7 +32,7 @@ import org.mockito.kotlin.whenever
 import java.io.File
 import javax.inject.Inject
 
-class RemoteLogObjectQueueFactoryTest {
+class RemoteLogByteQueueFactoryTest {
 
   @Rule
   @JvmField
@@ -53,20 +52,20 @@ class RemoteLogObjectQueueFactoryTest {
   @Inject
   private lateinit var remoteLogRecordsFactory: RemoteLogRecordsFactory
 
-  private lateinit var factory: ObjectQueueFactory<RemoteLogRecords>
+  private lateinit var factory: ByteQueueFactory
 
   @Before
   fun setUp() {
     queueFile = File(context.filesDir, configuration.queueFilename)
 
-    factory = spy(ObjectQueueFactory(context, jsonSerializer, configuration)) {
+    factory = spy(ByteQueueFactory(context, configuration)) {
       doReturn(queueFile).whenever(mock).queueFile
     }
   }
 
   @After
   fun tearDown() {
-    queueFile.delete()
+    queueFile.deleteRecursively()
   }
 
   @Test
@@ -76,7 +75,7 @@ class RemoteLogObjectQueueFactoryTest {
     val requiredLogsForOverflow = maxSize / smallSizeEstimationPerLog
     val requiredLogsForOverflowWithMargin = (requiredLogsForOverflow * 1.20).toInt()
 
-    val sendingQueue = SendingQueueFactory(factory, configuration).create()
+    val sendingQueue = SendingQueueFactory(factory, jsonSerializer, configuration).create()
 
     for (i in 0 until requiredLogsForOverflowWithMargin) {
       val message = "#$i: Lorem ipsum dolor sit amet, consectetur adipiscing elit."
@@ -103,12 +102,12 @@ class RemoteLogObjectQueueFactoryTest {
     // The last element can overflow the limit, so we are lenient (up to 1%) on the below condition.
     assertThat(sendingQueue.totalSize * 0.99).isLessThanOrEqualTo(maxSize.toDouble())
 
-    // The queue file grows in power of 2. So it can be, at most, twice larger than expected.
-    // To not waste this memory, the max size should be near a power of 2. We are lenient (up to
-    // 10%) on this condition.
-    assertThat(queueFile.length().toDouble()).isLessThanOrEqualTo(maxSize * 1.10)
+    // Consumed segments are deleted, so only the first segment can hold elements already removed.
+    // We are lenient (up to 10%) on this condition.
+    val diskSize = queueFile.walk().filter { it.isFile }.sumOf { it.length() }
+    assertThat(diskSize.toDouble()).isLessThanOrEqualTo(maxSize * 1.10)
 
     // Verify that the queue can contain, at least, an expected number of elements
-    assertThat(QueueFile(queueFile).size()).isGreaterThanOrEqualTo(50)
+    assertThat(sendingQueue.poll(Int.MAX_VALUE)).hasSizeGreaterThanOrEqualTo(50)
   }
 }
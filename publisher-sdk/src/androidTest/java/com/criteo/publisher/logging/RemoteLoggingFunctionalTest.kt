@@ -16,10 +16,8 @@
 
 package com.criteo.publisher.logging
 
-import com.criteo.publisher.Criteo
 import com.criteo.publisher.CriteoUtil.givenInitializedCriteo
 import com.criteo.publisher.SafeRunnable
-import com.criteo.publisher.TestAdUnits
 import com.criteo.publisher.concurrent.ThreadingUtil.runOnMainThreadAndWait
 import com.criteo.publisher.mock.MockedDependenciesRule
 import com.criteo.publisher.mock.SpyBean
@@ -76,10 +74,8 @@ class RemoteLoggingFunctionalTest {
     }
     mockedDependenciesRule.waitForIdleState()
 
-    // Get a new bid to trigger sending of remote logs
-    Criteo.getInstance().loadBid(TestAdUnits.INTERSTITIAL) {
-      // ignored
-    }
+    // Going to background triggers sending of remote logs
+    remoteLogSendingQueueConsumer.onApplicationStopped()
     mockedDependenciesRule.waitForIdleState()
 
     verify(api, atLeastOnce()).postLogs(check {
@@ -315,6 +315,7 @@ public class ConfigIntegrationTests {
         true,
         RemoteLogLevel.DEBUG,
         true,
+        true,
         true
     );
 
@@ -344,6 +345,7 @@ public class ConfigIntegrationTests {
         null,
         null,
         null,
+        null,
         null
     );
 
@@ -359,7 +361,8 @@ public class ConfigIntegrationTests {
         false,
         RemoteLogLevel.INFO,
         false,
-        false
+        false,
+        true
     );
 
     RemoteConfigResponse expectedRemoteConfig = new RemoteConfigResponse(
@@ -374,7 +377,8 @@ public class ConfigIntegrationTests {
         false,
         RemoteLogLevel.INFO,
         false,
-        false
+        false,
+        true
     );
 
     givenRemoteConfigInLocalStorage(oldPersistedConfig);
@@ -383,7 +383,8 @@ public class PubSdkApiIntegrationTest {
         DefaultConfig.PREFETCH_ON_INIT_ENABLED,
         DefaultConfig.REMOTE_LOG_LEVEL,
         DefaultConfig.IS_MRAID_ENABLED,
-        DefaultConfig.IS_MRAID2_ENABLED
+        DefaultConfig.IS_MRAID2_ENABLED,
+        null
     );
   }
 }
@@ -16,11 +16,13 @@
 
 package com.criteo.publisher;
 
-import androidx.annotation.GuardedBy;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import com.criteo.publisher.bid.BidLifecycleListener;
+import com.criteo.publisher.cache.BidCacheStore;
+import com.criteo.publisher.cache.BidRefreshScheduler;
+import com.criteo.publisher.cache.PrefetchPolicy;
 import com.criteo.publisher.cache.SdkCache;
 import com.criteo.publisher.context.ContextData;
 import com.criteo.publisher.csm.MetricSendingQueueConsumer;
@@ -38,8 +40,10 @@ import com.criteo.publisher.network.BidRequestSender;
 import com.criteo.publisher.network.LiveBidRequestSender;
 import com.criteo.publisher.privacy.ConsentData;
 import com.criteo.publisher.util.ApplicationStoppedListener;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class BidManager implements ApplicationStoppedListener {
@@ -52,10 +56,15 @@ public class BidManager implements ApplicationStoppedListener {
   @NonNull
   private final Logger logger = LoggerFactory.getLogger(getClass());
 
+  /**
+   * Bid cache shared by all callers.
+   * <p>
+   * The cache is thread-safe and its conditional operations are atomic per ad unit. So no global
+   * lock is taken here: callers for different ad units never block each other, and concurrent
+   * callers for the same ad unit can never consume twice the same bid.
+   */
   @NonNull
-  @GuardedBy("cacheLock")
   private final SdkCache cache;
-  private final Object cacheLock = new Object();
 
   private final AtomicLong cdbTimeToNextCall = new AtomicLong(0);
 
@@ -86,6 +95,15 @@ public class BidManager implements ApplicationStoppedListener {
   @NonNull
   private final ConsentData consentData;
 
+  @NonNull
+  private final BidRefreshScheduler bidRefreshScheduler;
+
+  @NonNull
+  private final BidCacheStore bidCacheStore;
+
+  @NonNull
+  private final PrefetchPolicy prefetchPolicy;
+
   BidManager(
       @NonNull SdkCache sdkCache,
       @NonNull Config config,
@@ -96,7 +114,10 @@ public class BidManager implements ApplicationStoppedListener {
       @NonNull BidLifecycleListener bidLifecycleListener,
       @NonNull MetricSendingQueueConsumer metricSendingQueueConsumer,
       @NonNull RemoteLogSendingQueueConsumer remoteLogSendingQueueConsumer,
-      @NonNull ConsentData consentData
+      @NonNull ConsentData consentData,
+      @NonNull BidRefreshScheduler bidRefreshScheduler,
+      @NonNull BidCacheStore bidCacheStore,
+      @NonNull PrefetchPolicy prefetchPolicy
   ) {
     this.cache = sdkCache;
     this.config = config;
@@ -108,6 +129,10 @@ public class BidManager implements ApplicationStoppedListener {
     this.metricSendingQueueConsumer = metricSendingQueueConsumer;
     this.remoteLogSendingQueueConsumer = remoteLogSendingQueueConsumer;
     this.consentData = consentData;
+    this.bidRefreshScheduler = bidRefreshScheduler;
+    this.bidRefreshScheduler.setListener(new CacheRefreshListener());
+    this.bidCacheStore = bidCacheStore;
+    this.prefetchPolicy = prefetchPolicy;
   }
 
   /**
@@ -157,14 +182,17 @@ public class BidManager implements ApplicationStoppedListener {
    *   <li>Last fetch bid is expired</li>
    * </ul>
    * <p>
-   * Asynchronously, a new bid is fetch to CDB to get a new proposition. Hence if this method
-   * returns a bid, it is consumed, and you have to wait for the new proposition to get a result
-   * again. Meanwhile, you'll only get a <code>null</code> value.
+   * Asynchronously, new bids are fetch to CDB to get new propositions. Hence if this method
+   * returns a bid, it is consumed. If the cache still holds other bids for this ad unit (see {@link
+   * com.criteo.publisher.util.BuildConfigWrapper#getBidCacheDepth()}), they are served to the next
+   * invocations. Else you have to wait for the new proposition to get a result again. Meanwhile,
+   * you'll only get a <code>null</code> value.
    * There may be some case when a new bid is not fetch:
    * <ul>
    *   <li>The kill switch is engaged</li>
    *   <li>The given {@link AdUnit} is not valid</li>
    *   <li>Last fetch bid is a not-expired silence</li>
+   *   <li>The cache still holds enough bids for the given {@link AdUnit}</li>
    *   <li>There is already an async call to CDB for the given {@link AdUnit}</li>
    * </ul>
    *
@@ -186,13 +214,16 @@ public class BidManager implements ApplicationStoppedListener {
       return null;
     }
 
-    synchronized (cacheLock) {
-      if (!isSilencedFor(cacheAdUnit)) {
-        fetchForCache(cacheAdUnit, contextData);
-      }
+    prefetchPolicy.onAdUnitRequested(cacheAdUnit);
 
-      return consumeCachedBid(cacheAdUnit);
+    boolean isSilenced = isSilencedFor(cacheAdUnit);
+    CdbResponseSlot cdbResponseSlot = consumeCachedBid(cacheAdUnit);
+
+    if (!isSilenced) {
+      fetchForCache(cacheAdUnit, contextData);
     }
+
+    return cdbResponseSlot;
   }
 
   private boolean isSilencedFor(@NonNull CacheAdUnit cacheAdUnit) {
@@ -200,41 +231,43 @@ public class BidManager implements ApplicationStoppedListener {
       return true;
     }
 
-    synchronized (cacheLock) {
-      CdbResponseSlot cdbResponseSlot = cache.peekAdUnit(cacheAdUnit);
-      return isBidCurrentlySilent(cdbResponseSlot);
-    }
+    CdbResponseSlot cdbResponseSlot = cache.peekAdUnit(cacheAdUnit);
+    return isBidCurrentlySilent(cdbResponseSlot);
   }
 
   private void consumeCachedBidIfExpired(@NonNull CacheAdUnit cacheAdUnit) {
-    synchronized (cacheLock) {
-      CdbResponseSlot cdbResponseSlot = cache.peekAdUnit(cacheAdUnit);
-      if (cdbResponseSlot != null && hasBidExpired(cdbResponseSlot)) {
-        cache.remove(cacheAdUnit);
+    CdbResponseSlot cdbResponseSlot = cache.peekAdUnit(cacheAdUnit);
+    if (cdbResponseSlot != null && hasBidExpired(cdbResponseSlot)) {
+      if (cache.remove(cacheAdUnit, cdbResponseSlot)) {
         bidLifecycleListener.onBidConsumed(cacheAdUnit, cdbResponseSlot);
       }
     }
   }
 
+  /**
+   * Consume the next valid bid of the given ad unit.
+   * <p>
+   * Cached bids are looked in order of expiry: expired bids met before a valid one are consumed and
+   * dropped. A not-expired silence is never consumed.
+   */
+  @Nullable
   private CdbResponseSlot consumeCachedBid(@NonNull CacheAdUnit cacheAdUnit) {
-    synchronized (cacheLock) {
+    while (true) {
       CdbResponseSlot cdbResponseSlot = cache.peekAdUnit(cacheAdUnit);
+      if (cdbResponseSlot == null || isBidCurrentlySilent(cdbResponseSlot)) {
+        return null;
+      }
 
-      if (cdbResponseSlot != null) {
-        boolean isBidSilent = isBidCurrentlySilent(cdbResponseSlot);
-        boolean hasBidExpired = hasBidExpired(cdbResponseSlot);
+      if (!cache.remove(cacheAdUnit, cdbResponseSlot)) {
+        // The slot was concurrently consumed, look at the new cached state.
+        continue;
+      }
 
-        if (!isBidSilent) {
-          cache.remove(cacheAdUnit);
-          bidLifecycleListener.onBidConsumed(cacheAdUnit, cdbResponseSlot);
-        }
+      bidLifecycleListener.onBidConsumed(cacheAdUnit, cdbResponseSlot);
 
-        if (!isBidSilent && !hasBidExpired) {
-          return cdbResponseSlot;
-        }
+      if (!hasBidExpired(cdbResponseSlot)) {
+        return cdbResponseSlot;
       }
-
-      return null;
     }
   }
 
@@ -249,9 +282,16 @@ public class BidManager implements ApplicationStoppedListener {
 
   /**
    * load data for next time
+   * <p>
+   * If the cached bids of the given ad unit dropped below the low-water mark, a single request is
+   * sent to fetch all the bids missing to top it up to the full cache depth. This request may be
+   * coalesced with the ones of other ad units requested at the same time.
    */
   private void fetchForCache(@NonNull CacheAdUnit cacheAdUnit, @NonNull ContextData contextData) {
-    sendBidRequest(Collections.singletonList(cacheAdUnit), contextData);
+    int missingBidCount = cache.getMissingBidCount(cacheAdUnit);
+    if (missingBidCount > 0) {
+      enqueueBidRequest(Collections.nCopies(missingBidCount, cacheAdUnit), contextData);
+    }
   }
 
   @VisibleForTesting
@@ -271,67 +311,169 @@ public class BidManager implements ApplicationStoppedListener {
       return;
     }
 
-    synchronized (cacheLock) {
-      consumeCachedBidIfExpired(cacheAdUnit);
+    prefetchPolicy.onAdUnitRequested(cacheAdUnit);
 
-      if (isSilencedFor(cacheAdUnit)) {
-        consumeCachedBid(cacheAdUnit, bidListener);
-      } else {
-        liveBidRequestSender.sendLiveBidRequest(
-            cacheAdUnit,
-            contextData,
-            new LiveCdbCallListener(
-                bidListener,
-                bidLifecycleListener,
-                this,
-                cacheAdUnit,
-                consentData
-            )
-        );
-      }
+    consumeCachedBidIfExpired(cacheAdUnit);
 
-      metricSendingQueueConsumer.sendMetricBatch();
-      remoteLogSendingQueueConsumer.sendRemoteLogBatch();
+    if (isSilencedFor(cacheAdUnit)) {
+      consumeCachedBid(cacheAdUnit, bidListener);
+    } else {
+      liveBidRequestSender.sendLiveBidRequest(
+          cacheAdUnit,
+          contextData,
+          new LiveCdbCallListener(
+              bidListener,
+              bidLifecycleListener,
+              this,
+              cacheAdUnit,
+              consentData
+          )
+      );
     }
+
+    metricSendingQueueConsumer.scheduleMetricBatch();
+    remoteLogSendingQueueConsumer.scheduleRemoteLogBatch();
+  }
+
+  private void sendBidRequest(
+      @NonNull List<CacheAdUnit> cacheAdUnits,
+      @NonNull ContextData contextData
+  ) {
+    sendBidRequest(bidRequestSender::sendBidRequest, cacheAdUnits, contextData);
+  }
+
+  private void enqueueBidRequest(
+      @NonNull List<CacheAdUnit> cacheAdUnits,
+      @NonNull ContextData contextData
+  ) {
+    sendBidRequest(bidRequestSender::enqueueBidRequest, cacheAdUnits, contextData);
   }
 
+  /**
+   * Request bids for the cache only, with the given way of sending the request: either right away
+   * or coalesced with other ones (see {@link BidRequestSender}).
+   */
   private void sendBidRequest(
-      @NonNull List<CacheAdUnit> prefetchCacheAdUnits,
+      @NonNull CacheBidRequestStrategy strategy,
+      @NonNull List<CacheAdUnit> cacheAdUnits,
       @NonNull ContextData contextData
   ) {
     if (killSwitchEngaged()) {
       return;
     }
 
-    bidRequestSender.sendBidRequest(
-        prefetchCacheAdUnits,
-        contextData,
-        new CacheOnlyCdbCallListener()
-    );
-    metricSendingQueueConsumer.sendMetricBatch();
-    remoteLogSendingQueueConsumer.sendRemoteLogBatch();
+    strategy.send(cacheAdUnits, contextData, new CacheOnlyCdbCallListener());
+    metricSendingQueueConsumer.scheduleMetricBatch();
+    remoteLogSendingQueueConsumer.scheduleRemoteLogBatch();
   }
 
   void setCacheAdUnits(@NonNull List<CdbResponseSlot> slots) {
-    synchronized (cacheLock) {
-      for (CdbResponseSlot slot : slots) {
-        CdbResponseSlot cachedSlot = cache.peekAdUnit(cache.detectCacheAdUnit(slot));
-        if (isBidCurrentlySilent(cachedSlot)) {
-          // Do not override silence bid that was concurrently cached.
-          continue;
-        }
-
-        if (slot.isValid()) {
-          boolean isImmediateBid = getCpm(slot) > 0 && slot.getTtlInSeconds() == 0;
-          if (isImmediateBid) {
-            slot.setTtlInSeconds(DEFAULT_TTL_IN_SECONDS);
-          }
-
-          cache.add(slot);
-          bidLifecycleListener.onBidCached(slot);
-        }
+    for (CdbResponseSlot slot : slots) {
+      setCacheAdUnit(slot, null, new ContextData());
+    }
+  }
+
+  /**
+   * Cache the given slots received in response to the given request.
+   * <p>
+   * Each slot is cached under the ad unit that was requested with the same impression ID. Slots
+   * that cannot be mapped back to a requested ad unit are cached under a detected one. Their
+   * refresh is scheduled with the context data of the request.
+   */
+  void setCacheAdUnits(@NonNull CdbRequest cdbRequest, @NonNull List<CdbResponseSlot> slots) {
+    Map<String, CacheAdUnit> requestedAdUnits = cdbRequest.getAdUnitsByImpressionId();
+    for (CdbResponseSlot slot : slots) {
+      String impressionId = slot.getImpressionId();
+      setCacheAdUnit(
+          slot,
+          impressionId == null ? null : requestedAdUnits.get(impressionId),
+          cdbRequest.getContextData()
+      );
+    }
+  }
+
+  private void setCacheAdUnit(
+      @NonNull CdbResponseSlot slot,
+      @Nullable CacheAdUnit requestedAdUnit,
+      @NonNull ContextData contextData
+  ) {
+    if (!slot.isValid()) {
+      return;
+    }
+
+    boolean isImmediateBid = getCpm(slot) > 0 && slot.getTtlInSeconds() == 0;
+    if (isImmediateBid) {
+      slot.setTtlInSeconds(DEFAULT_TTL_IN_SECONDS);
+    }
+
+    CacheAdUnit cacheAdUnit = requestedAdUnit;
+    if (cacheAdUnit == null) {
+      cacheAdUnit = cache.detectCacheAdUnit(slot);
+    }
+
+    CdbResponseSlot cachedSlot;
+    do {
+      cachedSlot = cacheAdUnit == null ? null : cache.peekAdUnit(cacheAdUnit);
+      if (isBidCurrentlySilent(cachedSlot)) {
+        // Do not override silence bid that was concurrently cached.
+        return;
+      }
+
+      // If the cached slot is concurrently updated, the silence check is done again.
+    } while (!addInCache(requestedAdUnit, slot, cachedSlot));
+
+    bidLifecycleListener.onBidCached(slot);
+
+    if (cacheAdUnit != null && !SdkCache.isSilentBid(slot)) {
+      bidRefreshScheduler.schedule(cacheAdUnit, slot.getExpiryTimeInMillis(), contextData);
+    }
+  }
+
+  /**
+   * Refresh in background the given ad units whose cached bid is about to expire.
+   * <p>
+   * All the ad units still needing a refresh are requested in a single call. Ad units whose bid
+   * was consumed meanwhile are skipped: consumption already fetched a new bid for them. Ad units
+   * holding another bid expiring later are scheduled again for this one.
+   */
+  @VisibleForTesting
+  void refreshCacheAdUnits(
+      @NonNull List<CacheAdUnit> cacheAdUnits,
+      @NonNull ContextData contextData
+  ) {
+    if (killSwitchEngaged() || isGlobalSilenceEnabled()) {
+      return;
+    }
+
+    List<CacheAdUnit> refreshedCacheAdUnits = new ArrayList<>();
+    for (CacheAdUnit cacheAdUnit : cacheAdUnits) {
+      CdbResponseSlot cdbResponseSlot = cache.peekAdUnit(cacheAdUnit);
+      if (cdbResponseSlot == null || isBidCurrentlySilent(cdbResponseSlot)) {
+        continue;
+      }
+
+      long expiryTimeInMillis = cdbResponseSlot.getExpiryTimeInMillis();
+      if (bidRefreshScheduler.isRefreshDue(expiryTimeInMillis)) {
+        refreshedCacheAdUnits.add(cacheAdUnit);
+      } else {
+        bidRefreshScheduler.schedule(cacheAdUnit, expiryTimeInMillis, contextData);
       }
     }
+
+    if (!refreshedCacheAdUnits.isEmpty()) {
+      sendBidRequest(refreshedCacheAdUnits, contextData);
+    }
+  }
+
+  private boolean addInCache(
+      @Nullable CacheAdUnit requestedAdUnit,
+      @NonNull CdbResponseSlot slot,
+      @Nullable CdbResponseSlot cachedSlot
+  ) {
+    if (requestedAdUnit != null) {
+      return cache.add(requestedAdUnit, slot, cachedSlot);
+    }
+    return cache.add(slot, cachedSlot);
   }
 
   @Nullable
@@ -352,8 +494,7 @@ public class BidManager implements ApplicationStoppedListener {
       return false;
     }
 
-    boolean isBidSilent = cdbResponseSlot.getTtlInSeconds() > 0 && getCpm(cdbResponseSlot) == 0;
-    return isBidSilent && !hasBidExpired(cdbResponseSlot);
+    return SdkCache.isSilentBid(cdbResponseSlot) && !hasBidExpired(cdbResponseSlot);
   }
 
   private boolean hasBidExpired(@NonNull CdbResponseSlot cdbResponseSlot) {
@@ -368,10 +509,25 @@ public class BidManager implements ApplicationStoppedListener {
   @Override
   public void onApplicationStopped() {
     bidRequestSender.cancelAllPendingTasks();
+    liveBidRequestSender.cancelAllPendingTasks();
+    bidRefreshScheduler.pause();
+    bidCacheStore.saveAsync();
+    prefetchPolicy.onSessionEnded();
+  }
+
+  /**
+   * Called when the application comes back to foreground, after {@link #onApplicationStopped()}.
+   */
+  public void onApplicationStarted() {
+    bidRefreshScheduler.resume();
+    bidCacheStore.discardAsync();
   }
 
   /**
    * This method is called back after the "useragent" is fetched
+   * <p>
+   * The {@link PrefetchPolicy} decides which ad units are prefetched, in which order and how they
+   * are grouped into bid requests.
    *
    * @param adUnits list of ad units to prefetch
    */
@@ -379,7 +535,8 @@ public class BidManager implements ApplicationStoppedListener {
     bidRequestSender.sendRemoteConfigRequest(config);
 
     if (config.isPrefetchOnInitEnabled()) {
-      List<List<CacheAdUnit>> requestedAdUnitsChunks = adUnitMapper.mapToChunks(adUnits);
+      List<CacheAdUnit> cacheAdUnits = adUnitMapper.mapToCacheAdUnits(adUnits);
+      List<List<CacheAdUnit>> requestedAdUnitsChunks = prefetchPolicy.plan(cacheAdUnits);
 
       for (List<CacheAdUnit> requestedAdUnits : requestedAdUnitsChunks) {
         sendBidRequest(requestedAdUnits, new ContextData());
@@ -409,7 +566,7 @@ public class BidManager implements ApplicationStoppedListener {
         @NonNull CdbRequest cdbRequest,
         @NonNull CdbResponse cdbResponse
     ) {
-      setCacheAdUnits(cdbResponse.getSlots());
+      setCacheAdUnits(cdbRequest, cdbResponse.getSlots());
       super.onCdbResponse(cdbRequest, cdbResponse);
     }
 
@@ -418,4 +575,26 @@ public class BidManager implements ApplicationStoppedListener {
       // no-op
     }
   }
+
+  private class CacheRefreshListener implements BidRefreshScheduler.Listener {
+
+    @Override
+    public void onRefreshDue(
+        @NonNull List<CacheAdUnit> cacheAdUnits,
+        @NonNull ContextData contextData
+    ) {
+      refreshCacheAdUnits(cacheAdUnits, contextData);
+    }
+  }
+
+  /**
+   * Way of sending a bid request with {@link BidRequestSender}.
+   */
+  private interface CacheBidRequestStrategy {
+    void send(
+        @NonNull List<CacheAdUnit> cacheAdUnits,
+        @NonNull ContextData contextData,
+        @NonNull CdbCallListener listener
+    );
+  }
 }
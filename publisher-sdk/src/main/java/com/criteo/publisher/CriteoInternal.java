@@ -22,6 +22,7 @@ import android.app.Application;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import com.criteo.publisher.bid.BidLifecycleListener;
+import com.criteo.publisher.concurrent.Lane;
 import com.criteo.publisher.context.ContextData;
 import com.criteo.publisher.context.UserData;
 import com.criteo.publisher.headerbidding.HeaderBidding;
@@ -31,6 +32,7 @@ import com.criteo.publisher.logging.LoggerFactory;
 import com.criteo.publisher.model.AdUnit;
 import com.criteo.publisher.model.Config;
 import com.criteo.publisher.model.DeviceInfo;
+import com.criteo.publisher.network.PubSdkApi;
 import com.criteo.publisher.privacy.UserPrivacyUtil;
 import java.util.List;
 import java.util.concurrent.Executor;
@@ -82,6 +84,9 @@ class CriteoInternal extends Criteo {
 
     config = dependencyProvider.provideConfig();
 
+    // Restore bids of the previous session in background, ad requests wait a little for them
+    dependencyProvider.provideBidCacheStore().restoreAsync();
+
     bidManager = dependencyProvider.provideBidManager();
     consumableBidLoader = dependencyProvider.provideConsumableBidLoader();
     headerBidding = dependencyProvider.provideHeaderBidding();
@@ -101,9 +106,24 @@ class CriteoInternal extends Criteo {
     BidLifecycleListener bidLifecycleListener = dependencyProvider.provideBidLifecycleListener();
     bidLifecycleListener.onSdkInitialized();
 
+    preconnect(dependencyProvider.provideSdkScheduler().executorFor(Lane.DEFAULT), dependencyProvider.providePubSdkApi());
+    dependencyProvider.provideExecutorMetrics().scheduleDebugDump(
+        dependencyProvider.provideScheduledExecutorService(),
+        dependencyProvider.provideBuildConfigWrapper().getExecutorMetricsDumpIntervalInMillis()
+    );
+    dependencyProvider.provideImpressionPixelDispatcher().dispatchPending();
     prefetchAdUnits(dependencyProvider.provideRunOnUiThreadExecutor(), adUnits);
   }
 
+  private void preconnect(Executor executor, PubSdkApi api) {
+    executor.execute(new SafeRunnable() {
+      @Override
+      public void runSafely() {
+        api.preconnect();
+      }
+    });
+  }
+
   private void prefetchAdUnits(Executor executor, List<AdUnit> adUnits) {
     executor.execute(new SafeRunnable() {
       @Override
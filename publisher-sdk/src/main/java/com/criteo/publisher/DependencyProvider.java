@@ -32,6 +32,10 @@ import com.criteo.publisher.advancednative.CriteoImageLoader;
 import com.criteo.publisher.advancednative.ImageLoader;
 import com.criteo.publisher.advancednative.ImageLoaderHolder;
 import com.criteo.publisher.advancednative.ImpressionHelper;
+import com.criteo.publisher.advancednative.ImpressionPixelDispatcher;
+import com.criteo.publisher.advancednative.ImpressionPixelSendingQueue;
+import com.criteo.publisher.advancednative.ImpressionPixelSendingQueue.AdapterImpressionPixelSendingQueue;
+import com.criteo.publisher.advancednative.ImpressionPixelSendingQueueConfiguration;
 import com.criteo.publisher.advancednative.NativeAdMapper;
 import com.criteo.publisher.advancednative.RendererHelper;
 import com.criteo.publisher.advancednative.VisibilityChecker;
@@ -48,14 +52,21 @@ import com.criteo.publisher.bid.BidLifecycleListener;
 import com.criteo.publisher.bid.CompositeBidLifecycleListener;
 import com.criteo.publisher.bid.LoggingBidLifecycleListener;
 import com.criteo.publisher.bid.UniqueIdGenerator;
+import com.criteo.publisher.cache.BidCacheStore;
+import com.criteo.publisher.cache.BidRefreshScheduler;
+import com.criteo.publisher.cache.PrefetchPolicy;
 import com.criteo.publisher.cache.SdkCache;
 import com.criteo.publisher.concurrent.AsyncResources;
+import com.criteo.publisher.concurrent.ExecutorMetrics;
+import com.criteo.publisher.concurrent.Lane;
 import com.criteo.publisher.concurrent.NoOpAsyncResources;
 import com.criteo.publisher.concurrent.RunOnUiThreadExecutor;
+import com.criteo.publisher.concurrent.SdkScheduler;
 import com.criteo.publisher.concurrent.ThreadPoolExecutorFactory;
 import com.criteo.publisher.context.ConnectionTypeFetcher;
 import com.criteo.publisher.context.ContextProvider;
 import com.criteo.publisher.context.UserDataHolder;
+import com.criteo.publisher.csm.ByteQueueFactory;
 import com.criteo.publisher.csm.ConcurrentSendingQueue;
 import com.criteo.publisher.csm.CsmBidLifecycleListener;
 import com.criteo.publisher.csm.MetricRepository;
@@ -65,7 +76,7 @@ import com.criteo.publisher.csm.MetricSendingQueue.AdapterMetricSendingQueue;
 import com.criteo.publisher.csm.MetricSendingQueueConfiguration;
 import com.criteo.publisher.csm.MetricSendingQueueConsumer;
 import com.criteo.publisher.csm.MetricSendingQueueProducer;
-import com.criteo.publisher.csm.ObjectQueueFactory;
+import com.criteo.publisher.csm.MetricWriteBehindBuffer;
 import com.criteo.publisher.csm.SendingQueueConfiguration;
 import com.criteo.publisher.csm.SendingQueueFactory;
 import com.criteo.publisher.dependency.LazyDependency;
@@ -89,10 +100,14 @@ import com.criteo.publisher.logging.RemoteLogSendingQueueConfiguration;
 import com.criteo.publisher.logging.RemoteLogSendingQueueConsumer;
 import com.criteo.publisher.model.AdUnitMapper;
 import com.criteo.publisher.model.CdbRequestFactory;
+import com.criteo.publisher.model.CdbResponseJsonAdapter;
 import com.criteo.publisher.model.Config;
 import com.criteo.publisher.model.DeviceInfo;
 import com.criteo.publisher.model.RemoteConfigRequestFactory;
 import com.criteo.publisher.network.BidRequestSender;
+import com.criteo.publisher.network.CdbLatencyTracker;
+import com.criteo.publisher.network.HttpTransport;
+import com.criteo.publisher.network.KeepAliveHttpTransport;
 import com.criteo.publisher.network.LiveBidRequestSender;
 import com.criteo.publisher.network.PubSdkApi;
 import com.criteo.publisher.privacy.ConsentData;
@@ -221,7 +236,16 @@ public class DependencyProvider {
   public PubSdkApi providePubSdkApi() {
     return getOrCreate(PubSdkApi.class, () -> new PubSdkApi(
         provideBuildConfigWrapper(),
-        provideJsonSerializer()
+        provideJsonSerializer(),
+        provideHttpTransport(),
+        provideConfig()
+    ));
+  }
+
+  @NonNull
+  public HttpTransport provideHttpTransport() {
+    return getOrCreate(HttpTransport.class, () -> new KeepAliveHttpTransport(
+        provideBuildConfigWrapper()
     ));
   }
 
@@ -229,7 +253,7 @@ public class DependencyProvider {
   public AdvertisingInfo provideAdvertisingInfo() {
     return getOrCreate(AdvertisingInfo.class, () -> new AdvertisingInfo(
         provideContext(),
-        provideThreadPoolExecutor(),
+        provideSdkScheduler().executorFor(Lane.DEFAULT),
         provideSafeAdvertisingIdClient()
     ));
   }
@@ -256,7 +280,23 @@ public class DependencyProvider {
 
   @NonNull
   public Executor provideThreadPoolExecutor() {
-    return getOrCreate(Executor.class, new ThreadPoolExecutorFactory());
+    return getOrCreate(Executor.class, new ThreadPoolExecutorFactory(
+        provideBuildConfigWrapper(),
+        provideExecutorMetrics()
+    ));
+  }
+
+  @NonNull
+  public ExecutorMetrics provideExecutorMetrics() {
+    return getOrCreate(ExecutorMetrics.class, ExecutorMetrics::new);
+  }
+
+  @NonNull
+  public SdkScheduler provideSdkScheduler() {
+    return getOrCreate(SdkScheduler.class, () -> new SdkScheduler(
+        provideThreadPoolExecutor(),
+        provideBuildConfigWrapper()
+    ));
   }
 
   @NonNull
@@ -303,14 +343,55 @@ public class DependencyProvider {
         provideBidLifecycleListener(),
         provideMetricSendingQueueConsumer(),
         provideRemoteLogSendingQueueConsumer(),
-        provideConsentData()
+        provideConsentData(),
+        provideBidRefreshScheduler(),
+        provideBidCacheStore(),
+        providePrefetchPolicy()
+    ));
+  }
+
+  @NonNull
+  public BidRefreshScheduler provideBidRefreshScheduler() {
+    return getOrCreate(BidRefreshScheduler.class, () -> new BidRefreshScheduler(
+        provideClock(),
+        provideScheduledExecutorService(),
+        provideBuildConfigWrapper()
+    ));
+  }
+
+  @NonNull
+  public PrefetchPolicy providePrefetchPolicy() {
+    return getOrCreate(PrefetchPolicy.class, () -> new PrefetchPolicy(
+        provideSharedPreferencesFactory().getInternal(),
+        provideJsonSerializer(),
+        provideConnectionTypeFetcher(),
+        provideBuildConfigWrapper()
+    ));
+  }
+
+  @NonNull
+  public BidCacheStore provideBidCacheStore() {
+    return getOrCreate(BidCacheStore.class, () -> new BidCacheStore(
+        provideContext(),
+        provideBuildConfigWrapper(),
+        provideJsonSerializer(),
+        provideClock(),
+        provideSdkCache(),
+        provideConsentData(),
+        provideUserPrivacyUtil(),
+        provideBidRefreshScheduler(),
+        provideSdkScheduler().executorFor(Lane.DEFAULT)
     ));
   }
 
   @NonNull
   public SdkCache provideSdkCache() {
     return getOrCreate(SdkCache.class, () -> new SdkCache(
-        provideDeviceUtil()
+        provideDeviceUtil(),
+        provideBuildConfigWrapper(),
+        provideClock(),
+        provideBidLifecycleListener(),
+        provideScheduledExecutorService()
     ));
   }
 
@@ -318,7 +399,7 @@ public class DependencyProvider {
   public DeviceInfo provideDeviceInfo() {
     return getOrCreate(DeviceInfo.class, () -> new DeviceInfo(
         provideContext(),
-        provideThreadPoolExecutor()
+        provideSdkScheduler().executorFor(Lane.DEFAULT)
     ));
   }
 
@@ -339,7 +420,7 @@ public class DependencyProvider {
         providePubSdkApi(),
         provideUserPrivacyUtil(),
         provideDeviceInfo(),
-        provideThreadPoolExecutor()
+        provideSdkScheduler().executorFor(Lane.TELEMETRY)
     ));
   }
 
@@ -347,7 +428,10 @@ public class DependencyProvider {
   public AppLifecycleUtil provideAppLifecycleUtil() {
     return getOrCreate(AppLifecycleUtil.class, () -> new AppLifecycleUtil(
         provideAppEvents(),
-        provideBidManager()
+        provideBidManager(),
+        provideMetricWriteBehindBuffer(),
+        provideMetricSendingQueueConsumer(),
+        provideRemoteLogSendingQueueConsumer()
     ));
   }
 
@@ -358,20 +442,28 @@ public class DependencyProvider {
 
   @NonNull
   public CdbRequestFactory provideCdbRequestFactory() {
-    return getOrCreate(CdbRequestFactory.class, () -> new CdbRequestFactory(
-        provideContext(),
-        provideCriteoPublisherId(),
-        provideInventoryGroupId(),
-        provideDeviceInfo(),
-        provideAdvertisingInfo(),
-        provideUserPrivacyUtil(),
-        provideUniqueIdGenerator(),
-        provideBuildConfigWrapper(),
-        provideIntegrationRegistry(),
-        provideContextProvider(),
-        provideUserDataHolder(),
-        provideConfig()
-    ));
+    return getOrCreate(CdbRequestFactory.class, () -> {
+      CdbRequestFactory cdbRequestFactory = new CdbRequestFactory(
+          provideContext(),
+          provideCriteoPublisherId(),
+          provideInventoryGroupId(),
+          provideDeviceInfo(),
+          provideAdvertisingInfo(),
+          provideUserPrivacyUtil(),
+          provideUniqueIdGenerator(),
+          provideBuildConfigWrapper(),
+          provideIntegrationRegistry(),
+          provideContextProvider(),
+          provideUserDataHolder(),
+          provideConfig()
+      );
+
+      // Shared preferences only keep weak references to their listeners, the factory is kept here
+      SharedPreferencesFactory sharedPreferencesFactory = provideSharedPreferencesFactory();
+      sharedPreferencesFactory.getApplication().registerOnSharedPreferenceChangeListener(cdbRequestFactory);
+      sharedPreferencesFactory.getInternal().registerOnSharedPreferenceChangeListener(cdbRequestFactory);
+      return cdbRequestFactory;
+    });
   }
 
   @NonNull
@@ -399,7 +491,10 @@ public class DependencyProvider {
         provideRemoteConfigRequestFactory(),
         provideClock(),
         providePubSdkApi(),
-        provideThreadPoolExecutor()
+        provideSdkScheduler().executorFor(Lane.PREFETCH),
+        provideScheduledExecutorService(),
+        provideBuildConfigWrapper(),
+        provideAsyncResources()
     ));
   }
 
@@ -409,9 +504,21 @@ public class DependencyProvider {
         providePubSdkApi(),
         provideCdbRequestFactory(),
         provideClock(),
-        provideThreadPoolExecutor(),
+        provideSdkScheduler().executorFor(Lane.LIVE_BID),
         provideScheduledExecutorService(),
-        provideConfig()
+        provideConfig(),
+        provideCdbLatencyTracker(),
+        provideBuildConfigWrapper()
+    ));
+  }
+
+  @NonNull
+  public CdbLatencyTracker provideCdbLatencyTracker() {
+    return getOrCreate(CdbLatencyTracker.class, () -> new CdbLatencyTracker(
+        provideClock(),
+        provideConnectionTypeFetcher(),
+        provideConfig(),
+        provideBuildConfigWrapper()
     ));
   }
 
@@ -420,14 +527,16 @@ public class DependencyProvider {
     return getOrCreate(BidLifecycleListener.class, () -> {
       CompositeBidLifecycleListener listener = new CompositeBidLifecycleListener();
       listener.add(new LoggingBidLifecycleListener(provideRemoteLogSendingQueueConsumer()));
+      listener.add(provideCdbLatencyTracker());
 
       listener.add(new CsmBidLifecycleListener(
           provideMetricRepository(),
+          provideMetricWriteBehindBuffer(),
           provideMetricSendingQueueProducer(),
           provideClock(),
           provideConfig(),
           provideConsentData(),
-          provideThreadPoolExecutor()
+          provideSdkScheduler().executorFor(Lane.TELEMETRY)
       ));
 
       return listener;
@@ -439,8 +548,7 @@ public class DependencyProvider {
     return getOrCreate(NativeAdMapper.class, () -> new NativeAdMapper(
         provideVisibilityTracker(),
         new ImpressionHelper(
-            providePubSdkApi(),
-            provideThreadPoolExecutor(),
+            provideImpressionPixelDispatcher(),
             provideRunOnUiThreadExecutor()
         ),
         provideClickDetection(),
@@ -454,6 +562,33 @@ public class DependencyProvider {
     ));
   }
 
+  @NonNull
+  public ImpressionPixelDispatcher provideImpressionPixelDispatcher() {
+    return getOrCreate(ImpressionPixelDispatcher.class, () -> new ImpressionPixelDispatcher(
+        provideImpressionPixelSendingQueue(),
+        providePubSdkApi(),
+        provideConnectionTypeFetcher(),
+        provideBuildConfigWrapper(),
+        provideSdkScheduler().executorFor(Lane.PIXEL),
+        provideScheduledExecutorService()
+    ));
+  }
+
+  @NonNull
+  public ImpressionPixelSendingQueue provideImpressionPixelSendingQueue() {
+    return getOrCreate(ImpressionPixelSendingQueue.class, () -> new AdapterImpressionPixelSendingQueue(
+        provideSendingQueue(provideImpressionPixelSendingQueueConfiguration())
+    ));
+  }
+
+  @NonNull
+  public ImpressionPixelSendingQueueConfiguration provideImpressionPixelSendingQueueConfiguration() {
+    return getOrCreate(
+        ImpressionPixelSendingQueueConfiguration.class,
+        () -> new ImpressionPixelSendingQueueConfiguration(provideBuildConfigWrapper())
+    );
+  }
+
   @NonNull
   public VisibilityTracker provideVisibilityTracker() {
     return getOrCreate(VisibilityTracker.class, () -> new VisibilityTracker(
@@ -484,7 +619,9 @@ public class DependencyProvider {
 
   @NonNull
   public Picasso providePicasso() {
-    return getOrCreate(Picasso.class, () -> new Picasso.Builder(provideContext()).build());
+    return getOrCreate(Picasso.class, () -> new Picasso.Builder(provideContext())
+        .executor(provideSdkScheduler().executorFor(Lane.CREATIVE))
+        .build());
   }
 
   @NonNull
@@ -587,7 +724,21 @@ public class DependencyProvider {
         providePubSdkApi(),
         provideBuildConfigWrapper(),
         provideConfig(),
-        provideThreadPoolExecutor()
+        provideSdkScheduler().executorFor(Lane.TELEMETRY),
+        provideScheduledExecutorService(),
+        provideConnectionTypeFetcher(),
+        provideJsonSerializer()
+    ));
+  }
+
+  @NonNull
+  public MetricWriteBehindBuffer provideMetricWriteBehindBuffer() {
+    return getOrCreate(MetricWriteBehindBuffer.class, () -> new MetricWriteBehindBuffer(
+        provideMetricRepository(),
+        provideMetricSendingQueueProducer(),
+        provideSdkScheduler().executorFor(Lane.TELEMETRY),
+        provideScheduledExecutorService(),
+        provideBuildConfigWrapper()
     ));
   }
 
@@ -608,11 +759,8 @@ public class DependencyProvider {
 
   private <T> ConcurrentSendingQueue<T> provideSendingQueue(SendingQueueConfiguration<T> configuration) {
     return new SendingQueueFactory<>(
-        new ObjectQueueFactory<>(
-            provideContext(),
-            provideJsonSerializer(),
-            configuration
-        ),
+        new ByteQueueFactory(provideContext(), configuration),
+        provideJsonSerializer(),
         configuration
     ).create();
   }
@@ -657,6 +805,7 @@ public class DependencyProvider {
         //  investigate if we can remove this adapters and always parse value from Boolean
         .add(Boolean.class, new BooleanJsonAdapter().nullSafe())
         .add(boolean.class, new BooleanJsonAdapter().nullSafe())
+        .add(CdbResponseJsonAdapter.FACTORY)
         .build());
   }
 
@@ -746,7 +895,7 @@ public class DependencyProvider {
         provideRemoteLogRecordsFactory(),
         provideRemoteLogSendingQueue(),
         provideConfig(),
-        provideThreadPoolExecutor(),
+        provideSdkScheduler().executorFor(Lane.TELEMETRY),
         provideConsentData()
     ));
   }
@@ -758,7 +907,8 @@ public class DependencyProvider {
         providePubSdkApi(),
         provideBuildConfigWrapper(),
         provideAdvertisingInfo(),
-        provideThreadPoolExecutor()
+        provideSdkScheduler().executorFor(Lane.TELEMETRY),
+        provideScheduledExecutorService()
     ));
   }
 
@@ -28,7 +28,7 @@ import com.criteo.publisher.model.AdUnit;
 import com.criteo.publisher.model.Config;
 import com.criteo.publisher.model.DeviceInfo;
 import com.criteo.publisher.tasks.InterstitialListenerNotifier;
-import java.util.concurrent.Future;
+import com.criteo.publisher.util.CompletableFuture;
 
 public class DummyCriteo extends Criteo {
 
@@ -107,7 +107,7 @@ public class DummyCriteo extends Criteo {
 
     @NonNull
     @Override
-    public Future<String> getUserAgent() {
+    public CompletableFuture<String> getUserAgent() {
       return completedFuture("");
     }
 
@@ -99,19 +99,22 @@ public class LiveCdbCallListener extends CdbCallListener {
     }
     if (isListenerTriggered.compareAndSet(false, true)) {
       if (cdbResponse.getSlots().size() == 1) {
-        serveBidResponseIfPossible(cdbResponse.getSlots().get(0));
+        serveBidResponseIfPossible(cdbRequest, cdbResponse.getSlots().get(0));
       } else {
         bidListener.onNoBid();
       }
       bidListener = null;
     } else {
-      bidManager.setCacheAdUnits(cdbResponse.getSlots());
+      bidManager.setCacheAdUnits(cdbRequest, cdbResponse.getSlots());
     }
   }
 
-  private void serveBidResponseIfPossible(@NonNull CdbResponseSlot cdbResponseSlot) {
+  private void serveBidResponseIfPossible(
+      @NonNull CdbRequest cdbRequest,
+      @NonNull CdbResponseSlot cdbResponseSlot
+  ) {
     if (bidManager.isBidCurrentlySilent(cdbResponseSlot)) {
-      bidManager.setCacheAdUnits(singletonList(cdbResponseSlot));
+      bidManager.setCacheAdUnits(cdbRequest, singletonList(cdbResponseSlot));
       bidListener.onNoBid();
     } else if (cdbResponseSlot.isValid()) {
       bidListener.onBidResponse(cdbResponseSlot);
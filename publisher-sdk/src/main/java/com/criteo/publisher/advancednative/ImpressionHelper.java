@@ -19,44 +19,34 @@ package com.criteo.publisher.advancednative;
 import androidx.annotation.NonNull;
 import com.criteo.publisher.SafeRunnable;
 import com.criteo.publisher.concurrent.RunOnUiThreadExecutor;
-import com.criteo.publisher.network.PubSdkApi;
-import java.io.IOException;
-import java.io.InputStream;
 import java.net.URL;
-import java.util.concurrent.Executor;
 
 public class ImpressionHelper {
 
   @NonNull
-  private final PubSdkApi api;
-
-  @NonNull
-  private final Executor executor;
+  private final ImpressionPixelDispatcher pixelDispatcher;
 
   @NonNull
   private final RunOnUiThreadExecutor runOnUiThreadExecutor;
 
   public ImpressionHelper(
-      @NonNull PubSdkApi api,
-      @NonNull Executor executor,
+      @NonNull ImpressionPixelDispatcher pixelDispatcher,
       @NonNull RunOnUiThreadExecutor runOnUiThreadExecutor) {
-    this.api = api;
-    this.executor = executor;
+    this.pixelDispatcher = pixelDispatcher;
     this.runOnUiThreadExecutor = runOnUiThreadExecutor;
   }
 
   /**
    * Fire and forget the given pixels
    * <p>
-   * Each pixel are fired in asynchronously independently. This means that if one fail, it fails
+   * Pixels are persisted and sent asynchronously by the {@link ImpressionPixelDispatcher}, which
+   * retries them if they fail. Each pixel is independent. This means that if one fail, it fails
    * silently and other continues.
    *
    * @param pixels list of pixels to fire
    */
   void firePixels(@NonNull Iterable<URL> pixels) {
-    for (URL impressionPixel : pixels) {
-      executor.execute(new PixelTask(impressionPixel, api));
-    }
+    pixelDispatcher.enqueue(pixels);
   }
 
   /**
@@ -74,27 +64,4 @@ public class ImpressionHelper {
       }
     });
   }
-
-  private static class PixelTask extends SafeRunnable {
-
-    @NonNull
-    private final URL impressionPixel;
-
-    @NonNull
-    private final PubSdkApi api;
-
-    private PixelTask(
-        @NonNull URL impressionPixel,
-        @NonNull PubSdkApi api
-    ) {
-      this.impressionPixel = impressionPixel;
-      this.api = api;
-    }
-
-    public void runSafely() throws IOException {
-      try (InputStream ignored = api.executeRawGet(impressionPixel)) {
-        // ignore response
-      }
-    }
-  }
 }
@@ -0,0 +1,214 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.advancednative
+
+import com.criteo.publisher.SafeRunnable
+import com.criteo.publisher.annotation.OpenForTesting
+import com.criteo.publisher.context.ConnectionTypeFetcher
+import com.criteo.publisher.csm.ConcurrentSendingQueue
+import com.criteo.publisher.logging.LoggerFactory
+import com.criteo.publisher.network.HttpResponseException
+import com.criteo.publisher.network.PubSdkApi
+import com.criteo.publisher.util.BuildConfigWrapper
+import java.io.IOException
+import java.net.MalformedURLException
+import java.net.URL
+import java.util.concurrent.Executor
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Send impression pixels reliably, on threads dedicated to them.
+ *
+ * Pixels are first persisted in a sending queue, so they survive the death of the process, and are
+ * then sent by batch. Pixels of a batch are sent concurrently, and as they mostly target the same
+ * hosts, they reuse the keep-alive connections of each other.
+ *
+ * Only one dispatch runs at a time. While there is no network, the dispatch is deferred. When a
+ * pixel fails to be sent, it is put back in the queue, and the next dispatch is delayed with an
+ * exponential backoff. A pixel is dropped after too many attempts, or if it is rejected by its host.
+ */
+@OpenForTesting
+internal class ImpressionPixelDispatcher(
+    private val sendingQueue: ConcurrentSendingQueue<ImpressionPixel>,
+    private val api: PubSdkApi,
+    private val connectionTypeFetcher: ConnectionTypeFetcher,
+    private val buildConfigWrapper: BuildConfigWrapper,
+    private val executor: Executor,
+    private val scheduledExecutorService: ScheduledExecutorService
+) {
+
+  private val logger = LoggerFactory.getLogger(ImpressionPixelDispatcher::class.java)
+
+  /**
+   * Indicate if a dispatch is running or scheduled.
+   */
+  private val isDispatching = AtomicBoolean(false)
+
+  /**
+   * Indicate if pixels may have been enqueued since the running dispatch looked at the queue.
+   */
+  private val isDispatchRequested = AtomicBoolean(false)
+
+  private val consecutiveFailures = AtomicInteger(0)
+
+  /**
+   * Persist the given pixels and send them as soon as possible.
+   */
+  fun enqueue(pixels: Iterable<URL>) {
+    executor.execute(object : SafeRunnable() {
+      override fun runSafely() {
+        pixels.forEach { sendingQueue.offer(ImpressionPixel(it.toString())) }
+        dispatchPending()
+      }
+    })
+  }
+
+  /**
+   * Send the pixels waiting in the queue, such as the ones left by a previous session.
+   */
+  fun dispatchPending() {
+    isDispatchRequested.set(true)
+    if (isDispatching.compareAndSet(false, true)) {
+      executor.execute(DispatchTask())
+    }
+  }
+
+  private inner class DispatchTask : SafeRunnable() {
+    override fun runSafely() {
+      var isStillDispatching = false
+      try {
+        isStillDispatching = dispatchNextBatch()
+      } finally {
+        if (!isStillDispatching) {
+          onDispatchFinished()
+        }
+      }
+    }
+  }
+
+  /**
+   * @return `true` if the dispatch goes on asynchronously, `false` if it is over
+   */
+  private fun dispatchNextBatch(): Boolean {
+    isDispatchRequested.set(false)
+
+    if (!connectionTypeFetcher.isNetworkAvailable()) {
+      // Pixels would fail anyway: do not count this as an attempt
+      scheduleDispatch(buildConfigWrapper.pixelRetryBaseDelayInMillis.toLong())
+      return true
+    }
+
+    val pixels = sendingQueue.poll(buildConfigWrapper.pixelBatchSize)
+    if (pixels.isEmpty()) {
+      return false
+    }
+
+    val remainingPixels = AtomicInteger(pixels.size)
+    val hasFailure = AtomicBoolean(false)
+
+    pixels.forEach { pixel ->
+      executor.execute(object : SafeRunnable() {
+        override fun runSafely() {
+          try {
+            if (!send(pixel)) {
+              hasFailure.set(true)
+            }
+          } finally {
+            if (remainingPixels.decrementAndGet() == 0) {
+              onBatchSent(hasFailure.get())
+            }
+          }
+        }
+      })
+    }
+
+    return true
+  }
+
+  /**
+   * @return `false` if the pixel should be sent again, `true` if it is done with it
+   */
+  private fun send(pixel: ImpressionPixel): Boolean {
+    return try {
+      api.executeRawGet(URL(pixel.url))?.close()
+      true
+    } catch (e: MalformedURLException) {
+      logger.debug("Invalid pixel dropped: ${pixel.url}", e)
+      true
+    } catch (e: HttpResponseException) {
+      if (e.status in CLIENT_ERROR_STATUSES) {
+        logger.debug("Pixel rejected by its host, it is dropped: ${pixel.url}", e)
+        true
+      } else {
+        retryLater(pixel, e)
+      }
+    } catch (e: IOException) {
+      retryLater(pixel, e)
+    }
+  }
+
+  private fun retryLater(pixel: ImpressionPixel, cause: IOException): Boolean {
+    val attempts = pixel.attempts + 1
+    if (attempts >= buildConfigWrapper.pixelMaxAttempts) {
+      logger.debug("Pixel dropped after $attempts attempts: ${pixel.url}", cause)
+    } else {
+      sendingQueue.offer(pixel.copy(attempts = attempts))
+    }
+    return false
+  }
+
+  private fun onBatchSent(hasFailure: Boolean) {
+    if (hasFailure) {
+      scheduleDispatch(computeBackoffDelay(consecutiveFailures.incrementAndGet()))
+    } else {
+      consecutiveFailures.set(0)
+      executor.execute(DispatchTask())
+    }
+  }
+
+  private fun onDispatchFinished() {
+    isDispatching.set(false)
+    if (isDispatchRequested.get()) {
+      dispatchPending()
+    }
+  }
+
+  private fun scheduleDispatch(delayInMillis: Long) {
+    scheduledExecutorService.schedule(Runnable {
+      executor.execute(DispatchTask())
+    }, delayInMillis, TimeUnit.MILLISECONDS)
+  }
+
+  private fun computeBackoffDelay(consecutiveFailures: Int): Long {
+    val baseDelay = buildConfigWrapper.pixelRetryBaseDelayInMillis.toLong()
+    val maxDelay = buildConfigWrapper.pixelRetryMaxDelayInMillis.toLong()
+    val exponent = (consecutiveFailures - 1).coerceIn(0, MAX_BACKOFF_EXPONENT)
+    return (baseDelay shl exponent).coerceAtMost(maxDelay)
+  }
+
+  private companion object {
+    val CLIENT_ERROR_STATUSES = 400..499
+
+    /**
+     * Bound the shift of the backoff so it never overflows
+     */
+    const val MAX_BACKOFF_EXPONENT = 20
+  }
+}
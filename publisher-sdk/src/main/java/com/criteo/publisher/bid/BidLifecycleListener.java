@@ -80,6 +80,17 @@ public interface BidLifecycleListener {
    */
   void onBidConsumed(@NonNull CacheAdUnit adUnit, @NonNull CdbResponseSlot consumedBid);
 
+  /**
+   * Callback invoked when a bid is evicted from the bid cache without being consumed.
+   * <p>
+   * Eviction happens when the bid cache needs to free some room, or when an expired bid is swept
+   * out. The bid never reached the publisher.
+   *
+   * @param adUnit ad unit representing the bid
+   * @param evictedBid bid that was evicted
+   */
+  void onBidEvicted(@NonNull CacheAdUnit adUnit, @NonNull CdbResponseSlot evictedBid);
+
   /**
    * Callback invoked when a bid is cached.
    *
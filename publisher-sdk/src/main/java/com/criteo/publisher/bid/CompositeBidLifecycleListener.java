@@ -68,6 +68,13 @@ public class CompositeBidLifecycleListener implements BidLifecycleListener {
     }
   }
 
+  @Override
+  public void onBidEvicted(@NonNull CacheAdUnit adUnit, @NonNull CdbResponseSlot evictedBid) {
+    for (BidLifecycleListener delegate : delegates) {
+      delegate.onBidEvicted(adUnit, evictedBid);
+    }
+  }
+
   @Override
   public void onBidCached(@NonNull CdbResponseSlot cachedBid) {
     for (BidLifecycleListener delegate : delegates) {
@@ -0,0 +1,31 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.cache
+
+import com.squareup.moshi.Json
+import com.squareup.moshi.JsonClass
+
+/**
+ * Persisted demand of ad units, used by [PrefetchPolicy].
+ *
+ * Rates are the smoothed number of bid requests per session, indexed by a key identifying the ad
+ * unit.
+ */
+@JsonClass(generateAdapter = true)
+data class AdUnitDemand(
+    @Json(name = "rates") val rates: Map<String, Double>
+)
@@ -0,0 +1,69 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.criteo.publisher.cache
+
+import android.util.Log
+import com.criteo.publisher.logging.LogMessage
+
+internal object BidCacheLogMessage {
+
+  @JvmStatic
+  fun onBidCacheRestored(restoredCount: Int) = LogMessage(message =
+    "$restoredCount bid(s) restored from the previous session"
+  )
+
+  @JvmStatic
+  fun onBidCacheSnapshotDroppedOnPrivacyChange() = LogMessage(message =
+    "Bids of the previous session are dropped because the privacy state changed"
+  )
+
+  @JvmStatic
+  fun onColdAdUnitsSkippedFromPrefetch(skippedCount: Int) = LogMessage(message =
+    "$skippedCount ad unit(s) not prefetched because of their low demand"
+  )
+
+  @JvmStatic
+  fun onErrorWhenWritingSnapshot(exception: Exception) = LogMessage(
+      Log.WARN,
+      "Error when writing the bid cache snapshot",
+      exception,
+      "onErrorWhenWritingSnapshot"
+  )
+
+  @JvmStatic
+  fun onErrorWhenReadingSnapshot(exception: Exception) = LogMessage(
+      Log.WARN,
+      "Error when reading the bid cache snapshot",
+      exception,
+      "onErrorWhenReadingSnapshot"
+  )
+
+  @JvmStatic
+  fun onErrorWhenReadingAdUnitDemand(exception: Exception) = LogMessage(
+      Log.WARN,
+      "Error when reading the ad unit demand",
+      exception,
+      "onErrorWhenReadingAdUnitDemand"
+  )
+
+  @JvmStatic
+  fun onErrorWhenWritingAdUnitDemand(exception: Exception) = LogMessage(
+      Log.WARN,
+      "Error when writing the ad unit demand",
+      exception,
+      "onErrorWhenWritingAdUnitDemand"
+  )
+}
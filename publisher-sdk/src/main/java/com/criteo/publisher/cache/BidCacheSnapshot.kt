@@ -0,0 +1,43 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.criteo.publisher.cache
+
+import com.criteo.publisher.model.CdbResponseSlot
+import com.criteo.publisher.util.AdUnitType
+import com.squareup.moshi.Json
+import com.squareup.moshi.JsonClass
+
+/**
+ * Persisted content of the bid cache.
+ *
+ * The privacy state at the time of the snapshot is kept alongside the bids, so that they are only
+ * reused if the user did not change their consent meanwhile.
+ */
+@JsonClass(generateAdapter = true)
+data class BidCacheSnapshot(
+    @Json(name = "privacyState") val privacyState: String,
+    @Json(name = "adUnits") val adUnits: List<AdUnitBids>
+) {
+
+  @JsonClass(generateAdapter = true)
+  data class AdUnitBids(
+      @Json(name = "placementId") val placementId: String,
+      @Json(name = "width") val width: Int,
+      @Json(name = "height") val height: Int,
+      @Json(name = "adUnitType") val adUnitType: AdUnitType,
+      @Json(name = "slots") val slots: List<CdbResponseSlot>
+  )
+}
@@ -0,0 +1,342 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.criteo.publisher.cache;
+
+import android.content.Context;
+import android.util.AtomicFile;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+import com.criteo.publisher.Clock;
+import com.criteo.publisher.SafeRunnable;
+import com.criteo.publisher.cache.BidCacheSnapshot.AdUnitBids;
+import com.criteo.publisher.context.ContextData;
+import com.criteo.publisher.logging.Logger;
+import com.criteo.publisher.logging.LoggerFactory;
+import com.criteo.publisher.model.AdSize;
+import com.criteo.publisher.model.CacheAdUnit;
+import com.criteo.publisher.model.CdbResponseSlot;
+import com.criteo.publisher.privacy.ConsentData;
+import com.criteo.publisher.privacy.UserPrivacyUtil;
+import com.criteo.publisher.util.BuildConfigWrapper;
+import com.criteo.publisher.util.JsonSerializer;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Persist the bids of the {@link SdkCache} across process restarts.
+ * <p>
+ * When the application goes in background, unexpired bids are written in a file of the application
+ * storage. They are read back in background at the next SDK initialization, so the first ad
+ * requests of the new session can be served without waiting for the prefetch. Ad requests never
+ * wait for the restoration: until it is over, they are served as if the cache was empty.
+ * <p>
+ * The snapshot is deleted once read, and when the application comes back to foreground, as bids
+ * may then be consumed: a bid can never be restored twice, nor after being served. Restored bids
+ * are dropped if they expired meanwhile, or if the privacy state of the user changed since they
+ * were fetched. Others are scheduled for a background refresh, like any cached bid.
+ */
+public class BidCacheStore {
+
+  private static final String PRIVACY_STATE_SEPARATOR = "|";
+
+  @NonNull
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+
+  @NonNull
+  private final Context context;
+
+  @NonNull
+  private final BuildConfigWrapper buildConfigWrapper;
+
+  @NonNull
+  private final JsonSerializer jsonSerializer;
+
+  @NonNull
+  private final Clock clock;
+
+  @NonNull
+  private final SdkCache cache;
+
+  @NonNull
+  private final ConsentData consentData;
+
+  @NonNull
+  private final UserPrivacyUtil userPrivacyUtil;
+
+  @NonNull
+  private final BidRefreshScheduler bidRefreshScheduler;
+
+  @NonNull
+  private final Executor executor;
+
+  @NonNull
+  private final Object fileLock = new Object();
+
+  @GuardedBy("fileLock")
+  private boolean isRestored = false;
+
+  /**
+   * Incremented each time the snapshot is requested to be written or deleted, so a write that is
+   * late compared to a later deletion is skipped.
+   */
+  @NonNull
+  private final AtomicInteger snapshotVersion = new AtomicInteger();
+
+  public BidCacheStore(
+      @NonNull Context context,
+      @NonNull BuildConfigWrapper buildConfigWrapper,
+      @NonNull JsonSerializer jsonSerializer,
+      @NonNull Clock clock,
+      @NonNull SdkCache cache,
+      @NonNull ConsentData consentData,
+      @NonNull UserPrivacyUtil userPrivacyUtil,
+      @NonNull BidRefreshScheduler bidRefreshScheduler,
+      @NonNull Executor executor
+  ) {
+    this.context = context;
+    this.buildConfigWrapper = buildConfigWrapper;
+    this.jsonSerializer = jsonSerializer;
+    this.clock = clock;
+    this.cache = cache;
+    this.consentData = consentData;
+    this.userPrivacyUtil = userPrivacyUtil;
+    this.bidRefreshScheduler = bidRefreshScheduler;
+    this.executor = executor;
+  }
+
+  /**
+   * Asynchronously write a snapshot of the unexpired bids currently in cache.
+   * <p>
+   * The snapshot of the previous session is restored first if it is not already, so it is never
+   * overwritten before being read.
+   */
+  public void saveAsync() {
+    int version = snapshotVersion.incrementAndGet();
+    executor.execute(new SafeRunnable() {
+      @Override
+      public void runSafely() {
+        restore();
+        save(version);
+      }
+    });
+  }
+
+  /**
+   * Asynchronously delete the snapshot written when the application went in background.
+   * <p>
+   * This should be called when the application comes back to foreground: cached bids may then be
+   * consumed, so the snapshot would restore bids that were already served.
+   */
+  public void discardAsync() {
+    snapshotVersion.incrementAndGet();
+    executor.execute(new SafeRunnable() {
+      @Override
+      public void runSafely() {
+        restore();
+        synchronized (fileLock) {
+          getSnapshotFile().delete();
+        }
+      }
+    });
+  }
+
+  @VisibleForTesting
+  void save() {
+    save(snapshotVersion.get());
+  }
+
+  private void save(int version) {
+    List<AdUnitBids> adUnits = new ArrayList<>();
+    for (Map.Entry<CacheAdUnit, List<CdbResponseSlot>> entry : cache.getSnapshot().entrySet()) {
+      List<CdbResponseSlot> slots = new ArrayList<>();
+      for (CdbResponseSlot slot : entry.getValue()) {
+        if (slot.isValid() && !slot.isExpired(clock)) {
+          slots.add(slot);
+        }
+      }
+
+      if (!slots.isEmpty()) {
+        CacheAdUnit cacheAdUnit = entry.getKey();
+        adUnits.add(new AdUnitBids(
+            cacheAdUnit.getPlacementId(),
+            cacheAdUnit.getSize().getWidth(),
+            cacheAdUnit.getSize().getHeight(),
+            cacheAdUnit.getAdUnitType(),
+            slots
+        ));
+      }
+    }
+
+    synchronized (fileLock) {
+      if (version != snapshotVersion.get()) {
+        // The snapshot was discarded or written again meanwhile
+        return;
+      }
+
+      AtomicFile file = getSnapshotFile();
+      if (adUnits.isEmpty()) {
+        file.delete();
+        return;
+      }
+
+      try {
+        writeInFile(file, new BidCacheSnapshot(getPrivacyState(), adUnits));
+      } catch (IOException e) {
+        logger.log(BidCacheLogMessage.onErrorWhenWritingSnapshot(e));
+      }
+    }
+  }
+
+  /**
+   * Asynchronously read back the snapshot of the previous session, if any, and put its still valid
+   * bids in the cache.
+   * <p>
+   * Ad units that are already cached are left untouched.
+   */
+  public void restoreAsync() {
+    executor.execute(new SafeRunnable() {
+      @Override
+      public void runSafely() {
+        restore();
+      }
+    });
+  }
+
+  /**
+   * Restore the snapshot of the previous session, only the first time this is called.
+   */
+  @VisibleForTesting
+  void restore() {
+    synchronized (fileLock) {
+      if (isRestored) {
+        return;
+      }
+
+      try {
+        restoreSnapshot();
+      } finally {
+        isRestored = true;
+      }
+    }
+  }
+
+  @GuardedBy("fileLock")
+  private void restoreSnapshot() {
+    BidCacheSnapshot snapshot;
+    AtomicFile file = getSnapshotFile();
+    if (!file.getBaseFile().exists()) {
+      return;
+    }
+
+    try {
+      snapshot = readFromFile(file);
+    } catch (IOException e) {
+      logger.log(BidCacheLogMessage.onErrorWhenReadingSnapshot(e));
+      return;
+    } finally {
+      file.delete();
+    }
+
+    if (!snapshot.getPrivacyState().equals(getPrivacyState())) {
+      logger.log(BidCacheLogMessage.onBidCacheSnapshotDroppedOnPrivacyChange());
+      return;
+    }
+
+    int restoredCount = 0;
+    for (AdUnitBids adUnitBids : snapshot.getAdUnits()) {
+      List<CdbResponseSlot> slots = new ArrayList<>();
+      for (CdbResponseSlot slot : adUnitBids.getSlots()) {
+        if (slot.isValid() && !slot.isExpired(clock)) {
+          slots.add(slot);
+        }
+      }
+
+      CacheAdUnit cacheAdUnit = new CacheAdUnit(
+          new AdSize(adUnitBids.getWidth(), adUnitBids.getHeight()),
+          adUnitBids.getPlacementId(),
+          adUnitBids.getAdUnitType()
+      );
+
+      if (!slots.isEmpty() && cache.restore(cacheAdUnit, slots)) {
+        restoredCount += slots.size();
+        for (CdbResponseSlot slot : slots) {
+          // The context of the original requests is not saved, so the refresh has none
+          bidRefreshScheduler.schedule(
+              cacheAdUnit,
+              slot.getExpiryTimeInMillis(),
+              new ContextData()
+          );
+        }
+      }
+    }
+
+    logger.log(BidCacheLogMessage.onBidCacheRestored(restoredCount));
+  }
+
+  /**
+   * Summary of the privacy state of the user. Bids fetched under another state should not be
+   * reused.
+   */
+  @NonNull
+  private String getPrivacyState() {
+    String gdprConsentData = userPrivacyUtil.getGdprConsentData();
+    return consentData.isConsentGiven()
+        + PRIVACY_STATE_SEPARATOR + (gdprConsentData == null ? "" : gdprConsentData)
+        + PRIVACY_STATE_SEPARATOR + userPrivacyUtil.getIabUsPrivacyString()
+        + PRIVACY_STATE_SEPARATOR + userPrivacyUtil.getUsPrivacyOptout();
+  }
+
+  @NonNull
+  private AtomicFile getSnapshotFile() {
+    File file = new File(context.getFilesDir(), buildConfigWrapper.getBidCacheSnapshotFilename());
+    return new AtomicFile(file);
+  }
+
+  @NonNull
+  private BidCacheSnapshot readFromFile(@NonNull AtomicFile file) throws IOException {
+    try (InputStream is = file.openRead();
+        BufferedInputStream bis = new BufferedInputStream(is)) {
+      return jsonSerializer.read(BidCacheSnapshot.class, bis);
+    }
+  }
+
+  private void writeInFile(
+      @NonNull AtomicFile file,
+      @NonNull BidCacheSnapshot snapshot
+  ) throws IOException {
+    try (FileOutputStream fos = file.startWrite();
+        BufferedOutputStream bos = new BufferedOutputStream(fos)) {
+      try {
+        jsonSerializer.write(snapshot, bos);
+        bos.flush();
+        file.finishWrite(fos);
+      } catch (IOException e) {
+        file.failWrite(fos);
+        throw e;
+      }
+    }
+  }
+}
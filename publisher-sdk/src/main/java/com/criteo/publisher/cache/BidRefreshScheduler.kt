@@ -0,0 +1,212 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.cache
+
+import androidx.annotation.GuardedBy
+import com.criteo.publisher.Clock
+import com.criteo.publisher.SafeRunnable
+import com.criteo.publisher.annotation.OpenForTesting
+import com.criteo.publisher.context.ContextData
+import com.criteo.publisher.model.CacheAdUnit
+import com.criteo.publisher.util.BuildConfigWrapper
+import java.util.TreeMap
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+
+/**
+ * Schedule the refresh of cached bids shortly before they expire.
+ *
+ * Ad units are indexed by their refresh instant, that is the expiry instant of their cached bid
+ * minus a lead time (see [BuildConfigWrapper.bidRefreshLeadTimeInMillis]). A single timer is armed
+ * on the earliest refresh instant. When it fires, all the ad units due within the grouping window
+ * (see [BuildConfigWrapper.bidRefreshWindowInMillis]) are given at once to the [Listener], so they
+ * can be refreshed with a single bid request. Each ad unit keeps the [ContextData] of the request
+ * that fetched its bid, so the refresh is requested in the same context.
+ *
+ * While the application is in background, the scheduler is paused: ad units are still indexed, but
+ * nothing fires until it is resumed.
+ */
+@OpenForTesting
+class BidRefreshScheduler(
+    private val clock: Clock,
+    private val scheduledExecutorService: ScheduledExecutorService,
+    private val buildConfigWrapper: BuildConfigWrapper
+) {
+
+  interface Listener {
+    /**
+     * Invoked, on the scheduler thread, with all the ad units whose refresh is due and that were
+     * scheduled with the given context. It is invoked once per context.
+     *
+     * Ad units are removed from the scheduler before this call, so they should be scheduled again
+     * if they are not refreshed.
+     */
+    fun onRefreshDue(cacheAdUnits: List<CacheAdUnit>, contextData: ContextData)
+  }
+
+  private val lock = Any()
+
+  @GuardedBy("lock")
+  private val refreshTimeByAdUnit = mutableMapOf<CacheAdUnit, Long>()
+
+  @GuardedBy("lock")
+  private val contextDataByAdUnit = mutableMapOf<CacheAdUnit, ContextData>()
+
+  @GuardedBy("lock")
+  private val adUnitsByRefreshTime = TreeMap<Long, MutableSet<CacheAdUnit>>()
+
+  @GuardedBy("lock")
+  private var nextRefresh: ScheduledFuture<*>? = null
+
+  @GuardedBy("lock")
+  private var nextRefreshTime = Long.MAX_VALUE
+
+  @GuardedBy("lock")
+  private var isPaused = false
+
+  @Volatile
+  private var listener: Listener? = null
+
+  fun setListener(listener: Listener) {
+    this.listener = listener
+  }
+
+  /**
+   * Schedule the refresh of the given ad unit before the given expiry instant, in the given
+   * context.
+   *
+   * If the ad unit is already scheduled, only the earliest refresh, and its context, is kept.
+   * Nothing is scheduled if refresh is disabled, or if the bid expires too soon to be refreshed
+   * ahead.
+   */
+  fun schedule(cacheAdUnit: CacheAdUnit, expiryTimeInMillis: Long, contextData: ContextData) {
+    val leadTimeInMillis = buildConfigWrapper.bidRefreshLeadTimeInMillis
+    if (leadTimeInMillis <= 0) {
+      return
+    }
+
+    val refreshTime = expiryTimeInMillis - leadTimeInMillis
+    if (refreshTime <= clock.currentTimeInMillis) {
+      return
+    }
+
+    synchronized(lock) {
+      val currentRefreshTime = refreshTimeByAdUnit[cacheAdUnit]
+      if (currentRefreshTime != null) {
+        if (currentRefreshTime <= refreshTime) {
+          return
+        }
+        unindex(cacheAdUnit, currentRefreshTime)
+      }
+
+      refreshTimeByAdUnit[cacheAdUnit] = refreshTime
+      contextDataByAdUnit[cacheAdUnit] = contextData
+      adUnitsByRefreshTime.getOrPut(refreshTime) { mutableSetOf() } += cacheAdUnit
+      armTimer()
+    }
+  }
+
+  /**
+   * Indicate if a bid expiring at the given instant is already due for a refresh.
+   */
+  fun isRefreshDue(expiryTimeInMillis: Long): Boolean {
+    val refreshTime = expiryTimeInMillis - buildConfigWrapper.bidRefreshLeadTimeInMillis
+    return refreshTime <= clock.currentTimeInMillis + buildConfigWrapper.bidRefreshWindowInMillis
+  }
+
+  /**
+   * Stop firing refreshes until [resume] is called. Scheduled ad units are kept.
+   */
+  fun pause() {
+    synchronized(lock) {
+      isPaused = true
+      disarmTimer()
+    }
+  }
+
+  /**
+   * Start again firing refreshes. Ad units that became due while paused are refreshed right away.
+   */
+  fun resume() {
+    synchronized(lock) {
+      isPaused = false
+      armTimer()
+    }
+  }
+
+  @GuardedBy("lock")
+  private fun armTimer() {
+    if (isPaused) {
+      return
+    }
+
+    val earliestRefreshTime = adUnitsByRefreshTime.firstEntry()?.key ?: return
+    if (nextRefresh != null && nextRefreshTime <= earliestRefreshTime) {
+      return
+    }
+
+    disarmTimer()
+    val delay = maxOf(0L, earliestRefreshTime - clock.currentTimeInMillis)
+    nextRefreshTime = earliestRefreshTime
+    nextRefresh = scheduledExecutorService.schedule(object : SafeRunnable() {
+      override fun runSafely() = onTimerFired()
+    }, delay, TimeUnit.MILLISECONDS)
+  }
+
+  @GuardedBy("lock")
+  private fun disarmTimer() {
+    nextRefresh?.cancel(false)
+    nextRefresh = null
+    nextRefreshTime = Long.MAX_VALUE
+  }
+
+  private fun onTimerFired() {
+    val dueAdUnitsByContext = synchronized(lock) {
+      nextRefresh = null
+      nextRefreshTime = Long.MAX_VALUE
+      if (isPaused) {
+        return
+      }
+
+      val windowEnd = clock.currentTimeInMillis + buildConfigWrapper.bidRefreshWindowInMillis
+      val dueEntries = adUnitsByRefreshTime.headMap(windowEnd, true)
+      val dueAdUnits = dueEntries.values.flatten()
+      dueEntries.clear()
+      dueAdUnits.forEach { refreshTimeByAdUnit.remove(it) }
+      val dueAdUnitsByContext = dueAdUnits.groupBy {
+        contextDataByAdUnit.remove(it) ?: ContextData()
+      }
+
+      armTimer()
+      dueAdUnitsByContext
+    }
+
+    dueAdUnitsByContext.forEach { (contextData, cacheAdUnits) ->
+      listener?.onRefreshDue(cacheAdUnits, contextData)
+    }
+  }
+
+  @GuardedBy("lock")
+  private fun unindex(cacheAdUnit: CacheAdUnit, refreshTime: Long) {
+    val adUnits = adUnitsByRefreshTime[refreshTime] ?: return
+    adUnits -= cacheAdUnit
+    if (adUnits.isEmpty()) {
+      adUnitsByRefreshTime.remove(refreshTime)
+    }
+  }
+}
@@ -0,0 +1,201 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.cache
+
+import android.content.SharedPreferences
+import androidx.annotation.GuardedBy
+import com.criteo.publisher.annotation.OpenForTesting
+import com.criteo.publisher.context.ConnectionTypeFetcher
+import com.criteo.publisher.context.ConnectionTypeFetcher.ConnectionType
+import com.criteo.publisher.logging.LoggerFactory
+import com.criteo.publisher.model.CacheAdUnit
+import com.criteo.publisher.util.BuildConfigWrapper
+import com.criteo.publisher.util.JsonSerializer
+import com.criteo.publisher.util.SafeSharedPreferences
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+
+/**
+ * Decide which ad units are prefetched at SDK initialization, in which order and in which chunks.
+ *
+ * The policy learns the demand of each ad unit: bid requests are counted during a session, and
+ * when the session ends, the counts are folded into an exponentially weighted moving average (see
+ * [BuildConfigWrapper.prefetchDemandSmoothingPercent]) persisted in the local storage.
+ *
+ * At prefetch, hot ad units are requested first. Known ad units whose demand dropped below the cold
+ * threshold (see [BuildConfigWrapper.prefetchColdDemandThresholdPercent]) are skipped: they are
+ * still fetched on demand. Ad units without history are always prefetched, after the hot ones.
+ *
+ * Ad units are then grouped into chunks whose size depends on the current network: slow cellular
+ * networks get smaller requests that are less likely to time out.
+ */
+@OpenForTesting
+internal class PrefetchPolicy(
+    private val sharedPreferences: SharedPreferences,
+    private val jsonSerializer: JsonSerializer,
+    private val connectionTypeFetcher: ConnectionTypeFetcher,
+    private val buildConfigWrapper: BuildConfigWrapper
+) {
+
+  private companion object {
+    /**
+     * Key in local storage where the demand of ad units is persisted.
+     */
+    const val DEMAND_STORAGE_KEY = "CriteoAdUnitDemand"
+
+    /**
+     * Ad units whose demand drops below this rate are forgotten, so the storage stays bounded.
+     */
+    const val MIN_TRACKED_RATE = 0.01
+  }
+
+  private val logger = LoggerFactory.getLogger(PrefetchPolicy::class.java)
+
+  private val lock = Any()
+
+  @GuardedBy("lock")
+  private var rates: MutableMap<String, Double>? = null
+
+  @GuardedBy("lock")
+  private val sessionCounts = mutableMapOf<String, Int>()
+
+  /**
+   * Record a bid request on the given ad unit during the current session.
+   */
+  fun onAdUnitRequested(cacheAdUnit: CacheAdUnit) {
+    if (!isDemandTrackingEnabled()) {
+      return
+    }
+
+    val key = cacheAdUnit.toDemandKey()
+    synchronized(lock) {
+      sessionCounts[key] = (sessionCounts[key] ?: 0) + 1
+    }
+  }
+
+  /**
+   * Fold the requests of the ending session into the demand of ad units and persist it.
+   *
+   * Sessions without any bid request are ignored, so that briefly opening the application does not
+   * make all ad units look colder.
+   */
+  fun onSessionEnded() {
+    if (!isDemandTrackingEnabled()) {
+      return
+    }
+
+    val demand = synchronized(lock) {
+      if (sessionCounts.isEmpty()) {
+        return
+      }
+
+      val alpha = buildConfigWrapper.prefetchDemandSmoothingPercent / 100.0
+      val rates = getOrLoadRates()
+      val keys = rates.keys + sessionCounts.keys
+      for (key in keys) {
+        val rate = alpha * (sessionCounts[key] ?: 0) + (1 - alpha) * (rates[key] ?: 0.0)
+        if (rate < MIN_TRACKED_RATE) {
+          rates.remove(key)
+        } else {
+          rates[key] = rate
+        }
+      }
+      sessionCounts.clear()
+
+      AdUnitDemand(rates.toMap())
+    }
+
+    persist(demand)
+  }
+
+  /**
+   * Order, filter and split into chunks the given ad units to prefetch.
+   */
+  fun plan(cacheAdUnits: List<CacheAdUnit>): List<List<CacheAdUnit>> {
+    val chunkSize = getChunkSize()
+    if (!isDemandTrackingEnabled()) {
+      return cacheAdUnits.chunked(chunkSize)
+    }
+
+    val rates = synchronized(lock) { getOrLoadRates().toMap() }
+    val coldThreshold = buildConfigWrapper.prefetchColdDemandThresholdPercent / 100.0
+    val plannedAdUnits = cacheAdUnits
+        .filter { (rates[it.toDemandKey()] ?: coldThreshold) >= coldThreshold }
+        .sortedByDescending { rates[it.toDemandKey()] ?: coldThreshold }
+
+    val skippedCount = cacheAdUnits.size - plannedAdUnits.size
+    if (skippedCount > 0) {
+      logger.log(BidCacheLogMessage.onColdAdUnitsSkippedFromPrefetch(skippedCount))
+    }
+
+    return plannedAdUnits.chunked(chunkSize)
+  }
+
+  private fun getChunkSize(): Int {
+    val chunkSize = when (connectionTypeFetcher.fetchConnectionType()) {
+      ConnectionType.CELLULAR_2G,
+      ConnectionType.CELLULAR_3G,
+      ConnectionType.CELLULAR_UNKNOWN -> buildConfigWrapper.prefetchChunkSizeOnSlowNetwork
+      else -> buildConfigWrapper.prefetchChunkSizeOnFastNetwork
+    }
+    return maxOf(1, chunkSize)
+  }
+
+  private fun isDemandTrackingEnabled(): Boolean {
+    return buildConfigWrapper.prefetchDemandSmoothingPercent in 1..100
+  }
+
+  @GuardedBy("lock")
+  private fun getOrLoadRates(): MutableMap<String, Double> {
+    return rates ?: load().toMutableMap().also { rates = it }
+  }
+
+  private fun load(): Map<String, Double> {
+    val json = SafeSharedPreferences(sharedPreferences).getString(DEMAND_STORAGE_KEY, null)
+        ?: return emptyMap()
+
+    return try {
+      ByteArrayInputStream(json.toByteArray(Charsets.UTF_8)).use {
+        jsonSerializer.read(AdUnitDemand::class.java, it).rates
+      }
+    } catch (e: IOException) {
+      logger.log(BidCacheLogMessage.onErrorWhenReadingAdUnitDemand(e))
+      emptyMap()
+    }
+  }
+
+  private fun persist(demand: AdUnitDemand) {
+    val json = try {
+      ByteArrayOutputStream().use {
+        jsonSerializer.write(demand, it)
+        it.toString(Charsets.UTF_8.name())
+      }
+    } catch (e: IOException) {
+      logger.log(BidCacheLogMessage.onErrorWhenWritingAdUnitDemand(e))
+      return
+    }
+
+    sharedPreferences.edit()
+        .putString(DEMAND_STORAGE_KEY, json)
+        .apply()
+  }
+
+  private fun CacheAdUnit.toDemandKey(): String {
+    return "$adUnitType:${size.width}x${size.height}:$placementId"
+  }
+}
@@ -24,31 +24,162 @@ import static com.criteo.publisher.util.AdUnitType.CRITEO_REWARDED;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
+import com.criteo.publisher.Clock;
+import com.criteo.publisher.SafeRunnable;
+import com.criteo.publisher.bid.BidLifecycleListener;
 import com.criteo.publisher.model.AdSize;
 import com.criteo.publisher.model.CacheAdUnit;
 import com.criteo.publisher.model.CdbResponseSlot;
 import com.criteo.publisher.util.AdUnitType;
+import com.criteo.publisher.util.BuildConfigWrapper;
 import com.criteo.publisher.util.DeviceUtil;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Thread-safe cache of bids, indexed by {@link CacheAdUnit}.
+ * <p>
+ * Each ad unit holds a small queue of bids, bounded by the {@linkplain
+ * BuildConfigWrapper#getBidCacheDepth() bid cache depth} and ordered by {@linkplain
+ * CdbResponseSlot#getExpiryTimeInMillis() expiry}: the head of the queue is the bid expiring first,
+ * which is the one to serve first. A silent bid is never queued with other bids: it replaces all of
+ * them as it indicates that the ad unit should not be requested for a while.
+ * <p>
+ * Operations on different ad units never block each other. Conditional operations ({@link
+ * #add(CdbResponseSlot, CdbResponseSlot)} and {@link #remove(CacheAdUnit, CdbResponseSlot)}) are
+ * atomic per ad unit, so callers can peek a slot, check it, and then consume or replace it without
+ * any external lock.
+ * <p>
+ * The cache is bounded so its memory does not grow with the number of ad units created by the
+ * publisher:
+ * <ul>
+ *   <li>Expired bids are periodically swept out (see {@link
+ *   BuildConfigWrapper#getBidCacheSweepIntervalInMillis()})</li>
+ *   <li>When more ad units than the {@linkplain BuildConfigWrapper#getBidCacheMaxAdUnitCount()
+ *   capacity} are cached, the least recently used ones are evicted</li>
+ *   <li>When a new bid does not fit in a full queue, or replaces silent bids, the bids pushed out
+ *   are evicted</li>
+ * </ul>
+ * Bids removed this way are reported as evicted to the {@link BidLifecycleListener}.
+ */
 public class SdkCache {
 
-  private final Map<CacheAdUnit, CdbResponseSlot> slotMap;
+  private final ConcurrentMap<CacheAdUnit, BidQueue> slotMap;
   private final DeviceUtil deviceUtil;
+  private final BuildConfigWrapper buildConfigWrapper;
+  private final Clock clock;
+  private final BidLifecycleListener bidLifecycleListener;
+  private final ScheduledExecutorService scheduledExecutorService;
+
+  /**
+   * Logical clock used to order accesses to ad units, so the least recently used can be evicted.
+   */
+  private final AtomicLong accessCounter = new AtomicLong();
+
+  private final AtomicBoolean isSweeperStarted = new AtomicBoolean(false);
 
-  public SdkCache(@NonNull DeviceUtil deviceUtil) {
-    slotMap = new HashMap<>();
+  public SdkCache(
+      @NonNull DeviceUtil deviceUtil,
+      @NonNull BuildConfigWrapper buildConfigWrapper,
+      @NonNull Clock clock,
+      @NonNull BidLifecycleListener bidLifecycleListener,
+      @NonNull ScheduledExecutorService scheduledExecutorService
+  ) {
+    this.slotMap = new ConcurrentHashMap<>();
     this.deviceUtil = deviceUtil;
+    this.buildConfigWrapper = buildConfigWrapper;
+    this.clock = clock;
+    this.bidLifecycleListener = bidLifecycleListener;
+    this.scheduledExecutorService = scheduledExecutorService;
   }
 
   public void add(@NonNull CdbResponseSlot slot) {
     CacheAdUnit key = detectCacheAdUnit(slot);
-    if (key != null) {
-      slotMap.put(key, slot);
+    if (key == null) {
+      return;
+    }
+
+    BidQueue queue;
+    do {
+      queue = slotMap.get(key);
+    } while (!compareAndInsert(key, queue, slot));
+  }
+
+  /**
+   * Add the given slot in the cache only if the slot currently at the head of the queue of the same
+   * ad unit is still the expected one.
+   * <p>
+   * This is the atomic counterpart of a {@link #peekAdUnit(CacheAdUnit)} followed by a {@link
+   * #add(CdbResponseSlot)}: if the head slot was concurrently replaced or removed since it was
+   * peeked, then nothing is done and <code>false</code> is returned so caller can check the new
+   * state again.
+   * <p>
+   * If no ad unit can be detected for the given slot, then nothing is cached and this is considered
+   * as a success.
+   *
+   * @param slot new slot to cache
+   * @param expectedSlot slot that should currently be at the head, or <code>null</code> if none is
+   * expected
+   * @return <code>true</code> if the cache was updated, <code>false</code> otherwise
+   */
+  public boolean add(@NonNull CdbResponseSlot slot, @Nullable CdbResponseSlot expectedSlot) {
+    CacheAdUnit key = detectCacheAdUnit(slot);
+    if (key == null) {
+      return true;
     }
+
+    return addIfHeadIs(key, slot, expectedSlot);
   }
 
+  /**
+   * Same as {@link #add(CdbResponseSlot, CdbResponseSlot)} but the slot is cached under the given
+   * ad unit instead of a detected one.
+   * <p>
+   * This should be preferred when the ad unit that was requested for the slot is known.
+   *
+   * @param key ad unit to cache the slot under
+   * @param slot new slot to cache
+   * @param expectedSlot slot that should currently be at the head, or <code>null</code> if none is
+   * expected
+   * @return <code>true</code> if the cache was updated, <code>false</code> otherwise
+   */
+  public boolean add(
+      @NonNull CacheAdUnit key,
+      @NonNull CdbResponseSlot slot,
+      @Nullable CdbResponseSlot expectedSlot
+  ) {
+    return addIfHeadIs(key, slot, expectedSlot);
+  }
+
+  private boolean addIfHeadIs(
+      @NonNull CacheAdUnit key,
+      @NonNull CdbResponseSlot slot,
+      @Nullable CdbResponseSlot expectedSlot
+  ) {
+    BidQueue queue = slotMap.get(key);
+    CdbResponseSlot headSlot = queue == null ? null : queue.head();
+    if (headSlot != expectedSlot) {
+      return false;
+    }
+
+    return compareAndInsert(key, queue, slot);
+  }
+
+  /**
+   * Guess the ad unit of the given slot from its content.
+   * <p>
+   * This is only a fallback for slots that cannot be mapped back to their requested ad unit: the
+   * guess depends on the current screen size, so it can be wrong if the device rotated meanwhile.
+   */
   @Nullable
   public CacheAdUnit detectCacheAdUnit(@NonNull CdbResponseSlot slot) {
     String placementId = slot.getPlacementId();
@@ -86,7 +217,7 @@ public class SdkCache {
   }
 
   /**
-   * Get the slot corresponding to the given key.
+   * Get the next slot to serve for the given key, that is the one expiring first.
    * <p>
    * If no slot match the given key, then <code>null</code> is returned.
    *
@@ -94,21 +225,330 @@ public class SdkCache {
    * @return found slot or null if not found
    */
   @Nullable
-  public CdbResponseSlot peekAdUnit(CacheAdUnit key) {
-    return slotMap.get(key);
+  public CdbResponseSlot peekAdUnit(@NonNull CacheAdUnit key) {
+    BidQueue queue = slotMap.get(key);
+    if (queue == null) {
+      return null;
+    }
+
+    queue.lastAccess = accessCounter.incrementAndGet();
+    return queue.head();
   }
 
-  public void remove(CacheAdUnit key) {
+  /**
+   * Return the number of bids to fetch to top up the given ad unit.
+   * <p>
+   * If the number of cached bids for this ad unit is below the {@linkplain
+   * BuildConfigWrapper#getBidCacheLowWaterMark() low-water mark}, then this is the number of bids
+   * missing to reach the full {@linkplain BuildConfigWrapper#getBidCacheDepth() depth}. Otherwise,
+   * the ad unit does not need to be topped up yet and <code>0</code> is returned.
+   *
+   * @param key of the ad unit to top up
+   * @return number of bids to fetch for the given ad unit
+   */
+  public int getMissingBidCount(@NonNull CacheAdUnit key) {
+    BidQueue queue = slotMap.get(key);
+    int count = queue == null ? 0 : queue.slots.size();
+
+    if (count >= buildConfigWrapper.getBidCacheLowWaterMark()) {
+      return 0;
+    }
+    return Math.max(0, getDepth() - count);
+  }
+
+  public void remove(@NonNull CacheAdUnit key) {
     slotMap.remove(key);
   }
 
+  /**
+   * Remove the given slot of the given key only if it is still cached.
+   * <p>
+   * Only one caller can successfully consume a given slot: if many threads peeked the same slot and
+   * try to remove it concurrently, only one of them get <code>true</code>.
+   *
+   * @param key of the slot to remove
+   * @param slot expected slot that is cached for this key
+   * @return <code>true</code> if the slot was removed, <code>false</code> if it was already removed
+   * or replaced
+   */
+  public boolean remove(@NonNull CacheAdUnit key, @NonNull CdbResponseSlot slot) {
+    while (true) {
+      BidQueue queue = slotMap.get(key);
+      if (queue == null) {
+        return false;
+      }
+
+      int index = queue.indexOf(slot);
+      if (index < 0) {
+        return false;
+      }
+
+      List<CdbResponseSlot> newSlots = new ArrayList<>(queue.slots);
+      newSlots.remove(index);
+      if (compareAndSet(key, queue, newSlots.isEmpty() ? null : new BidQueue(newSlots))) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Return all the cached bids, per ad unit and in order of expiry.
+   * <p>
+   * The returned map is a copy: later updates of the cache are not reflected in it.
+   */
+  @NonNull
+  public Map<CacheAdUnit, List<CdbResponseSlot>> getSnapshot() {
+    Map<CacheAdUnit, List<CdbResponseSlot>> snapshot = new HashMap<>();
+    for (Map.Entry<CacheAdUnit, BidQueue> entry : slotMap.entrySet()) {
+      snapshot.put(entry.getKey(), entry.getValue().slots);
+    }
+    return snapshot;
+  }
+
+  /**
+   * Put back in cache bids that were cached in a previous session.
+   * <p>
+   * Bids are only restored if the given ad unit holds no bid yet: fresher bids always win.
+   *
+   * @param key ad unit of the bids
+   * @param slots bids to restore
+   * @return <code>true</code> if the bids were restored, <code>false</code> otherwise
+   */
+  public boolean restore(@NonNull CacheAdUnit key, @NonNull List<CdbResponseSlot> slots) {
+    BidQueue queue = null;
+    for (CdbResponseSlot slot : slots) {
+      queue = insert(queue, slot);
+    }
+
+    return queue != null && compareAndSet(key, null, queue);
+  }
+
+  /**
+   * Remove all the expired bids from the cache and report them as evicted.
+   * <p>
+   * Ad units left without any bid are dropped from the cache.
+   */
+  @VisibleForTesting
+  void sweepExpiredBids() {
+    for (Map.Entry<CacheAdUnit, BidQueue> entry : slotMap.entrySet()) {
+      CacheAdUnit key = entry.getKey();
+      for (CdbResponseSlot slot : entry.getValue().slots) {
+        if (slot.isExpired(clock) && remove(key, slot)) {
+          bidLifecycleListener.onBidEvicted(key, slot);
+        }
+      }
+    }
+  }
+
+  private void startSweeperIfNeeded() {
+    int sweepIntervalInMillis = buildConfigWrapper.getBidCacheSweepIntervalInMillis();
+    if (sweepIntervalInMillis <= 0 || !isSweeperStarted.compareAndSet(false, true)) {
+      return;
+    }
+
+    scheduledExecutorService.scheduleWithFixedDelay(
+        new SafeRunnable() {
+          @Override
+          public void runSafely() {
+            sweepExpiredBids();
+          }
+        },
+        sweepIntervalInMillis,
+        sweepIntervalInMillis,
+        TimeUnit.MILLISECONDS
+    );
+  }
+
+  /**
+   * Evict least recently used ad units until the cache is back under its capacity.
+   * <p>
+   * The cache is scanned to find each victim, this is fine as the scan is bounded by the capacity
+   * and only happens when a new ad unit is cached while the cache is full.
+   */
+  private void evictIfNeeded() {
+    int capacity = buildConfigWrapper.getBidCacheMaxAdUnitCount();
+    if (capacity <= 0) {
+      return;
+    }
+
+    while (slotMap.size() > capacity) {
+      CacheAdUnit victimKey = null;
+      BidQueue victimQueue = null;
+      for (Map.Entry<CacheAdUnit, BidQueue> entry : slotMap.entrySet()) {
+        BidQueue queue = entry.getValue();
+        if (victimQueue == null || queue.lastAccess < victimQueue.lastAccess) {
+          victimKey = entry.getKey();
+          victimQueue = queue;
+        }
+      }
+
+      if (victimKey == null) {
+        return;
+      }
+
+      if (slotMap.remove(victimKey, victimQueue)) {
+        for (CdbResponseSlot slot : victimQueue.slots) {
+          bidLifecycleListener.onBidEvicted(victimKey, slot);
+        }
+      }
+    }
+  }
+
   @VisibleForTesting
   int getItemCount() {
-    return slotMap.size();
+    int count = 0;
+    for (BidQueue queue : slotMap.values()) {
+      count += queue.slots.size();
+    }
+    return count;
   }
 
   @VisibleForTesting
   public void put(@NonNull CacheAdUnit cacheAdUnit, @Nullable CdbResponseSlot slot) {
-    slotMap.put(cacheAdUnit, slot);
+    if (slot == null) {
+      slotMap.remove(cacheAdUnit);
+    } else {
+      slotMap.put(cacheAdUnit, new BidQueue(Collections.singletonList(slot)));
+    }
+  }
+
+  private int getDepth() {
+    return Math.max(1, buildConfigWrapper.getBidCacheDepth());
+  }
+
+  /**
+   * Insert the given slot in the given queue if it is still the current one of the given ad unit.
+   * <p>
+   * On success, the cached slots that the new one pushed out of the queue are reported as evicted.
+   * See {@link #insert(BidQueue, CdbResponseSlot)}.
+   */
+  private boolean compareAndInsert(
+      @NonNull CacheAdUnit key,
+      @Nullable BidQueue queue,
+      @NonNull CdbResponseSlot slot
+  ) {
+    BidQueue newQueue = insert(queue, slot);
+    if (!compareAndSet(key, queue, newQueue)) {
+      return false;
+    }
+
+    if (queue != null) {
+      for (CdbResponseSlot cachedSlot : queue.slots) {
+        if (newQueue.indexOf(cachedSlot) < 0) {
+          bidLifecycleListener.onBidEvicted(key, cachedSlot);
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Insert the given slot in a copy of the given queue.
+   * <p>
+   * A silent slot replaces the whole queue, and other slots replace any remaining silent slot. If
+   * the queue is full, bids expiring first are evicted to make room for the new one.
+   */
+  @NonNull
+  private BidQueue insert(@Nullable BidQueue queue, @NonNull CdbResponseSlot slot) {
+    if (queue == null || isSilentBid(slot)) {
+      return new BidQueue(Collections.singletonList(slot));
+    }
+
+    List<CdbResponseSlot> newSlots = new ArrayList<>(queue.slots.size() + 1);
+    for (CdbResponseSlot cachedSlot : queue.slots) {
+      if (!isSilentBid(cachedSlot)) {
+        newSlots.add(cachedSlot);
+      }
+    }
+
+    int depth = getDepth();
+    while (newSlots.size() >= depth) {
+      newSlots.remove(0);
+    }
+
+    int index = 0;
+    while (index < newSlots.size()
+        && newSlots.get(index).getExpiryTimeInMillis() <= slot.getExpiryTimeInMillis()) {
+      index++;
+    }
+    newSlots.add(index, slot);
+
+    return new BidQueue(newSlots);
+  }
+
+  /**
+   * Atomically replace the queue of the given ad unit if it is still the expected one.
+   * <p>
+   * A <code>null</code> queue represents an ad unit without any cached bid.
+   */
+  private boolean compareAndSet(
+      @NonNull CacheAdUnit key,
+      @Nullable BidQueue expectedQueue,
+      @Nullable BidQueue newQueue
+  ) {
+    if (newQueue != null) {
+      newQueue.lastAccess = accessCounter.incrementAndGet();
+    }
+
+    if (expectedQueue == null) {
+      if (newQueue == null) {
+        return true;
+      }
+      if (slotMap.putIfAbsent(key, newQueue) != null) {
+        return false;
+      }
+
+      startSweeperIfNeeded();
+      evictIfNeeded();
+      return true;
+    } else if (newQueue == null) {
+      return slotMap.remove(key, expectedQueue);
+    } else {
+      return slotMap.replace(key, expectedQueue, newQueue);
+    }
+  }
+
+  /**
+   * Indicate if the given slot is a silent bid: it holds no ad, but it tells that its ad unit should
+   * not be requested again until it expires.
+   */
+  public static boolean isSilentBid(@NonNull CdbResponseSlot slot) {
+    Double cpm = slot.getCpmAsNumber();
+    return slot.getTtlInSeconds() > 0 && (cpm == null || cpm == 0.0);
+  }
+
+  /**
+   * Immutable queue of bids of a single ad unit.
+   * <p>
+   * Queues are compared by identity, so they can be used for compare-and-set operations on the
+   * underlying map even if two queues hold equal slots.
+   */
+  private static final class BidQueue {
+
+    @NonNull
+    private final List<CdbResponseSlot> slots;
+
+    /**
+     * Value of the access counter when this ad unit was last read or written.
+     */
+    private volatile long lastAccess;
+
+    private BidQueue(@NonNull List<CdbResponseSlot> slots) {
+      this.slots = slots;
+    }
+
+    @NonNull
+    CdbResponseSlot head() {
+      return slots.get(0);
+    }
+
+    int indexOf(@NonNull CdbResponseSlot slot) {
+      for (int i = 0; i < slots.size(); i++) {
+        if (slots.get(i) == slot) {
+          return i;
+        }
+      }
+      return -1;
+    }
   }
 }
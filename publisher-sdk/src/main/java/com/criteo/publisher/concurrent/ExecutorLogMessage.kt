@@ -0,0 +1,39 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.concurrent
+
+import android.util.Log
+import com.criteo.publisher.logging.LogMessage
+import java.util.concurrent.TimeUnit
+
+internal object ExecutorLogMessage {
+
+  @JvmStatic
+  fun onMetricsDumped(snapshot: ExecutorMetricsSnapshot) = LogMessage(
+    level = Log.DEBUG,
+    message = "SDK threads: ${snapshot.activeThreadCount} active (peak ${snapshot.peakActiveThreadCount}), " +
+        "${snapshot.queueDepth} tasks queued (peak ${snapshot.peakQueueDepth})" +
+        snapshot.lanes.filter { it.submittedCount > 0 }.joinToString(separator = "") {
+          "\n${it.lane}: ${it.submittedCount} submitted, ${it.queueDepth} queued, " +
+              "${it.rejectedCount} rejected, " +
+              "wait ${it.averageQueueWaitNanos.toMillis()}/${it.maxQueueWaitNanos.toMillis()}ms (avg/max), " +
+              "run ${it.averageRunNanos.toMillis()}/${it.maxRunNanos.toMillis()}ms (avg/max)"
+        }
+  )
+
+  private fun Long.toMillis() = TimeUnit.NANOSECONDS.toMillis(this)
+}
@@ -0,0 +1,179 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.concurrent
+
+import android.util.Log
+import com.criteo.publisher.annotation.OpenForTesting
+import com.criteo.publisher.logging.LoggerFactory
+import java.util.EnumMap
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Statistics of the thread pool of the SDK, per [Lane]: how long tasks wait before starting, how
+ * long they run, how many are rejected, and how busy the threads are.
+ *
+ * Recording is lock-free, so it is done on every task without slowing the pool down. Read them
+ * with [snapshot].
+ */
+@OpenForTesting
+class ExecutorMetrics {
+
+  private val logger = LoggerFactory.getLogger(javaClass)
+
+  private val laneCounters = EnumMap<Lane, LaneCounters>(Lane::class.java).apply {
+    Lane.values().forEach { put(it, LaneCounters()) }
+  }
+
+  private val queuedTasks = AtomicInteger()
+  private val peakQueuedTasks = AtomicInteger()
+  private val activeThreads = AtomicInteger()
+  private val peakActiveThreads = AtomicInteger()
+
+  fun onTaskSubmitted(lane: Lane) {
+    laneCounters.getValue(lane).submitted.incrementAndGet()
+    peakQueuedTasks.updateMax(queuedTasks.incrementAndGet())
+  }
+
+  fun onTaskRejected(lane: Lane) {
+    laneCounters.getValue(lane).rejected.incrementAndGet()
+    queuedTasks.decrementAndGet()
+  }
+
+  fun onTaskStarted(lane: Lane, queueWaitNanos: Long) {
+    queuedTasks.decrementAndGet()
+    peakActiveThreads.updateMax(activeThreads.incrementAndGet())
+
+    laneCounters.getValue(lane).apply {
+      started.incrementAndGet()
+      totalQueueWaitNanos.addAndGet(queueWaitNanos)
+      maxQueueWaitNanos.updateMax(queueWaitNanos)
+    }
+  }
+
+  /**
+   * Record the end of a task, whatever its outcome. Tasks of the SDK catch their own failures (see
+   * [com.criteo.publisher.SafeRunnable]), so the pool can not tell which ones failed.
+   */
+  fun onTaskFinished(lane: Lane, runNanos: Long) {
+    activeThreads.decrementAndGet()
+
+    laneCounters.getValue(lane).apply {
+      completed.incrementAndGet()
+      totalRunNanos.addAndGet(runNanos)
+      maxRunNanos.updateMax(runNanos)
+    }
+  }
+
+  fun snapshot(): ExecutorMetricsSnapshot {
+    return ExecutorMetricsSnapshot(
+        activeThreadCount = activeThreads.get(),
+        peakActiveThreadCount = peakActiveThreads.get(),
+        queueDepth = queuedTasks.get(),
+        peakQueueDepth = peakQueuedTasks.get(),
+        lanes = laneCounters.map { (lane, counters) -> counters.snapshot(lane) }
+    )
+  }
+
+  /**
+   * Log a snapshot of the metrics, at debug level, every given interval. An interval of 0 or less
+   * disables the dump.
+   */
+  fun scheduleDebugDump(scheduledExecutorService: ScheduledExecutorService, intervalInMillis: Long) {
+    if (intervalInMillis <= 0) {
+      return
+    }
+
+    scheduledExecutorService.scheduleWithFixedDelay(
+        { logger.log(Log.DEBUG) { ExecutorLogMessage.onMetricsDumped(snapshot()) } },
+        intervalInMillis,
+        intervalInMillis,
+        TimeUnit.MILLISECONDS
+    )
+  }
+
+  private class LaneCounters {
+    val submitted = AtomicLong()
+    val rejected = AtomicLong()
+    val started = AtomicLong()
+    val completed = AtomicLong()
+    val totalQueueWaitNanos = AtomicLong()
+    val maxQueueWaitNanos = AtomicLong()
+    val totalRunNanos = AtomicLong()
+    val maxRunNanos = AtomicLong()
+
+    fun snapshot(lane: Lane) = LaneMetrics(
+        lane = lane,
+        submittedCount = submitted.get(),
+        rejectedCount = rejected.get(),
+        startedCount = started.get(),
+        completedCount = completed.get(),
+        totalQueueWaitNanos = totalQueueWaitNanos.get(),
+        maxQueueWaitNanos = maxQueueWaitNanos.get(),
+        totalRunNanos = totalRunNanos.get(),
+        maxRunNanos = maxRunNanos.get()
+    )
+  }
+
+  private fun AtomicInteger.updateMax(value: Int) {
+    var current = get()
+    while (value > current && !compareAndSet(current, value)) {
+      current = get()
+    }
+  }
+
+  private fun AtomicLong.updateMax(value: Long) {
+    var current = get()
+    while (value > current && !compareAndSet(current, value)) {
+      current = get()
+    }
+  }
+}
+
+data class ExecutorMetricsSnapshot(
+    val activeThreadCount: Int,
+    val peakActiveThreadCount: Int,
+    val queueDepth: Int,
+    val peakQueueDepth: Int,
+    val lanes: List<LaneMetrics>
+)
+
+data class LaneMetrics(
+    val lane: Lane,
+    val submittedCount: Long,
+    val rejectedCount: Long,
+    val startedCount: Long,
+    val completedCount: Long,
+    val totalQueueWaitNanos: Long,
+    val maxQueueWaitNanos: Long,
+    val totalRunNanos: Long,
+    val maxRunNanos: Long
+) {
+  /**
+   * Number of tasks of this lane waiting in the queue of the pool for a thread.
+   */
+  val queueDepth: Long
+    get() = submittedCount - rejectedCount - startedCount
+
+  val averageQueueWaitNanos: Long
+    get() = if (startedCount == 0L) 0 else totalQueueWaitNanos / startedCount
+
+  val averageRunNanos: Long
+    get() = if (completedCount == 0L) 0 else totalRunNanos / completedCount
+}
@@ -0,0 +1,55 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.concurrent
+
+/**
+ * Kinds of background work of the SDK, from the most to the least urgent.
+ *
+ * When all threads of the SDK are busy, queued tasks of a lane are started before the ones of the
+ * next lanes.
+ */
+enum class Lane {
+  /**
+   * Bids requested by an ad that is being displayed, the publisher is waiting for them.
+   */
+  LIVE_BID,
+
+  /**
+   * Bids requested ahead of time to fill the cache.
+   */
+  PREFETCH,
+
+  /**
+   * Work not attached to a specific lane, such as the setup of the SDK.
+   */
+  DEFAULT,
+
+  /**
+   * Loading of creatives and images of ads.
+   */
+  CREATIVE,
+
+  /**
+   * Impression pixels of native ads.
+   */
+  PIXEL,
+
+  /**
+   * CSM, remote logs and app events.
+   */
+  TELEMETRY
+}
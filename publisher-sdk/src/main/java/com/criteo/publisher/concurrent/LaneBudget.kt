@@ -0,0 +1,68 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.concurrent
+
+import androidx.annotation.GuardedBy
+
+/**
+ * Number of threads of the SDK pool that a group of lanes may use at once, all lanes together.
+ *
+ * Non-urgent lanes share this budget, so that some threads are always left to the live bids, even
+ * when the non-urgent lanes are all busy with long network calls. When a task of the group finishes,
+ * the freed thread is given to the pending task of the most urgent lane of the group.
+ *
+ * All the lanes of the group synchronize on the same [lock], so permits are counted consistently.
+ */
+internal class LaneBudget(val maxConcurrency: Int) {
+
+  val lock = Any()
+
+  @GuardedBy("lock")
+  var runningTasks = 0
+
+  @GuardedBy("lock")
+  private val laneExecutors = sortedSetOf(compareBy<LaneExecutor> { it.lane })
+
+  val isBounded: Boolean
+    get() = maxConcurrency > 0
+
+  @GuardedBy("lock")
+  val hasRoom: Boolean
+    get() = !isBounded || runningTasks < maxConcurrency
+
+  fun register(laneExecutor: LaneExecutor) {
+    synchronized(lock) {
+      laneExecutors += laneExecutor
+    }
+  }
+
+  /**
+   * Take the pending tasks that can be started now, from the most urgent lanes first, until the
+   * budget is exhausted. Taken tasks hold their permits.
+   */
+  @GuardedBy("lock")
+  fun pollStartableTasks(): List<Pair<LaneExecutor, LaneExecutor.PendingTask>> {
+    val tasks = mutableListOf<Pair<LaneExecutor, LaneExecutor.PendingTask>>()
+    for (laneExecutor in laneExecutors) {
+      while (hasRoom) {
+        val task = laneExecutor.pollStartableTask() ?: break
+        tasks += laneExecutor to task
+      }
+    }
+    return tasks
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.concurrent
+
+import androidx.annotation.GuardedBy
+import java.util.concurrent.AbstractExecutorService
+import java.util.concurrent.Executor
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
+
+/**
+ * Executor running the tasks of one [Lane] on the shared thread pool of the SDK.
+ *
+ * If the lane is bounded, at most [maxConcurrency] of its tasks are given to the pool at once, the
+ * extra ones wait here in order. So a burst of a non-urgent lane never takes all the threads of the
+ * SDK, and the remaining ones stay available for the more urgent lanes.
+ *
+ * The lane may also share a [LaneBudget] with other lanes: its tasks are then given to the pool only
+ * if both its own bound and the shared budget allow it.
+ *
+ * This is an [java.util.concurrent.ExecutorService] only so it can be given to libraries expecting
+ * one. It can not be shut down: it is the shared pool that owns the threads.
+ */
+internal class LaneExecutor(
+    private val delegate: Executor,
+    val lane: Lane,
+    private val maxConcurrency: Int,
+    private val budget: LaneBudget? = null
+) : AbstractExecutorService() {
+
+  private val lock = budget?.lock ?: Any()
+
+  @GuardedBy("lock")
+  private val pendingTasks = ArrayDeque<PendingTask>()
+
+  @GuardedBy("lock")
+  private var runningTasks = 0
+
+  private val isBounded: Boolean
+    get() = maxConcurrency > 0 || budget?.isBounded == true
+
+  init {
+    budget?.register(this)
+  }
+
+  override fun execute(command: Runnable) {
+    if (!isBounded) {
+      delegate.execute(LaneTask.wrap(command, lane))
+      return
+    }
+
+    val enqueuedAtNanos = System.nanoTime()
+    synchronized(lock) {
+      if (pendingTasks.isNotEmpty() || !canStartTask()) {
+        pendingTasks.addLast(PendingTask(command, enqueuedAtNanos))
+        return
+      }
+      acquirePermits()
+    }
+
+    dispatch(command, enqueuedAtNanos)
+  }
+
+  @GuardedBy("lock")
+  private fun canStartTask(): Boolean {
+    val hasLaneRoom = maxConcurrency <= 0 || runningTasks < maxConcurrency
+    return hasLaneRoom && budget?.hasRoom != false
+  }
+
+  @GuardedBy("lock")
+  private fun acquirePermits() {
+    runningTasks++
+    budget?.let { it.runningTasks++ }
+  }
+
+  @GuardedBy("lock")
+  private fun releasePermits() {
+    runningTasks--
+    budget?.let { it.runningTasks-- }
+  }
+
+  /**
+   * Take the next pending task of this lane if it can be started now. The returned task holds its
+   * permits.
+   */
+  @GuardedBy("lock")
+  internal fun pollStartableTask(): PendingTask? {
+    if (pendingTasks.isEmpty() || !canStartTask()) {
+      return null
+    }
+
+    acquirePermits()
+    return pendingTasks.removeFirst()
+  }
+
+  private fun dispatch(command: Runnable, enqueuedAtNanos: Long) {
+    val task = Runnable {
+      try {
+        command.run()
+      } finally {
+        onTaskFinished()
+      }
+    }
+
+    try {
+      delegate.execute(LaneTask.wrap(task, lane, enqueuedAtNanos))
+    } catch (e: RejectedExecutionException) {
+      onTaskFinished()
+      throw e
+    }
+  }
+
+  private fun onTaskFinished() {
+    val nextTasks = synchronized(lock) {
+      releasePermits()
+      if (budget != null) {
+        // The freed permit of the budget may go to a more urgent lane
+        budget.pollStartableTasks()
+      } else {
+        listOfNotNull(pollStartableTask()?.let { this to it })
+      }
+    }
+
+    var rejection: RejectedExecutionException? = null
+    nextTasks.forEach { (laneExecutor, task) ->
+      try {
+        laneExecutor.dispatch(task.command, task.enqueuedAtNanos)
+      } catch (e: RejectedExecutionException) {
+        // Other tasks are still dispatched, so they do not keep their permits forever
+        rejection = rejection ?: e
+      }
+    }
+    rejection?.let { throw it }
+  }
+
+  override fun shutdown() {
+    // The shared pool is never shut down by a lane
+  }
+
+  override fun shutdownNow(): List<Runnable> = emptyList()
+
+  override fun isShutdown() = false
+
+  override fun isTerminated() = false
+
+  override fun awaitTermination(timeout: Long, unit: TimeUnit) = false
+
+  internal class PendingTask(val command: Runnable, val enqueuedAtNanos: Long)
+}
@@ -0,0 +1,63 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.concurrent
+
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Task tagged with its [Lane], so the thread pool of the SDK can order it in its queue.
+ *
+ * Tasks of the same lane keep their submission order. The task also carries its timings, so the
+ * pool can measure how long it waited and ran.
+ */
+internal class LaneTask private constructor(
+    private val delegate: Runnable,
+    val lane: Lane,
+    val enqueuedAtNanos: Long
+) : Runnable {
+
+  private val sequenceNumber = nextSequenceNumber.getAndIncrement()
+
+  /**
+   * Set by the pool when a thread starts the task, and then only read by this same thread.
+   */
+  var startedAtNanos: Long = 0
+
+  override fun run() {
+    delegate.run()
+  }
+
+  companion object {
+    private val nextSequenceNumber = AtomicLong()
+
+    @JvmField
+    val COMPARATOR: Comparator<Runnable> = compareBy<Runnable> { (it as LaneTask).lane }
+        .thenBy { (it as LaneTask).sequenceNumber }
+
+    /**
+     * Tag the given task with the given lane, unless it is already tagged.
+     *
+     * The enqueued time should be the one of the original submission, if the task waited somewhere
+     * else before reaching the pool.
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun wrap(command: Runnable, lane: Lane, enqueuedAtNanos: Long = System.nanoTime()): LaneTask {
+      return command as? LaneTask ?: LaneTask(command, lane, enqueuedAtNanos)
+    }
+  }
+}
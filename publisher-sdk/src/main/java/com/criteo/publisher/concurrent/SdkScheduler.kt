@@ -0,0 +1,93 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.concurrent
+
+import com.criteo.publisher.annotation.OpenForTesting
+import com.criteo.publisher.util.BuildConfigWrapper
+import java.util.EnumMap
+import java.util.concurrent.Executor
+import java.util.concurrent.ExecutorService
+
+/**
+ * Single entry point for the background work of the SDK.
+ *
+ * All lanes share the same thread pool, bounded by the thread budget of the SDK, which starts the
+ * queued tasks by lane priority. On top of this, the lanes of non-urgent work are bounded in
+ * concurrency, so that bursts of creatives, pixels or telemetry never delay the bids.
+ *
+ * As the pool only orders tasks that are still queued, this is not enough for a live bid: it would
+ * still wait for a thread if all of them were busy with long network calls. So all lanes but
+ * [Lane.LIVE_BID] share a [LaneBudget] leaving [BuildConfigWrapper.liveBidReservedThreads] threads
+ * to the live bids. The bounds are adjusted to the thread budget: at least one thread is left to
+ * the other lanes, and no lane may use more threads than all of them together.
+ */
+@OpenForTesting
+class SdkScheduler(
+    executor: Executor,
+    buildConfigWrapper: BuildConfigWrapper
+) {
+
+  private val laneExecutors = EnumMap<Lane, ExecutorService>(Lane::class.java).apply {
+    val nonLiveBudget = LaneBudget(buildConfigWrapper.nonLiveMaxConcurrency())
+
+    Lane.values().forEach { lane ->
+      val laneExecutor = if (lane == Lane.LIVE_BID) {
+        LaneExecutor(executor, lane, 0)
+      } else {
+        LaneExecutor(
+            executor,
+            lane,
+            buildConfigWrapper.maxConcurrencyOf(lane, nonLiveBudget.maxConcurrency),
+            nonLiveBudget
+        )
+      }
+      put(lane, laneExecutor)
+    }
+  }
+
+  fun executorFor(lane: Lane): ExecutorService {
+    return laneExecutors.getValue(lane)
+  }
+
+  /**
+   * Number of threads that all lanes but [Lane.LIVE_BID] may use together, or 0 if they are not
+   * bounded together.
+   */
+  private fun BuildConfigWrapper.nonLiveMaxConcurrency(): Int {
+    val threadBudget = sdkThreadBudget
+    val reservedThreads = liveBidReservedThreads
+    if (threadBudget <= 0 || reservedThreads <= 0) {
+      return 0
+    }
+    return maxOf(1, threadBudget - reservedThreads)
+  }
+
+  private fun BuildConfigWrapper.maxConcurrencyOf(lane: Lane, nonLiveMaxConcurrency: Int): Int {
+    val maxConcurrency = when (lane) {
+      Lane.LIVE_BID, Lane.PREFETCH, Lane.DEFAULT -> 0
+      Lane.CREATIVE -> creativeLaneMaxConcurrency
+      Lane.PIXEL -> pixelLaneMaxConcurrency
+      Lane.TELEMETRY -> telemetryLaneMaxConcurrency
+    }
+
+    return if (maxConcurrency > 0 && nonLiveMaxConcurrency > 0) {
+      minOf(maxConcurrency, nonLiveMaxConcurrency)
+    } else {
+      maxConcurrency
+    }
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.concurrent;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread pool of the SDK: tasks are queued by {@linkplain Lane lane} priority, and their timings
+ * are recorded in the {@link ExecutorMetrics}.
+ */
+class SdkThreadPoolExecutor extends ThreadPoolExecutor {
+
+  private static final int INITIAL_QUEUE_CAPACITY = 16;
+
+  @NonNull
+  private final ExecutorMetrics metrics;
+
+  SdkThreadPoolExecutor(int threadBudget, long keepAliveSeconds, @NonNull ExecutorMetrics metrics) {
+    super(
+        threadBudget,
+        threadBudget,
+        keepAliveSeconds, TimeUnit.SECONDS,
+        new PriorityBlockingQueue<>(INITIAL_QUEUE_CAPACITY, LaneTask.COMPARATOR),
+        Executors.defaultThreadFactory()
+    );
+    this.metrics = metrics;
+    allowCoreThreadTimeOut(true);
+  }
+
+  @Override
+  public void execute(@NonNull Runnable command) {
+    LaneTask task = LaneTask.wrap(command, Lane.DEFAULT);
+    metrics.onTaskSubmitted(task.getLane());
+    try {
+      super.execute(task);
+    } catch (RejectedExecutionException e) {
+      metrics.onTaskRejected(task.getLane());
+      throw e;
+    }
+  }
+
+  @Override
+  protected void beforeExecute(Thread t, Runnable r) {
+    super.beforeExecute(t, r);
+    LaneTask task = (LaneTask) r;
+    long now = System.nanoTime();
+    task.setStartedAtNanos(now);
+    metrics.onTaskStarted(task.getLane(), now - task.getEnqueuedAtNanos());
+  }
+
+  @Override
+  protected void afterExecute(Runnable r, @Nullable Throwable t) {
+    super.afterExecute(r, t);
+    LaneTask task = (LaneTask) r;
+    metrics.onTaskFinished(task.getLane(), System.nanoTime() - task.getStartedAtNanos());
+  }
+}
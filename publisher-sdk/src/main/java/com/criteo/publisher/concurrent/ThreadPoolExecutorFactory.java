@@ -16,76 +16,52 @@
 
 package com.criteo.publisher.concurrent;
 
-import androidx.annotation.GuardedBy;
 import androidx.annotation.NonNull;
 import com.criteo.publisher.DependencyProvider.Factory;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.RejectedExecutionHandler;
-import java.util.concurrent.SynchronousQueue;
+import com.criteo.publisher.util.BuildConfigWrapper;
 import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 public class ThreadPoolExecutorFactory implements Factory<ThreadPoolExecutor> {
 
-  /**
-   * These constants were taken from the default {@link android.os.AsyncTask} configuration as of
-   * API level 29.
-   */
-  private static final int CORE_POOL_SIZE = 1;
-  private static final int MAXIMUM_POOL_SIZE = 20;
-  private static final int BACKUP_POOL_SIZE = 5;
   private static final int KEEP_ALIVE_SECONDS = 3;
 
+  @NonNull
+  private final BuildConfigWrapper buildConfigWrapper;
+
+  @NonNull
+  private final ExecutorMetrics executorMetrics;
+
+  public ThreadPoolExecutorFactory(
+      @NonNull BuildConfigWrapper buildConfigWrapper,
+      @NonNull ExecutorMetrics executorMetrics
+  ) {
+    this.buildConfigWrapper = buildConfigWrapper;
+    this.executorMetrics = executorMetrics;
+  }
+
   /**
-   * Create new thread pools independent from the {@linkplain android.os.AsyncTask#THREAD_POOL_EXECUTOR
-   * Android one}.
+   * Create the single thread pool of the SDK, independent from the {@linkplain
+   * android.os.AsyncTask#THREAD_POOL_EXECUTOR Android one}.
    *
    * Created executor is made for those needs:
    * <ul>
    *   <li>Tasks are IO bounds</li>
-   *   <li>Tasks are independent, this means that a long task should not limit another one</li>
-   *   <li>There is a burst of tasks at the initialization of the SDK</li>
+   *   <li>The SDK never uses more threads than its budget, whatever the burst of tasks</li>
+   *   <li>When all threads are busy, tasks are queued and started by {@linkplain Lane lane}
+   *   priority, so a live bid never waits behind telemetry. Tasks not submitted through a lane
+   *   are considered as {@link Lane#DEFAULT}.</li>
+   *   <li>Queue depth, thread usage and task timings are recorded in the given
+   *   {@link ExecutorMetrics}</li>
    * </ul>
    */
   @NonNull
   @Override
   public ThreadPoolExecutor create() {
-    ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(
-        CORE_POOL_SIZE,
-        MAXIMUM_POOL_SIZE,
-        KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
-        new SynchronousQueue<>(),
-        Executors.defaultThreadFactory()
+    return new SdkThreadPoolExecutor(
+        buildConfigWrapper.getSdkThreadBudget(),
+        KEEP_ALIVE_SECONDS,
+        executorMetrics
     );
-
-    threadPoolExecutor.setRejectedExecutionHandler(new BackupExecutionHandler());
-
-    return threadPoolExecutor;
-  }
-
-  private static class BackupExecutionHandler implements RejectedExecutionHandler {
-
-    @GuardedBy("this")
-    private ThreadPoolExecutor backupExecutor;
-
-    @Override
-    public void rejectedExecution(Runnable r, ThreadPoolExecutor e) {
-      // As a last ditch fallback, run it on an executor with an unbounded queue.
-      // Create this executor lazily, hopefully almost never.
-      synchronized (this) {
-        if (backupExecutor == null) {
-          backupExecutor = new ThreadPoolExecutor(
-              BACKUP_POOL_SIZE,
-              BACKUP_POOL_SIZE,
-              KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
-              new LinkedBlockingQueue<>(),
-              Executors.defaultThreadFactory());
-        }
-      }
-
-      backupExecutor.execute(r);
-    }
   }
 
 }
@@ -51,6 +51,28 @@ internal class ConnectionTypeFetcher(
     }
   }
 
+  /**
+   * Indicate if the device is connected to a network.
+   *
+   * When this can not be known, the device is assumed to be connected, so callers do not wait for a
+   * network that may already be there.
+   */
+  @SuppressLint("NewApi")
+  fun isNetworkAvailable(): Boolean {
+    val connectivityManager = context.getSystemService(Context.CONNECTIVITY_SERVICE)
+        as? ConnectivityManager ?: return true
+
+    return try {
+      @Suppress("DEPRECATION")
+      connectivityManager.activeNetworkInfo?.isConnected == true
+    } catch (e: LinkageError) {
+      connectivityManager.activeNetwork != null
+    } catch (e: SecurityException) {
+      logger.debug("Network state is not accessible", e)
+      true
+    }
+  }
+
   @RequiresApi(Build.VERSION_CODES.M)
   private fun fetchNewDeviceConnectionType(connectivityManager: ConnectivityManager): ConnectionType? {
     val network = connectivityManager.activeNetwork
@@ -58,6 +58,25 @@ class BoundedSendingQueue<T> implements ConcurrentSendingQueue<T> {
     }
   }
 
+  @NonNull
+  @Override
+  public List<T> poll(int max, int maxBytes) {
+    synchronized (delegateLock) {
+      return delegate.poll(max, maxBytes);
+    }
+  }
+
+  /**
+   * Put back the given elements at the head of the queue, even if this exceeds its max size: those
+   * elements were already accepted, and they are the first ones to be evicted by next offers.
+   */
+  @Override
+  public boolean rollback(@NonNull List<T> elements) {
+    synchronized (delegateLock) {
+      return delegate.rollback(elements);
+    }
+  }
+
   @Override
   public int getTotalSize() {
     return delegate.getTotalSize();
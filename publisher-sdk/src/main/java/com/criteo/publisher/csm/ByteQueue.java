@@ -0,0 +1,86 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.criteo.publisher.csm;
+
+import androidx.annotation.NonNull;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * FIFO queue of raw elements.
+ * <p>
+ * Implementations are not thread-safe, callers should synchronize accesses to them.
+ */
+interface ByteQueue {
+
+  /**
+   * Add the given element at the end of this queue.
+   *
+   * @param element non-empty element to add
+   * @throws IOException if the element can not be added, then the queue is left unchanged
+   */
+  void add(@NonNull byte[] element) throws IOException;
+
+  /**
+   * Retrieve and remove up to <code>max</code> elements from the head of this queue, at once.
+   * <p>
+   * Elements that are removed but can not be read (because they are corrupted) are not returned.
+   *
+   * @param max max number of elements to remove
+   * @return the readable removed elements
+   * @throws IOException if the removal can not be committed, then the queue is left unchanged
+   */
+  @NonNull
+  List<byte[]> poll(int max) throws IOException;
+
+  /**
+   * Retrieve and remove up to <code>max</code> elements from the head of this queue, at once, as
+   * long as their total length does not exceed <code>maxBytes</code>.
+   * <p>
+   * The first element is always removed, even if it is longer than <code>maxBytes</code>, so it
+   * does not block the queue.
+   *
+   * @param max      max number of elements to remove
+   * @param maxBytes max total length of the removed elements
+   * @return the readable removed elements
+   * @throws IOException if the removal can not be committed, then the queue is left unchanged
+   */
+  @NonNull
+  List<byte[]> poll(int max, int maxBytes) throws IOException;
+
+  /**
+   * Insert the given elements at the head of this queue, in the same order, at once.
+   * <p>
+   * This is meant to put back elements that were polled but that could not be handled, so they
+   * are the first ones to be polled again.
+   *
+   * @param elements non-empty elements to insert
+   * @throws IOException if the elements can not be inserted, then the queue is left unchanged
+   */
+  void addFirst(@NonNull List<byte[]> elements) throws IOException;
+
+  /**
+   * Return the number of elements in this queue.
+   */
+  int size();
+
+  /**
+   * Return the exact number of bytes used by the elements in this queue.
+   */
+  int usedBytes();
+}
@@ -14,26 +14,23 @@
  *    limitations under the License.
  */
 
+
 package com.criteo.publisher.csm;
 
 import static com.criteo.publisher.csm.SendingQueueLogMessage.onRecoveringFromStaleQueueFile;
 
 import android.content.Context;
 import androidx.annotation.NonNull;
-import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import com.criteo.publisher.logging.Logger;
 import com.criteo.publisher.logging.LoggerFactory;
-import com.criteo.publisher.util.JsonSerializer;
-import com.squareup.tape.FileObjectQueue;
-import com.squareup.tape.InMemoryObjectQueue;
-import com.squareup.tape.ObjectQueue;
-import java.io.ByteArrayInputStream;
+import com.squareup.tape.QueueFile;
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 
-public class ObjectQueueFactory<T> {
+public class ByteQueueFactory {
 
   @NonNull
   private final Logger logger = LoggerFactory.getLogger(getClass());
@@ -42,44 +39,23 @@ public class ObjectQueueFactory<T> {
   private final Context context;
 
   @NonNull
-  private final JsonSerializer jsonSerializer;
-
-  @NonNull
-  private final SendingQueueConfiguration<T> sendingQueueConfiguration;
+  private final SendingQueueConfiguration<?> sendingQueueConfiguration;
 
-  public ObjectQueueFactory(
+  public ByteQueueFactory(
       @NonNull Context context,
-      @NonNull JsonSerializer jsonSerializer,
-      @NonNull SendingQueueConfiguration<T> sendingQueueConfiguration
+      @NonNull SendingQueueConfiguration<?> sendingQueueConfiguration
   ) {
     this.context = context;
-    this.jsonSerializer = jsonSerializer;
     this.sendingQueueConfiguration = sendingQueueConfiguration;
   }
 
   @NonNull
-  public ObjectQueue<T> create() {
+  ByteQueue create() {
     File file = getQueueFile();
-    return createTapeObjectQueue(file);
-  }
-
-  @VisibleForTesting
-  public File getQueueFile() {
-    return new File(context.getFilesDir(), sendingQueueConfiguration.getQueueFilename());
-  }
 
-  private ObjectQueue<T> createTapeObjectQueue(@NonNull File file) {
     Throwable exception;
     try {
-      FileObjectQueue<T> queue = new FileObjectQueue<>(file, new AdapterConverter<>(
-          jsonSerializer,
-          sendingQueueConfiguration.getElementClass()
-      ));
-
-      // Try to peek to be sure that the queue is not corrupted.
-      queue.peek();
-
-      return queue;
+      return createFileQueue(file);
     } catch (Exception | OutOfMemoryError e) {
       exception = e;
     }
@@ -90,10 +66,7 @@ public class ObjectQueueFactory<T> {
 
     if (isDeleted) {
       try {
-        return new FileObjectQueue<>(file, new AdapterConverter<>(
-            jsonSerializer,
-            sendingQueueConfiguration.getElementClass()
-        ));
+        return new SegmentedFileQueue(file);
       } catch (IOException e) {
         exception.addSuppressed(e);
       } finally {
@@ -102,7 +75,58 @@ public class ObjectQueueFactory<T> {
     }
 
     // If this still does not work, we fallback on an in-memory solution.
-    return new InMemoryObjectQueue<>();
+    return new InMemoryByteQueue();
+  }
+
+  @VisibleForTesting
+  public File getQueueFile() {
+    return new File(context.getFilesDir(), sendingQueueConfiguration.getQueueFilename());
+  }
+
+  @NonNull
+  private ByteQueue createFileQueue(@NonNull File file) throws IOException {
+    if (!file.isFile()) {
+      return new SegmentedFileQueue(file);
+    }
+
+    // Previous versions stored the elements in a single Tape queue file at the same path. They are
+    // moved into the new queue, in the same order, so they are not lost during the upgrade.
+    List<byte[]> elements = readLegacyQueueFile(file);
+    if (!file.delete()) {
+      throw new IOException("Impossible to delete legacy queue file: " + file);
+    }
+
+    SegmentedFileQueue queue = new SegmentedFileQueue(file);
+    for (byte[] element : elements) {
+      // Tape may have written empty elements: they were always skipped
+      if (element.length > 0) {
+        queue.add(element);
+      }
+    }
+    return queue;
+  }
+
+  @NonNull
+  private static List<byte[]> readLegacyQueueFile(@NonNull File file) throws IOException {
+    List<byte[]> elements = new ArrayList<>();
+    QueueFile queueFile = new QueueFile(file);
+    try {
+      queueFile.forEach((inputStream, length) -> {
+        byte[] element = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+          int read = inputStream.read(element, offset, length - offset);
+          if (read < 0) {
+            throw new IOException("Unexpected end of legacy queue file");
+          }
+          offset += read;
+        }
+        elements.add(element);
+      });
+    } finally {
+      queueFile.close();
+    }
+    return elements;
   }
 
   private boolean delete(@NonNull File file) {
@@ -118,41 +142,4 @@ public class ObjectQueueFactory<T> {
     }
     return file.delete();
   }
-
-  @VisibleForTesting
-  static class AdapterConverter<T> implements FileObjectQueue.Converter<T> {
-
-    @NonNull
-    private final JsonSerializer jsonSerializer;
-
-    @NonNull
-    private final Class<T> elementClass;
-
-    AdapterConverter(
-        @NonNull JsonSerializer jsonSerializer,
-        @NonNull Class<T> elementClass
-    ) {
-      this.jsonSerializer = jsonSerializer;
-      this.elementClass = elementClass;
-    }
-
-    @Nullable
-    @Override
-    public T from(@Nullable byte[] bytes) throws IOException {
-      if (bytes == null) {
-        return null;
-      }
-
-      try (ByteArrayInputStream input = new ByteArrayInputStream(bytes)) {
-        return jsonSerializer.read(elementClass, input);
-      }
-    }
-
-    @Override
-    public void toStream(@Nullable T element, @Nullable OutputStream outputStream) throws IOException {
-      if (element != null && outputStream != null) {
-        jsonSerializer.write(element, outputStream);
-      }
-    }
-  }
 }
@@ -41,6 +41,31 @@ internal interface ConcurrentSendingQueue<T> {
    */
   fun poll(max: Int): List<T>
 
+  /**
+   * Retrieves and removes up to `max` elements from this queue, as long as their total serialized
+   * size does not exceed `maxBytes`.
+   *
+   * The first element is always returned, even if it is bigger than `maxBytes`, so it never blocks
+   * the queue.
+   *
+   * @param max max number of element to poll from the queue
+   * @param maxBytes max total size in bytes of the polled elements
+   * @return at most `max` first elements of the queue
+   */
+  fun poll(max: Int, maxBytes: Int): List<T>
+
+  /**
+   * Puts back the given elements at the head of this queue, in the same order, so they are the
+   * first ones to be polled again.
+   *
+   * This is meant for elements that were polled but could not be handled. Either all elements are
+   * put back, or none is.
+   *
+   * @param elements polled elements to put back in this queue
+   * @return `true` if elements were successfully put back, else `false`
+   */
+  fun rollback(elements: List<T>): Boolean
+
   /**
    * Return the size in bytes of all elements stored in this queue.
    *
@@ -27,13 +27,18 @@ import com.criteo.publisher.model.CdbRequestSlot;
 import com.criteo.publisher.model.CdbResponse;
 import com.criteo.publisher.model.CdbResponseSlot;
 import com.criteo.publisher.model.Config;
+import com.criteo.publisher.network.CdbCallAbortedException;
 import com.criteo.publisher.privacy.ConsentData;
 
 import java.io.InterruptedIOException;
 import java.util.concurrent.Executor;
 
 /**
- * Update metrics files accordingly to received events.
+ * Update metrics accordingly to received events.
+ * <p>
+ * Updates are buffered in memory by the {@link MetricWriteBehindBuffer}, which also pushes the
+ * metrics in the sending queue once they are ready to send. So events are handled without any I/O
+ * on the calling thread.
  * <p>
  * This follows specifications given by <a href="https://go.crto.in/publisher-sdk-csm">Client Side
  * Metrics</a>.
@@ -43,6 +48,9 @@ public class CsmBidLifecycleListener implements BidLifecycleListener {
   @NonNull
   private final MetricRepository repository;
 
+  @NonNull
+  private final MetricWriteBehindBuffer writeBehindBuffer;
+
   @NonNull
   private final MetricSendingQueueProducer sendingQueueProducer;
 
@@ -60,6 +68,7 @@ public class CsmBidLifecycleListener implements BidLifecycleListener {
 
   public CsmBidLifecycleListener(
       @NonNull MetricRepository repository,
+      @NonNull MetricWriteBehindBuffer writeBehindBuffer,
       @NonNull MetricSendingQueueProducer sendingQueueProducer,
       @NonNull Clock clock,
       @NonNull Config config,
@@ -67,6 +76,7 @@ public class CsmBidLifecycleListener implements BidLifecycleListener {
       @NonNull Executor executor
   ) {
     this.repository = repository;
+    this.writeBehindBuffer = writeBehindBuffer;
     this.sendingQueueProducer = sendingQueueProducer;
     this.clock = clock;
     this.config = config;
@@ -106,17 +116,12 @@ public class CsmBidLifecycleListener implements BidLifecycleListener {
       return;
     }
 
-    executor.execute(new SafeRunnable() {
-      @Override
-      public void runSafely() {
-        long currentTimeInMillis = clock.getCurrentTimeInMillis();
+    long currentTimeInMillis = clock.getCurrentTimeInMillis();
 
-        updateByCdbRequestIds(request, builder -> {
-          builder.setRequestGroupId(request.getId());
-          builder.setCdbCallStartTimestamp(currentTimeInMillis);
-          builder.setProfileId(request.getProfileId());
-        });
-      }
+    updateByCdbRequestIds(request, builder -> {
+      builder.setRequestGroupId(request.getId());
+      builder.setCdbCallStartTimestamp(currentTimeInMillis);
+      builder.setProfileId(request.getProfileId());
     });
   }
 
@@ -143,41 +148,34 @@ public class CsmBidLifecycleListener implements BidLifecycleListener {
       return;
     }
 
-    executor.execute(new SafeRunnable() {
-      @Override
-      public void runSafely() {
-        long currentTimeInMillis = clock.getCurrentTimeInMillis();
-
-        for (CdbRequestSlot requestSlot : request.getSlots()) {
-          String impressionId = requestSlot.getImpressionId();
-          CdbResponseSlot responseSlot = response.getSlotByImpressionId(impressionId);
-          boolean isNoBid = responseSlot == null;
-          boolean isInvalidBid = responseSlot != null && !responseSlot.isValid();
-
-          repository.addOrUpdateById(impressionId, builder -> {
-            if (isNoBid) {
-              builder.setCdbCallEndTimestamp(currentTimeInMillis);
-              builder.setReadyToSend(true);
-            } else if (isInvalidBid) {
-              builder.setReadyToSend(true);
-            } else /* if isValidBid */ {
-              builder.setCdbCallEndTimestamp(currentTimeInMillis);
-              builder.setZoneId(responseSlot.getZoneId());
-            }
-          });
-
-          if (isNoBid || isInvalidBid) {
-            sendingQueueProducer.pushInQueue(repository, impressionId);
-          }
+    long currentTimeInMillis = clock.getCurrentTimeInMillis();
+
+    for (CdbRequestSlot requestSlot : request.getSlots()) {
+      String impressionId = requestSlot.getImpressionId();
+      CdbResponseSlot responseSlot = response.getSlotByImpressionId(impressionId);
+      boolean isNoBid = responseSlot == null;
+      boolean isInvalidBid = responseSlot != null && !responseSlot.isValid();
+
+      writeBehindBuffer.update(impressionId, builder -> {
+        if (isNoBid) {
+          builder.setCdbCallEndTimestamp(currentTimeInMillis);
+          builder.setReadyToSend(true);
+        } else if (isInvalidBid) {
+          builder.setReadyToSend(true);
+        } else /* if isValidBid */ {
+          builder.setCdbCallEndTimestamp(currentTimeInMillis);
+          builder.setZoneId(responseSlot.getZoneId());
         }
-      }
-    });
+      });
+    }
   }
 
   /**
    * On CDB call failed, metrics corresponding to the requested slots are updated.
    * <p>
-   * If the failure is a timeout, then all metrics are flagged as having a timeout.
+   * If the failure is a timeout, then all metrics are flagged as having a timeout. A call aborted
+   * because it exceeded its time budget is a timeout, but a call cancelled for another reason is
+   * not.
    * <p>
    * Then, since no further updates are expected, all metrics are flagged as ready to send.
    *
@@ -190,25 +188,20 @@ public class CsmBidLifecycleListener implements BidLifecycleListener {
       return;
     }
 
-    executor.execute(new SafeRunnable() {
-      @Override
-      public void runSafely() {
-        // InterruptedIOException was thrown in older versions of Okio
-        // See https://github.com/square/okhttp/blob/master/docs/changelog_2x.md
-        boolean isTimeout = exception instanceof InterruptedIOException;
-
-        if (isTimeout) {
-          onCdbCallTimeout(request);
-        } else {
-          onCdbCallNetworkError(request);
-        }
+    // InterruptedIOException was thrown in older versions of Okio
+    // See https://github.com/square/okhttp/blob/master/docs/changelog_2x.md
+    boolean isTimeout;
+    if (exception instanceof CdbCallAbortedException) {
+      isTimeout = ((CdbCallAbortedException) exception).isTimeBudgetExceeded();
+    } else {
+      isTimeout = exception instanceof InterruptedIOException;
+    }
 
-        for (CdbRequestSlot slot : request.getSlots()) {
-          String impressionId = slot.getImpressionId();
-          sendingQueueProducer.pushInQueue(repository, impressionId);
-        }
-      }
-    });
+    if (isTimeout) {
+      onCdbCallTimeout(request);
+    } else {
+      onCdbCallNetworkError(request);
+    }
   }
 
   private void onCdbCallNetworkError(CdbRequest request) {
@@ -240,56 +233,67 @@ public class CsmBidLifecycleListener implements BidLifecycleListener {
       return;
     }
 
-    executor.execute(new SafeRunnable() {
-      @Override
-      public void runSafely() {
-        String impressionId = consumedBid.getImpressionId();
-        if (impressionId == null) {
-          return;
-        }
-
-        boolean isNotExpired = !consumedBid.isExpired(clock);
-        long currentTimeInMillis = clock.getCurrentTimeInMillis();
-
-        repository.addOrUpdateById(impressionId, builder -> {
-          if (isNotExpired) {
-            builder.setElapsedTimestamp(currentTimeInMillis);
-          }
+    String impressionId = consumedBid.getImpressionId();
+    if (impressionId == null) {
+      return;
+    }
 
-          builder.setReadyToSend(true);
-        });
+    boolean isNotExpired = !consumedBid.isExpired(clock);
+    long currentTimeInMillis = clock.getCurrentTimeInMillis();
 
-        sendingQueueProducer.pushInQueue(repository, impressionId);
+    writeBehindBuffer.update(impressionId, builder -> {
+      if (isNotExpired) {
+        builder.setElapsedTimestamp(currentTimeInMillis);
       }
+
+      builder.setReadyToSend(true);
     });
   }
 
+  /**
+   * On bid eviction, the metric associated to the bid is flagged as ready to send.
+   * <p>
+   * The bid never reached the user, so, unlike a {@linkplain #onBidConsumed(CacheAdUnit,
+   * CdbResponseSlot) consumption}, no elapsed timestamp is set.
+   *
+   * @param adUnit ad unit representing the bid
+   * @param evictedBid bid that was evicted
+   */
+  @Override
+  public void onBidEvicted(@NonNull CacheAdUnit adUnit, @NonNull CdbResponseSlot evictedBid) {
+    if (isCsmDisabled()) {
+      return;
+    }
+
+    String impressionId = evictedBid.getImpressionId();
+    if (impressionId == null) {
+      return;
+    }
+
+    writeBehindBuffer.update(impressionId, builder -> builder.setReadyToSend(true));
+  }
+
   @Override
   public void onBidCached(@NonNull CdbResponseSlot bidCached) {
     if (isCsmDisabled()) {
       return;
     }
 
-    executor.execute(new SafeRunnable() {
-      @Override
-      public void runSafely() {
-        String impressionId = bidCached.getImpressionId();
-        if (impressionId == null) {
-          return;
-        }
+    String impressionId = bidCached.getImpressionId();
+    if (impressionId == null) {
+      return;
+    }
 
-        if (!bidCached.isValid()) {
-          return;
-        }
+    if (!bidCached.isValid()) {
+      return;
+    }
 
-        repository.addOrUpdateById(impressionId, builder -> builder.setCachedBidUsed(true));
-      }
-    });
+    writeBehindBuffer.update(impressionId, builder -> builder.setCachedBidUsed(true));
   }
 
   private void updateByCdbRequestIds(@NonNull CdbRequest request, @NonNull MetricUpdater updater) {
     for (CdbRequestSlot requestSlot : request.getSlots()) {
-      repository.addOrUpdateById(requestSlot.getImpressionId(), updater);
+      writeBehindBuffer.update(requestSlot.getImpressionId(), updater);
     }
   }
 
@@ -0,0 +1,171 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.criteo.publisher.csm;
+
+import static com.criteo.publisher.csm.SendingQueueLogMessage.onErrorWhenPollingQueueFile;
+import static com.criteo.publisher.csm.SendingQueueLogMessage.onErrorWhenRollingBackQueueFile;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.criteo.publisher.logging.Logger;
+import com.criteo.publisher.logging.LoggerFactory;
+import com.criteo.publisher.util.JsonSerializer;
+import com.criteo.publisher.util.PreconditionsUtil;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+class FileSendingQueue<T> implements ConcurrentSendingQueue<T> {
+
+  @NonNull
+  private final Logger logger = LoggerFactory.getLogger(FileSendingQueue.class);
+
+  @NonNull
+  private final Object queueLock = new Object();
+
+  @Nullable
+  @GuardedBy("queueLock")
+  private ByteQueue queue;
+
+  @NonNull
+  private final ByteQueueFactory queueFactory;
+
+  @NonNull
+  private final JsonSerializer jsonSerializer;
+
+  @NonNull
+  private final SendingQueueConfiguration<T> sendingQueueConfiguration;
+
+  FileSendingQueue(
+      @NonNull ByteQueueFactory queueFactory,
+      @NonNull JsonSerializer jsonSerializer,
+      @NonNull SendingQueueConfiguration<T> sendingQueueConfiguration
+  ) {
+    this.queueFactory = queueFactory;
+    this.jsonSerializer = jsonSerializer;
+    this.sendingQueueConfiguration = sendingQueueConfiguration;
+  }
+
+  @Override
+  public boolean offer(@NonNull T element) {
+    try {
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+      jsonSerializer.write(element, outputStream);
+      byte[] bytes = outputStream.toByteArray();
+
+      synchronized (queueLock) {
+        createQueueIfNecessary().add(bytes);
+      }
+      return true;
+    } catch (IOException e) {
+      PreconditionsUtil.throwOrLog(e);
+      return false;
+    }
+  }
+
+  @NonNull
+  @Override
+  public List<T> poll(int max) {
+    return poll(max, Integer.MAX_VALUE);
+  }
+
+  @NonNull
+  @Override
+  public List<T> poll(int max, int maxBytes) {
+    if (max <= 0) {
+      return new ArrayList<>();
+    }
+
+    List<byte[]> polledBytes;
+    synchronized (queueLock) {
+      try {
+        polledBytes = createQueueIfNecessary().poll(max, maxBytes);
+      } catch (IOException e) {
+        logger.log(onErrorWhenPollingQueueFile(e));
+        return new ArrayList<>();
+      }
+    }
+
+    List<T> elements = new ArrayList<>(polledBytes.size());
+    IOException exception = null;
+
+    for (byte[] bytes : polledBytes) {
+      try (ByteArrayInputStream inputStream = new ByteArrayInputStream(bytes)) {
+        elements.add(jsonSerializer.read(sendingQueueConfiguration.getElementClass(), inputStream));
+      } catch (IOException e) {
+        // The element is already removed, so it does not block the queue.
+        if (exception == null) {
+          exception = e;
+        } else {
+          exception.addSuppressed(e);
+        }
+      }
+    }
+
+    if (exception != null) {
+      logger.log(onErrorWhenPollingQueueFile(exception));
+    }
+
+    return elements;
+  }
+
+  @Override
+  public boolean rollback(@NonNull List<T> elements) {
+    if (elements.isEmpty()) {
+      return true;
+    }
+
+    try {
+      List<byte[]> elementsBytes = new ArrayList<>(elements.size());
+      for (T element : elements) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        jsonSerializer.write(element, outputStream);
+        elementsBytes.add(outputStream.toByteArray());
+      }
+
+      synchronized (queueLock) {
+        createQueueIfNecessary().addFirst(elementsBytes);
+      }
+      return true;
+    } catch (IOException e) {
+      logger.log(onErrorWhenRollingBackQueueFile(e));
+      return false;
+    }
+  }
+
+  @Override
+  public int getTotalSize() {
+    synchronized (queueLock) {
+      // This size is used to bound this queue. The queue knows exactly how many bytes its elements
+      // use, whatever the number of segment files they are spread on.
+      return createQueueIfNecessary().usedBytes();
+    }
+  }
+
+  @NonNull
+  @GuardedBy("queueLock")
+  private ByteQueue createQueueIfNecessary() {
+    if (queue == null) {
+      queue = queueFactory.create();
+    }
+    return queue;
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.criteo.publisher.csm;
+
+import androidx.annotation.NonNull;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.ListIterator;
+
+/**
+ * Fallback {@link ByteQueue} used when no file can be used to store the elements.
+ */
+class InMemoryByteQueue implements ByteQueue {
+
+  @NonNull
+  private final Deque<byte[]> elements = new ArrayDeque<>();
+
+  private int usedBytes = 0;
+
+  @Override
+  public void add(@NonNull byte[] element) {
+    elements.addLast(element);
+    usedBytes += element.length;
+  }
+
+  @NonNull
+  @Override
+  public List<byte[]> poll(int max) {
+    return poll(max, Integer.MAX_VALUE);
+  }
+
+  @NonNull
+  @Override
+  public List<byte[]> poll(int max, int maxBytes) {
+    List<byte[]> polledElements = new ArrayList<>(Math.max(0, Math.min(max, elements.size())));
+    long polledBytes = 0;
+    while (polledElements.size() < max && !elements.isEmpty()) {
+      byte[] element = elements.getFirst();
+      polledBytes += element.length;
+      if (!polledElements.isEmpty() && polledBytes > maxBytes) {
+        break;
+      }
+
+      elements.removeFirst();
+      usedBytes -= element.length;
+      polledElements.add(element);
+    }
+    return polledElements;
+  }
+
+  @Override
+  public void addFirst(@NonNull List<byte[]> elementsToAdd) {
+    ListIterator<byte[]> iterator = elementsToAdd.listIterator(elementsToAdd.size());
+    while (iterator.hasPrevious()) {
+      byte[] element = iterator.previous();
+      elements.addFirst(element);
+      usedBytes += element.length;
+    }
+  }
+
+  @Override
+  public int size() {
+    return elements.size();
+  }
+
+  @Override
+  public int usedBytes() {
+    return usedBytes;
+  }
+}
@@ -0,0 +1,398 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.criteo.publisher.csm;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import com.criteo.publisher.logging.Logger;
+import com.criteo.publisher.logging.LoggerFactory;
+import com.criteo.publisher.util.BuildConfigWrapper;
+import com.criteo.publisher.util.JsonSerializer;
+import com.criteo.publisher.util.MapUtilKt;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import kotlin.jvm.functions.Function0;
+
+/**
+ * Store metrics in a single {@link MetricJournal}: any update or move of a metric is one append at
+ * the end of the journal, and the latest version of each metric is indexed in memory. So the size
+ * and the content of the repository are known without touching the disk.
+ * <p>
+ * Obsolete records are dropped by rewriting the journal once they represent the majority of it.
+ * <p>
+ * The journal is replayed lazily, on first access. At that time, metrics stored by previous
+ * versions of the SDK, with one file per metric, are imported in the journal and their files are
+ * deleted.
+ */
+class JournalMetricRepository extends MetricRepository {
+
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+
+  @NonNull
+  private final MetricDirectory directory;
+
+  @NonNull
+  private final JsonSerializer jsonSerializer;
+
+  @NonNull
+  private final BuildConfigWrapper buildConfigWrapper;
+
+  /**
+   * Lock of a metric and its latest version, by impression ID.
+   * <p>
+   * An update or a move of a metric holds its lock, so the other metrics can be read and updated in
+   * the meantime. Locks are taken before {@link #journalLock}, never after. A slot is removed,
+   * under its lock, as soon as it holds no stored metric.
+   */
+  @NonNull
+  private final ConcurrentMap<String, MetricSlot> slotById = new ConcurrentHashMap<>();
+
+  @NonNull
+  private final Object journalLock = new Object();
+
+  @GuardedBy("journalLock")
+  @Nullable
+  private MetricJournal journal;
+
+  /**
+   * Latest serialized version of each stored metric, by impression ID.
+   */
+  @GuardedBy("journalLock")
+  @NonNull
+  private final Map<String, byte[]> payloadById = new HashMap<>();
+
+  @GuardedBy("journalLock")
+  private int totalSize;
+
+  JournalMetricRepository(
+      @NonNull MetricDirectory directory,
+      @NonNull JsonSerializer jsonSerializer,
+      @NonNull BuildConfigWrapper buildConfigWrapper
+  ) {
+    this.directory = directory;
+    this.jsonSerializer = jsonSerializer;
+    this.buildConfigWrapper = buildConfigWrapper;
+  }
+
+  @Override
+  void addOrUpdateById(@NonNull String impressionId, @NonNull MetricUpdater updater) {
+    getJournal();
+
+    while (true) {
+      MetricSlot slot = getOrCreateSlot(impressionId);
+
+      synchronized (slot) {
+        if (slotById.get(impressionId) != slot) {
+          // The slot was removed after being taken: retry with the current one.
+          continue;
+        }
+
+        try {
+          Metric metric = slot.metric;
+          Metric.Builder builder = metric == null
+              ? Metric.builder(impressionId)
+              : metric.toBuilder();
+          updater.update(builder);
+          Metric newMetric = builder.build();
+
+          try {
+            commitPut(impressionId, serialize(newMetric));
+            slot.metric = newMetric;
+          } catch (IOException e) {
+            logger.debug("Error while updating metric", e);
+          }
+        } finally {
+          removeIfEmpty(impressionId, slot);
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * Move the metric matching the given ID with the given move definition.
+   * <p>
+   * The removal of the metric is journaled before offering it to the destination. If the move is
+   * not a success, the metric is journaled again. If there is an error during rollback or a crash
+   * just before it, then this data is lost: in the context of metrics, it is preferable to lose
+   * some data rather than producing duplicate ones.
+   */
+  @Override
+  void moveById(@NonNull String impressionId, @NonNull MetricMover mover) {
+    getJournal();
+    MetricSlot slot = slotById.get(impressionId);
+    if (slot == null) {
+      return;
+    }
+
+    synchronized (slot) {
+      try {
+        Metric metric = slot.metric;
+        if (metric == null) {
+          return;
+        }
+
+        byte[] payload;
+        try {
+          payload = commitRemove(impressionId);
+        } catch (IOException e) {
+          logger.debug("Error while moving metric", e);
+          return;
+        }
+        slot.metric = null;
+
+        boolean success = false;
+        try {
+          if (mover.offerToDestination(metric)) {
+            success = true;
+          }
+        } finally {
+          if (!success) {
+            rollback(slot, metric, payload);
+          }
+        }
+      } finally {
+        removeIfEmpty(impressionId, slot);
+      }
+    }
+  }
+
+  @Override
+  @NonNull
+  Collection<Metric> getAllStoredMetrics() {
+    // Only metrics already stored are read: a metric being created is not waited for.
+    List<String> impressionIds;
+    synchronized (journalLock) {
+      getJournal();
+      impressionIds = new ArrayList<>(payloadById.keySet());
+    }
+
+    List<Metric> metrics = new ArrayList<>(impressionIds.size());
+    for (String impressionId : impressionIds) {
+      MetricSlot slot = slotById.get(impressionId);
+      if (slot == null) {
+        continue;
+      }
+
+      synchronized (slot) {
+        if (slot.metric != null) {
+          metrics.add(slot.metric);
+        }
+      }
+    }
+    return metrics;
+  }
+
+  @Override
+  int getTotalSize() {
+    synchronized (journalLock) {
+      getJournal();
+      return totalSize;
+    }
+  }
+
+  @Override
+  boolean contains(@NonNull String impressionId) {
+    synchronized (journalLock) {
+      getJournal();
+      return payloadById.containsKey(impressionId);
+    }
+  }
+
+  /**
+   * Number of metrics indexed in memory, including the ones being created.
+   */
+  @VisibleForTesting
+  int getIndexedCount() {
+    return slotById.size();
+  }
+
+  private void rollback(@NonNull MetricSlot slot, @NonNull Metric metric, @NonNull byte[] payload) {
+    try {
+      commitPut(metric.getImpressionId(), payload);
+      slot.metric = metric;
+    } catch (IOException e) {
+      logger.debug("Error while rolling back metric", e);
+    }
+  }
+
+  private void commitPut(@NonNull String impressionId, @NonNull byte[] payload) throws IOException {
+    synchronized (journalLock) {
+      getJournal().appendPut(impressionId, payload);
+
+      byte[] oldPayload = payloadById.put(impressionId, payload);
+      totalSize += payload.length - (oldPayload == null ? 0 : oldPayload.length);
+      compactIfNeeded();
+    }
+  }
+
+  @NonNull
+  private byte[] commitRemove(@NonNull String impressionId) throws IOException {
+    synchronized (journalLock) {
+      getJournal().appendRemove(impressionId);
+
+      byte[] oldPayload = payloadById.remove(impressionId);
+      totalSize -= oldPayload.length;
+      compactIfNeeded();
+      return oldPayload;
+    }
+  }
+
+  /**
+   * Rewrite the journal if it is mostly made of obsolete records.
+   */
+  @GuardedBy("journalLock")
+  private void compactIfNeeded() {
+    long journalLength = journal.getLength();
+    if (journalLength < buildConfigWrapper.getMinSizeOfCsmMetricJournalCompaction()
+        || journalLength < 2L * totalSize) {
+      return;
+    }
+
+    try {
+      journal.rewrite(payloadById);
+    } catch (IOException e) {
+      logger.debug("Error while compacting metric journal", e);
+    }
+  }
+
+  @NonNull
+  private MetricJournal getJournal() {
+    synchronized (journalLock) {
+      if (journal == null) {
+        journal = new MetricJournal(directory.getJournalFile());
+        load(journal);
+      }
+      return journal;
+    }
+  }
+
+  @GuardedBy("journalLock")
+  private void load(@NonNull MetricJournal journal) {
+    try {
+      journal.replay(new MetricJournal.Visitor() {
+        @Override
+        public void onPut(@NonNull String impressionId, @NonNull byte[] payload) {
+          payloadById.put(impressionId, payload);
+        }
+
+        @Override
+        public void onRemove(@NonNull String impressionId) {
+          payloadById.remove(impressionId);
+        }
+      });
+    } catch (IOException e) {
+      logger.debug("Error while reading metric journal", e);
+    }
+
+    Iterator<Map.Entry<String, byte[]>> iterator = payloadById.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, byte[]> entry = iterator.next();
+      try {
+        Metric metric = jsonSerializer.read(Metric.class, new ByteArrayInputStream(entry.getValue()));
+        slotById.put(entry.getKey(), new MetricSlot(metric));
+        totalSize += entry.getValue().length;
+      } catch (IOException e) {
+        logger.debug("Error while reading metric", e);
+        iterator.remove();
+      }
+    }
+
+    importMetricFiles();
+    compactIfNeeded();
+  }
+
+  /**
+   * Move the metrics stored by previous versions of the SDK, with one file per metric, into the
+   * journal.
+   * <p>
+   * A metric file is deleted only after its metric is journaled. If a crash happens in between,
+   * the file is found again at next start, and it is ignored because its metric is already there.
+   */
+  @GuardedBy("journalLock")
+  private void importMetricFiles() {
+    for (File metricFile : directory.listFiles()) {
+      SyncMetricFile syncMetricFile = directory.createSyncMetricFile(metricFile);
+      try {
+        Metric metric = syncMetricFile.read();
+        String impressionId = metric.getImpressionId();
+        if (!payloadById.containsKey(impressionId)) {
+          commitPut(impressionId, serialize(metric));
+          slotById.put(impressionId, new MetricSlot(metric));
+        }
+        syncMetricFile.delete();
+      } catch (IOException e) {
+        logger.debug("Error while importing metric file", e);
+      }
+    }
+  }
+
+  @NonNull
+  private byte[] serialize(@NonNull Metric metric) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    jsonSerializer.write(metric, baos);
+    return baos.toByteArray();
+  }
+
+  /**
+   * Drop the given slot from the index if it holds no stored metric, so the index only grows with
+   * the repository.
+   */
+  @GuardedBy("slot")
+  private void removeIfEmpty(@NonNull String impressionId, @NonNull MetricSlot slot) {
+    if (slot.metric == null) {
+      slotById.remove(impressionId, slot);
+    }
+  }
+
+  @NonNull
+  private MetricSlot getOrCreateSlot(@NonNull String impressionId) {
+    return MapUtilKt.getOrCompute(slotById, impressionId, new Function0<MetricSlot>() {
+      @Override
+      public MetricSlot invoke() {
+        return new MetricSlot(null);
+      }
+    });
+  }
+
+  private static class MetricSlot {
+
+    /**
+     * Latest committed version of the metric, or <code>null</code> if it is not stored.
+     */
+    @GuardedBy("this")
+    @Nullable
+    private Metric metric;
+
+    private MetricSlot(@Nullable Metric metric) {
+      this.metric = metric;
+    }
+  }
+}
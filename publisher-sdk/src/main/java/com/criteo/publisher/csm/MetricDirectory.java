@@ -32,6 +32,8 @@ class MetricDirectory {
 
   private static final String METRIC_FILE_EXTENSION = ".csm";
 
+  private static final String METRIC_JOURNAL_FILENAME = "metrics.journal";
+
   @NonNull
   private final Context context;
 
@@ -72,6 +74,17 @@ class MetricDirectory {
     return new File(getDirectoryFile(), metricFilename);
   }
 
+  /**
+   * Return the file of the metric journal.
+   * <p>
+   * Its name does not end with the metric file extension, so it is never {@linkplain #listFiles()
+   * listed} as a metric file.
+   */
+  @NonNull
+  File getJournalFile() {
+    return new File(getDirectoryFile(), METRIC_JOURNAL_FILENAME);
+  }
+
   @NonNull
   SyncMetricFile createSyncMetricFile(@NonNull File metricFile) {
     String impressionId = getImpressionIdFromMetricFilename(metricFile);
@@ -0,0 +1,266 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.criteo.publisher.csm;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only file of metric records.
+ * <p>
+ * Each record either puts the latest serialized version of a metric, or removes it. Records are
+ * prefixed by their length and followed by a CRC32 of their content: a record torn by a crash or by
+ * a write error is detected while replaying the journal, and it is dropped with everything after
+ * it.
+ * <p>
+ * Appends are not synced on disk, so they are kept by the OS if the application crashes but may be
+ * lost if the device shuts down abruptly. Only {@linkplain #rewrite(Map) rewrites} are synced,
+ * because they replace the whole journal.
+ * <p>
+ * This class is not thread-safe, callers should synchronize accesses to it.
+ */
+class MetricJournal {
+
+  private static final byte TYPE_PUT = 1;
+  private static final byte TYPE_REMOVE = 2;
+
+  /**
+   * Size of the length prefix and of the checksum suffix of a record.
+   */
+  private static final int FRAME_OVERHEAD = 8;
+
+  /**
+   * Upper bound of a record length, so a corrupted length is detected before allocating anything.
+   */
+  private static final int MAX_RECORD_LENGTH = 1024 * 1024;
+
+  @NonNull
+  private final File file;
+
+  @Nullable
+  private RandomAccessFile output;
+
+  private long length;
+
+  MetricJournal(@NonNull File file) {
+    this.file = file;
+  }
+
+  /**
+   * Read all the valid records of the journal, in order, and drop the invalid tail if any.
+   *
+   * @param visitor receiver of the read records
+   * @throws IOException if the journal can not be read
+   */
+  void replay(@NonNull Visitor visitor) throws IOException {
+    long validLength = 0;
+
+    if (file.exists()) {
+      try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+        byte[] record;
+        while ((record = readRecord(input)) != null) {
+          visitRecord(record, visitor);
+          validLength += FRAME_OVERHEAD + record.length;
+        }
+      }
+    }
+
+    RandomAccessFile output = openOutput();
+    if (output.length() > validLength) {
+      output.setLength(validLength);
+    }
+    length = validLength;
+  }
+
+  void appendPut(@NonNull String impressionId, @NonNull byte[] payload) throws IOException {
+    append(encode(TYPE_PUT, impressionId, payload));
+  }
+
+  void appendRemove(@NonNull String impressionId) throws IOException {
+    append(encode(TYPE_REMOVE, impressionId, null));
+  }
+
+  /**
+   * Replace the whole journal by one that only contains the given metrics.
+   * <p>
+   * The new journal is fully written and synced aside, and then renamed over the current one. So in
+   * case of error, the current journal is kept as is.
+   *
+   * @param payloads serialized metrics by impression ID
+   * @throws IOException if the new journal can not be written
+   */
+  void rewrite(@NonNull Map<String, byte[]> payloads) throws IOException {
+    File newFile = new File(file.getPath() + ".new");
+    long newLength = 0;
+
+    try (FileOutputStream fos = new FileOutputStream(newFile);
+        BufferedOutputStream bos = new BufferedOutputStream(fos)) {
+      for (Map.Entry<String, byte[]> entry : payloads.entrySet()) {
+        byte[] frame = encode(TYPE_PUT, entry.getKey(), entry.getValue());
+        bos.write(frame);
+        newLength += frame.length;
+      }
+      bos.flush();
+      fos.getFD().sync();
+    } catch (IOException e) {
+      newFile.delete();
+      throw e;
+    }
+
+    close();
+    if (!newFile.renameTo(file)) {
+      newFile.delete();
+      throw new IOException("Impossible to replace journal " + file);
+    }
+    length = newLength;
+  }
+
+  /**
+   * Return the size in bytes of the journal, including records that are now obsolete.
+   */
+  long getLength() {
+    return length;
+  }
+
+  private void append(@NonNull byte[] frame) throws IOException {
+    RandomAccessFile output = openOutput();
+    try {
+      output.seek(length);
+      output.write(frame);
+    } catch (IOException e) {
+      // Drop what was partially written, so next records are not appended after a torn one.
+      try {
+        output.setLength(length);
+      } catch (IOException ignored) {
+        close();
+      }
+      throw e;
+    }
+    length += frame.length;
+  }
+
+  @NonNull
+  private RandomAccessFile openOutput() throws IOException {
+    if (output == null) {
+      output = new RandomAccessFile(file, "rw");
+      length = output.length();
+    }
+    return output;
+  }
+
+  private void close() {
+    if (output != null) {
+      try {
+        output.close();
+      } catch (IOException ignored) {
+        // Nothing was buffered, so nothing is lost
+      }
+      output = null;
+    }
+  }
+
+  @NonNull
+  private static byte[] encode(
+      byte type,
+      @NonNull String impressionId,
+      @Nullable byte[] payload
+  ) throws IOException {
+    ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+    DataOutputStream record = new DataOutputStream(recordBytes);
+    record.writeByte(type);
+    record.writeUTF(impressionId);
+    if (payload != null) {
+      record.writeInt(payload.length);
+      record.write(payload);
+    }
+
+    byte[] content = recordBytes.toByteArray();
+    ByteArrayOutputStream frameBytes = new ByteArrayOutputStream(content.length + FRAME_OVERHEAD);
+    DataOutputStream frame = new DataOutputStream(frameBytes);
+    frame.writeInt(content.length);
+    frame.write(content);
+    frame.writeInt(checksumOf(content));
+    return frameBytes.toByteArray();
+  }
+
+  /**
+   * Read the next record of the journal.
+   *
+   * @return content of the record, or <code>null</code> if there is no more valid record
+   */
+  @Nullable
+  private static byte[] readRecord(@NonNull DataInputStream input) throws IOException {
+    try {
+      int recordLength = input.readInt();
+      if (recordLength <= 0 || recordLength > MAX_RECORD_LENGTH) {
+        return null;
+      }
+
+      byte[] record = new byte[recordLength];
+      input.readFully(record);
+      int checksum = input.readInt();
+      if (checksum != checksumOf(record)) {
+        return null;
+      }
+      return record;
+    } catch (EOFException e) {
+      return null;
+    }
+  }
+
+  private static void visitRecord(@NonNull byte[] content, @NonNull Visitor visitor) throws IOException {
+    DataInputStream record = new DataInputStream(new ByteArrayInputStream(content));
+    byte type = record.readByte();
+    String impressionId = record.readUTF();
+
+    if (type == TYPE_PUT) {
+      byte[] payload = new byte[record.readInt()];
+      record.readFully(payload);
+      visitor.onPut(impressionId, payload);
+    } else if (type == TYPE_REMOVE) {
+      visitor.onRemove(impressionId);
+    }
+  }
+
+  private static int checksumOf(@NonNull byte[] content) {
+    CRC32 crc32 = new CRC32();
+    crc32.update(content);
+    return (int) crc32.getValue();
+  }
+
+  interface Visitor {
+
+    void onPut(@NonNull String impressionId, @NonNull byte[] payload);
+
+    void onRemove(@NonNull String impressionId);
+  }
+}
@@ -47,7 +47,11 @@ public class MetricRepositoryFactory implements Factory<MetricRepository> {
   @Override
   public MetricRepository create() {
     MetricDirectory directory = new MetricDirectory(context, buildConfigWrapper, jsonSerializer);
-    MetricRepository fileMetricRepository = new FileMetricRepository(directory);
-    return new BoundedMetricRepository(fileMetricRepository, buildConfigWrapper);
+    MetricRepository journalMetricRepository = new JournalMetricRepository(
+        directory,
+        jsonSerializer,
+        buildConfigWrapper
+    );
+    return new BoundedMetricRepository(journalMetricRepository, buildConfigWrapper);
   }
 }
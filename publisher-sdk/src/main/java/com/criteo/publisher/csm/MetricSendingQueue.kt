@@ -22,6 +22,10 @@ internal interface MetricSendingQueue : ConcurrentSendingQueue<Metric> {
 
     override fun poll(max: Int): List<Metric> = delegate.poll(max)
 
+    override fun poll(max: Int, maxBytes: Int): List<Metric> = delegate.poll(max, maxBytes)
+
+    override fun rollback(elements: List<Metric>) = delegate.rollback(elements)
+
     override val totalSize: Int
       get() = delegate.totalSize
   }
@@ -17,47 +17,70 @@
 package com.criteo.publisher.csm;
 
 import androidx.annotation.NonNull;
+import com.criteo.publisher.context.ConnectionTypeFetcher;
 import com.criteo.publisher.model.Config;
 import com.criteo.publisher.network.PubSdkApi;
+import com.criteo.publisher.util.ApplicationStoppedListener;
 import com.criteo.publisher.util.BuildConfigWrapper;
+import com.criteo.publisher.util.JsonSerializer;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
 
-public class MetricSendingQueueConsumer {
-
-  @NonNull
-  private final MetricSendingQueue queue;
-
-  @NonNull
-  private final PubSdkApi api;
-
-  @NonNull
-  private final BuildConfigWrapper buildConfigWrapper;
+public class MetricSendingQueueConsumer implements ApplicationStoppedListener {
 
   @NonNull
   private final Config config;
 
   @NonNull
-  private final Executor executor;
+  private final SendingQueueFlushScheduler flushScheduler;
 
   public MetricSendingQueueConsumer(
       @NonNull MetricSendingQueue queue,
       @NonNull PubSdkApi api,
       @NonNull BuildConfigWrapper buildConfigWrapper,
       @NonNull Config config,
-      @NonNull Executor executor
+      @NonNull Executor executor,
+      @NonNull ScheduledExecutorService scheduledExecutorService,
+      @NonNull ConnectionTypeFetcher connectionTypeFetcher,
+      @NonNull JsonSerializer jsonSerializer
   ) {
-    this.queue = queue;
-    this.api = api;
-    this.buildConfigWrapper = buildConfigWrapper;
     this.config = config;
-    this.executor = executor;
+    this.flushScheduler = new SendingQueueFlushScheduler(
+        queue,
+        buildConfigWrapper.getCsmFlushThresholdInBytes(),
+        buildConfigWrapper,
+        executor,
+        scheduledExecutorService,
+        new MetricSendingTask(
+            queue,
+            api,
+            buildConfigWrapper,
+            connectionTypeFetcher,
+            jsonSerializer
+        )
+    );
+  }
+
+  /**
+   * Send asynchronously a new batch of metrics to the CSM backend, once there are enough of them to
+   * fill a request, or after a max delay.
+   * <p>
+   * This is cheap enough to be called after each bid. See {@link SendingQueueFlushScheduler}.
+   */
+  public void scheduleMetricBatch() {
+    if (config.isCsmEnabled()) {
+      flushScheduler.requestFlush();
+    }
   }
 
   /**
-   * Send asynchronously a new batch of metrics to the CSM backend.
+   * Send asynchronously all the metrics of the queue to the CSM backend, by batches.
+   * <p>
+   * Nothing is sent if a batch is already in flight, or if a previous failure is being backed off.
    * <p>
    * This is a fire and forget operation. No output is expected. Although, if an error occurs while
-   * sending the metrics to the backend, they are pushed back in the sending queue.
+   * sending the metrics to the backend, the ones not sent yet are put back at the head of the
+   * sending queue. See {@link MetricSendingTask}.
    * <p>
    * The batch is polled from the queue (instead of peeked). Data loss is tolerated if the process
    * is terminated while the batch is being sent to the CSM backed. This is to ensure that the same
@@ -65,8 +88,13 @@ public class MetricSendingQueueConsumer {
    */
   public void sendMetricBatch() {
     if (config.isCsmEnabled()) {
-      executor.execute(new MetricSendingTask(queue, api, buildConfigWrapper));
+      flushScheduler.flush();
     }
   }
 
+  @Override
+  public void onApplicationStopped() {
+    sendMetricBatch();
+  }
+
 }
@@ -33,6 +33,16 @@ public class MetricSendingQueueProducer {
     }
   }
 
+  /**
+   * Push the given metric in the queue, without going through a repository.
+   *
+   * @param metric metric to push
+   * @return <code>true</code> if the metric is in the queue, else <code>false</code>
+   */
+  boolean pushInQueue(@NonNull Metric metric) {
+    return queue.offer(metric);
+  }
+
   void pushInQueue(
       @NonNull MetricRepository repository,
       @NonNull String impressionId
@@ -15,56 +15,117 @@
  */
 package com.criteo.publisher.csm
 
-import com.criteo.publisher.SafeRunnable
+import com.criteo.publisher.context.ConnectionTypeFetcher
+import com.criteo.publisher.context.ConnectionTypeFetcher.ConnectionType
 import com.criteo.publisher.integration.Integration
 import com.criteo.publisher.network.PubSdkApi
 import com.criteo.publisher.util.BuildConfigWrapper
+import com.criteo.publisher.util.JsonSerializer
+import java.io.ByteArrayOutputStream
+import java.io.IOException
 
+/**
+ * Drain the metric sending queue to the CSM backend.
+ *
+ * Batches are polled one after the other until the queue is empty. Each one is bounded by the size
+ * of its serialized metrics, which depends on the network, so a backlog built up while offline is
+ * sent in one go, without many small requests on fast networks nor large ones on slow networks.
+ *
+ * Metrics are grouped by profile, and a group is carried over to the next batches until it is full,
+ * i.e. it holds as many metrics or as many bytes as a batch. So the metrics of an occasional profile
+ * are not spread on many small requests, and no request is bigger than a batch. Remaining groups are
+ * sent once the queue is drained.
+ *
+ * If a request fails, the polled metrics that are not sent yet are put back at the head of the
+ * queue, in the same order, and the draining stops.
+ */
 internal class MetricSendingTask(
     private val queue: MetricSendingQueue,
     private val api: PubSdkApi,
-    private val buildConfigWrapper: BuildConfigWrapper
-) : SafeRunnable() {
+    private val buildConfigWrapper: BuildConfigWrapper,
+    private val connectionTypeFetcher: ConnectionTypeFetcher,
+    private val jsonSerializer: JsonSerializer
+) : SendingQueueFlushScheduler.BatchSender {
 
-  override fun runSafely() {
-    val metrics: Collection<Metric> = queue.poll(buildConfigWrapper.csmBatchSize)
-    if (metrics.isEmpty()) {
-      return
-    }
+  override fun sendBatch() {
+    val maxCount = maxOf(1, buildConfigWrapper.csmBatchSize)
+    val maxBytes = getBatchMaxBytes()
+
+    // Polled metrics that are not sent yet, in the order of the queue
+    val unsentMetrics = mutableListOf<Metric>()
+    val groups = linkedMapOf<Int, MetricGroup>()
 
-    val metricsToRollback = metrics.toMutableList()
     try {
-      val metricPerRequests = createRequests(metrics)
-      metricPerRequests.forEach {
-        api.postCsm(it.key)
-        metricsToRollback.removeAll(it.value)
+      while (true) {
+        val metrics = queue.poll(maxCount, maxBytes)
+        if (metrics.isEmpty()) {
+          break
+        }
+
+        unsentMetrics += metrics
+        metrics.forEach {
+          val profileId = it.profileId ?: Integration.FALLBACK.profileId
+          val group = groups.getOrPut(profileId) { MetricGroup(profileId) }
+          val size = sizeOf(it)
+
+          if (group.metrics.isNotEmpty() &&
+              (group.metrics.size >= maxCount || group.bytes + size > maxBytes)) {
+            send(group, unsentMetrics)
+          }
+
+          group.metrics += it
+          group.bytes += size
+
+          if (group.metrics.size >= maxCount || group.bytes >= maxBytes) {
+            send(group, unsentMetrics)
+          }
+        }
       }
+
+      groups.values.forEach { send(it, unsentMetrics) }
     } finally {
-      if (metricsToRollback.isNotEmpty()) {
-        rollback(metricsToRollback)
+      if (unsentMetrics.isNotEmpty()) {
+        queue.rollback(unsentMetrics)
       }
     }
   }
 
-  private fun createRequests(metrics: Collection<Metric>): Map<MetricRequest, Collection<Metric>> {
-    val sdkVersion = buildConfigWrapper.sdkVersion
-
-    val metricsPerProfile = metrics.groupBy {
-      it.profileId ?: Integration.FALLBACK.profileId
+  private fun send(group: MetricGroup, unsentMetrics: MutableList<Metric>) {
+    if (group.metrics.isEmpty()) {
+      return
     }
 
-    return metricsPerProfile.mapKeys {
-      MetricRequest(
-          it.value,
-          sdkVersion,
-          it.key
-      )
+    val metrics = group.metrics.toList()
+    api.postCsm(MetricRequest(metrics, buildConfigWrapper.sdkVersion, group.profileId))
+    group.metrics.clear()
+    group.bytes = 0
+    unsentMetrics.removeAll(metrics.toSet())
+  }
+
+  private fun sizeOf(metric: Metric): Int {
+    return try {
+      val output = ByteArrayOutputStream()
+      jsonSerializer.write(metric, output)
+      output.size()
+    } catch (e: IOException) {
+      // The metric was already serialized by the queue, so this should not happen. It is then only
+      // bounded by the count of metrics.
+      0
     }
   }
 
-  private fun rollback(metrics: Collection<Metric>) {
-    metrics.forEach {
-      queue.offer(it)
+  private fun getBatchMaxBytes(): Int {
+    val maxBytes = when (connectionTypeFetcher.fetchConnectionType()) {
+      ConnectionType.CELLULAR_2G,
+      ConnectionType.CELLULAR_3G,
+      ConnectionType.CELLULAR_UNKNOWN -> buildConfigWrapper.csmBatchMaxBytesOnSlowNetwork
+      else -> buildConfigWrapper.csmBatchMaxBytesOnFastNetwork
     }
+    return maxOf(1, maxBytes)
+  }
+
+  private class MetricGroup(val profileId: Int) {
+    val metrics = mutableListOf<Metric>()
+    var bytes = 0
   }
 }
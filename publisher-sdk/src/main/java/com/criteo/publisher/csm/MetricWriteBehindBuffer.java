@@ -0,0 +1,239 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.criteo.publisher.csm;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+import com.criteo.publisher.SafeRunnable;
+import com.criteo.publisher.csm.MetricRepository.MetricUpdater;
+import com.criteo.publisher.util.ApplicationStoppedListener;
+import com.criteo.publisher.util.BuildConfigWrapper;
+import com.criteo.publisher.util.PreconditionsUtil;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffer the updates of metrics in memory, and write them behind, in the {@link MetricRepository}.
+ * <p>
+ * All the updates of a metric received between two flushes are merged, so they cost a single
+ * update of the repository. A flush happens when the buffer holds a full batch of metrics, after a
+ * delay since the first buffered update, and when the application is stopped.
+ * <p>
+ * During a flush, metrics that are ready to send are moved to the sending queue. If such a metric
+ * was not stored yet, it goes straight to the queue without being written in the repository.
+ * <p>
+ * Updates that are still buffered are lost if the application is killed. In the context of metrics,
+ * this is acceptable.
+ */
+public class MetricWriteBehindBuffer implements ApplicationStoppedListener {
+
+  @NonNull
+  private final MetricRepository repository;
+
+  @NonNull
+  private final MetricSendingQueueProducer sendingQueueProducer;
+
+  @NonNull
+  private final Executor executor;
+
+  @NonNull
+  private final ScheduledExecutorService scheduledExecutorService;
+
+  @NonNull
+  private final BuildConfigWrapper buildConfigWrapper;
+
+  @NonNull
+  private final Object lock = new Object();
+
+  @GuardedBy("lock")
+  @NonNull
+  private Map<String, PendingMetric> pendingMetrics = new LinkedHashMap<>();
+
+  @GuardedBy("lock")
+  private boolean isDelayedFlushScheduled = false;
+
+  /**
+   * Held during a flush, so updates of a metric are written in the same order they were received.
+   */
+  @NonNull
+  private final Object flushLock = new Object();
+
+  public MetricWriteBehindBuffer(
+      @NonNull MetricRepository repository,
+      @NonNull MetricSendingQueueProducer sendingQueueProducer,
+      @NonNull Executor executor,
+      @NonNull ScheduledExecutorService scheduledExecutorService,
+      @NonNull BuildConfigWrapper buildConfigWrapper
+  ) {
+    this.repository = repository;
+    this.sendingQueueProducer = sendingQueueProducer;
+    this.executor = executor;
+    this.scheduledExecutorService = scheduledExecutorService;
+    this.buildConfigWrapper = buildConfigWrapper;
+  }
+
+  /**
+   * Buffer the given update of the metric matching the given ID.
+   * <p>
+   * Updates are applied later on, in the same order, on the metric stored in the repository, or on a
+   * new one if there is none.
+   *
+   * @param impressionId ID of the metric to update
+   * @param updater update to apply
+   */
+  void update(@NonNull String impressionId, @NonNull MetricUpdater updater) {
+    boolean isBatchFull;
+    boolean isDelayedFlushNeeded = false;
+
+    synchronized (lock) {
+      PendingMetric pendingMetric = pendingMetrics.get(impressionId);
+      if (pendingMetric == null) {
+        pendingMetric = new PendingMetric();
+        pendingMetrics.put(impressionId, pendingMetric);
+      }
+      pendingMetric.updaters.add(updater);
+
+      isBatchFull = pendingMetrics.size() >= buildConfigWrapper.getCsmWriteBehindBatchSize();
+      if (!isBatchFull && !isDelayedFlushScheduled) {
+        isDelayedFlushScheduled = true;
+        isDelayedFlushNeeded = true;
+      }
+    }
+
+    if (isBatchFull) {
+      flushAsync();
+    } else if (isDelayedFlushNeeded) {
+      scheduleDelayedFlush();
+    }
+  }
+
+  /**
+   * Write all buffered updates before the application goes in background, where it may be killed.
+   */
+  @Override
+  public void onApplicationStopped() {
+    flushAsync();
+  }
+
+  /**
+   * Write all buffered updates asynchronously, and then run the given action.
+   * <p>
+   * The action runs once the flush is over, even if it failed. So it sees the metrics that became
+   * ready to send during this flush in the sending queue.
+   *
+   * @param then action to run after the flush
+   */
+  public void flushAsync(@NonNull Runnable then) {
+    executor.execute(new SafeRunnable() {
+      @Override
+      public void runSafely() {
+        try {
+          flush();
+        } finally {
+          then.run();
+        }
+      }
+    });
+  }
+
+  private void flushAsync() {
+    executor.execute(new SafeRunnable() {
+      @Override
+      public void runSafely() {
+        flush();
+      }
+    });
+  }
+
+  private void scheduleDelayedFlush() {
+    scheduledExecutorService.schedule(new SafeRunnable() {
+      @Override
+      public void runSafely() {
+        synchronized (lock) {
+          isDelayedFlushScheduled = false;
+        }
+        flushAsync();
+      }
+    }, buildConfigWrapper.getCsmWriteBehindDelayInMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  @VisibleForTesting
+  void flush() {
+    synchronized (flushLock) {
+      Map<String, PendingMetric> batch;
+      synchronized (lock) {
+        if (pendingMetrics.isEmpty()) {
+          return;
+        }
+        batch = pendingMetrics;
+        pendingMetrics = new LinkedHashMap<>();
+      }
+
+      for (Map.Entry<String, PendingMetric> entry : batch.entrySet()) {
+        try {
+          write(entry.getKey(), entry.getValue());
+        } catch (RuntimeException e) {
+          PreconditionsUtil.throwOrLog(e);
+        }
+      }
+    }
+  }
+
+  private void write(@NonNull String impressionId, @NonNull PendingMetric pendingMetric) {
+    if (!repository.contains(impressionId)) {
+      Metric.Builder builder = Metric.builder(impressionId);
+      pendingMetric.update(builder);
+      Metric metric = builder.build();
+
+      if (metric.isReadyToSend() && sendingQueueProducer.pushInQueue(metric)) {
+        return;
+      }
+    }
+
+    repository.addOrUpdateById(impressionId, pendingMetric);
+
+    if (pendingMetric.isReadyToSend) {
+      sendingQueueProducer.pushInQueue(repository, impressionId);
+    }
+  }
+
+  private static class PendingMetric implements MetricUpdater {
+
+    @NonNull
+    private final List<MetricUpdater> updaters = new ArrayList<>();
+
+    /**
+     * Indicate if the metric was ready to send after the last application of the buffered updates.
+     */
+    private boolean isReadyToSend = false;
+
+    @Override
+    public void update(@NonNull Metric.Builder metricBuilder) {
+      for (MetricUpdater updater : updaters) {
+        updater.update(metricBuilder);
+      }
+      isReadyToSend = metricBuilder.build().isReadyToSend();
+    }
+  }
+}
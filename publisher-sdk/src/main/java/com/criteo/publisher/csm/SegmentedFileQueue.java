@@ -0,0 +1,600 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.criteo.publisher.csm;
+
+import static com.criteo.publisher.csm.SendingQueueLogMessage.onErrorWhenPollingQueueFile;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import com.criteo.publisher.logging.Logger;
+import com.criteo.publisher.logging.LoggerFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * {@link ByteQueue} stored in a directory, as a sequence of segment files and a head file.
+ * <p>
+ * Elements are appended at the end of the last segment, each in a frame
+ * <code>[int length][element][int CRC32 of element]</code>. Once a segment is large enough, a new
+ * one is started. The head file records where the first element of the queue is, as
+ * <code>[long segment id][long offset][int count][count * (long segment id, long offset)][int CRC32
+ * of all the previous fields]</code>, so any number of elements is removed by rewriting this single
+ * record. Segments that are entirely before the head are deleted. Elements put back at the head are
+ * written in a new segment preceding the head one, so segment ids may be negative. The former head
+ * segment then no longer starts at offset 0: its start offset is kept in the list of the head
+ * record, until it becomes the head again.
+ * <p>
+ * The position and length of every element are indexed in memory, so the exact number of used
+ * bytes is known without reading anything. The index is built when opening the queue: a frame
+ * partially written during a crash is detected, thanks to its length and its checksum, and
+ * truncated.
+ */
+class SegmentedFileQueue implements ByteQueue {
+
+  @VisibleForTesting
+  static final int SEGMENT_SIZE = 4 * 1024;
+
+  @VisibleForTesting
+  static final String HEAD_FILENAME = "head";
+
+  private static final String SEGMENT_EXTENSION = ".seg";
+  private static final Pattern SEGMENT_PATTERN = Pattern.compile("(-?\\d+)\\" + SEGMENT_EXTENSION);
+
+  /**
+   * Segment id (long), offset (long), count of segment offsets (int) and checksum (int)
+   */
+  private static final int HEAD_MIN_LENGTH = 8 + 8 + 4 + 4;
+
+  /**
+   * Segment id (long) and offset (long) of a segment starting after offset 0
+   */
+  private static final int SEGMENT_OFFSET_LENGTH = 8 + 8;
+
+  /**
+   * Length of the element (int) before it and its checksum (int) after it
+   */
+  @VisibleForTesting
+  static final int FRAME_OVERHEAD = 4 + 4;
+
+  /**
+   * Elements are small JSON objects, anything bigger is considered as a corruption
+   */
+  private static final int MAX_ELEMENT_LENGTH = 1024 * 1024;
+
+  @NonNull
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+
+  @NonNull
+  private final File directory;
+
+  @NonNull
+  private final RandomAccessFile headFile;
+
+  @NonNull
+  private final Deque<Entry> entries = new ArrayDeque<>();
+
+  private long headSegmentId;
+
+  private long headOffset;
+
+  /**
+   * Start offsets of the segments after the head one that do not start at offset 0, because they
+   * were partially consumed before elements were put back at the head.
+   */
+  @NonNull
+  private final TreeMap<Long, Long> segmentOffsets = new TreeMap<>();
+
+  private long tailSegmentId;
+
+  @NonNull
+  private RandomAccessFile tailFile;
+
+  private long tailLength;
+
+  private int usedBytes;
+
+  SegmentedFileQueue(@NonNull File directory) throws IOException {
+    this.directory = directory;
+
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Impossible to create queue directory: " + directory);
+    }
+
+    List<Long> segmentIds = listSegmentIds(directory);
+    File head = new File(directory, HEAD_FILENAME);
+    boolean isNew = !head.exists();
+
+    if (isNew) {
+      // The first segment is created before the head file. So if there is no head file, there is
+      // no element either.
+      for (long segmentId : segmentIds) {
+        deleteSegment(segmentId);
+      }
+      segmentIds.clear();
+      headSegmentId = 0;
+      headOffset = 0;
+      createSegment(headSegmentId);
+      segmentIds.add(headSegmentId);
+    } else {
+      ByteBuffer record = readHead(head);
+      headSegmentId = record.getLong();
+      headOffset = record.getLong();
+      int count = record.getInt();
+      for (int i = 0; i < count; i++) {
+        long segmentId = record.getLong();
+        long offset = record.getLong();
+        if (segmentId > headSegmentId) {
+          segmentOffsets.put(segmentId, offset);
+        }
+      }
+    }
+
+    Iterator<Long> iterator = segmentIds.iterator();
+    while (iterator.hasNext()) {
+      long segmentId = iterator.next();
+      if (segmentId < headSegmentId) {
+        // Removal was committed, but the deletion was not done
+        deleteSegment(segmentId);
+        iterator.remove();
+      }
+    }
+
+    if (segmentIds.isEmpty() || segmentIds.get(0) != headSegmentId) {
+      throw new IOException("Missing head segment: " + headSegmentId);
+    }
+
+    for (long segmentId : segmentIds) {
+      long offset = segmentId == headSegmentId ? headOffset : getSegmentOffset(segmentId);
+      tailLength = indexSegment(segmentId, offset);
+    }
+    tailSegmentId = segmentIds.get(segmentIds.size() - 1);
+
+    headFile = new RandomAccessFile(head, "rwd");
+    try {
+      if (isNew) {
+        writeHead(headSegmentId, headOffset, segmentOffsets);
+      }
+      tailFile = new RandomAccessFile(segmentFile(tailSegmentId), "rwd");
+    } catch (IOException e) {
+      closeQuietly(headFile);
+      throw e;
+    }
+  }
+
+  @Override
+  public void add(@NonNull byte[] element) throws IOException {
+    if (element.length == 0 || element.length > MAX_ELEMENT_LENGTH) {
+      throw new IllegalArgumentException("Invalid element length: " + element.length);
+    }
+
+    if (tailLength >= SEGMENT_SIZE) {
+      startNewSegment();
+    }
+
+    ByteBuffer frame = ByteBuffer.allocate(element.length + FRAME_OVERHEAD);
+    frame.putInt(element.length);
+    frame.put(element);
+    frame.putInt(checksum(element, 0, element.length));
+
+    try {
+      tailFile.seek(tailLength);
+      tailFile.write(frame.array());
+    } catch (IOException e) {
+      try {
+        tailFile.setLength(tailLength);
+      } catch (IOException suppressed) {
+        e.addSuppressed(suppressed);
+      }
+      throw e;
+    }
+
+    entries.addLast(new Entry(tailSegmentId, tailLength, element.length));
+    tailLength += frame.capacity();
+    usedBytes += frame.capacity();
+  }
+
+  @NonNull
+  @Override
+  public List<byte[]> poll(int max) throws IOException {
+    return poll(max, Integer.MAX_VALUE);
+  }
+
+  @NonNull
+  @Override
+  public List<byte[]> poll(int max, int maxBytes) throws IOException {
+    int count = countEntriesToPoll(max, maxBytes);
+    if (count <= 0) {
+      return new ArrayList<>();
+    }
+
+    List<byte[]> elements = new ArrayList<>(count);
+    IOException exception = null;
+    RandomAccessFile segment = null;
+    long segmentId = 0;
+    Iterator<Entry> iterator = entries.iterator();
+
+    try {
+      for (int i = 0; i < count; i++) {
+        Entry entry = iterator.next();
+        try {
+          if (segment == null || entry.segmentId != segmentId) {
+            closeQuietly(segment);
+            segment = null;
+            segment = new RandomAccessFile(segmentFile(entry.segmentId), "r");
+            segmentId = entry.segmentId;
+          }
+          elements.add(readElement(segment, entry));
+        } catch (IOException e) {
+          // Like the others, the unreadable element is removed, so it does not block the queue.
+          if (exception == null) {
+            exception = e;
+          } else {
+            exception.addSuppressed(e);
+          }
+        }
+      }
+    } finally {
+      closeQuietly(segment);
+    }
+
+    // Commit all the removals at once
+    long newHeadSegmentId;
+    long newHeadOffset;
+    if (iterator.hasNext()) {
+      Entry next = iterator.next();
+      newHeadSegmentId = next.segmentId;
+      newHeadOffset = next.offset;
+    } else {
+      newHeadSegmentId = tailSegmentId;
+      newHeadOffset = tailLength;
+    }
+    Map<Long, Long> newSegmentOffsets = segmentOffsets.tailMap(newHeadSegmentId, false);
+    writeHead(newHeadSegmentId, newHeadOffset, newSegmentOffsets);
+
+    for (int i = 0; i < count; i++) {
+      usedBytes -= entries.removeFirst().getFrameLength();
+    }
+
+    for (long id = headSegmentId; id < newHeadSegmentId; id++) {
+      deleteSegment(id);
+    }
+    segmentOffsets.headMap(newHeadSegmentId, true).clear();
+    headSegmentId = newHeadSegmentId;
+    headOffset = newHeadOffset;
+
+    if (exception != null) {
+      logger.log(onErrorWhenPollingQueueFile(exception));
+    }
+    return elements;
+  }
+
+  /**
+   * Insert the given elements before the head, by writing them in a new segment preceding the head
+   * segment. The insertion is committed by moving the head to this new segment, so either all
+   * elements are inserted, or none is: a segment written before a crash but never committed is
+   * before the head, and is then deleted at next opening.
+   * <p>
+   * The current head segment may be partially consumed: its current offset is committed at the same
+   * time, so the consumed elements are not read again when the queue is opened later.
+   */
+  @Override
+  public void addFirst(@NonNull List<byte[]> elements) throws IOException {
+    if (elements.isEmpty()) {
+      return;
+    }
+
+    int totalLength = 0;
+    for (byte[] element : elements) {
+      if (element.length == 0 || element.length > MAX_ELEMENT_LENGTH) {
+        throw new IllegalArgumentException("Invalid element length: " + element.length);
+      }
+      totalLength += element.length + FRAME_OVERHEAD;
+    }
+
+    long segmentId = headSegmentId - 1;
+    List<Entry> newEntries = new ArrayList<>(elements.size());
+    ByteBuffer frames = ByteBuffer.allocate(totalLength);
+    for (byte[] element : elements) {
+      newEntries.add(new Entry(segmentId, frames.position(), element.length));
+      frames.putInt(element.length);
+      frames.put(element);
+      frames.putInt(checksum(element, 0, element.length));
+    }
+
+    // A segment with this id can only be a leftover whose deletion failed, as it is before the head
+    deleteSegment(segmentId);
+    createSegment(segmentId);
+    try {
+      try (RandomAccessFile segment = new RandomAccessFile(segmentFile(segmentId), "rwd")) {
+        segment.write(frames.array());
+      }
+      TreeMap<Long, Long> newSegmentOffsets = new TreeMap<>(segmentOffsets);
+      if (headOffset > 0) {
+        newSegmentOffsets.put(headSegmentId, headOffset);
+      }
+      writeHead(segmentId, 0, newSegmentOffsets);
+      segmentOffsets.clear();
+      segmentOffsets.putAll(newSegmentOffsets);
+    } catch (IOException e) {
+      deleteSegment(segmentId);
+      throw e;
+    }
+
+    headSegmentId = segmentId;
+    headOffset = 0;
+    for (int i = newEntries.size() - 1; i >= 0; i--) {
+      entries.addFirst(newEntries.get(i));
+    }
+    usedBytes += totalLength;
+  }
+
+  @Override
+  public int size() {
+    return entries.size();
+  }
+
+  @Override
+  public int usedBytes() {
+    return usedBytes;
+  }
+
+  private int countEntriesToPoll(int max, int maxBytes) {
+    int count = 0;
+    long length = 0;
+    for (Entry entry : entries) {
+      length += entry.length;
+      if (count >= max || (count > 0 && length > maxBytes)) {
+        break;
+      }
+      count++;
+    }
+    return count;
+  }
+
+  private long getSegmentOffset(long segmentId) {
+    Long offset = segmentOffsets.get(segmentId);
+    return offset == null ? 0 : offset;
+  }
+
+  private long indexSegment(long segmentId, long offset) throws IOException {
+    try (RandomAccessFile segment = new RandomAccessFile(segmentFile(segmentId), "rw")) {
+      long length = segment.length();
+      if (offset > length) {
+        throw new IOException("Head is after the end of segment " + segmentId);
+      }
+
+      long position = offset;
+      while (position < length) {
+        Entry entry = readEntry(segment, segmentId, position, length);
+        if (entry == null) {
+          // Frame partially written during a crash: nothing after it was committed.
+          segment.setLength(position);
+          return position;
+        }
+
+        entries.addLast(entry);
+        position += entry.getFrameLength();
+        usedBytes += entry.getFrameLength();
+      }
+      return position;
+    }
+  }
+
+  @Nullable
+  private static Entry readEntry(
+      @NonNull RandomAccessFile segment,
+      long segmentId,
+      long position,
+      long segmentLength
+  ) throws IOException {
+    if (segmentLength - position < FRAME_OVERHEAD) {
+      return null;
+    }
+
+    segment.seek(position);
+    int length = segment.readInt();
+    if (length <= 0 || length > MAX_ELEMENT_LENGTH
+        || segmentLength - position < length + FRAME_OVERHEAD) {
+      return null;
+    }
+
+    Entry entry = new Entry(segmentId, position, length);
+    try {
+      readElement(segment, entry);
+    } catch (IOException e) {
+      return null;
+    }
+    return entry;
+  }
+
+  @NonNull
+  private static byte[] readElement(
+      @NonNull RandomAccessFile segment,
+      @NonNull Entry entry
+  ) throws IOException {
+    byte[] frame = new byte[entry.getFrameLength()];
+    segment.seek(entry.offset);
+    segment.readFully(frame);
+
+    ByteBuffer buffer = ByteBuffer.wrap(frame);
+    if (buffer.getInt() != entry.length) {
+      throw new IOException("Invalid element length at " + entry);
+    }
+    if (buffer.getInt(frame.length - 4) != checksum(frame, 4, entry.length)) {
+      throw new IOException("Invalid element checksum at " + entry);
+    }
+    return Arrays.copyOfRange(frame, 4, 4 + entry.length);
+  }
+
+  private void startNewSegment() throws IOException {
+    long segmentId = tailSegmentId + 1;
+    createSegment(segmentId);
+    RandomAccessFile newTailFile = new RandomAccessFile(segmentFile(segmentId), "rwd");
+    closeQuietly(tailFile);
+    tailFile = newTailFile;
+    tailSegmentId = segmentId;
+    tailLength = 0;
+  }
+
+  private void createSegment(long segmentId) throws IOException {
+    File segment = segmentFile(segmentId);
+    if (!segment.createNewFile() && segment.length() != 0) {
+      throw new IOException("Segment already exists: " + segment);
+    }
+  }
+
+  private void deleteSegment(long segmentId) {
+    // If the deletion fails, the segment is deleted at next opening because it is before the head.
+    //noinspection ResultOfMethodCallIgnored
+    segmentFile(segmentId).delete();
+  }
+
+  /**
+   * The head file may be longer than its record, if the record shrank and the file was not
+   * truncated before a crash. The remaining bytes are ignored.
+   */
+  @NonNull
+  private static ByteBuffer readHead(@NonNull File head) throws IOException {
+    long fileLength = head.length();
+    if (fileLength < HEAD_MIN_LENGTH || fileLength > Integer.MAX_VALUE) {
+      throw new IOException("Invalid head file length: " + fileLength);
+    }
+
+    byte[] content = new byte[(int) fileLength];
+    try (RandomAccessFile headFile = new RandomAccessFile(head, "r")) {
+      headFile.readFully(content);
+    }
+
+    ByteBuffer buffer = ByteBuffer.wrap(content);
+    int count = buffer.getInt(16);
+    if (count < 0 || count > (fileLength - HEAD_MIN_LENGTH) / SEGMENT_OFFSET_LENGTH) {
+      throw new IOException("Corrupted head file");
+    }
+
+    int recordLength = HEAD_MIN_LENGTH + count * SEGMENT_OFFSET_LENGTH;
+    if (buffer.getInt(recordLength - 4) != checksum(content, 0, recordLength - 4)
+        || buffer.getLong(8) < 0) {
+      throw new IOException("Corrupted head file");
+    }
+    return buffer;
+  }
+
+  private void writeHead(
+      long segmentId,
+      long offset,
+      @NonNull Map<Long, Long> segmentOffsets
+  ) throws IOException {
+    int recordLength = HEAD_MIN_LENGTH + segmentOffsets.size() * SEGMENT_OFFSET_LENGTH;
+    ByteBuffer record = ByteBuffer.allocate(recordLength);
+    record.putLong(segmentId);
+    record.putLong(offset);
+    record.putInt(segmentOffsets.size());
+    for (Map.Entry<Long, Long> segmentOffset : segmentOffsets.entrySet()) {
+      record.putLong(segmentOffset.getKey());
+      record.putLong(segmentOffset.getValue());
+    }
+    record.putInt(checksum(record.array(), 0, recordLength - 4));
+
+    headFile.seek(0);
+    headFile.write(record.array());
+    if (headFile.length() > recordLength) {
+      // Only a cleanup: the remaining bytes are ignored when reading the record
+      headFile.setLength(recordLength);
+    }
+  }
+
+  @NonNull
+  private File segmentFile(long segmentId) {
+    return new File(directory, segmentId + SEGMENT_EXTENSION);
+  }
+
+  @NonNull
+  private static List<Long> listSegmentIds(@NonNull File directory) throws IOException {
+    String[] filenames = directory.list();
+    if (filenames == null) {
+      throw new IOException("Impossible to list queue directory: " + directory);
+    }
+
+    List<Long> segmentIds = new ArrayList<>();
+    for (String filename : filenames) {
+      Matcher matcher = SEGMENT_PATTERN.matcher(filename);
+      if (matcher.matches()) {
+        try {
+          segmentIds.add(Long.parseLong(matcher.group(1)));
+        } catch (NumberFormatException ignored) {
+          // Not a segment written by this queue
+        }
+      }
+    }
+    Collections.sort(segmentIds);
+    return segmentIds;
+  }
+
+  private static int checksum(@NonNull byte[] bytes, int offset, int length) {
+    CRC32 crc = new CRC32();
+    crc.update(bytes, offset, length);
+    return (int) crc.getValue();
+  }
+
+  private static void closeQuietly(@Nullable RandomAccessFile file) {
+    if (file != null) {
+      try {
+        file.close();
+      } catch (IOException ignored) {
+        // Nothing more can be done
+      }
+    }
+  }
+
+  private static class Entry {
+    private final long segmentId;
+    private final long offset;
+    private final int length;
+
+    private Entry(long segmentId, long offset, int length) {
+      this.segmentId = segmentId;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    private int getFrameLength() {
+      return length + FRAME_OVERHEAD;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+      return "Entry{segmentId=" + segmentId + ", offset=" + offset + ", length=" + length + '}';
+    }
+  }
+}
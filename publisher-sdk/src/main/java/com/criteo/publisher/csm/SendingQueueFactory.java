@@ -18,27 +18,37 @@ package com.criteo.publisher.csm;
 
 import androidx.annotation.NonNull;
 import com.criteo.publisher.DependencyProvider.Factory;
+import com.criteo.publisher.util.JsonSerializer;
 
 public class SendingQueueFactory<T> implements Factory<ConcurrentSendingQueue<T>> {
 
   @NonNull
-  private final ObjectQueueFactory<T> objectQueueFactory;
+  private final ByteQueueFactory byteQueueFactory;
+
+  @NonNull
+  private final JsonSerializer jsonSerializer;
 
   @NonNull
   private final SendingQueueConfiguration<T> sendingQueueConfiguration;
 
   public SendingQueueFactory(
-      @NonNull ObjectQueueFactory<T> objectQueueFactory,
+      @NonNull ByteQueueFactory byteQueueFactory,
+      @NonNull JsonSerializer jsonSerializer,
       @NonNull SendingQueueConfiguration<T> sendingQueueConfiguration
   ) {
-    this.objectQueueFactory = objectQueueFactory;
+    this.byteQueueFactory = byteQueueFactory;
+    this.jsonSerializer = jsonSerializer;
     this.sendingQueueConfiguration = sendingQueueConfiguration;
   }
 
   @NonNull
   @Override
   public ConcurrentSendingQueue<T> create() {
-    ConcurrentSendingQueue<T> tapeQueue = new TapeSendingQueue<>(objectQueueFactory, sendingQueueConfiguration);
-    return new BoundedSendingQueue<>(tapeQueue, sendingQueueConfiguration);
+    ConcurrentSendingQueue<T> fileQueue = new FileSendingQueue<>(
+        byteQueueFactory,
+        jsonSerializer,
+        sendingQueueConfiguration
+    );
+    return new BoundedSendingQueue<>(fileQueue, sendingQueueConfiguration);
   }
 }
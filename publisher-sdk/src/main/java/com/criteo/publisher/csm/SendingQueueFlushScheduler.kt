@@ -0,0 +1,193 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.criteo.publisher.csm
+
+import androidx.annotation.GuardedBy
+import com.criteo.publisher.SafeRunnable
+import com.criteo.publisher.annotation.OpenForTesting
+import com.criteo.publisher.util.BuildConfigWrapper
+import java.util.concurrent.Executor
+import java.util.concurrent.Future
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+
+/**
+ * Send the elements of a sending queue by batch, with at most one batch in flight at a time.
+ *
+ * Requests to send are coalesced: the queue is sent right away once it holds enough bytes, else
+ * after a max delay, or when it is explicitly flushed, such as when the application goes to
+ * background. A request made while a batch is in flight is only remembered, and served once it
+ * is done.
+ *
+ * When a batch fails to be sent, the next one is delayed with an exponential backoff, and requests
+ * are ignored until then. So telemetry does not compete with bid requests for the threads and the
+ * network while its backend is unavailable.
+ */
+@OpenForTesting
+internal class SendingQueueFlushScheduler(
+    private val sendingQueue: ConcurrentSendingQueue<*>,
+    private val flushThresholdInBytes: Int,
+    private val buildConfigWrapper: BuildConfigWrapper,
+    private val executor: Executor,
+    private val scheduledExecutorService: ScheduledExecutorService,
+    private val batchSender: BatchSender
+) {
+
+  fun interface BatchSender {
+    /**
+     * Poll a batch from the queue and send it.
+     *
+     * @throws Exception if the batch could not be sent, after it was put back in the queue
+     */
+    @Throws(Exception::class)
+    fun sendBatch()
+  }
+
+  private val lock = Any()
+
+  @GuardedBy("lock")
+  private var isFlushing = false
+
+  @GuardedBy("lock")
+  private var isFlushRequested = false
+
+  @GuardedBy("lock")
+  private var isBackingOff = false
+
+  @GuardedBy("lock")
+  private var delayedFlush: Future<*>? = null
+
+  @GuardedBy("lock")
+  private var consecutiveFailures = 0
+
+  /**
+   * Send the queue if it holds enough bytes, else make sure it is sent after the max delay.
+   */
+  fun requestFlush() {
+    if (sendingQueue.totalSize >= flushThresholdInBytes) {
+      flush()
+    } else {
+      scheduleFlush()
+    }
+  }
+
+  /**
+   * Send the queue right away, unless a batch is in flight or a failure is being backed off.
+   */
+  fun flush() {
+    synchronized(lock) {
+      if (isBackingOff) {
+        return
+      }
+      if (isFlushing) {
+        isFlushRequested = true
+        return
+      }
+      isFlushing = true
+      delayedFlush?.cancel(false)
+      delayedFlush = null
+    }
+
+    try {
+      executor.execute(FlushTask())
+    } catch (t: Throwable) {
+      // No batch is in flight, so next requests are not only remembered
+      synchronized(lock) {
+        isFlushing = false
+        isFlushRequested = false
+      }
+      throw t
+    }
+  }
+
+  private fun scheduleFlush() {
+    synchronized(lock) {
+      if (isFlushing || delayedFlush != null) {
+        // The queue is looked at again once the batch in flight is done
+        return
+      }
+      delayedFlush = schedule(buildConfigWrapper.telemetryFlushMaxDelayInMillis.toLong())
+    }
+  }
+
+  private inner class FlushTask : SafeRunnable() {
+    override fun runSafely() {
+      var isSuccessful = false
+      try {
+        batchSender.sendBatch()
+        isSuccessful = true
+      } finally {
+        onFlushFinished(isSuccessful)
+      }
+    }
+  }
+
+  private fun onFlushFinished(isSuccessful: Boolean) {
+    val shouldFlushAgain = synchronized(lock) {
+      isFlushing = false
+
+      if (!isSuccessful) {
+        consecutiveFailures++
+        isBackingOff = true
+        isFlushRequested = false
+        delayedFlush?.cancel(false)
+        delayedFlush = schedule(computeBackoffDelay(consecutiveFailures))
+        return
+      }
+
+      consecutiveFailures = 0
+      isFlushRequested.also { isFlushRequested = false }
+    }
+
+    if (shouldFlushAgain) {
+      flush()
+    } else if (sendingQueue.totalSize > 0) {
+      // Remaining elements are sent right away if there are enough of them, else later
+      requestFlush()
+    }
+  }
+
+  private fun onDelayedFlush() {
+    synchronized(lock) {
+      delayedFlush = null
+      isBackingOff = false
+    }
+    flush()
+  }
+
+  @GuardedBy("lock")
+  private fun schedule(delayInMillis: Long): Future<*>? {
+    return scheduledExecutorService.schedule(object : SafeRunnable() {
+      override fun runSafely() = onDelayedFlush()
+    }, delayInMillis, TimeUnit.MILLISECONDS)
+  }
+
+  private fun computeBackoffDelay(consecutiveFailures: Int): Long {
+    val baseDelay = buildConfigWrapper.telemetryRetryBaseDelayInMillis.toLong()
+    val maxDelay = buildConfigWrapper.telemetryRetryMaxDelayInMillis.toLong()
+    val exponent = (consecutiveFailures - 1).coerceIn(0, MAX_BACKOFF_EXPONENT)
+    return (baseDelay shl exponent).coerceAtMost(maxDelay)
+  }
+
+  private companion object {
+    /**
+     * Bound the shift of the backoff so it never overflows
+     */
+    const val MAX_BACKOFF_EXPONENT = 20
+  }
+}
@@ -36,4 +36,12 @@ internal object SendingQueueLogMessage {
       exception,
       "onErrorWhenPollingQueueFile"
   )
+
+  @JvmStatic
+  fun onErrorWhenRollingBackQueueFile(exception: Exception) = LogMessage(
+      Log.WARN,
+      "Error when putting back elements at the head of queue file. They are dropped",
+      exception,
+      "onErrorWhenRollingBackQueueFile"
+  )
 }
@@ -18,6 +18,7 @@ package com.criteo.publisher.headerbidding;
 
 import android.content.res.Configuration;
 import android.util.Base64;
+import android.util.Log;
 import androidx.annotation.CallSuper;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -41,6 +42,7 @@ import java.lang.reflect.Method;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.List;
 
 public class DfpHeaderBidding implements HeaderBiddingHandler {
@@ -134,7 +136,10 @@ public class DfpHeaderBidding implements HeaderBiddingHandler {
       builder.addCustomTargeting(CRT_FORMAT, VIDEO);
     }
 
-    logger.log(AppBiddingLogMessage.onAdObjectEnrichedSuccessfully(getIntegration(), builder.getDescription()));
+    logger.log(Log.INFO, () -> AppBiddingLogMessage.onAdObjectEnrichedSuccessfully(
+        getIntegration(),
+        builder.getDescription()
+    ));
   }
 
   private void addEncodedDisplayUrl(@NonNull SafeDfpBuilder builder, @NonNull CdbResponseSlot slot) {
@@ -264,12 +269,16 @@ public class DfpHeaderBidding implements HeaderBiddingHandler {
     @NonNull
     private final String name;
 
+    /**
+     * Targeting added so far, as key-value pairs. The description is only built from them when it is
+     * logged.
+     */
     @NonNull
-    private final StringBuilder description;
+    private final List<String> targeting;
 
     private SafeDfpBuilder(@NonNull String name) {
       this.name = name;
-      this.description = new StringBuilder();
+      this.targeting = new ArrayList<>();
     }
 
     static boolean isDfpBuilder(@NonNull Object candidate) {
@@ -288,15 +297,22 @@ public class DfpHeaderBidding implements HeaderBiddingHandler {
 
     @CallSuper
     protected void addCustomTargeting(String key, String value) {
-      if (description.length() != 0) {
-        description.append(",");
-      } else {
-        description.append(name).append(':');
-      }
-      description.append(key).append("=").append(value);
+      targeting.add(key);
+      targeting.add(value);
     }
 
     final String getDescription() {
+      if (targeting.isEmpty()) {
+        return "";
+      }
+
+      StringBuilder description = new StringBuilder(name).append(':');
+      for (int i = 0; i < targeting.size(); i += 2) {
+        if (i != 0) {
+          description.append(",");
+        }
+        description.append(targeting.get(i)).append("=").append(targeting.get(i + 1));
+      }
       return description.toString();
     }
   }
@@ -28,8 +28,12 @@ internal class ConsoleHandler(private val buildConfigWrapper: BuildConfigWrapper
     private const val UnsetLogLevel = -1
   }
 
-  var minLogLevel: Int = UnsetLogLevel
+  override var minLogLevel: Int = UnsetLogLevel
     get() = field.takeIf { it != UnsetLogLevel } ?: buildConfigWrapper.defaultMinLogLevel
+    set(value) {
+      field = value
+      Logger.invalidateLogLevels()
+    }
 
   override fun log(tag: String, logMessage: LogMessage) {
     val level = logMessage.level
@@ -16,8 +16,19 @@
 
 package com.criteo.publisher.logging
 
+import android.util.Log
+
 internal interface LogHandler {
 
+  /**
+   * Lowest Android log level that this handler may output. Messages with a lower level are dropped by
+   * the [Logger] before being built.
+   *
+   * When this level changes, [Logger.invalidateLogLevels] should be called.
+   */
+  val minLogLevel: Int
+    get() = Log.VERBOSE
+
   @Throws(Exception::class)
   fun log(tag: String, logMessage: LogMessage)
 }
@@ -19,8 +19,11 @@ package com.criteo.publisher.logging;
 import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.VisibleForTesting;
+import androidx.annotation.Nullable;
 import com.criteo.publisher.dependency.LazyDependency;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import kotlin.jvm.functions.Function0;
 
 public class Logger {
 
@@ -72,6 +75,19 @@ public class Logger {
     }
   };
 
+  /**
+   * Incremented each time the minimum log level of a handler may have changed.
+   * <p>
+   * Loggers cache the lowest level accepted by their handlers, so messages that no handler would
+   * output are dropped before being built, and before any of the recursion protection above. This
+   * generation invalidates those caches.
+   */
+  @NonNull
+  private static final AtomicInteger logLevelsGeneration = new AtomicInteger();
+
+  @Nullable
+  private volatile LogLevelSnapshot minLogLevelSnapshot = null;
+
   public Logger(
       @NonNull Class<?> klass,
       @NonNull List<LazyDependency<LogHandler>> handlers
@@ -88,19 +104,50 @@ public class Logger {
     this.handlers = handlers;
   }
 
+  /**
+   * Indicate that the minimum log level of a {@link LogHandler} may have changed, so all loggers
+   * should look at it again.
+   */
+  public static void invalidateLogLevels() {
+    logLevelsGeneration.incrementAndGet();
+  }
+
   public void debug(Throwable thrown) {
-    log(new LogMessage(Log.DEBUG, null, thrown, null));
+    if (isLoggable(Log.DEBUG)) {
+      log(new LogMessage(Log.DEBUG, null, thrown, null));
+    }
   }
 
   public void debug(String message, Throwable thrown) {
-    log(new LogMessage(Log.DEBUG, message, thrown, null));
+    if (isLoggable(Log.DEBUG)) {
+      log(new LogMessage(Log.DEBUG, message, thrown, null));
+    }
   }
 
   public void debug(String message, Object... args) {
-    log(new LogMessage(Log.DEBUG, String.format(message, args), null, null));
+    if (isLoggable(Log.DEBUG)) {
+      log(new LogMessage(Log.DEBUG, String.format(message, args), null, null));
+    }
+  }
+
+  /**
+   * Log the message produced by the given supplier, only if a message of the given level would be
+   * output by one of the handlers.
+   * <p>
+   * This should be used when building the message is expensive (serialization, concatenation of big
+   * strings, ...), so nothing is done when the message would be dropped anyway.
+   */
+  public void log(int level, @NonNull Function0<LogMessage> logMessageSupplier) {
+    if (isLoggable(level)) {
+      log(logMessageSupplier.invoke());
+    }
   }
 
   public void log(@NonNull LogMessage logMessage) {
+    if (!isLoggable(logMessage.getLevel())) {
+      return;
+    }
+
     int depth = logRecursionDepth.get();
     if (depth > 1) {
       return;
@@ -123,4 +170,54 @@ public class Logger {
     }
   }
 
+  /**
+   * Indicate if a message of the given level would be output by at least one of the handlers.
+   */
+  public boolean isLoggable(int level) {
+    return level >= getMinLogLevel();
+  }
+
+  private int getMinLogLevel() {
+    int generation = logLevelsGeneration.get();
+    LogLevelSnapshot snapshot = minLogLevelSnapshot;
+    if (snapshot != null && snapshot.generation == generation) {
+      return snapshot.minLogLevel;
+    }
+
+    // Getting handlers may instantiate them, which may log: the same recursion protection applies
+    int depth = logRecursionDepth.get();
+    if (depth > 1) {
+      return Integer.MAX_VALUE;
+    }
+
+    logRecursionDepth.set(depth + 1);
+    try {
+      int minLogLevel = Integer.MAX_VALUE;
+      for (LazyDependency<LogHandler> handler : handlers) {
+        minLogLevel = Math.min(minLogLevel, handler.get().getMinLogLevel());
+      }
+      minLogLevelSnapshot = new LogLevelSnapshot(generation, minLogLevel);
+      return minLogLevel;
+    } catch (Exception e) {
+      // A handler is not available yet: let the message go through and try again on next log
+      return Log.VERBOSE;
+    } finally {
+      if (depth == 0) {
+        logRecursionDepth.remove();
+      } else {
+        logRecursionDepth.set(depth);
+      }
+    }
+  }
+
+  private static class LogLevelSnapshot {
+    private final int generation;
+    private final int minLogLevel;
+
+    private LogLevelSnapshot(int generation, int minLogLevel) {
+      this.generation = generation;
+      this.minLogLevel = minLogLevel;
+    }
+  }
+
 }
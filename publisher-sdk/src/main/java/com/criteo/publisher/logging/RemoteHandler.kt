@@ -17,10 +17,12 @@
 package com.criteo.publisher.logging
 
 import android.os.Looper
+import android.util.Log
 import androidx.annotation.VisibleForTesting
 import com.criteo.publisher.SafeRunnable
 import com.criteo.publisher.annotation.OpenForTesting
 import com.criteo.publisher.csm.ConcurrentSendingQueue
+import com.criteo.publisher.logging.RemoteLogRecords.RemoteLogLevel
 import com.criteo.publisher.logging.RemoteLogRecords.RemoteLogLevel.Companion.fromAndroidLogLevel
 import com.criteo.publisher.model.Config
 import com.criteo.publisher.privacy.ConsentData
@@ -34,6 +36,20 @@ internal class RemoteHandler(
     private val executor: Executor,
     private val consentData: ConsentData
 ) : LogHandler {
+
+  /**
+   * The consent is not taken into account here because it can change without notice: it is only
+   * checked when actually logging.
+   */
+  override val minLogLevel: Int
+    get() = when (config.remoteLogLevel) {
+      RemoteLogLevel.DEBUG -> Log.DEBUG
+      RemoteLogLevel.INFO -> Log.INFO
+      RemoteLogLevel.WARNING -> Log.WARN
+      RemoteLogLevel.ERROR -> Log.ERROR
+      RemoteLogLevel.NONE -> Int.MAX_VALUE
+    }
+
   override fun log(tag: String, logMessage: LogMessage) {
     if (!consentData.isConsentGiven()) {
       return
@@ -30,6 +30,10 @@ internal interface RemoteLogSendingQueue : ConcurrentSendingQueue<RemoteLogRecor
 
     override fun poll(max: Int): List<RemoteLogRecords> = delegate.poll(max)
 
+    override fun poll(max: Int, maxBytes: Int): List<RemoteLogRecords> = delegate.poll(max, maxBytes)
+
+    override fun rollback(elements: List<RemoteLogRecords>) = delegate.rollback(elements)
+
     override val totalSize: Int
       get() = delegate.totalSize
   }
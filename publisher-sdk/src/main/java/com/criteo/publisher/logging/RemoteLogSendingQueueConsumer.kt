@@ -16,24 +16,51 @@
 
 package com.criteo.publisher.logging
 
-import com.criteo.publisher.SafeRunnable
 import com.criteo.publisher.annotation.OpenForTesting
 import com.criteo.publisher.csm.ConcurrentSendingQueue
+import com.criteo.publisher.csm.SendingQueueFlushScheduler
 import com.criteo.publisher.network.PubSdkApi
 import com.criteo.publisher.util.AdvertisingInfo
+import com.criteo.publisher.util.ApplicationStoppedListener
 import com.criteo.publisher.util.BuildConfigWrapper
 import java.util.concurrent.Executor
+import java.util.concurrent.ScheduledExecutorService
 
 @OpenForTesting
 internal class RemoteLogSendingQueueConsumer(
-    private val sendingQueue: ConcurrentSendingQueue<RemoteLogRecords>,
-    private val api: PubSdkApi,
-    private val buildConfigWrapper: BuildConfigWrapper,
-    private val advertisingInfo: AdvertisingInfo,
-    private val executor: Executor
-) {
+    sendingQueue: ConcurrentSendingQueue<RemoteLogRecords>,
+    api: PubSdkApi,
+    buildConfigWrapper: BuildConfigWrapper,
+    advertisingInfo: AdvertisingInfo,
+    executor: Executor,
+    scheduledExecutorService: ScheduledExecutorService
+) : ApplicationStoppedListener {
+
+  private val flushScheduler = SendingQueueFlushScheduler(
+      sendingQueue,
+      buildConfigWrapper.remoteLogFlushThresholdInBytes,
+      buildConfigWrapper,
+      executor,
+      scheduledExecutorService,
+      RemoteLogSendingTask(sendingQueue, api, buildConfigWrapper, advertisingInfo)
+  )
+
+  /**
+   * Send a batch of logs once there are enough of them, or after a max delay.
+   */
+  fun scheduleRemoteLogBatch() {
+    flushScheduler.requestFlush()
+  }
+
+  /**
+   * Send a batch of logs right away, unless one is already in flight or a failure is backed off.
+   */
   fun sendRemoteLogBatch() {
-    executor.execute(RemoteLogSendingTask(sendingQueue, api, buildConfigWrapper, advertisingInfo))
+    flushScheduler.flush()
+  }
+
+  override fun onApplicationStopped() {
+    sendRemoteLogBatch()
   }
 
   class RemoteLogSendingTask(
@@ -41,8 +68,8 @@ internal class RemoteLogSendingQueueConsumer(
       private val api: PubSdkApi,
       private val buildConfigWrapper: BuildConfigWrapper,
       private val advertisingInfo: AdvertisingInfo
-  ) : SafeRunnable() {
-    override fun runSafely() {
+  ) : SendingQueueFlushScheduler.BatchSender {
+    override fun sendBatch() {
       val remoteLogRecords = sendingQueue.poll(buildConfigWrapper.remoteLogBatchSize)
       if (remoteLogRecords.isEmpty()) {
         return
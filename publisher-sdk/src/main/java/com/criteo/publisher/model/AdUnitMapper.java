@@ -93,6 +93,20 @@ public class AdUnitMapper {
    * @return chunks of internal ad unit representations
    */
   public List<List<CacheAdUnit>> mapToChunks(@NonNull List<AdUnit> adUnits) {
+    return splitIntoChunks(mapToCacheAdUnits(adUnits), CHUNK_SIZE);
+  }
+
+  /**
+   * Transform the given valid {@link AdUnit} into internal {@link CacheAdUnit}, without grouping
+   * them into chunks.
+   * <p>
+   * Duplicated ad units are only returned once. See {@link #map(AdUnit)} for validity rules.
+   *
+   * @param adUnits to transform
+   * @return internal ad unit representations
+   */
+  @NonNull
+  public List<CacheAdUnit> mapToCacheAdUnits(@NonNull List<AdUnit> adUnits) {
     Set<CacheAdUnit> cacheAdUnits = new HashSet<>();
     for (AdUnit adUnit : adUnits) {
       if (adUnit == null) {
@@ -103,7 +117,7 @@ public class AdUnitMapper {
       CacheAdUnit cacheAdUnit = new CacheAdUnit(size, adUnit.getAdUnitId(), adUnit.getAdUnitType());
       cacheAdUnits.add(cacheAdUnit);
     }
-    return splitIntoChunks(filterInvalidCacheAdUnits(cacheAdUnits), CHUNK_SIZE);
+    return filterInvalidCacheAdUnits(cacheAdUnits);
   }
 
   @NonNull
@@ -16,6 +16,8 @@
 package com.criteo.publisher.model
 
 import com.criteo.publisher.annotation.OpenForTesting
+import com.criteo.publisher.context.ContextData
+import com.criteo.publisher.network.AbortSignal
 import com.criteo.publisher.privacy.gdpr.GdprData
 import com.squareup.moshi.Json
 import com.squareup.moshi.JsonClass
@@ -39,4 +41,41 @@ data class CdbRequest(
     val slots: List<CdbRequestSlot>,
     @Json(name = "regs")
     val regs: CdbRegs?
-)
+) {
+
+  /**
+   * Ad units requested by this request, indexed by the impression ID of their slot.
+   *
+   * This is kept on client-side only, so slots of the response can be mapped back to the exact ad
+   * unit that was requested.
+   */
+  @Transient
+  var adUnitsByImpressionId: Map<String, CacheAdUnit> = emptyMap()
+
+  /**
+   * Context data given by the publisher when this request was created.
+   *
+   * This is kept on client-side only, so bids of this request are refreshed in the same context.
+   */
+  @Transient
+  var contextData: ContextData = ContextData()
+
+  /**
+   * Signal aborting the HTTP exchange of this request, if it can be aborted.
+   *
+   * This is kept on client-side only, and is not propagated to the views of this request.
+   */
+  @Transient
+  var abortSignal: AbortSignal? = null
+
+  /**
+   * Create a view of this request, with the same ID, restricted to the given slots.
+   */
+  fun withSlots(slots: List<CdbRequestSlot>): CdbRequest {
+    val impressionIds = slots.map { it.impressionId }.toSet()
+    val request = copy(slots = slots)
+    request.adUnitsByImpressionId = adUnitsByImpressionId.filterKeys { it in impressionIds }
+    request.contextData = contextData
+    return request
+  }
+}
@@ -20,6 +20,8 @@ import static com.criteo.publisher.context.ContextUtil.toMap;
 import static com.criteo.publisher.util.TextUtils.getNotEmptyOrNullValue;
 
 import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
@@ -31,17 +33,19 @@ import com.criteo.publisher.integration.IntegrationRegistry;
 import com.criteo.publisher.privacy.UserPrivacyUtil;
 import com.criteo.publisher.util.AdvertisingInfo;
 import com.criteo.publisher.util.BuildConfigWrapper;
+import com.criteo.publisher.util.CompletableFuture;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class CdbRequestFactory {
+public class CdbRequestFactory implements OnSharedPreferenceChangeListener {
 
   @NonNull
   private final Context context;
@@ -79,6 +83,12 @@ public class CdbRequestFactory {
   @NonNull
   private final Config config;
 
+  @NonNull
+  private final AtomicInteger templateGeneration = new AtomicInteger();
+
+  @Nullable
+  private volatile CdbRequestTemplate template;
+
   public CdbRequestFactory(
       @NonNull Context context,
       @NonNull String criteoPublisherId,
@@ -112,6 +122,7 @@ public class CdbRequestFactory {
       @NonNull List<CacheAdUnit> requestedAdUnits,
       @NonNull ContextData contextData
   ) {
+    CdbRequestTemplate template = getTemplate();
     Map<String, Object> publisherExt = mergeToNestedMap(toMap(contextData));
 
     Publisher publisher = new Publisher(
@@ -128,45 +139,105 @@ public class CdbRequestFactory {
 
     User user = new User(
         advertisingInfo.getAdvertisingId(),
-        getNotEmptyOrNullValue(userPrivacyUtil.getIabUsPrivacyString()),
-        getNotEmptyOrNullValue(userPrivacyUtil.getUsPrivacyOptout()),
+        template.getUspIab(),
+        template.getUspOptout(),
         userExt
     );
 
-    return new CdbRequest(
+    Map<String, CacheAdUnit> adUnitsByImpressionId = new HashMap<>();
+
+    CdbRequest cdbRequest = new CdbRequest(
         uniqueIdGenerator.generateId(),
         publisher,
         user,
-        buildConfigWrapper.getSdkVersion(),
-        integrationRegistry.getProfileId(),
-        userPrivacyUtil.getGdprData(),
-        createRequestSlots(requestedAdUnits),
+        template.getSdkVersion(),
+        template.getProfileId(),
+        template.getGdprData(),
+        createRequestSlots(requestedAdUnits, adUnitsByImpressionId, template),
         createRegs()
     );
+
+    cdbRequest.setAdUnitsByImpressionId(adUnitsByImpressionId);
+    cdbRequest.setContextData(contextData);
+    return cdbRequest;
   }
 
   @NonNull
-  private List<CdbRequestSlot> createRequestSlots(List<CacheAdUnit> requestedAdUnits) {
+  private List<CdbRequestSlot> createRequestSlots(
+      List<CacheAdUnit> requestedAdUnits,
+      Map<String, CacheAdUnit> adUnitsByImpressionId,
+      CdbRequestTemplate template
+  ) {
     List<CdbRequestSlot> slots = new ArrayList<>();
     for (CacheAdUnit requestedAdUnit : requestedAdUnits) {
-      slots.add(createRequestSlot(requestedAdUnit));
+      CdbRequestSlot slot = createRequestSlot(requestedAdUnit, template);
+      adUnitsByImpressionId.put(slot.getImpressionId(), requestedAdUnit);
+      slots.add(slot);
     }
     return slots;
   }
 
   @NonNull
-  private CdbRequestSlot createRequestSlot(CacheAdUnit requestedAdUnit) {
+  private CdbRequestSlot createRequestSlot(
+      CacheAdUnit requestedAdUnit,
+      CdbRequestTemplate template
+  ) {
     return new CdbRequestSlot(
         uniqueIdGenerator.generateId(),
         requestedAdUnit.getPlacementId(),
         requestedAdUnit.getAdUnitType(),
         requestedAdUnit.getSize(),
-        getSupportedApiFrameworkList()
+        template.getSupportedApiFrameworks()
+    );
+  }
+
+  /**
+   * Invalidate the invariant parts of the requests, so they are computed again for the next one.
+   * <p>
+   * This factory listens to the shared preferences, where the consent strings, the integration and
+   * the remote config are stored, so any change there is taken into account by the next request.
+   */
+  @Override
+  public void onSharedPreferenceChanged(
+      @Nullable SharedPreferences sharedPreferences,
+      @Nullable String key
+  ) {
+    invalidateTemplate();
+  }
+
+  public void invalidateTemplate() {
+    templateGeneration.incrementAndGet();
+  }
+
+  /**
+   * Return the invariant parts of the requests, computed again only if they were invalidated.
+   * <p>
+   * A template computed concurrently with an invalidation keeps the generation it started with, so
+   * it is computed again by the next request.
+   */
+  @NonNull
+  private CdbRequestTemplate getTemplate() {
+    int generation = templateGeneration.get();
+    CdbRequestTemplate template = this.template;
+    if (template != null && template.getGeneration() == generation) {
+      return template;
+    }
+
+    template = new CdbRequestTemplate(
+        generation,
+        buildConfigWrapper.getSdkVersion(),
+        integrationRegistry.getProfileId(),
+        userPrivacyUtil.getGdprData(),
+        getNotEmptyOrNullValue(userPrivacyUtil.getIabUsPrivacyString()),
+        getNotEmptyOrNullValue(userPrivacyUtil.getUsPrivacyOptout()),
+        Collections.unmodifiableList(getSupportedApiFrameworkList())
     );
+    this.template = template;
+    return template;
   }
 
   @NonNull
-  public Future<String> getUserAgent() {
+  public CompletableFuture<String> getUserAgent() {
     return deviceInfo.getUserAgent();
   }
 
@@ -0,0 +1,35 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.model
+
+import com.criteo.publisher.privacy.gdpr.GdprData
+
+/**
+ * Parts of the bid requests that almost never change: they are computed once, and then shared by
+ * all the requests until a change invalidates them.
+ *
+ * @param generation generation of the invalidations this template was computed in
+ */
+internal class CdbRequestTemplate(
+    val generation: Int,
+    val sdkVersion: String,
+    val profileId: Int,
+    val gdprData: GdprData?,
+    val uspIab: String?,
+    val uspOptout: String?,
+    val supportedApiFrameworks: List<ApiFramework>
+)
@@ -18,20 +18,10 @@ package com.criteo.publisher.model;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import com.criteo.publisher.logging.Logger;
-import com.criteo.publisher.logging.LoggerFactory;
-import java.util.ArrayList;
 import java.util.List;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 
 public class CdbResponse {
 
-  private static final String TIME_TO_NEXT_CALL = "timeToNextCall";
-  private static final String SLOTS = "slots";
-  private static final String CONSENT_GIVEN = "consentGiven";
-
   @NonNull
   private final List<CdbResponseSlot> slots;
 
@@ -50,50 +40,6 @@ public class CdbResponse {
     this.consentGiven = consentGiven;
   }
 
-  @NonNull
-  public static CdbResponse fromJson(@NonNull JSONObject json) {
-    Logger logger = LoggerFactory.getLogger(CdbResponse.class);
-
-    int timeToNextCall = 0;
-    List<CdbResponseSlot> slots = new ArrayList<>();
-
-    if (json.has(TIME_TO_NEXT_CALL)) {
-      try {
-        timeToNextCall = json.getInt(TIME_TO_NEXT_CALL);
-      } catch (JSONException ex) {
-        logger.debug("Exception while reading cdb time to next call" + ex.getMessage());
-      }
-    }
-
-    if (json.has(SLOTS)) {
-      JSONArray array = new JSONArray();
-      try {
-        array = json.getJSONArray(SLOTS);
-      } catch (JSONException ex) {
-        logger.debug("Exception while reading slots array", ex);
-      }
-      for (int i = 0; i < array.length(); i++) {
-        try {
-          JSONObject slotStr = array.getJSONObject(i);
-          slots.add(CdbResponseSlot.fromJson(slotStr));
-        } catch (Exception ex) {
-          logger.debug("Exception while reading slot from slots array", ex);
-        }
-      }
-    }
-
-    Boolean consentGiven = null;
-    if (json.has(CONSENT_GIVEN)) {
-      try {
-        consentGiven = json.getBoolean(CONSENT_GIVEN);
-      } catch (JSONException ex) {
-        logger.debug("Exception while reading consentGiven", ex);
-      }
-    }
-
-    return new CdbResponse(slots, timeToNextCall, consentGiven);
-  }
-
   @NonNull
   public List<CdbResponseSlot> getSlots() {
     return slots;
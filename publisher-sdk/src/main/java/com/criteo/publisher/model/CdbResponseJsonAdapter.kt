@@ -0,0 +1,140 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.model
+
+import com.criteo.publisher.logging.LoggerFactory
+import com.squareup.moshi.JsonAdapter
+import com.squareup.moshi.JsonReader
+import com.squareup.moshi.JsonWriter
+import com.squareup.moshi.Types
+
+/**
+ * Read [CdbResponse] straight from the stream of the HTTP response.
+ *
+ * This is lenient: invalid top-level values are ignored, and a slot that can not be read is skipped
+ * without affecting the other ones. To do so, each slot is read
+ * from a peeked reader sharing the same buffer, and then skipped in the main reader, which does not
+ * allocate anything.
+ */
+internal class CdbResponseJsonAdapter(
+    private val slotAdapter: JsonAdapter<CdbResponseSlot>
+) : JsonAdapter<CdbResponse>() {
+
+  private val logger = LoggerFactory.getLogger(CdbResponseJsonAdapter::class.java)
+
+  override fun fromJson(reader: JsonReader): CdbResponse {
+    var timeToNextCall = 0
+    val slots = mutableListOf<CdbResponseSlot>()
+    var consentGiven: Boolean? = null
+
+    reader.beginObject()
+    while (reader.hasNext()) {
+      when (reader.selectName(OPTIONS)) {
+        0 -> timeToNextCall = readTimeToNextCall(reader)
+        1 -> readSlots(reader, slots)
+        2 -> consentGiven = readConsentGiven(reader)
+        else -> {
+          reader.skipName()
+          reader.skipValue()
+        }
+      }
+    }
+    reader.endObject()
+
+    return CdbResponse(slots, timeToNextCall, consentGiven)
+  }
+
+  private fun readTimeToNextCall(reader: JsonReader): Int {
+    return when (reader.peek()) {
+      JsonReader.Token.NUMBER -> try {
+        reader.nextInt()
+      } catch (e: Exception) {
+        logger.debug("Exception while reading cdb time to next call", e)
+        reader.skipValue()
+        0
+      }
+      JsonReader.Token.STRING -> reader.nextString().toIntOrNull() ?: 0
+      else -> {
+        reader.skipValue()
+        0
+      }
+    }
+  }
+
+  private fun readSlots(reader: JsonReader, slots: MutableList<CdbResponseSlot>) {
+    if (reader.peek() != JsonReader.Token.BEGIN_ARRAY) {
+      logger.debug("Exception while reading slots array: ${reader.peek()} at ${reader.path}")
+      reader.skipValue()
+      return
+    }
+
+    reader.beginArray()
+    while (reader.hasNext()) {
+      try {
+        slotAdapter.fromJson(reader.peekJson())?.let { slots += it }
+      } catch (e: Exception) {
+        logger.debug("Exception while reading slot from slots array", e)
+      }
+      reader.skipValue()
+    }
+    reader.endArray()
+  }
+
+  private fun readConsentGiven(reader: JsonReader): Boolean? {
+    return when (reader.peek()) {
+      JsonReader.Token.BOOLEAN -> reader.nextBoolean()
+      JsonReader.Token.STRING -> reader.nextString().lowercase().toBooleanStrictOrNull()
+      else -> {
+        reader.skipValue()
+        null
+      }
+    }
+  }
+
+  override fun toJson(writer: JsonWriter, value: CdbResponse?) {
+    if (value == null) {
+      writer.nullValue()
+      return
+    }
+
+    writer.beginObject()
+    writer.name("timeToNextCall").value(value.timeToNextCall)
+    writer.name("slots")
+    writer.beginArray()
+    value.slots.forEach { slotAdapter.toJson(writer, it) }
+    writer.endArray()
+    writer.name("consentGiven").value(value.consentGiven)
+    writer.endObject()
+  }
+
+  override fun toString(): String {
+    return "JsonAdapter(CdbResponse)"
+  }
+
+  companion object {
+    private val OPTIONS = JsonReader.Options.of("timeToNextCall", "slots", "consentGiven")
+
+    @JvmField
+    val FACTORY = JsonAdapter.Factory { type, annotations, moshi ->
+      if (annotations.isEmpty() && Types.getRawType(type) == CdbResponse::class.java) {
+        CdbResponseJsonAdapter(moshi.adapter(CdbResponseSlot::class.java))
+      } else {
+        null
+      }
+    }
+  }
+}
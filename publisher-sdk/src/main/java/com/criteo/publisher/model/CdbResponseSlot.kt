@@ -79,8 +79,15 @@ data class CdbResponseSlot(
     }
   }
 
+  /**
+   * Client-side instant (in milliseconds) from which this bid is expired.
+   *
+   * @see isExpired
+   */
+  val expiryTimeInMillis: Long
+    get() = ttlInSeconds * SECOND_TO_MILLI + timeOfDownload
+
   fun isExpired(clock: Clock): Boolean {
-    val expiryTimeMillis: Long = ttlInSeconds * SECOND_TO_MILLI + timeOfDownload
-    return expiryTimeMillis <= clock.currentTimeInMillis
+    return expiryTimeInMillis <= clock.currentTimeInMillis
   }
 }
@@ -54,6 +54,7 @@ public class Config {
     public static final RemoteLogLevel REMOTE_LOG_LEVEL = RemoteLogLevel.WARNING;
     public static final boolean IS_MRAID_ENABLED = false;
     public static final boolean IS_MRAID2_ENABLED = false;
+    public static final boolean IS_REQUEST_COMPRESSION_ENABLED = false;
 
   }
 
@@ -166,12 +167,17 @@ public class Config {
         getOrElse(
             overrideRemoteConfig.isMraid2Enabled(),
             baseRemoteConfig.isMraid2Enabled()
+        ),
+        getOrElse(
+            overrideRemoteConfig.isRequestCompressionEnabled(),
+            baseRemoteConfig.isRequestCompressionEnabled()
         )
     );
   }
 
   public void refreshConfig(@NonNull RemoteConfigResponse response) {
     cachedRemoteConfig = mergeRemoteConfig(cachedRemoteConfig, response);
+    Logger.invalidateLogLevels(); // The remote log level may have changed
     persistRemoteConfig(cachedRemoteConfig);
   }
 
@@ -302,4 +308,15 @@ public class Config {
         DefaultConfig.IS_MRAID2_ENABLED
     );
   }
+
+  /**
+   * Return <code>true</code> to indicate if payloads sent to CDB, CSM and remote logs should be
+   * compressed with gzip, <code>false</code> otherwise.
+   */
+  public boolean isRequestCompressionEnabled() {
+    return getOrElse(
+        cachedRemoteConfig.isRequestCompressionEnabled(),
+        DefaultConfig.IS_REQUEST_COMPRESSION_ENABLED
+    );
+  }
 }
@@ -29,7 +29,6 @@ import com.criteo.publisher.logging.LoggerFactory;
 import com.criteo.publisher.util.CompletableFuture;
 import com.criteo.publisher.util.PreconditionsUtil;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class DeviceInfo {
@@ -68,7 +67,7 @@ public class DeviceInfo {
   }
 
   @NonNull
-  public Future<String> getUserAgent() {
+  public CompletableFuture<String> getUserAgent() {
     // Initialize automatically so that it's safe to call this method alone.
     initialize();
 
@@ -151,7 +151,15 @@ data class RemoteConfigResponse(
      * Feature flag that indicates if we should send in [CdbRequest.slots] that we support MRAID v2 spec
      */
     @Json(name = "mraid2Enabled")
-    val isMraid2Enabled: Boolean? = null
+    val isMraid2Enabled: Boolean? = null,
+
+    /**
+     * Feature flag for compressing with gzip the payloads sent to CDB, CSM and remote logs. If the flag is not
+     * present (i.e. equals to `null`), then the previous persisted value of this flag is taken. If there is no
+     * previous value, this means that this is a fresh start of a new application, then a default value is taken.
+     */
+    @Json(name = "requestCompressionEnabled")
+    val isRequestCompressionEnabled: Boolean? = null
 ) {
 
   fun withKillSwitch(killSwitch: Boolean?): RemoteConfigResponse {
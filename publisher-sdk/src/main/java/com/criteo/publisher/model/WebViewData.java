@@ -18,6 +18,7 @@ package com.criteo.publisher.model;
 
 import androidx.annotation.NonNull;
 import com.criteo.publisher.DependencyProvider;
+import com.criteo.publisher.concurrent.Lane;
 import com.criteo.publisher.network.PubSdkApi;
 import com.criteo.publisher.tasks.InterstitialListenerNotifier;
 import com.criteo.publisher.tasks.WebViewDataTask;
@@ -85,7 +86,9 @@ public class WebViewData {
       @NonNull DeviceInfo deviceInfo,
       @NonNull InterstitialListenerNotifier listenerNotifier
   ) {
-    Executor threadPoolExecutor = DependencyProvider.getInstance().provideThreadPoolExecutor();
+    Executor creativeExecutor = DependencyProvider.getInstance()
+        .provideSdkScheduler()
+        .executorFor(Lane.CREATIVE);
 
     Runnable task = new WebViewDataTask(
         displayUrl,
@@ -95,6 +98,10 @@ public class WebViewData {
         api
     );
 
-    threadPoolExecutor.execute(task);
+    // The download is only started once the user agent is known, so it never holds a thread
+    // waiting for it
+    deviceInfo.getUserAgent().whenComplete((userAgent, exception) -> {
+      creativeExecutor.execute(task);
+    });
   }
 }
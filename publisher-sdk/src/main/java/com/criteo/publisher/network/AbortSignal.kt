@@ -0,0 +1,94 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network
+
+import androidx.annotation.GuardedBy
+import java.io.IOException
+import java.net.HttpURLConnection
+
+/**
+ * Signal aborting an HTTP exchange from another thread.
+ *
+ * The exchange registers its connection while it is in flight. Aborting the signal disconnects it,
+ * so blocked reads and writes fail instead of waiting for the network timeout. If the signal was
+ * already aborted when the connection is registered, the connection is disconnected right away.
+ */
+class AbortSignal {
+
+  private val lock = Any()
+
+  @GuardedBy("lock")
+  private var isAborted = false
+
+  @GuardedBy("lock")
+  private var isTimeBudgetExceeded = false
+
+  @GuardedBy("lock")
+  private var connection: HttpURLConnection? = null
+
+  /**
+   * Abort the exchange, if it was not already.
+   *
+   * @param isTimeBudgetExceeded `true` if the exchange is aborted because it took too long
+   */
+  fun abort(isTimeBudgetExceeded: Boolean) {
+    val connection = synchronized(lock) {
+      if (isAborted) {
+        return
+      }
+      isAborted = true
+      this.isTimeBudgetExceeded = isTimeBudgetExceeded
+      connection.also { connection = null }
+    }
+
+    connection?.disconnect()
+  }
+
+  fun register(connection: HttpURLConnection) {
+    val isAborted = synchronized(lock) {
+      if (!isAborted) {
+        this.connection = connection
+      }
+      isAborted
+    }
+
+    if (isAborted) {
+      connection.disconnect()
+    }
+  }
+
+  /**
+   * Return the given failure of the exchange as a [CdbCallAbortedException] if this signal was
+   * aborted, so it is not mistaken for a network error. Otherwise, return it unchanged.
+   */
+  fun onFailure(exception: IOException): IOException {
+    val isTimeBudgetExceeded = synchronized(lock) {
+      if (!isAborted) {
+        return exception
+      }
+      isTimeBudgetExceeded
+    }
+
+    return CdbCallAbortedException(isTimeBudgetExceeded, exception)
+  }
+
+  fun unregister() {
+    synchronized(lock) {
+      connection = null
+    }
+  }
+}
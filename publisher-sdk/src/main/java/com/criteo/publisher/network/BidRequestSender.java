@@ -18,10 +18,13 @@ package com.criteo.publisher.network;
 
 import androidx.annotation.GuardedBy;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import com.criteo.publisher.CdbCallListener;
 import com.criteo.publisher.Clock;
 import com.criteo.publisher.SafeRunnable;
+import com.criteo.publisher.concurrent.AsyncResources;
+import com.criteo.publisher.concurrent.AsyncResources.AsyncResource;
 import com.criteo.publisher.context.ContextData;
 import com.criteo.publisher.model.CacheAdUnit;
 import com.criteo.publisher.model.CdbRequestFactory;
@@ -29,6 +32,8 @@ import com.criteo.publisher.model.Config;
 import com.criteo.publisher.model.RemoteConfigRequest;
 import com.criteo.publisher.model.RemoteConfigRequestFactory;
 import com.criteo.publisher.model.RemoteConfigResponse;
+import com.criteo.publisher.network.CdbCall.Caller;
+import com.criteo.publisher.util.BuildConfigWrapper;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -38,6 +43,9 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import kotlin.Unit;
 
 public class BidRequestSender {
 
@@ -56,23 +64,45 @@ public class BidRequestSender {
   @NonNull
   private final Executor executor;
 
+  @NonNull
+  private final ScheduledExecutorService scheduledExecutorService;
+
+  @NonNull
+  private final BuildConfigWrapper buildConfigWrapper;
+
+  @NonNull
+  private final AsyncResources asyncResources;
+
   @NonNull
   @GuardedBy("pendingTasksLock")
   private final Map<CacheAdUnit, Future<?>> pendingTasks;
   private final Object pendingTasksLock = new Object();
 
+  /**
+   * Batch collecting the enqueued ad units until it is sent, or <code>null</code> if there is none.
+   */
+  @Nullable
+  @GuardedBy("pendingTasksLock")
+  private Batch openBatch;
+
   public BidRequestSender(
       @NonNull CdbRequestFactory cdbRequestFactory,
       @NonNull RemoteConfigRequestFactory remoteConfigRequestFactory,
       @NonNull Clock clock,
       @NonNull PubSdkApi api,
-      @NonNull Executor executor
+      @NonNull Executor executor,
+      @NonNull ScheduledExecutorService scheduledExecutorService,
+      @NonNull BuildConfigWrapper buildConfigWrapper,
+      @NonNull AsyncResources asyncResources
   ) {
     this.cdbRequestFactory = cdbRequestFactory;
     this.remoteConfigRequestFactory = remoteConfigRequestFactory;
     this.clock = clock;
     this.api = api;
     this.executor = executor;
+    this.scheduledExecutorService = scheduledExecutorService;
+    this.buildConfigWrapper = buildConfigWrapper;
+    this.asyncResources = asyncResources;
     this.pendingTasks = new ConcurrentHashMap<>();
   }
 
@@ -102,6 +132,8 @@ public class BidRequestSender {
    * (successful or not). While an ad unit is pending, it cannot be requested again. So if in given
    * ones, some are pending, they will be ignored from the request. If all given ad units are
    * pending, then no call is done and listener is not notified.
+   * <p>
+   * The same ad unit may be given many times to request many bids for it in a single call.
    *
    * @param adUnits ad units to request
    * @param listener listener to notify
@@ -120,33 +152,116 @@ public class BidRequestSender {
         return;
       }
 
-      task = createCdbCallTask(requestedAdUnits, contextData, listener);
+      CdbCall cdbCall = new CdbCall(
+          api,
+          cdbRequestFactory,
+          clock,
+          requestedAdUnits,
+          contextData,
+          listener
+      );
+      task = createCdbCallTask(cdbCall, requestedAdUnits);
 
       for (CacheAdUnit requestedAdUnit : requestedAdUnits) {
         pendingTasks.put(requestedAdUnit, task);
       }
     }
 
-    try {
-      executor.execute(task);
-      task = null;
-    } finally {
-      if (task != null) {
-        // If an exception was thrown when scheduling the task, then we remove the ad unit from the
-        // pending tasks.
-        removePendingTasksWithAdUnits(requestedAdUnits);
+    executeCdbCallTask(task, requestedAdUnits);
+  }
+
+  /**
+   * Asynchronously send a bid request with the given requested ad units, possibly coalesced with
+   * ad units enqueued by other callers.
+   * <p>
+   * Ad units enqueued with the same context data within the batching window (see {@link
+   * BuildConfigWrapper#getBidRequestBatchingWindowInMillis()}) are sent in a single bid request.
+   * The request is sent earlier if it reaches its maximum size (see {@link
+   * BuildConfigWrapper#getBidRequestBatchMaxAdUnitCount()}). Each listener is only notified about
+   * its own ad units, as if they were sent alone.
+   * <p>
+   * Enqueued ad units are pending as soon as they are enqueued. See {@link #sendBidRequest(List,
+   * ContextData, CdbCallListener)} for how pending ad units are handled. If batching is disabled,
+   * this is equivalent to {@link #sendBidRequest(List, ContextData, CdbCallListener)}.
+   *
+   * @param adUnits ad units to request
+   * @param listener listener to notify
+   */
+  public void enqueueBidRequest(
+      @NonNull List<CacheAdUnit> adUnits,
+      @NonNull ContextData contextData,
+      @NonNull CdbCallListener listener
+  ) {
+    int batchingWindowInMillis = buildConfigWrapper.getBidRequestBatchingWindowInMillis();
+    if (batchingWindowInMillis <= 0) {
+      sendBidRequest(adUnits, contextData, listener);
+      return;
+    }
+
+    int maxAdUnitCount = buildConfigWrapper.getBidRequestBatchMaxAdUnitCount();
+    List<CacheAdUnit> requestedAdUnits = new ArrayList<>(adUnits);
+    List<Batch> batchesToSend = new ArrayList<>();
+
+    synchronized (pendingTasksLock) {
+      requestedAdUnits.removeAll(pendingTasks.keySet());
+      if (requestedAdUnits.isEmpty()) {
+        return;
+      }
+
+      if (openBatch != null && !openBatch.canAccept(contextData, requestedAdUnits, maxAdUnitCount)) {
+        batchesToSend.add(openBatch);
+        openBatch = null;
+      }
+
+      if (openBatch == null) {
+        openBatch = new Batch(contextData);
+        openBatch.arm(batchingWindowInMillis);
+      }
+
+      openBatch.add(requestedAdUnits, listener);
+      for (CacheAdUnit requestedAdUnit : requestedAdUnits) {
+        pendingTasks.put(requestedAdUnit, openBatch.task);
+      }
+
+      if (openBatch.requestedAdUnits.size() >= maxAdUnitCount) {
+        batchesToSend.add(openBatch);
+        openBatch = null;
       }
     }
+
+    for (Batch batch : batchesToSend) {
+      batch.send();
+    }
+  }
+
+  /**
+   * Execute the given task once the user agent is known, so that it never holds a thread while
+   * waiting for it.
+   */
+  private void executeCdbCallTask(
+      @NonNull FutureTask<Void> task,
+      @NonNull List<CacheAdUnit> requestedAdUnits
+  ) {
+    cdbRequestFactory.getUserAgent().whenComplete((userAgent, exception) -> {
+      boolean isExecuted = false;
+      try {
+        executor.execute(task);
+        isExecuted = true;
+      } finally {
+        if (!isExecuted) {
+          // If an exception was thrown when scheduling the task, then we remove the ad unit from
+          // the pending tasks.
+          removePendingTasksWithAdUnits(requestedAdUnits);
+        }
+      }
+    });
   }
 
   @NonNull
   private FutureTask<Void> createCdbCallTask(
-      @NonNull List<CacheAdUnit> requestedAdUnits,
-      @NonNull ContextData contextData,
-      @NonNull CdbCallListener listener
+      @NonNull CdbCall task,
+      @NonNull List<CacheAdUnit> requestedAdUnits
   ) {
-    CdbCall task = new CdbCall(api, cdbRequestFactory, clock, requestedAdUnits, contextData, listener);
-
     Runnable withRemovedPendingTasksAfterExecution = new Runnable() {
       @Override
       public void run() {
@@ -172,6 +287,11 @@ public class BidRequestSender {
    */
   public void cancelAllPendingTasks() {
     synchronized (pendingTasksLock) {
+      if (openBatch != null) {
+        openBatch.disarm();
+        openBatch = null;
+      }
+
       for (Future<?> task : pendingTasks.values()) {
         task.cancel(true);
       }
@@ -179,6 +299,102 @@ public class BidRequestSender {
     }
   }
 
+  /**
+   * Ad units enqueued by many callers, to send in a single bid request.
+   * <p>
+   * While the batch is open, it is tracked as an async resource, so it is not forgotten when waiting
+   * for all the async operations to finish.
+   */
+  private class Batch {
+
+    @NonNull
+    private final ContextData contextData;
+
+    @NonNull
+    private final List<CacheAdUnit> requestedAdUnits = new ArrayList<>();
+
+    @NonNull
+    private final List<Caller> callers = new ArrayList<>();
+
+    @NonNull
+    private final FutureTask<Void> task;
+
+    @Nullable
+    private Future<?> timer;
+
+    @Nullable
+    private AsyncResource resource;
+
+    private Batch(@NonNull ContextData contextData) {
+      this.contextData = contextData;
+      CdbCall cdbCall = new CdbCall(api, cdbRequestFactory, clock, callers, contextData);
+      this.task = createCdbCallTask(cdbCall, requestedAdUnits);
+    }
+
+    private boolean canAccept(
+        @NonNull ContextData contextData,
+        @NonNull List<CacheAdUnit> adUnits,
+        int maxAdUnitCount
+    ) {
+      return this.contextData.equals(contextData)
+          && requestedAdUnits.size() + adUnits.size() <= maxAdUnitCount;
+    }
+
+    private void add(@NonNull List<CacheAdUnit> adUnits, @NonNull CdbCallListener listener) {
+      requestedAdUnits.addAll(adUnits);
+      callers.add(new Caller(adUnits, listener));
+    }
+
+    @GuardedBy("pendingTasksLock")
+    private void arm(int batchingWindowInMillis) {
+      asyncResources.newResource(resource -> {
+        this.resource = resource;
+        this.timer = scheduledExecutorService.schedule(
+            new SafeRunnable() {
+              @Override
+              public void runSafely() {
+                onWindowElapsed();
+              }
+            },
+            batchingWindowInMillis,
+            TimeUnit.MILLISECONDS
+        );
+        return Unit.INSTANCE;
+      });
+    }
+
+    private void onWindowElapsed() {
+      synchronized (pendingTasksLock) {
+        if (openBatch != this) {
+          // Already sent because it was full, or cancelled.
+          return;
+        }
+        openBatch = null;
+      }
+      send();
+    }
+
+    private void send() {
+      try {
+        executeCdbCallTask(task, requestedAdUnits);
+      } finally {
+        disarm();
+      }
+    }
+
+    private void disarm() {
+      Future<?> timer = this.timer;
+      if (timer != null) {
+        timer.cancel(false);
+      }
+
+      AsyncResource resource = this.resource;
+      if (resource != null) {
+        resource.release();
+      }
+    }
+  }
+
   private class RemoteConfigCall extends SafeRunnable {
 
     @NonNull
@@ -17,6 +17,7 @@
 package com.criteo.publisher.network;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import com.criteo.publisher.CdbCallListener;
 import com.criteo.publisher.Clock;
 import com.criteo.publisher.SafeRunnable;
@@ -24,11 +25,22 @@ import com.criteo.publisher.context.ContextData;
 import com.criteo.publisher.model.CacheAdUnit;
 import com.criteo.publisher.model.CdbRequest;
 import com.criteo.publisher.model.CdbRequestFactory;
+import com.criteo.publisher.model.CdbRequestSlot;
 import com.criteo.publisher.model.CdbResponse;
 import com.criteo.publisher.model.CdbResponseSlot;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 
+/**
+ * Bid request sent to CDB on behalf of one or many callers.
+ * <p>
+ * When many callers are coalesced in a single call, each of them is notified with a view of the
+ * request restricted to the slots of its own ad units, and with the response slots answering them.
+ */
 class CdbCall extends SafeRunnable {
 
   @NonNull
@@ -41,13 +53,13 @@ class CdbCall extends SafeRunnable {
   private final Clock clock;
 
   @NonNull
-  private final List<CacheAdUnit> requestedAdUnits;
+  private final List<Caller> callers;
 
   @NonNull
   private final ContextData contextData;
 
-  @NonNull
-  private final CdbCallListener listener;
+  @Nullable
+  private final AbortSignal abortSignal;
 
   CdbCall(
       @NonNull PubSdkApi pubSdkApi,
@@ -56,29 +68,151 @@ class CdbCall extends SafeRunnable {
       @NonNull List<CacheAdUnit> requestedAdUnits,
       @NonNull ContextData contextData,
       @NonNull CdbCallListener listener
+  ) {
+    this(pubSdkApi, cdbRequestFactory, clock, requestedAdUnits, contextData, listener, null);
+  }
+
+  CdbCall(
+      @NonNull PubSdkApi pubSdkApi,
+      @NonNull CdbRequestFactory cdbRequestFactory,
+      @NonNull Clock clock,
+      @NonNull List<CacheAdUnit> requestedAdUnits,
+      @NonNull ContextData contextData,
+      @NonNull CdbCallListener listener,
+      @Nullable AbortSignal abortSignal
+  ) {
+    this(
+        pubSdkApi,
+        cdbRequestFactory,
+        clock,
+        Collections.singletonList(new Caller(requestedAdUnits, listener)),
+        contextData,
+        abortSignal
+    );
+  }
+
+  CdbCall(
+      @NonNull PubSdkApi pubSdkApi,
+      @NonNull CdbRequestFactory cdbRequestFactory,
+      @NonNull Clock clock,
+      @NonNull List<Caller> callers,
+      @NonNull ContextData contextData
+  ) {
+    this(pubSdkApi, cdbRequestFactory, clock, callers, contextData, null);
+  }
+
+  private CdbCall(
+      @NonNull PubSdkApi pubSdkApi,
+      @NonNull CdbRequestFactory cdbRequestFactory,
+      @NonNull Clock clock,
+      @NonNull List<Caller> callers,
+      @NonNull ContextData contextData,
+      @Nullable AbortSignal abortSignal
   ) {
     this.pubSdkApi = pubSdkApi;
     this.cdbRequestFactory = cdbRequestFactory;
     this.clock = clock;
-    this.requestedAdUnits = requestedAdUnits;
+    this.callers = callers;
     this.contextData = contextData;
-    this.listener = listener;
+    this.abortSignal = abortSignal;
   }
 
   @Override
   public void runSafely() throws ExecutionException, InterruptedException {
+    List<CacheAdUnit> requestedAdUnits = new ArrayList<>();
+    for (Caller caller : callers) {
+      requestedAdUnits.addAll(caller.requestedAdUnits);
+    }
+
     CdbRequest cdbRequest = cdbRequestFactory.createRequest(requestedAdUnits, contextData);
+    if (abortSignal != null) {
+      cdbRequest.setAbortSignal(abortSignal);
+    }
+    // This does not block: calls are only executed once the user agent is known
     String userAgent = cdbRequestFactory.getUserAgent().get();
 
-    listener.onCdbRequest(cdbRequest);
+    List<CdbRequest> callerRequests = splitRequest(cdbRequest);
+    for (int i = 0; i < callers.size(); i++) {
+      callers.get(i).listener.onCdbRequest(callerRequests.get(i));
+    }
 
+    CdbResponse cdbResponse;
     try {
-      CdbResponse cdbResponse = pubSdkApi.loadCdb(cdbRequest, userAgent);
+      cdbResponse = pubSdkApi.loadCdb(cdbRequest, userAgent);
       setTimeOfDownload(cdbResponse);
-      listener.onCdbResponse(cdbRequest, cdbResponse);
     } catch (Exception e) {
-      listener.onCdbError(cdbRequest, e);
+      for (int i = 0; i < callers.size(); i++) {
+        callers.get(i).listener.onCdbError(callerRequests.get(i), e);
+      }
+      return;
+    }
+
+    List<CdbResponse> callerResponses = splitResponse(cdbResponse, callerRequests);
+    for (int i = 0; i < callers.size(); i++) {
+      callers.get(i).listener.onCdbResponse(callerRequests.get(i), callerResponses.get(i));
+    }
+  }
+
+  /**
+   * Split the given request into one view per caller, following the order of the requested ad
+   * units: slots are created in the same order.
+   */
+  @NonNull
+  private List<CdbRequest> splitRequest(@NonNull CdbRequest cdbRequest) {
+    if (callers.size() == 1) {
+      return Collections.singletonList(cdbRequest);
     }
+
+    List<CdbRequest> callerRequests = new ArrayList<>(callers.size());
+    List<CdbRequestSlot> slots = cdbRequest.getSlots();
+    int from = 0;
+    for (Caller caller : callers) {
+      int to = Math.min(from + caller.requestedAdUnits.size(), slots.size());
+      callerRequests.add(cdbRequest.withSlots(slots.subList(from, to)));
+      from = to;
+    }
+    return callerRequests;
+  }
+
+  /**
+   * Split the given response into one per caller, by matching the impression ID of the slots.
+   * <p>
+   * Slots that do not match any requested impression are given to the first caller, so they are
+   * still processed once.
+   */
+  @NonNull
+  private List<CdbResponse> splitResponse(
+      @NonNull CdbResponse cdbResponse,
+      @NonNull List<CdbRequest> callerRequests
+  ) {
+    if (callers.size() == 1) {
+      return Collections.singletonList(cdbResponse);
+    }
+
+    Map<String, Integer> callerIndexByImpressionId = new HashMap<>();
+    List<List<CdbResponseSlot>> callerSlots = new ArrayList<>(callers.size());
+    for (int i = 0; i < callerRequests.size(); i++) {
+      for (CdbRequestSlot requestSlot : callerRequests.get(i).getSlots()) {
+        callerIndexByImpressionId.put(requestSlot.getImpressionId(), i);
+      }
+      callerSlots.add(new ArrayList<>());
+    }
+
+    for (CdbResponseSlot slot : cdbResponse.getSlots()) {
+      String impressionId = slot.getImpressionId();
+      Integer callerIndex = impressionId == null ? null : callerIndexByImpressionId.get(impressionId);
+      callerSlots.get(callerIndex == null ? 0 : callerIndex).add(slot);
+    }
+
+    List<CdbResponse> callerResponses = new ArrayList<>(callers.size());
+    for (List<CdbResponseSlot> slots : callerSlots) {
+      callerResponses.add(new CdbResponse(
+          slots,
+          cdbResponse.getTimeToNextCall(),
+          cdbResponse.getConsentGiven()
+      ));
+    }
+    return callerResponses;
   }
 
   private void setTimeOfDownload(@NonNull CdbResponse cdbResponse) {
@@ -87,4 +221,21 @@ class CdbCall extends SafeRunnable {
       slot.setTimeOfDownload(instant);
     }
   }
+
+  /**
+   * Ad units requested by a single caller, and the listener to notify about them.
+   */
+  static class Caller {
+
+    @NonNull
+    private final List<CacheAdUnit> requestedAdUnits;
+
+    @NonNull
+    private final CdbCallListener listener;
+
+    Caller(@NonNull List<CacheAdUnit> requestedAdUnits, @NonNull CdbCallListener listener) {
+      this.requestedAdUnits = requestedAdUnits;
+      this.listener = listener;
+    }
+  }
 }
@@ -0,0 +1,39 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network
+
+import java.io.InterruptedIOException
+
+/**
+ * Failure of a CDB call aborted through its [AbortSignal].
+ *
+ * Aborting disconnects the HTTP exchange, which surfaces as a plain [java.io.IOException]. It is
+ * reported as this exception instead, so listeners can tell an aborted call from a network error.
+ *
+ * @property isTimeBudgetExceeded `true` if the call was aborted because it exceeded its time budget,
+ * `false` if it was cancelled for another reason, such as the application going to background
+ */
+class CdbCallAbortedException(
+    val isTimeBudgetExceeded: Boolean,
+    cause: Throwable?
+) : InterruptedIOException(
+    if (isTimeBudgetExceeded) "CDB call exceeded its time budget" else "CDB call was cancelled"
+) {
+  init {
+    initCause(cause)
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network
+
+import androidx.annotation.GuardedBy
+import com.criteo.publisher.Clock
+import com.criteo.publisher.annotation.OpenForTesting
+import com.criteo.publisher.bid.BidLifecycleListener
+import com.criteo.publisher.context.ConnectionTypeFetcher
+import com.criteo.publisher.context.ConnectionTypeFetcher.ConnectionType
+import com.criteo.publisher.model.CacheAdUnit
+import com.criteo.publisher.model.CdbRequest
+import com.criteo.publisher.model.CdbResponse
+import com.criteo.publisher.model.CdbResponseSlot
+import com.criteo.publisher.model.Config
+import com.criteo.publisher.util.BuildConfigWrapper
+import java.io.InterruptedIOException
+import java.util.concurrent.ConcurrentHashMap
+import kotlin.math.ceil
+
+/**
+ * Keep track of the latency of the recent CDB calls, per connection type.
+ *
+ * Each connection type has a rolling window of the last durations (see
+ * [BuildConfigWrapper.liveBidLatencySampleCount]), from which percentiles are computed. Calls that
+ * timed out are recorded too, as their duration is a lower bound of the real latency. Calls aborted
+ * because they exceeded the live bidding time budget are recorded with at least this budget as
+ * latency, while calls cancelled for another reason are ignored, as nothing is known about them.
+ */
+@OpenForTesting
+class CdbLatencyTracker internal constructor(
+    private val clock: Clock,
+    private val connectionTypeFetcher: ConnectionTypeFetcher,
+    private val config: Config,
+    private val buildConfigWrapper: BuildConfigWrapper
+) : BidLifecycleListener {
+
+  private val startTimeByRequestId = ConcurrentHashMap<String, Long>()
+
+  private val lock = Any()
+
+  @GuardedBy("lock")
+  private val windowByConnectionType = mutableMapOf<ConnectionType?, LatencyWindow>()
+
+  /**
+   * Return the latency under which the given percentile of the recent calls on the current
+   * connection type finished, or `null` if there are not enough recent calls to tell.
+   */
+  fun getLatencyPercentile(percentile: Int): Long? {
+    val connectionType = connectionTypeFetcher.fetchConnectionType()
+    val minSampleCount = buildConfigWrapper.liveBidLatencyMinSampleCount
+    return synchronized(lock) {
+      windowByConnectionType[connectionType]?.getPercentile(percentile, minSampleCount)
+    }
+  }
+
+  override fun onCdbCallStarted(request: CdbRequest) {
+    startTimeByRequestId.putIfAbsent(request.id, clock.currentTimeInMillis)
+  }
+
+  override fun onCdbCallFinished(request: CdbRequest, response: CdbResponse) {
+    recordLatency(request)
+  }
+
+  override fun onCdbCallFailed(request: CdbRequest, exception: Exception) {
+    when {
+      exception is CdbCallAbortedException && exception.isTimeBudgetExceeded -> {
+        recordLatency(request, config.liveBiddingTimeBudgetInMillis.toLong())
+      }
+      exception is CdbCallAbortedException -> startTimeByRequestId.remove(request.id)
+      exception is InterruptedIOException -> recordLatency(request)
+      else -> startTimeByRequestId.remove(request.id)
+    }
+  }
+
+  /**
+   * @param minLatency lower bound of the recorded latency, for calls whose real latency is unknown
+   */
+  private fun recordLatency(request: CdbRequest, minLatency: Long = 0) {
+    // Coalesced requests notify once per caller with the same ID: only the first one is recorded.
+    val startTime = startTimeByRequestId.remove(request.id) ?: return
+    val latency = maxOf(clock.currentTimeInMillis - startTime, minLatency)
+
+    val sampleCount = buildConfigWrapper.liveBidLatencySampleCount
+    if (sampleCount <= 0) {
+      return
+    }
+
+    val connectionType = connectionTypeFetcher.fetchConnectionType()
+    synchronized(lock) {
+      windowByConnectionType.getOrPut(connectionType) { LatencyWindow(sampleCount) } += latency
+    }
+  }
+
+  override fun onSdkInitialized() {
+    // no-op
+  }
+
+  override fun onBidConsumed(adUnit: CacheAdUnit, consumedBid: CdbResponseSlot) {
+    // no-op
+  }
+
+  override fun onBidEvicted(adUnit: CacheAdUnit, evictedBid: CdbResponseSlot) {
+    // no-op
+  }
+
+  override fun onBidCached(cachedBid: CdbResponseSlot) {
+    // no-op
+  }
+
+  /**
+   * Ring buffer of the last latencies.
+   */
+  private class LatencyWindow(capacity: Int) {
+    private val latencies = LongArray(capacity)
+    private var size = 0
+    private var next = 0
+
+    operator fun plusAssign(latency: Long) {
+      latencies[next] = latency
+      next = (next + 1) % latencies.size
+      size = minOf(size + 1, latencies.size)
+    }
+
+    fun getPercentile(percentile: Int, minSampleCount: Int): Long? {
+      if (size == 0 || size < minSampleCount) {
+        return null
+      }
+
+      val sorted = latencies.copyOf(size).apply { sort() }
+      val rank = ceil(percentile.coerceIn(1, 100) / 100.0 * size).toInt()
+      return sorted[rank - 1]
+    }
+  }
+}
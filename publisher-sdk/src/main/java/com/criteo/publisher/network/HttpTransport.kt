@@ -0,0 +1,42 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network
+
+import androidx.annotation.WorkerThread
+import java.io.IOException
+import java.net.HttpURLConnection
+import java.net.URL
+
+/**
+ * Transport opening the HTTP connections used by [PubSdkApi].
+ */
+interface HttpTransport {
+
+  /**
+   * Open a connection to the given URL. The connection is not connected yet, so it can still be
+   * configured.
+   */
+  @Throws(IOException::class)
+  fun openConnection(url: URL): HttpURLConnection
+
+  /**
+   * Establish a connection to the origin of the given URL ahead of time, so the next calls to this
+   * origin can reuse it. Errors are not propagated: calls will just establish their own connection.
+   */
+  @WorkerThread
+  fun preconnect(url: URL)
+}
@@ -0,0 +1,70 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network
+
+import androidx.annotation.WorkerThread
+import com.criteo.publisher.annotation.OpenForTesting
+import com.criteo.publisher.logging.LoggerFactory
+import com.criteo.publisher.util.BuildConfigWrapper
+import com.criteo.publisher.util.StreamUtil
+import java.io.IOException
+import java.net.HttpURLConnection
+import java.net.URL
+
+/**
+ * Transport relying on the keep-alive pool of the platform: a connection is put back in the pool
+ * once its response was fully read and closed, and is reused by the next call to the same origin.
+ *
+ * Pre-connecting sends a lightweight HEAD request to the origin, so the first real call finds an
+ * established connection in the pool instead of paying the DNS resolution and the TCP and TLS
+ * handshakes.
+ */
+@OpenForTesting
+class KeepAliveHttpTransport(
+    private val buildConfigWrapper: BuildConfigWrapper
+) : HttpTransport {
+
+  private val logger = LoggerFactory.getLogger(javaClass)
+
+  override fun openConnection(url: URL): HttpURLConnection {
+    return url.openConnection() as HttpURLConnection
+  }
+
+  @WorkerThread
+  override fun preconnect(url: URL) {
+    val timeoutInMillis = buildConfigWrapper.preconnectTimeoutInMillis
+    if (timeoutInMillis <= 0) {
+      return
+    }
+
+    try {
+      val connection = openConnection(URL(url.protocol, url.host, url.port, "/"))
+      connection.requestMethod = "HEAD"
+      connection.connectTimeout = timeoutInMillis
+      connection.readTimeout = timeoutInMillis
+
+      // Whatever the status, the response should be consumed so the connection goes in the pool
+      if (connection.responseCode < HttpURLConnection.HTTP_BAD_REQUEST) {
+        StreamUtil.drain(connection.inputStream)
+      } else {
+        StreamUtil.drain(connection.errorStream)
+      }
+    } catch (e: IOException) {
+      logger.debug("Couldn't pre-connect to $url", e)
+    }
+  }
+}
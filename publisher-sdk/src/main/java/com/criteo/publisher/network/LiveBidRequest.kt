@@ -0,0 +1,102 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network
+
+import androidx.annotation.GuardedBy
+import com.criteo.publisher.LiveCdbCallListener
+import java.util.concurrent.Future
+import java.util.concurrent.FutureTask
+
+/**
+ * Live bid request in flight: its CDB call and the timers bounding it.
+ *
+ * As soon as the call completes, whatever its outcome, the timers are cancelled and the listener of
+ * the caller is released, so a finished request does not keep anything alive until its deadline.
+ *
+ * Until then, the request can be aborted: the HTTP exchange is disconnected, the worker thread is
+ * interrupted, and the caller is answered from the cache if its time budget timer did not do it
+ * already. The call then fails with a [CdbCallAbortedException].
+ */
+internal class LiveBidRequest(
+    cdbCall: Runnable,
+    liveCdbCallListener: LiveCdbCallListener,
+    private val abortSignal: AbortSignal,
+    private val onFinished: (LiveBidRequest) -> Unit
+) : FutureTask<Unit>(cdbCall, Unit) {
+
+  private val lock = Any()
+
+  @GuardedBy("lock")
+  private var liveCdbCallListener: LiveCdbCallListener? = liveCdbCallListener
+
+  @GuardedBy("lock")
+  private var timeBudgetTimer: Future<*>? = null
+
+  @GuardedBy("lock")
+  private var abortTimer: Future<*>? = null
+
+  /**
+   * Attach the timers of this request, so they are cancelled once the call completes.
+   *
+   * A `null` time budget timer means that the caller was already answered.
+   */
+  fun setTimers(timeBudgetTimer: Future<*>?, abortTimer: Future<*>?) {
+    val isAlreadyDone = synchronized(lock) {
+      if (!isDone) {
+        this.timeBudgetTimer = timeBudgetTimer
+        this.abortTimer = abortTimer
+      }
+      isDone
+    }
+
+    if (isAlreadyDone) {
+      timeBudgetTimer?.cancel(false)
+      abortTimer?.cancel(false)
+    }
+  }
+
+  /**
+   * @param isTimeBudgetExceeded `true` if the request is aborted because it took too long, `false`
+   * if it is cancelled for another reason
+   */
+  fun abort(isTimeBudgetExceeded: Boolean) {
+    val (timeBudgetTimer, liveCdbCallListener) = synchronized(lock) {
+      timeBudgetTimer to liveCdbCallListener
+    }
+
+    // If the timer already fired, the caller was answered, and it should not be answered twice
+    if (timeBudgetTimer != null && timeBudgetTimer.cancel(false)) {
+      liveCdbCallListener?.onTimeBudgetExceeded()
+    }
+
+    abortSignal.abort(isTimeBudgetExceeded)
+    cancel(true)
+  }
+
+  override fun done() {
+    val timers = synchronized(lock) {
+      listOfNotNull(timeBudgetTimer, abortTimer).also {
+        timeBudgetTimer = null
+        abortTimer = null
+        liveCdbCallListener = null
+      }
+    }
+
+    timers.forEach { it.cancel(false) }
+    onFinished(this)
+  }
+}
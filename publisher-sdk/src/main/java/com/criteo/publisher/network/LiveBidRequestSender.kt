@@ -24,7 +24,11 @@ import com.criteo.publisher.context.ContextData
 import com.criteo.publisher.model.CacheAdUnit
 import com.criteo.publisher.model.CdbRequestFactory
 import com.criteo.publisher.model.Config
+import com.criteo.publisher.util.BuildConfigWrapper
+import java.util.Collections
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.Executor
+import java.util.concurrent.Future
 import java.util.concurrent.ScheduledExecutorService
 import java.util.concurrent.TimeUnit
 
@@ -35,32 +39,131 @@ class LiveBidRequestSender(
     private val clock: Clock,
     private val executor: Executor,
     private val scheduledExecutorService: ScheduledExecutorService,
-    private val config: Config
+    private val config: Config,
+    private val cdbLatencyTracker: CdbLatencyTracker,
+    private val buildConfigWrapper: BuildConfigWrapper
 ) {
 
+  private companion object {
+    /**
+     * Percentile of the recent latencies taken as the predicted latency of the next call.
+     */
+    const val PREDICTED_LATENCY_PERCENTILE = 50
+  }
+
+  private val pendingRequests: MutableSet<LiveBidRequest> =
+      Collections.newSetFromMap(ConcurrentHashMap())
+
+  /**
+   * Send a live bid request on the given ad unit.
+   *
+   * The caller is answered when the response arrives, or from the cache when the time budget is
+   * exceeded. The HTTP exchange itself is bounded by the configured time budget: past it, the
+   * exchange is aborted, as its response would come too late to be worth caching.
+   */
   fun sendLiveBidRequest(
       cacheAdUnit: CacheAdUnit,
       contextData: ContextData,
       liveCdbCallListener: LiveCdbCallListener
   ) {
-    scheduleTimeBudgetExceeded(liveCdbCallListener)
-
-    executor.execute(
-        CdbCall(
-            pubSdkApi,
-            cdbRequestFactory,
-            clock,
-            listOf(cacheAdUnit),
-            contextData,
-            liveCdbCallListener
-        )
+    val abortSignal = AbortSignal()
+    val cdbCall = CdbCall(
+        pubSdkApi,
+        cdbRequestFactory,
+        clock,
+        listOf(cacheAdUnit),
+        contextData,
+        liveCdbCallListener,
+        abortSignal
+    )
+
+    val liveBidRequest = LiveBidRequest(cdbCall, liveCdbCallListener, abortSignal) {
+      pendingRequests.remove(it)
+    }
+
+    liveBidRequest.setTimers(
+        scheduleTimeBudgetExceeded(liveCdbCallListener),
+        scheduleAbort(liveBidRequest)
     )
+
+    pendingRequests.add(liveBidRequest)
+    if (liveBidRequest.isDone) {
+      pendingRequests.remove(liveBidRequest)
+    }
+
+    // The call is only started once the user agent is known, so it never holds a thread waiting for it
+    cdbRequestFactory.userAgent.whenComplete { _, _ ->
+      executor.execute(liveBidRequest)
+    }
+  }
+
+  /**
+   * Abort all the live bid requests in flight.
+   *
+   * Callers that were not answered yet are answered from the cache.
+   */
+  fun cancelAllPendingTasks() {
+    pendingRequests.toList().forEach { it.abort(isTimeBudgetExceeded = false) }
   }
 
+  /**
+   * Notify the given listener when the time budget of its live call is exceeded.
+   *
+   * If the call is predicted to exceed the budget, the listener is notified right away, so the
+   * caller is answered from the cache without waiting. The live call is still done and its response
+   * is cached.
+   *
+   * @return the timer notifying the listener, or `null` if it was notified right away
+   */
   @VisibleForTesting
-  internal fun scheduleTimeBudgetExceeded(liveCdbCallListener: LiveCdbCallListener) {
-    scheduledExecutorService.schedule({
+  internal fun scheduleTimeBudgetExceeded(liveCdbCallListener: LiveCdbCallListener): Future<*>? {
+    val timeBudgetInMillis = computeTimeBudgetInMillis()
+    if (timeBudgetInMillis <= 0) {
       liveCdbCallListener.onTimeBudgetExceeded()
-    }, config.liveBiddingTimeBudgetInMillis.toLong(), TimeUnit.MILLISECONDS)
+      return null
+    }
+
+    return scheduledExecutorService.schedule({
+      liveCdbCallListener.onTimeBudgetExceeded()
+    }, timeBudgetInMillis, TimeUnit.MILLISECONDS)
+  }
+
+  private fun scheduleAbort(liveBidRequest: LiveBidRequest): Future<*>? {
+    val configuredBudget = config.liveBiddingTimeBudgetInMillis.toLong()
+    if (configuredBudget <= 0) {
+      return null
+    }
+
+    return scheduledExecutorService.schedule({
+      liveBidRequest.abort(isTimeBudgetExceeded = true)
+    }, configuredBudget, TimeUnit.MILLISECONDS)
+  }
+
+  /**
+   * Compute the time budget of the next live call, or 0 if it is predicted to exceed the budget.
+   *
+   * The configured budget is an upper bound. It is shortened to the latency under which the target
+   * percentile of the recent calls finished (see
+   * [BuildConfigWrapper.liveBidLatencyTargetPercentile]): waiting longer would rarely be useful.
+   */
+  @VisibleForTesting
+  internal fun computeTimeBudgetInMillis(): Long {
+    val configuredBudget = config.liveBiddingTimeBudgetInMillis.toLong()
+    val targetPercentile = buildConfigWrapper.liveBidLatencyTargetPercentile
+    if (targetPercentile <= 0) {
+      return configuredBudget
+    }
+
+    val predictedLatency = cdbLatencyTracker.getLatencyPercentile(PREDICTED_LATENCY_PERCENTILE)
+        ?: return configuredBudget
+    // Calls aborted past the budget are recorded with the budget as latency: reaching it means that
+    // most recent calls did not finish in time.
+    if (predictedLatency >= configuredBudget) {
+      return 0
+    }
+
+    val targetLatency = cdbLatencyTracker.getLatencyPercentile(targetPercentile)
+        ?: return configuredBudget
+    return minOf(configuredBudget, maxOf(predictedLatency, targetLatency))
   }
 }
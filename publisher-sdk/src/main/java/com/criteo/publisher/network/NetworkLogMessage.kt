@@ -17,6 +17,7 @@
 package com.criteo.publisher.network
 
 import com.criteo.publisher.logging.LogMessage
+import com.criteo.publisher.model.CdbResponse
 
 internal object NetworkLogMessage {
 
@@ -26,7 +27,7 @@ internal object NetworkLogMessage {
   )
 
   @JvmStatic
-  fun onCdbCallFinished(responsePayload: String) = LogMessage(message =
-    "CDB Response received: $responsePayload"
+  fun onCdbCallFinished(response: CdbResponse) = LogMessage(message =
+    "CDB Response received: $response"
   )
 }
@@ -16,31 +16,43 @@
 
 package com.criteo.publisher.network;
 
+import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 import com.criteo.publisher.csm.MetricRequest;
 import com.criteo.publisher.logging.Logger;
 import com.criteo.publisher.logging.LoggerFactory;
 import com.criteo.publisher.logging.RemoteLogRecords;
 import com.criteo.publisher.model.CdbRequest;
 import com.criteo.publisher.model.CdbResponse;
+import com.criteo.publisher.model.Config;
 import com.criteo.publisher.model.RemoteConfigRequest;
 import com.criteo.publisher.model.RemoteConfigResponse;
 import com.criteo.publisher.util.BuildConfigWrapper;
 import com.criteo.publisher.util.JsonSerializer;
 import com.criteo.publisher.util.StreamUtil;
 import com.criteo.publisher.util.TextUtils;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.GzipSink;
+import okio.Okio;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -51,6 +63,7 @@ public class PubSdkApi {
   private static final String EVENT_TYPE = "eventType";
   private static final String LIMITED_AD_TRACKING = "limitedAdTracking";
   private static final String GDPR_CONSENT = "gdpr_consent";
+  private static final String GZIP = "gzip";
 
   @NonNull
   private final Logger logger = LoggerFactory.getLogger(getClass());
@@ -61,19 +74,48 @@ public class PubSdkApi {
   @NonNull
   private final JsonSerializer jsonSerializer;
 
+  @NonNull
+  private final HttpTransport httpTransport;
+
+  @NonNull
+  private final Config config;
+
   public PubSdkApi(
       @NonNull BuildConfigWrapper buildConfigWrapper,
-      @NonNull JsonSerializer jsonSerializer
+      @NonNull JsonSerializer jsonSerializer,
+      @NonNull HttpTransport httpTransport,
+      @NonNull Config config
   ) {
     this.buildConfigWrapper = buildConfigWrapper;
     this.jsonSerializer = jsonSerializer;
+    this.httpTransport = httpTransport;
+    this.config = config;
+  }
+
+  /**
+   * Establish connections to CDB and to the event server, so the first calls of the session do not
+   * pay the connection setup.
+   */
+  @WorkerThread
+  public void preconnect() {
+    Set<String> origins = new LinkedHashSet<>();
+    origins.add(buildConfigWrapper.getCdbUrl());
+    origins.add(buildConfigWrapper.getEventUrl());
+
+    for (String origin : origins) {
+      try {
+        httpTransport.preconnect(new URL(origin));
+      } catch (MalformedURLException e) {
+        logger.debug("Invalid URL to pre-connect to: " + origin, e);
+      }
+    }
   }
 
   @NonNull
   public RemoteConfigResponse loadConfig(@NonNull RemoteConfigRequest request) throws IOException {
     URL url = new URL(buildConfigWrapper.getCdbUrl() + "/config/app");
     HttpURLConnection urlConnection = prepareConnection(url, null, "POST");
-    writePayload(urlConnection, request);
+    writePayload(urlConnection, request, false);
 
     try (InputStream inputStream = readResponseStreamIfSuccess(urlConnection)) {
       return jsonSerializer.read(RemoteConfigResponse.class, inputStream);
@@ -84,17 +126,36 @@ public class PubSdkApi {
   public CdbResponse loadCdb(@NonNull CdbRequest request, @NonNull String userAgent) throws Exception {
     URL url = new URL(buildConfigWrapper.getCdbUrl() + "/inapp/v2");
     HttpURLConnection urlConnection = prepareConnection(url, userAgent, "POST");
-    urlConnection.setDoOutput(true);
-    try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-      jsonSerializer.write(request, baos);
-      logger.log(NetworkLogMessage.onCdbCallStarted(baos.toString("UTF-8")));
-      urlConnection.getOutputStream().write(baos.toByteArray());
+
+    AbortSignal abortSignal = request.getAbortSignal();
+    if (abortSignal != null) {
+      abortSignal.register(urlConnection);
     }
 
-    try (InputStream inputStream = readResponseStreamIfSuccess(urlConnection)) {
-      String response = StreamUtil.readStream(inputStream);
-      logger.log(NetworkLogMessage.onCdbCallFinished(response));
-      return CdbResponse.fromJson(readJson(response));
+    try {
+      Buffer payload = serialize(request);
+      logger.log(Log.INFO, () -> NetworkLogMessage.onCdbCallStarted(payload.snapshot().utf8()));
+      writePayload(urlConnection, payload, isCompressionEnabled());
+
+      try (BufferedSource source = Okio.buffer(Okio.source(readResponseStreamIfSuccess(urlConnection)))) {
+        CdbResponse response;
+        if (source.exhausted()) {
+          response = new CdbResponse(new ArrayList<>(), 0, null);
+        } else {
+          response = jsonSerializer.read(CdbResponse.class, source.inputStream());
+        }
+        logger.log(Log.INFO, () -> NetworkLogMessage.onCdbCallFinished(response));
+        return response;
+      }
+    } catch (IOException e) {
+      if (abortSignal != null) {
+        throw abortSignal.onFailure(e);
+      }
+      throw e;
+    } finally {
+      if (abortSignal != null) {
+        abortSignal.unregister();
+      }
     }
   }
 
@@ -146,8 +207,8 @@ public class PubSdkApi {
   private void postToCdb(@NonNull String apiPath, @NonNull Object request) throws IOException {
     URL url = new URL(buildConfigWrapper.getCdbUrl() + apiPath);
     HttpURLConnection urlConnection = prepareConnection(url, null, "POST");
-    writePayload(urlConnection, request);
-    readResponseStreamIfSuccess(urlConnection).close();
+    writePayload(urlConnection, request, isCompressionEnabled());
+    StreamUtil.drain(readResponseStreamIfSuccess(urlConnection));
   }
 
   @NonNull
@@ -159,7 +220,7 @@ public class PubSdkApi {
   @NonNull
   private HttpURLConnection prepareConnection(@NonNull URL url,
       @Nullable String userAgent, String method) throws IOException {
-    HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+    HttpURLConnection urlConnection = httpTransport.openConnection(url);
     urlConnection.setRequestMethod(method);
     urlConnection.setReadTimeout(buildConfigWrapper.getNetworkTimeoutInMillis());
     urlConnection.setConnectTimeout(buildConfigWrapper.getNetworkTimeoutInMillis());
@@ -173,9 +234,22 @@ public class PubSdkApi {
   @NonNull
   private static InputStream readResponseStreamIfSuccess(@NonNull HttpURLConnection urlConnection) throws IOException {
     int status = urlConnection.getResponseCode();
-    if (status == HttpURLConnection.HTTP_OK || status == HttpURLConnection.HTTP_NO_CONTENT) {
+    if (status == HttpURLConnection.HTTP_OK) {
+      // Android decodes gzip responses transparently, unless the encoding was requested explicitly
+      InputStream inputStream = urlConnection.getInputStream();
+      if (GZIP.equalsIgnoreCase(urlConnection.getContentEncoding())) {
+        return new GZIPInputStream(inputStream);
+      }
+      return inputStream;
+    } else if (status == HttpURLConnection.HTTP_NO_CONTENT) {
       return urlConnection.getInputStream();
     } else {
+      // Consume the error so the connection can still be kept alive
+      try {
+        StreamUtil.drain(urlConnection.getErrorStream());
+      } catch (IOException ignored) {
+        // The connection is simply not reused
+      }
       throw new HttpResponseException(status);
     }
   }
@@ -193,12 +267,66 @@ public class PubSdkApi {
     return new JSONObject(json);
   }
 
+  private boolean isCompressionEnabled() {
+    return config.isRequestCompressionEnabled();
+  }
+
   private void writePayload(
       @NonNull HttpURLConnection urlConnection,
-      @NonNull Object request) throws IOException {
-    urlConnection.setDoOutput(true);
-    try (OutputStream outputStream = urlConnection.getOutputStream()) {
-      jsonSerializer.write(request, outputStream);
+      @NonNull Object request,
+      boolean compress
+  ) throws IOException {
+    writePayload(urlConnection, serialize(request), compress);
+  }
+
+  /**
+   * Serialize the given request once, in a buffer made of segments taken from the Okio pool.
+   * <p>
+   * The buffer should then be given to {@link #writePayload(HttpURLConnection, Buffer, boolean)}
+   * that consumes it, so its segments are given back to the pool.
+   */
+  @NonNull
+  private Buffer serialize(@NonNull Object request) throws IOException {
+    Buffer payload = new Buffer();
+    try {
+      jsonSerializer.write(request, payload.outputStream());
+    } catch (IOException e) {
+      payload.clear();
+      throw e;
+    }
+    return payload;
+  }
+
+  /**
+   * Write the given payload in the connection, with its exact length, so it is sent in one go
+   * without being buffered again by the connection, nor chunked. If compression is requested, the
+   * payload is compressed with gzip before.
+   * <p>
+   * The payload is consumed, even if the write fails.
+   */
+  private static void writePayload(
+      @NonNull HttpURLConnection urlConnection,
+      @NonNull Buffer payload,
+      boolean compress
+  ) throws IOException {
+    Buffer body = payload;
+    try {
+      if (compress) {
+        body = new Buffer();
+        try (BufferedSink gzipSink = Okio.buffer(new GzipSink(body))) {
+          gzipSink.writeAll(payload);
+        }
+        urlConnection.setRequestProperty("Content-Encoding", GZIP);
+      }
+
+      urlConnection.setDoOutput(true);
+      urlConnection.setFixedLengthStreamingMode(body.size());
+      try (OutputStream outputStream = urlConnection.getOutputStream()) {
+        body.writeTo(outputStream);
+      }
+    } finally {
+      payload.clear();
+      body.clear();
     }
   }
 
@@ -80,6 +80,7 @@ public class WebViewDataTask extends SafeRunnable {
   @VisibleForTesting
   String downloadCreative() throws Exception {
     URL url = new URL(displayUrl);
+    // This does not block: downloads are only executed once the user agent is known
     String userAgent = deviceInfo.getUserAgent().get();
 
     try (InputStream stream = api.executeRawGet(url, userAgent)) {
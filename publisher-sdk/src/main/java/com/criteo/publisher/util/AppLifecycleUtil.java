@@ -22,19 +22,34 @@ import android.os.Bundle;
 import androidx.annotation.NonNull;
 import com.criteo.publisher.AppEvents.AppEvents;
 import com.criteo.publisher.BidManager;
+import com.criteo.publisher.csm.MetricSendingQueueConsumer;
+import com.criteo.publisher.csm.MetricWriteBehindBuffer;
+import com.criteo.publisher.logging.RemoteLogSendingQueueConsumer;
 
 public class AppLifecycleUtil implements Application.ActivityLifecycleCallbacks {
 
   private final AppEvents appEvents;
   private final BidManager bidManager;
+  private final MetricWriteBehindBuffer metricWriteBehindBuffer;
+  private final MetricSendingQueueConsumer metricSendingQueueConsumer;
+  private final RemoteLogSendingQueueConsumer remoteLogSendingQueueConsumer;
   private int started;
   private int resumed;
   private boolean transitionPossible;
   private boolean created;
 
-  public AppLifecycleUtil(AppEvents appEvents, BidManager bidmanager) {
+  public AppLifecycleUtil(
+      AppEvents appEvents,
+      BidManager bidmanager,
+      MetricWriteBehindBuffer metricWriteBehindBuffer,
+      MetricSendingQueueConsumer metricSendingQueueConsumer,
+      RemoteLogSendingQueueConsumer remoteLogSendingQueueConsumer
+  ) {
     this.appEvents = appEvents;
     this.bidManager = bidmanager;
+    this.metricWriteBehindBuffer = metricWriteBehindBuffer;
+    this.metricSendingQueueConsumer = metricSendingQueueConsumer;
+    this.remoteLogSendingQueueConsumer = remoteLogSendingQueueConsumer;
     started = 0;
     resumed = 0;
     transitionPossible = false;
@@ -51,6 +66,9 @@ public class AppLifecycleUtil implements Application.ActivityLifecycleCallbacks
 
   @Override
   public void onActivityStarted(@NonNull Activity activity) {
+    if (started == 0) {
+      bidManager.onApplicationStarted();
+    }
     started += 1;
   }
 
@@ -78,6 +96,9 @@ public class AppLifecycleUtil implements Application.ActivityLifecycleCallbacks
       }
       appEvents.onApplicationStopped();
       bidManager.onApplicationStopped();
+      // Buffered metrics have to reach the sending queue before it is drained
+      metricWriteBehindBuffer.flushAsync(metricSendingQueueConsumer::onApplicationStopped);
+      remoteLogSendingQueueConsumer.onApplicationStopped();
     }
     transitionPossible = false;
     started -= 1;
@@ -58,6 +58,21 @@ public class BuildConfigWrapper {
     return BuildConfig.csmBatchSize;
   }
 
+  /**
+   * Maximum size (in bytes) of the serialized metrics sent in each CSM request on fast networks.
+   */
+  public int getCsmBatchMaxBytesOnFastNetwork() {
+    return BuildConfig.csmBatchMaxBytesOnFastNetwork;
+  }
+
+  /**
+   * Maximum size (in bytes) of the serialized metrics sent in each CSM request on slow cellular
+   * networks.
+   */
+  public int getCsmBatchMaxBytesOnSlowNetwork() {
+    return BuildConfig.csmBatchMaxBytesOnSlowNetwork;
+  }
+
   /**
    * Maximum size (in bytes) of metric elements stored in the metrics folder.
    */
@@ -65,6 +80,13 @@ public class BuildConfigWrapper {
     return BuildConfig.maxSizeOfCsmMetricsFolder;
   }
 
+  /**
+   * Minimum size (in bytes) of the metric journal before it is compacted.
+   */
+  public int getMinSizeOfCsmMetricJournalCompaction() {
+    return BuildConfig.minSizeOfCsmMetricJournalCompaction;
+  }
+
   /**
    * Maximum size (in bytes) of metric elements stored in the metric sending queue.
    */
@@ -79,6 +101,20 @@ public class BuildConfigWrapper {
     return BuildConfig.estimatedSizeOfCsmMetric;
   }
 
+  /**
+   * Maximum number of metrics whose updates are buffered in memory before being written.
+   */
+  public int getCsmWriteBehindBatchSize() {
+    return BuildConfig.csmWriteBehindBatchSize;
+  }
+
+  /**
+   * Delay in milliseconds after which buffered updates of metrics are written.
+   */
+  public int getCsmWriteBehindDelayInMillis() {
+    return BuildConfig.csmWriteBehindDelayInMillis;
+  }
+
   /**
    * The relative path in application folder of the sending queue file for CSM
    */
@@ -102,6 +138,173 @@ public class BuildConfigWrapper {
     return BuildConfig.networkTimeoutInMillis;
   }
 
+  /**
+   * Duration in milliseconds for the connections opened ahead of time at SDK initialization. The
+   * pre-connection is disabled if this is not strictly positive.
+   */
+  public int getPreconnectTimeoutInMillis() {
+    return BuildConfig.preconnectTimeoutInMillis;
+  }
+
+  /**
+   * Maximum number of threads used by the SDK for its background work.
+   */
+  public int getSdkThreadBudget() {
+    return BuildConfig.sdkThreadBudget;
+  }
+
+  /**
+   * Number of threads of the SDK budget that only live bids may use. The reservation is disabled if
+   * this is not strictly positive.
+   */
+  public int getLiveBidReservedThreads() {
+    return BuildConfig.liveBidReservedThreads;
+  }
+
+  /**
+   * Maximum number of threads that can load creatives at once.
+   */
+  public int getCreativeLaneMaxConcurrency() {
+    return BuildConfig.creativeLaneMaxConcurrency;
+  }
+
+  /**
+   * Maximum number of threads that can send CSM, remote logs or app events at once.
+   */
+  public int getTelemetryLaneMaxConcurrency() {
+    return BuildConfig.telemetryLaneMaxConcurrency;
+  }
+
+  /**
+   * Duration in milliseconds between two dumps of the metrics of the SDK threads in debug logs.
+   * A value of 0 or less disables the dump.
+   */
+  public int getExecutorMetricsDumpIntervalInMillis() {
+    return BuildConfig.executorMetricsDumpIntervalInMillis;
+  }
+
+  /**
+   * Maximum number of bids kept in cache for a single ad unit.
+   */
+  public int getBidCacheDepth() {
+    return BuildConfig.bidCacheDepth;
+  }
+
+  /**
+   * Number of cached bids of an ad unit under which the ad unit is topped up to its full depth.
+   */
+  public int getBidCacheLowWaterMark() {
+    return BuildConfig.bidCacheLowWaterMark;
+  }
+
+  /**
+   * Maximum number of ad units held in the bid cache. The cache is unbounded if this is not
+   * strictly positive.
+   */
+  public int getBidCacheMaxAdUnitCount() {
+    return BuildConfig.bidCacheMaxAdUnitCount;
+  }
+
+  /**
+   * Duration in milliseconds between two sweeps of expired bids out of the bid cache. Sweeping is
+   * disabled if this is not strictly positive.
+   */
+  public int getBidCacheSweepIntervalInMillis() {
+    return BuildConfig.bidCacheSweepIntervalInMillis;
+  }
+
+  /**
+   * The relative path in application files folder of the snapshot of the bid cache
+   */
+  @NonNull
+  public String getBidCacheSnapshotFilename() {
+    return BuildConfig.bidCacheSnapshotFilename;
+  }
+
+  /**
+   * Duration in milliseconds before the expiry of a cached bid at which it is refreshed in
+   * background. Background refresh is disabled if this is not strictly positive.
+   */
+  public int getBidRefreshLeadTimeInMillis() {
+    return BuildConfig.bidRefreshLeadTimeInMillis;
+  }
+
+  /**
+   * Duration in milliseconds during which ad units due for a background refresh are grouped in the
+   * same bid request.
+   */
+  public int getBidRefreshWindowInMillis() {
+    return BuildConfig.bidRefreshWindowInMillis;
+  }
+
+  /**
+   * Weight in percent of the last session in the moving average of the demand of ad units. Demand
+   * tracking is disabled if this is not between 1 and 100.
+   */
+  public int getPrefetchDemandSmoothingPercent() {
+    return BuildConfig.prefetchDemandSmoothingPercent;
+  }
+
+  /**
+   * Demand, in hundredths of bid requests per session, below which a known ad unit is not
+   * prefetched.
+   */
+  public int getPrefetchColdDemandThresholdPercent() {
+    return BuildConfig.prefetchColdDemandThresholdPercent;
+  }
+
+  /**
+   * Number of ad units per prefetch bid request on fast networks.
+   */
+  public int getPrefetchChunkSizeOnFastNetwork() {
+    return BuildConfig.prefetchChunkSizeOnFastNetwork;
+  }
+
+  /**
+   * Number of ad units per prefetch bid request on slow cellular networks.
+   */
+  public int getPrefetchChunkSizeOnSlowNetwork() {
+    return BuildConfig.prefetchChunkSizeOnSlowNetwork;
+  }
+
+  /**
+   * Duration in milliseconds during which enqueued ad units are coalesced in a single bid request.
+   * Batching is disabled if this is not strictly positive.
+   */
+  public int getBidRequestBatchingWindowInMillis() {
+    return BuildConfig.bidRequestBatchingWindowInMillis;
+  }
+
+  /**
+   * Maximum number of ad units coalesced in a single bid request.
+   */
+  public int getBidRequestBatchMaxAdUnitCount() {
+    return BuildConfig.bidRequestBatchMaxAdUnitCount;
+  }
+
+  /**
+   * Number of recent CDB call durations kept per connection type. Latency tracking is disabled if
+   * this is not strictly positive.
+   */
+  public int getLiveBidLatencySampleCount() {
+    return BuildConfig.liveBidLatencySampleCount;
+  }
+
+  /**
+   * Minimum number of recent CDB call durations before the live bid time budget is adapted.
+   */
+  public int getLiveBidLatencyMinSampleCount() {
+    return BuildConfig.liveBidLatencyMinSampleCount;
+  }
+
+  /**
+   * Percentile of the recent CDB call durations to which the live bid time budget is shortened.
+   * The adaptive time budget is disabled if this is not strictly positive.
+   */
+  public int getLiveBidLatencyTargetPercentile() {
+    return BuildConfig.liveBidLatencyTargetPercentile;
+  }
+
   /**
    * Included default minimum level of logs to print
    * Values are from {@link android.util.Log}:
@@ -132,6 +335,64 @@ public class BuildConfigWrapper {
     return BuildConfig.adChoiceIconHeightInDp;
   }
 
+  /**
+   * The relative path in application folder of the sending queue file for impression pixels
+   */
+  @NonNull
+  public String getPixelQueueFilename() {
+    return BuildConfig.pixelQueueFilename;
+  }
+
+  /**
+   * Maximum size (in bytes) of elements stored in the pixel sending queue.
+   */
+  public int getMaxSizeOfPixelSendingQueue() {
+    return BuildConfig.maxSizeOfPixelSendingQueue;
+  }
+
+  /**
+   * Estimated size (in bytes) of elements stored in the pixel sending queue.
+   */
+  public int getEstimatedSizeOfPixel() {
+    return BuildConfig.estimatedSizeOfPixel;
+  }
+
+  /**
+   * Maximum number of pixels taken from the sending queue to be sent concurrently.
+   */
+  public int getPixelBatchSize() {
+    return BuildConfig.pixelBatchSize;
+  }
+
+  /**
+   * Maximum number of threads that can send pixels at once.
+   */
+  public int getPixelLaneMaxConcurrency() {
+    return BuildConfig.pixelLaneMaxConcurrency;
+  }
+
+  /**
+   * Number of attempts to send a pixel before dropping it.
+   */
+  public int getPixelMaxAttempts() {
+    return BuildConfig.pixelMaxAttempts;
+  }
+
+  /**
+   * Delay before sending pixels again after a first failure, or when there is no network. It doubles
+   * after each consecutive failure.
+   */
+  public int getPixelRetryBaseDelayInMillis() {
+    return BuildConfig.pixelRetryBaseDelayInMillis;
+  }
+
+  /**
+   * Maximum delay before sending pixels again after consecutive failures.
+   */
+  public int getPixelRetryMaxDelayInMillis() {
+    return BuildConfig.pixelRetryMaxDelayInMillis;
+  }
+
   public int getRemoteLogBatchSize() {
     return BuildConfig.remoteLogBatchSize;
   }
@@ -157,4 +418,40 @@ public class BuildConfigWrapper {
   public String getRemoteLogQueueFilename() {
     return BuildConfig.remoteLogQueueFilename;
   }
+
+  /**
+   * Size (in bytes) of metrics waiting in the sending queue from which they are sent right away.
+   */
+  public int getCsmFlushThresholdInBytes() {
+    return BuildConfig.csmFlushThresholdInBytes;
+  }
+
+  /**
+   * Size (in bytes) of remote logs waiting in the sending queue from which they are sent right away.
+   */
+  public int getRemoteLogFlushThresholdInBytes() {
+    return BuildConfig.remoteLogFlushThresholdInBytes;
+  }
+
+  /**
+   * Maximum delay in milliseconds before telemetry waiting in a sending queue is sent.
+   */
+  public int getTelemetryFlushMaxDelayInMillis() {
+    return BuildConfig.telemetryFlushMaxDelayInMillis;
+  }
+
+  /**
+   * Delay before sending telemetry again after a first failure. It doubles after each consecutive
+   * failure.
+   */
+  public int getTelemetryRetryBaseDelayInMillis() {
+    return BuildConfig.telemetryRetryBaseDelayInMillis;
+  }
+
+  /**
+   * Maximum delay before sending telemetry again after consecutive failures.
+   */
+  public int getTelemetryRetryMaxDelayInMillis() {
+    return BuildConfig.telemetryRetryMaxDelayInMillis;
+  }
 }
@@ -16,15 +16,17 @@
 
 package com.criteo.publisher.util;
 
+import androidx.annotation.GuardedBy;
 import androidx.annotation.NonNull;
-import java.util.concurrent.Callable;
+import androidx.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
-import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Partial very light implementation of {@link java.util.concurrent.CompletableFuture}.
@@ -33,17 +35,23 @@ import java.util.concurrent.atomic.AtomicReference;
  * available for Android < 24, and they are not added in the compat libraries. We could add an
  * unofficial compat library, but we should first fix EE-589.
  * <p>
+ * Rather than blocking a thread on {@link #get()}, callers should register a continuation with
+ * {@link #whenComplete(Callback)} or {@link #thenApply(Function)}.
+ * <p>
  * See <a href="https://stackoverflow.com/a/38375991">streamsupport-cfuture</a>
  */
 public class CompletableFuture<T> implements Future<T> {
 
-  private final AtomicReference<Result<T>> valueRef = new AtomicReference<>();
+  private final Object lock = new Object();
   private final CountDownLatch isDone = new CountDownLatch(1);
-  private final FutureTask<T> task;
 
-  public CompletableFuture() {
-    task = new FutureTask<>(new CompletableCallable());
-  }
+  @GuardedBy("lock")
+  @Nullable
+  private Result<T> result;
+
+  @GuardedBy("lock")
+  @NonNull
+  private List<Callback<? super T>> callbacks = new ArrayList<>();
 
   public static <T> CompletableFuture<T> completedFuture(T value) {
     CompletableFuture<T> future = new CompletableFuture<>();
@@ -52,50 +60,153 @@ public class CompletableFuture<T> implements Future<T> {
   }
 
   public void complete(T value) {
-    valueRef.compareAndSet(null, new Result<>(value));
-    isDone.countDown();
+    completeWith(new Result<>(value));
   }
 
   public void completeExceptionally(Exception exception) {
-    valueRef.compareAndSet(null, new Result<>(exception));
+    completeWith(new Result<>(exception));
+  }
+
+  /**
+   * Call the given callback once this future is completed, whatever its outcome. A cancelled future
+   * gives a {@link CancellationException}.
+   * <p>
+   * If this future is already completed, the callback is called right away on the calling thread.
+   * Else it is called on the thread completing this future, so it should be short, like submitting
+   * a task to an executor. Exceptions thrown by the callback are then rethrown to the completing
+   * thread in debug builds, and only logged otherwise (see {@link PreconditionsUtil#throwOrLog}).
+   */
+  public void whenComplete(@NonNull Callback<? super T> callback) {
+    Result<T> result;
+    synchronized (lock) {
+      result = this.result;
+      if (result == null) {
+        callbacks.add(callback);
+        return;
+      }
+    }
+
+    result.deliverTo(callback);
+  }
+
+  /**
+   * Return a new future completed with the result of the given function applied on the value of
+   * this future, once it is completed.
+   * <p>
+   * If this future completes exceptionally, or if the function throws, the returned future
+   * completes exceptionally with the same exception. The function is called as a callback of
+   * {@link #whenComplete(Callback)}.
+   */
+  @NonNull
+  public <U> CompletableFuture<U> thenApply(@NonNull Function<? super T, ? extends U> function) {
+    CompletableFuture<U> future = new CompletableFuture<>();
+    whenComplete((value, exception) -> {
+      if (exception != null) {
+        future.completeExceptionally(exception);
+        return;
+      }
+
+      U newValue;
+      try {
+        newValue = function.apply(value);
+      } catch (Exception e) {
+        future.completeExceptionally(e);
+        return;
+      }
+      future.complete(newValue);
+    });
+    return future;
+  }
+
+  private boolean completeWith(@NonNull Result<T> result) {
+    List<Callback<? super T>> callbacks;
+    synchronized (lock) {
+      if (this.result != null) {
+        return false;
+      }
+      this.result = result;
+      callbacks = this.callbacks;
+      this.callbacks = new ArrayList<>();
+    }
+
     isDone.countDown();
+
+    for (Callback<? super T> callback : callbacks) {
+      try {
+        result.deliverTo(callback);
+      } catch (Throwable t) {
+        PreconditionsUtil.throwOrLog(t);
+      }
+    }
+    return true;
   }
 
+  /**
+   * Complete this future with a {@link CancellationException}.
+   * <p>
+   * There is no computation attached to this future, so there is nothing to interrupt.
+   */
   @Override
   public boolean cancel(boolean mayInterruptIfRunning) {
-    return task.cancel(mayInterruptIfRunning);
+    return completeWith(new Result<>(new CancellationException()));
   }
 
   @Override
   public boolean isCancelled() {
-    return task.isCancelled();
+    synchronized (lock) {
+      return result != null && result.exception instanceof CancellationException;
+    }
   }
 
   @Override
   public boolean isDone() {
-    return task.isDone();
+    synchronized (lock) {
+      return result != null;
+    }
   }
 
   @Override
   public T get() throws InterruptedException, ExecutionException {
-    task.run();
-    return task.get();
+    isDone.await();
+    return getResult();
   }
 
   @Override
   public T get(long timeout, @NonNull TimeUnit unit)
       throws InterruptedException, ExecutionException, TimeoutException {
-    task.run();
-    return task.get(timeout, unit);
+    if (!isDone.await(timeout, unit)) {
+      throw new TimeoutException();
+    }
+    return getResult();
   }
 
-  private class CompletableCallable implements Callable<T> {
+  private T getResult() throws ExecutionException {
+    Result<T> result;
+    synchronized (lock) {
+      result = this.result;
+    }
 
-    @Override
-    public T call() throws Exception {
-      isDone.await();
-      return valueRef.get().get();
+    if (result.exception instanceof CancellationException) {
+      throw (CancellationException) result.exception;
+    } else if (result.exception != null) {
+      throw new ExecutionException(result.exception);
     }
+    return result.value;
+  }
+
+  public interface Callback<T> {
+
+    /**
+     * @param value value of the completed future, or <code>null</code> if it completed exceptionally
+     * @param exception exception of the completed future, or <code>null</code> if it completed
+     * normally
+     */
+    void onComplete(@Nullable T value, @Nullable Exception exception);
+  }
+
+  public interface Function<T, R> {
+
+    R apply(@Nullable T value) throws Exception;
   }
 
   private static final class Result<T> {
@@ -113,11 +224,8 @@ public class CompletableFuture<T> implements Future<T> {
       this.exception = exception;
     }
 
-    T get() throws Exception {
-      if (exception != null) {
-        throw exception;
-      }
-      return value;
+    void deliverTo(@NonNull Callback<? super T> callback) {
+      callback.onComplete(value, exception);
     }
 
   }
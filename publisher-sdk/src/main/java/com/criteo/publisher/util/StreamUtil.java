@@ -17,6 +17,7 @@
 package com.criteo.publisher.util;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
@@ -40,4 +41,22 @@ public final class StreamUtil {
     return response.toString();
   }
 
+  /**
+   * Read and discard the remaining content of the given stream, then close it.
+   * <p>
+   * HTTP connections are only put back in the keep-alive pool once their response was fully read.
+   */
+  public static void drain(@Nullable InputStream in) throws IOException {
+    if (in == null) {
+      return;
+    }
+
+    try (InputStream stream = in) {
+      byte[] buffer = new byte[1024];
+      while (stream.read(buffer) != -1) {
+        // discard
+      }
+    }
+  }
+
 }
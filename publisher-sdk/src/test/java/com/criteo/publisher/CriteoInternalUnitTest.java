@@ -32,7 +32,9 @@ import static org.mockito.Mockito.when;
 import android.app.Application;
 import com.criteo.publisher.activity.TopActivityFinder;
 import com.criteo.publisher.bid.BidLifecycleListener;
+import com.criteo.publisher.cache.BidCacheStore;
 import com.criteo.publisher.concurrent.DirectMockRunOnUiThreadExecutor;
+import com.criteo.publisher.concurrent.ExecutorMetrics;
 import com.criteo.publisher.context.ContextData;
 import com.criteo.publisher.headerbidding.HeaderBidding;
 import com.criteo.publisher.model.AdUnit;
@@ -43,6 +45,7 @@ import com.criteo.publisher.util.AdvertisingInfo;
 import com.criteo.publisher.util.AppLifecycleUtil;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -98,6 +101,34 @@ public class CriteoInternalUnitTest {
     inOrder.verify(bidManager).prefetch(any());
   }
 
+  @Test
+  public void whenCreatingNewCriteo_GivenBidCacheStore_ShouldRestoreItBeforePrefetch()
+      throws Exception {
+    BidCacheStore bidCacheStore = mock(BidCacheStore.class);
+    when(dependencyProvider.provideBidCacheStore()).thenReturn(bidCacheStore);
+    BidManager bidManager = givenMockedBidManager();
+
+    createCriteo();
+
+    InOrder inOrder = inOrder(bidCacheStore, bidManager);
+    inOrder.verify(bidCacheStore).restoreAsync();
+    inOrder.verify(bidManager).prefetch(any());
+  }
+
+  @Test
+  public void whenCreatingNewCriteo_GivenExecutorMetrics_ShouldScheduleTheirDebugDump() throws Exception {
+    ExecutorMetrics executorMetrics = mock(ExecutorMetrics.class);
+    ScheduledExecutorService scheduledExecutorService = mock(ScheduledExecutorService.class);
+    when(dependencyProvider.provideExecutorMetrics()).thenReturn(executorMetrics);
+    when(dependencyProvider.provideScheduledExecutorService()).thenReturn(scheduledExecutorService);
+    when(dependencyProvider.provideBuildConfigWrapper().getExecutorMetricsDumpIntervalInMillis())
+        .thenReturn(42);
+
+    createCriteo();
+
+    verify(executorMetrics).scheduleDebugDump(scheduledExecutorService, 42L);
+  }
+
   @Test
   public void whenCreatingNewCriteo_GivenBidManagerAndAdUnits_ShouldCallPrefetchWithAdUnits()
       throws Exception {
@@ -174,6 +174,21 @@ public class DependencyProviderTest {
     provideBean_WhenProvidedTwice_ReturnsTheSame(DependencyProvider::provideThreadPoolExecutor);
   }
 
+  @Test
+  public void provideExecutorMetrics_WhenProvidedTwice_ReturnsTheSame() throws Exception {
+    provideBean_WhenProvidedTwice_ReturnsTheSame(DependencyProvider::provideExecutorMetrics);
+  }
+
+  @Test
+  public void provideSdkScheduler_WhenProvidedTwice_ReturnsTheSame() throws Exception {
+    provideBean_WhenProvidedTwice_ReturnsTheSame(DependencyProvider::provideSdkScheduler);
+  }
+
+  @Test
+  public void provideMetricWriteBehindBuffer_WhenProvidedTwice_ReturnsTheSame() throws Exception {
+    provideBean_WhenProvidedTwice_ReturnsTheSame(DependencyProvider::provideMetricWriteBehindBuffer);
+  }
+
   @Test
   public void provideBuildConfigWrapper_WhenProvidedTwice_ReturnsTheSame() throws Exception {
     provideBean_WhenProvidedTwice_ReturnsTheSame(DependencyProvider::provideBuildConfigWrapper);
@@ -76,7 +76,7 @@ class LiveCdbCallListenerTests {
     liveCdbCallListener.onCdbResponse(cdbRequest, cdbResponse)
 
     verify(bidManager).setTimeToNextCall(1_000)
-    verify(bidManager, never()).setCacheAdUnits(any())
+    verify(bidManager, never()).setCacheAdUnits(any(), any())
     verify(bidListener, never()).onNoBid()
     verify(bidListener, times(1)).onBidResponse(freshCdbResponseSlot)
     verify(bidLifecycleListener).onCdbCallFinished(cdbRequest, cdbResponse)
@@ -93,7 +93,7 @@ class LiveCdbCallListenerTests {
     liveCdbCallListener.onCdbResponse(cdbRequest, cdbResponse)
 
     verify(bidManager).setTimeToNextCall(1_000)
-    verify(bidManager, never()).setCacheAdUnits(any())
+    verify(bidManager, never()).setCacheAdUnits(any(), any())
     verify(bidListener).onNoBid()
     verify(bidListener, never()).onBidResponse(freshCdbResponseSlot)
     verify(bidLifecycleListener, never()).onBidConsumed(cacheAdUnit, freshCdbResponseSlot)
@@ -109,7 +109,7 @@ class LiveCdbCallListenerTests {
     liveCdbCallListener.onCdbResponse(cdbRequest, cdbResponse)
 
     verify(bidManager).setTimeToNextCall(1_000)
-    verify(bidManager, never()).setCacheAdUnits(any())
+    verify(bidManager, never()).setCacheAdUnits(any(), any())
     verify(bidListener, never()).onBidResponse(any())
     verify(bidListener).onNoBid()
     verify(bidLifecycleListener).onCdbCallFinished(cdbRequest, cdbResponse)
@@ -127,7 +127,7 @@ class LiveCdbCallListenerTests {
     verify(bidManager).setTimeToNextCall(1_000)
     verify(bidLifecycleListener).onCdbCallFinished(cdbRequest, cdbResponse)
     verify(bidListener, never()).onBidResponse(any())
-    verify(bidManager).setCacheAdUnits(listOf(freshCdbResponseSlot))
+    verify(bidManager).setCacheAdUnits(cdbRequest, listOf(freshCdbResponseSlot))
     verify(bidListener).onNoBid()
   }
 
@@ -141,7 +141,7 @@ class LiveCdbCallListenerTests {
 
     verify(bidManager).consumeCachedBid(cacheAdUnit, bidListener)
     verify(bidManager).setTimeToNextCall(1_000)
-    verify(bidManager).setCacheAdUnits(cdbResponse.slots)
+    verify(bidManager).setCacheAdUnits(cdbRequest, cdbResponse.slots)
     verify(bidListener, never()).onBidResponse(freshCdbResponseSlot)
     verify(bidLifecycleListener).onCdbCallFinished(cdbRequest, cdbResponse)
     verify(bidLifecycleListener, never()).onBidConsumed(any(), any())
@@ -158,7 +158,7 @@ class LiveCdbCallListenerTests {
 
     verify(bidManager).consumeCachedBid(cacheAdUnit, bidListener)
     verify(bidManager, never()).setTimeToNextCall(1_000)
-    verify(bidManager, never()).setCacheAdUnits(any())
+    verify(bidManager, never()).setCacheAdUnits(any(), any())
     verify(bidListener, never()).onBidResponse(freshCdbResponseSlot)
     verify(bidLifecycleListener, never()).onCdbCallFinished(cdbRequest, cdbResponse)
     verify(bidLifecycleListener).onCdbCallFailed(cdbRequest, exception)
@@ -176,7 +176,7 @@ class LiveCdbCallListenerTests {
 
     verify(bidManager).consumeCachedBid(cacheAdUnit, bidListener)
     verify(bidManager, never()).setTimeToNextCall(1_000)
-    verify(bidManager, never()).setCacheAdUnits(any())
+    verify(bidManager, never()).setCacheAdUnits(any(), any())
     verify(bidListener, never()).onBidResponse(freshCdbResponseSlot)
     verify(bidLifecycleListener, never()).onCdbCallFinished(cdbRequest, cdbResponse)
     verify(bidLifecycleListener).onCdbCallFailed(cdbRequest, exception)
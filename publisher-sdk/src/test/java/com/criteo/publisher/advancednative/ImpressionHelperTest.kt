@@ -17,29 +17,19 @@
 package com.criteo.publisher.advancednative
 
 import com.criteo.publisher.concurrent.RunOnUiThreadExecutor
-import com.criteo.publisher.mock.MockBean
 import com.criteo.publisher.mock.MockedDependenciesRule
-import com.criteo.publisher.mock.SpyBean
-import com.criteo.publisher.network.PubSdkApi
-import com.criteo.publisher.util.BuildConfigWrapper
 import org.assertj.core.api.Assertions.assertThat
 import org.junit.Before
 import org.junit.Rule
 import org.junit.Test
 import org.mockito.ArgumentMatchers.any
 import org.mockito.Mock
-import org.mockito.Mockito.mock
 import org.mockito.Mockito.verify
 import org.mockito.junit.MockitoJUnit
 import org.mockito.kotlin.doAnswer
-import org.mockito.kotlin.doReturn
-import org.mockito.kotlin.doThrow
 import org.mockito.kotlin.mock
 import org.mockito.kotlin.whenever
-import java.io.IOException
-import java.io.InputStream
 import java.net.URL
-import java.util.concurrent.Executor
 import java.util.concurrent.atomic.AtomicBoolean
 
 class ImpressionHelperTest {
@@ -52,13 +42,8 @@ class ImpressionHelperTest {
     @JvmField
     val mockitoRule = MockitoJUnit.rule()
 
-    @MockBean
-    private lateinit var api: PubSdkApi
-
-    @SpyBean
-    private lateinit var buildConfigWrapper: BuildConfigWrapper
-
-    private val executor = Executor { it.run() }
+    @Mock
+    private lateinit var pixelDispatcher: ImpressionPixelDispatcher
 
     @Mock
     private lateinit var runOnUiThreadExecutor: RunOnUiThreadExecutor
@@ -67,23 +52,11 @@ class ImpressionHelperTest {
 
     @Before
     fun setUp() {
-        helper = ImpressionHelper(api, executor, runOnUiThreadExecutor)
-    }
-
-    @Test
-    fun firePixels_GivenAPixel_AskToApiToSendItAndCloseStream() {
-        val pixels = setOf(URL("http://my.pixel"))
-        val stream = mock<InputStream>()
-        whenever(api.executeRawGet(any())).thenReturn(stream)
-
-        helper.firePixels(pixels)
-
-        verify(api).executeRawGet(URL("http://my.pixel"))
-        verify(stream).close()
+        helper = ImpressionHelper(pixelDispatcher, runOnUiThreadExecutor)
     }
 
     @Test
-    fun firePixels_GivenMultiplePixels_AskToApiToSendThem() {
+    fun firePixels_GivenPixels_DelegateThemToDispatcher() {
         val pixels = listOf(
                 URL("http://my.pixel.1"),
                 URL("http://my.pixel.2")
@@ -91,29 +64,7 @@ class ImpressionHelperTest {
 
         helper.firePixels(pixels)
 
-        verify(api).executeRawGet(URL("http://my.pixel.1"))
-        verify(api).executeRawGet(URL("http://my.pixel.2"))
-    }
-
-    @Test
-    fun firePixels_GivenErrorOnOnePixel_IgnoreItAndContinueOnOthers() {
-        whenever(buildConfigWrapper.preconditionThrowsOnException()).doReturn(false)
-
-        val pixels = listOf(
-                URL("http://my.pixel.1"),
-                URL("http://my.pixel.2"),
-                URL("http://my.pixel.3")
-        )
-
-        doThrow(IOException::class)
-                .doReturn(null)
-                .doReturn(mock(InputStream::class.java))
-                .whenever(api).executeRawGet(any())
-
-        helper.firePixels(pixels)
-
-        verify(api).executeRawGet(URL("http://my.pixel.2"))
-        verify(api).executeRawGet(URL("http://my.pixel.3"))
+        verify(pixelDispatcher).enqueue(pixels)
     }
 
     @Test
@@ -0,0 +1,179 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.advancednative
+
+import com.criteo.publisher.context.ConnectionTypeFetcher
+import com.criteo.publisher.csm.ConcurrentSendingQueue
+import com.criteo.publisher.network.HttpResponseException
+import com.criteo.publisher.network.PubSdkApi
+import com.criteo.publisher.util.BuildConfigWrapper
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.mockito.Mock
+import org.mockito.junit.MockitoJUnit
+import org.mockito.kotlin.any
+import org.mockito.kotlin.argumentCaptor
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.doThrow
+import org.mockito.kotlin.eq
+import org.mockito.kotlin.never
+import org.mockito.kotlin.times
+import org.mockito.kotlin.verify
+import org.mockito.kotlin.whenever
+import java.io.IOException
+import java.net.URL
+import java.util.concurrent.Executor
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+
+class ImpressionPixelDispatcherTest {
+
+  @Rule
+  @JvmField
+  val mockitoRule = MockitoJUnit.rule()
+
+  @Mock
+  private lateinit var api: PubSdkApi
+
+  @Mock
+  private lateinit var connectionTypeFetcher: ConnectionTypeFetcher
+
+  @Mock
+  private lateinit var buildConfigWrapper: BuildConfigWrapper
+
+  @Mock
+  private lateinit var scheduledExecutorService: ScheduledExecutorService
+
+  private val sendingQueue = InMemoryPixelQueue()
+
+  private lateinit var dispatcher: ImpressionPixelDispatcher
+
+  @Before
+  fun setUp() {
+    whenever(connectionTypeFetcher.isNetworkAvailable()).doReturn(true)
+    whenever(buildConfigWrapper.pixelBatchSize).doReturn(2)
+    whenever(buildConfigWrapper.pixelMaxAttempts).doReturn(3)
+    whenever(buildConfigWrapper.pixelRetryBaseDelayInMillis).doReturn(1000)
+    whenever(buildConfigWrapper.pixelRetryMaxDelayInMillis).doReturn(3000)
+
+    dispatcher = ImpressionPixelDispatcher(
+        sendingQueue,
+        api,
+        connectionTypeFetcher,
+        buildConfigWrapper,
+        Executor { it.run() },
+        scheduledExecutorService
+    )
+  }
+
+  @Test
+  fun enqueue_GivenMorePixelsThanBatchSize_SendThemAll() {
+    val pixels = listOf(URL("http://my.pixel.1"), URL("http://my.pixel.2"), URL("http://my.pixel.3"))
+
+    dispatcher.enqueue(pixels)
+
+    verify(api).executeRawGet(URL("http://my.pixel.1"))
+    verify(api).executeRawGet(URL("http://my.pixel.2"))
+    verify(api).executeRawGet(URL("http://my.pixel.3"))
+    assertThat(sendingQueue.pixels).isEmpty()
+  }
+
+  @Test
+  fun enqueue_GivenNoNetwork_KeepPixelsAndTryAgainLater() {
+    whenever(connectionTypeFetcher.isNetworkAvailable()).doReturn(false)
+
+    dispatcher.enqueue(listOf(URL("http://my.pixel")))
+
+    verify(api, never()).executeRawGet(any())
+    assertThat(sendingQueue.pixels).containsExactly(ImpressionPixel("http://my.pixel"))
+    verify(scheduledExecutorService).schedule(any<Runnable>(), eq(1000L), eq(TimeUnit.MILLISECONDS))
+  }
+
+  @Test
+  fun enqueue_GivenFailingPixel_PutItBackAndSendItAfterBackoff() {
+    doThrow(IOException::class).doReturn(null).whenever(api).executeRawGet(any())
+
+    dispatcher.enqueue(listOf(URL("http://my.pixel")))
+
+    assertThat(sendingQueue.pixels).containsExactly(ImpressionPixel("http://my.pixel", attempts = 1))
+
+    runScheduledDispatch(1000L)
+
+    verify(api, times(2)).executeRawGet(URL("http://my.pixel"))
+    assertThat(sendingQueue.pixels).isEmpty()
+  }
+
+  @Test
+  fun enqueue_GivenConsecutiveFailures_DoubleTheBackoffUpToTheMax() {
+    whenever(buildConfigWrapper.pixelMaxAttempts).doReturn(10)
+    doThrow(IOException::class).whenever(api).executeRawGet(any())
+
+    dispatcher.enqueue(listOf(URL("http://my.pixel")))
+    runScheduledDispatch(1000L)
+    runScheduledDispatch(2000L)
+    runScheduledDispatch(3000L)
+  }
+
+  @Test
+  fun dispatchPending_GivenPixelFailingItsLastAttempt_DropIt() {
+    sendingQueue.offer(ImpressionPixel("http://my.pixel", attempts = 2))
+    doThrow(IOException::class).whenever(api).executeRawGet(any())
+
+    dispatcher.dispatchPending()
+
+    verify(api).executeRawGet(URL("http://my.pixel"))
+    assertThat(sendingQueue.pixels).isEmpty()
+  }
+
+  @Test
+  fun enqueue_GivenPixelRejectedByHost_DropItWithoutBackoff() {
+    doThrow(HttpResponseException(404)).whenever(api).executeRawGet(any())
+
+    dispatcher.enqueue(listOf(URL("http://my.pixel")))
+
+    assertThat(sendingQueue.pixels).isEmpty()
+    verify(scheduledExecutorService, never()).schedule(any<Runnable>(), any(), any())
+  }
+
+  private fun runScheduledDispatch(expectedDelay: Long) {
+    argumentCaptor<Runnable> {
+      verify(scheduledExecutorService).schedule(capture(), eq(expectedDelay), eq(TimeUnit.MILLISECONDS))
+      firstValue.run()
+    }
+  }
+
+  private class InMemoryPixelQueue : ConcurrentSendingQueue<ImpressionPixel> {
+    val pixels = mutableListOf<ImpressionPixel>()
+
+    override fun offer(element: ImpressionPixel) = pixels.add(element)
+
+    override fun poll(max: Int): List<ImpressionPixel> {
+      val polled = pixels.take(max)
+      pixels.subList(0, polled.size).clear()
+      return polled
+    }
+
+    override fun poll(max: Int, maxBytes: Int) = poll(max)
+
+    override fun rollback(elements: List<ImpressionPixel>) = pixels.addAll(0, elements)
+
+    override val totalSize: Int
+      get() = pixels.size
+  }
+}
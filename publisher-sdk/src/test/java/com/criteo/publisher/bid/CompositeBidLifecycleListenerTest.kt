@@ -103,4 +103,15 @@ class CompositeBidLifecycleListenerTest {
     verify(listener1).onBidConsumed(adUnit, slot)
     verify(listener2).onBidConsumed(adUnit, slot)
   }
+
+  @Test
+  fun onBidEvicted_GivenDelegates_DelegateToThem() {
+    val adUnit = CacheAdUnit(AdSize(1, 2), "myAdUnit", CRITEO_BANNER)
+    val slot = mock<CdbResponseSlot>()
+
+    listener.onBidEvicted(adUnit, slot)
+
+    verify(listener1).onBidEvicted(adUnit, slot)
+    verify(listener2).onBidEvicted(adUnit, slot)
+  }
 }
@@ -0,0 +1,186 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.cache
+
+import com.criteo.publisher.Clock
+import com.criteo.publisher.context.ContextData
+import com.criteo.publisher.model.CacheAdUnit
+import com.criteo.publisher.util.BuildConfigWrapper
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.mockito.Mock
+import org.mockito.junit.MockitoJUnit
+import org.mockito.kotlin.any
+import org.mockito.kotlin.atLeastOnce
+import org.mockito.kotlin.argumentCaptor
+import org.mockito.kotlin.eq
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.never
+import org.mockito.kotlin.times
+import org.mockito.kotlin.verify
+import org.mockito.kotlin.whenever
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+
+class BidRefreshSchedulerTest {
+
+  @Rule
+  @JvmField
+  val mockitoRule = MockitoJUnit.rule()
+
+  @Mock
+  private lateinit var clock: Clock
+
+  @Mock
+  private lateinit var scheduledExecutorService: ScheduledExecutorService
+
+  @Mock
+  private lateinit var buildConfigWrapper: BuildConfigWrapper
+
+  @Mock
+  private lateinit var listener: BidRefreshScheduler.Listener
+
+  private val contextData = ContextData()
+
+  private lateinit var scheduler: BidRefreshScheduler
+
+  @Before
+  fun setUp() {
+    whenever(clock.currentTimeInMillis).thenReturn(0)
+    whenever(buildConfigWrapper.bidRefreshLeadTimeInMillis).thenReturn(100)
+    whenever(buildConfigWrapper.bidRefreshWindowInMillis).thenReturn(50)
+    whenever(scheduledExecutorService.schedule(any<Runnable>(), any(), any())).thenReturn(mock<ScheduledFuture<*>>())
+
+    scheduler = BidRefreshScheduler(clock, scheduledExecutorService, buildConfigWrapper)
+    scheduler.setListener(listener)
+  }
+
+  @Test
+  fun schedule_GivenRefreshDisabled_DoNothing() {
+    whenever(buildConfigWrapper.bidRefreshLeadTimeInMillis).thenReturn(0)
+
+    scheduler.schedule(mock(), 1000, contextData)
+
+    verify(scheduledExecutorService, never()).schedule(any<Runnable>(), any(), any())
+  }
+
+  @Test
+  fun schedule_GivenBidExpiringBeforeLeadTime_DoNothing() {
+    scheduler.schedule(mock(), 100, contextData)
+
+    verify(scheduledExecutorService, never()).schedule(any<Runnable>(), any(), any())
+  }
+
+  @Test
+  fun schedule_GivenBid_ArmTimerBeforeExpiry() {
+    scheduler.schedule(mock(), 1000, contextData)
+
+    verify(scheduledExecutorService).schedule(any<Runnable>(), eq(900L), eq(TimeUnit.MILLISECONDS))
+  }
+
+  @Test
+  fun schedule_GivenLaterBid_DoNotArmTimerAgain() {
+    scheduler.schedule(mock(), 1000, contextData)
+    scheduler.schedule(mock(), 2000, contextData)
+
+    verify(scheduledExecutorService, times(1)).schedule(any<Runnable>(), any(), any())
+  }
+
+  @Test
+  fun timer_GivenAdUnitsDueInSameWindow_NotifyThemAllAtOnce() {
+    val adUnit1 = mock<CacheAdUnit>()
+    val adUnit2 = mock<CacheAdUnit>()
+    val adUnit3 = mock<CacheAdUnit>()
+    scheduler.schedule(adUnit1, 1000, contextData)
+    scheduler.schedule(adUnit2, 1040, contextData)
+    scheduler.schedule(adUnit3, 2000, contextData)
+
+    whenever(clock.currentTimeInMillis).thenReturn(900)
+    fireTimer()
+
+    verify(listener).onRefreshDue(listOf(adUnit1, adUnit2), contextData)
+    verify(scheduledExecutorService).schedule(any<Runnable>(), eq(1000L), eq(TimeUnit.MILLISECONDS))
+  }
+
+  @Test
+  fun timer_GivenSameAdUnitScheduledTwice_NotifyItOnceAtEarliestRefresh() {
+    val adUnit = mock<CacheAdUnit>()
+    scheduler.schedule(adUnit, 2000, contextData)
+    scheduler.schedule(adUnit, 1000, contextData)
+
+    whenever(clock.currentTimeInMillis).thenReturn(900)
+    fireTimer()
+
+    verify(listener).onRefreshDue(listOf(adUnit), contextData)
+  }
+
+  @Test
+  fun timer_GivenAdUnitsScheduledWithDifferentContexts_NotifyThemPerContext() {
+    val adUnit1 = mock<CacheAdUnit>()
+    val adUnit2 = mock<CacheAdUnit>()
+    val adUnit3 = mock<CacheAdUnit>()
+    val otherContextData = ContextData().set(ContextData.CONTENT_URL, "https://criteo.com")
+    scheduler.schedule(adUnit1, 1000, contextData)
+    scheduler.schedule(adUnit2, 1010, otherContextData)
+    scheduler.schedule(adUnit3, 1020, contextData)
+
+    whenever(clock.currentTimeInMillis).thenReturn(900)
+    fireTimer()
+
+    verify(listener).onRefreshDue(listOf(adUnit1, adUnit3), contextData)
+    verify(listener).onRefreshDue(listOf(adUnit2), otherContextData)
+  }
+
+  @Test
+  fun timer_GivenPaused_DoNotNotifyUntilResumed() {
+    val adUnit = mock<CacheAdUnit>()
+    scheduler.schedule(adUnit, 1000, contextData)
+    val timer = captureTimer()
+
+    scheduler.pause()
+    whenever(clock.currentTimeInMillis).thenReturn(2000)
+    timer.run()
+
+    verify(listener, never()).onRefreshDue(any(), any())
+
+    scheduler.resume()
+    fireTimer()
+
+    verify(listener).onRefreshDue(listOf(adUnit), contextData)
+  }
+
+  @Test
+  fun isRefreshDue_GivenExpiryInsideLeadTimeAndWindow_ReturnTrue() {
+    whenever(clock.currentTimeInMillis).thenReturn(1000)
+
+    assertThat(scheduler.isRefreshDue(1150)).isTrue()
+    assertThat(scheduler.isRefreshDue(1151)).isFalse()
+  }
+
+  private fun fireTimer() {
+    captureTimer().run()
+  }
+
+  private fun captureTimer(): Runnable {
+    val captor = argumentCaptor<Runnable>()
+    verify(scheduledExecutorService, atLeastOnce()).schedule(captor.capture(), any(), any())
+    return captor.lastValue
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.cache
+
+import android.content.SharedPreferences
+import com.criteo.publisher.context.ConnectionTypeFetcher
+import com.criteo.publisher.context.ConnectionTypeFetcher.ConnectionType
+import com.criteo.publisher.model.AdSize
+import com.criteo.publisher.model.CacheAdUnit
+import com.criteo.publisher.util.AdUnitType.CRITEO_BANNER
+import com.criteo.publisher.util.BuildConfigWrapper
+import com.criteo.publisher.util.JsonSerializer
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.mockito.Mock
+import org.mockito.junit.MockitoJUnit
+import org.mockito.kotlin.any
+import org.mockito.kotlin.anyOrNull
+import org.mockito.kotlin.argumentCaptor
+import org.mockito.kotlin.never
+import org.mockito.kotlin.verify
+import org.mockito.kotlin.whenever
+
+class PrefetchPolicyTest {
+
+  @Rule
+  @JvmField
+  val mockitoRule = MockitoJUnit.rule()
+
+  @Mock
+  private lateinit var sharedPreferences: SharedPreferences
+
+  @Mock
+  private lateinit var editor: SharedPreferences.Editor
+
+  @Mock
+  private lateinit var jsonSerializer: JsonSerializer
+
+  @Mock
+  private lateinit var connectionTypeFetcher: ConnectionTypeFetcher
+
+  @Mock
+  private lateinit var buildConfigWrapper: BuildConfigWrapper
+
+  private lateinit var policy: PrefetchPolicy
+
+  @Before
+  fun setUp() {
+    whenever(sharedPreferences.getString(any(), anyOrNull())).thenReturn(null)
+    whenever(sharedPreferences.edit()).thenReturn(editor)
+    whenever(editor.putString(any(), any())).thenReturn(editor)
+    whenever(connectionTypeFetcher.fetchConnectionType()).thenReturn(ConnectionType.WIFI)
+    whenever(buildConfigWrapper.prefetchDemandSmoothingPercent).thenReturn(30)
+    whenever(buildConfigWrapper.prefetchColdDemandThresholdPercent).thenReturn(25)
+    whenever(buildConfigWrapper.prefetchChunkSizeOnFastNetwork).thenReturn(8)
+    whenever(buildConfigWrapper.prefetchChunkSizeOnSlowNetwork).thenReturn(2)
+
+    policy = PrefetchPolicy(sharedPreferences, jsonSerializer, connectionTypeFetcher, buildConfigWrapper)
+  }
+
+  @Test
+  fun plan_GivenNoHistory_KeepAllAdUnitsInOrder() {
+    val adUnits = listOf(adUnit("a"), adUnit("b"), adUnit("c"))
+
+    assertThat(policy.plan(adUnits)).containsExactly(adUnits)
+  }
+
+  @Test
+  fun plan_GivenSlowNetwork_UseSmallerChunks() {
+    whenever(connectionTypeFetcher.fetchConnectionType()).thenReturn(ConnectionType.CELLULAR_3G)
+    val adUnits = listOf(adUnit("a"), adUnit("b"), adUnit("c"))
+
+    assertThat(policy.plan(adUnits)).containsExactly(
+        listOf(adUnit("a"), adUnit("b")),
+        listOf(adUnit("c"))
+    )
+  }
+
+  @Test
+  fun plan_GivenDemandHistory_PrefetchHotFirstAndSkipCold() {
+    // a: 0.3 * 3 = 0.9, b: 0.3 * 1 = 0.3
+    repeat(3) { policy.onAdUnitRequested(adUnit("a")) }
+    policy.onAdUnitRequested(adUnit("b"))
+    policy.onSessionEnded()
+
+    // a: 0.3 * 1 + 0.7 * 0.9 = 0.93, b: 0.7 * 0.3 = 0.21
+    policy.onAdUnitRequested(adUnit("a"))
+    policy.onSessionEnded()
+
+    val planned = policy.plan(listOf(adUnit("b"), adUnit("c"), adUnit("a")))
+
+    assertThat(planned).containsExactly(listOf(adUnit("a"), adUnit("c")))
+  }
+
+  @Test
+  fun plan_GivenDemandTrackingDisabled_KeepAllAdUnitsInOrder() {
+    whenever(buildConfigWrapper.prefetchDemandSmoothingPercent).thenReturn(0)
+    policy.onAdUnitRequested(adUnit("a"))
+    policy.onSessionEnded()
+
+    val adUnits = listOf(adUnit("b"), adUnit("a"))
+
+    assertThat(policy.plan(adUnits)).containsExactly(adUnits)
+    verify(sharedPreferences, never()).edit()
+  }
+
+  @Test
+  fun onSessionEnded_GivenRequests_PersistDemand() {
+    policy.onAdUnitRequested(adUnit("a"))
+    policy.onAdUnitRequested(adUnit("a"))
+
+    policy.onSessionEnded()
+
+    val captor = argumentCaptor<AdUnitDemand>()
+    verify(jsonSerializer).write(captor.capture(), any())
+    assertThat(captor.firstValue.rates.values).containsExactly(0.6)
+    verify(editor).apply()
+  }
+
+  @Test
+  fun onSessionEnded_GivenNoRequest_DoNotPersist() {
+    policy.onSessionEnded()
+
+    verify(sharedPreferences, never()).edit()
+  }
+
+  private fun adUnit(placementId: String) = CacheAdUnit(AdSize(1, 1), placementId, CRITEO_BANNER)
+}
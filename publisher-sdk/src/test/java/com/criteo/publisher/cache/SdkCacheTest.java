@@ -23,16 +23,33 @@ import static com.criteo.publisher.util.AdUnitType.CRITEO_REWARDED;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 import android.content.Context;
+import com.criteo.publisher.Clock;
+import com.criteo.publisher.bid.BidLifecycleListener;
 import com.criteo.publisher.model.AdSize;
 import com.criteo.publisher.model.CacheAdUnit;
 import com.criteo.publisher.model.CdbResponseSlot;
+import com.criteo.publisher.util.BuildConfigWrapper;
 import com.criteo.publisher.util.DeviceUtil;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -53,14 +70,29 @@ public class SdkCacheTest {
   @Mock(answer = Answers.RETURNS_DEEP_STUBS)
   private Context context;
 
+  @Mock
+  private BuildConfigWrapper buildConfigWrapper;
+
+  @Mock
+  private Clock clock;
+
+  @Mock
+  private BidLifecycleListener bidLifecycleListener;
+
+  @Mock
+  private ScheduledExecutorService scheduledExecutorService;
+
   private JSONArray slots;
   private DeviceUtil deviceUtil;
   private SdkCache cache;
 
   @Before
   public void setUp() throws Exception {
+    when(buildConfigWrapper.getBidCacheDepth()).thenReturn(1);
+    when(buildConfigWrapper.getBidCacheLowWaterMark()).thenReturn(1);
+
     deviceUtil = spy(new DeviceUtil(context));
-    cache = new SdkCache(deviceUtil);
+    cache = createCache();
   }
 
   @Test
@@ -168,7 +200,7 @@ public class SdkCacheTest {
     String json = "{\"slots\":[{\"placementId\":\"/140800857/Endeavour_320x50\",\"cpm\":\"1.12\",\"currency\":\"EUR\",\"width\":320,\"height\":50,\"ttl\":0,\"displayUrl\":\"https://publisherdirect.criteo.com/publishertag/preprodtest/FakeAJS.js\"},{\"placementId\":\"/140800857/Endeavour_Interstitial_320x480\",\"cpm\":\"1.12\",\"currency\":\"EUR\",\"width\":320,\"height\":480,\"ttl\":0,\"displayUrl\":\"https://publisherdirect.criteo.com/publishertag/preprodtest/FakeAJS.js\"}]}";
     JSONObject element = new JSONObject(json);
     slots = element.getJSONArray("slots");
-    cache = new SdkCache(deviceUtil);
+    cache = createCache();
     for (int i = 0; i < slots.length(); i++) {
       CdbResponseSlot slot = CdbResponseSlot.fromJson(slots.getJSONObject(i));
       cache.add(slot);
@@ -225,7 +257,7 @@ public class SdkCacheTest {
       JSONObject cdbResponse = new JSONObject(cdbStringResponse);
       JSONObject cdbSlot = cdbResponse.getJSONArray("slots").getJSONObject(0);
       CdbResponseSlot slot = CdbResponseSlot.fromJson(cdbSlot);
-      cache = new SdkCache(deviceUtil);
+      cache = createCache();
       cache.add(slot);
       assertEquals(1, cache.getItemCount());
     } catch (Exception ex) {
@@ -350,6 +382,387 @@ public class SdkCacheTest {
     assertThat(slot).isNull();
   }
 
+  @Test
+  public void addExpected_GivenNothingCachedAndNothingExpected_AddItInCache() throws Exception {
+    AdSize size = new AdSize(1, 2);
+    CdbResponseSlot slot = givenNativeSlot(size, "myAdUnit");
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+
+    boolean isAdded = cache.add(slot, null);
+
+    assertThat(isAdded).isTrue();
+    assertThat(cache.peekAdUnit(key)).isSameAs(slot);
+  }
+
+  @Test
+  public void addExpected_GivenExpectedSlotIsCached_ReplaceIt() throws Exception {
+    AdSize size = new AdSize(1, 2);
+    CdbResponseSlot oldSlot = givenNativeSlot(size, "myAdUnit");
+    CdbResponseSlot newSlot = givenNativeSlot(size, "myAdUnit");
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+    cache.add(oldSlot);
+
+    boolean isAdded = cache.add(newSlot, oldSlot);
+
+    assertThat(isAdded).isTrue();
+    assertThat(cache.peekAdUnit(key)).isSameAs(newSlot);
+  }
+
+  @Test
+  public void addExpected_GivenAnotherSlotIsCached_DoNotReplaceIt() throws Exception {
+    AdSize size = new AdSize(1, 2);
+    CdbResponseSlot cachedSlot = givenNativeSlot(size, "myAdUnit");
+    CdbResponseSlot expectedSlot = givenNativeSlot(size, "myAdUnit");
+    CdbResponseSlot newSlot = givenNativeSlot(size, "myAdUnit");
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+    cache.add(cachedSlot);
+
+    boolean isAdded1 = cache.add(newSlot, expectedSlot);
+    boolean isAdded2 = cache.add(newSlot, null);
+
+    assertThat(isAdded1).isFalse();
+    assertThat(isAdded2).isFalse();
+    assertThat(cache.peekAdUnit(key)).isSameAs(cachedSlot);
+  }
+
+  @Test
+  public void addExpected_GivenSlotWithoutPlacement_IgnoreIt() throws Exception {
+    CdbResponseSlot slot = mock(CdbResponseSlot.class);
+
+    boolean isAdded = cache.add(slot, null);
+
+    assertThat(isAdded).isTrue();
+    assertThat(cache.getItemCount()).isZero();
+  }
+
+  @Test
+  public void removeExpected_GivenExpectedSlotIsCached_RemoveIt() throws Exception {
+    AdSize size = new AdSize(1, 2);
+    CdbResponseSlot slot = givenNativeSlot(size, "myAdUnit");
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+    cache.add(slot);
+
+    boolean isRemoved = cache.remove(key, slot);
+
+    assertThat(isRemoved).isTrue();
+    assertThat(cache.peekAdUnit(key)).isNull();
+  }
+
+  @Test
+  public void removeExpected_GivenAnotherSlotIsCached_DoNotRemoveIt() throws Exception {
+    AdSize size = new AdSize(1, 2);
+    CdbResponseSlot cachedSlot = givenNativeSlot(size, "myAdUnit");
+    CdbResponseSlot otherSlot = givenNativeSlot(size, "myAdUnit");
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+    cache.add(cachedSlot);
+
+    boolean isRemoved = cache.remove(key, otherSlot);
+
+    assertThat(isRemoved).isFalse();
+    assertThat(cache.peekAdUnit(key)).isSameAs(cachedSlot);
+  }
+
+  @Test
+  public void removeExpected_GivenManyConcurrentConsumers_EachSlotIsRemovedExactlyOnce()
+      throws Exception {
+    int nbAdUnits = 20;
+    int nbThreads = 8;
+
+    List<CacheAdUnit> keys = new ArrayList<>();
+    for (int i = 0; i < nbAdUnits; i++) {
+      AdSize size = new AdSize(1, 2);
+      CdbResponseSlot slot = givenNativeSlot(size, "myAdUnit" + i);
+      keys.add(new CacheAdUnit(size, "myAdUnit" + i, CRITEO_CUSTOM_NATIVE));
+      cache.add(slot);
+    }
+
+    AtomicInteger nbRemoved = new AtomicInteger();
+    CountDownLatch startLatch = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+    List<Future<?>> futures = new ArrayList<>();
+
+    for (int i = 0; i < nbThreads; i++) {
+      futures.add(executor.submit(() -> {
+        startLatch.await();
+        for (CacheAdUnit key : keys) {
+          CdbResponseSlot slot = cache.peekAdUnit(key);
+          if (slot != null && cache.remove(key, slot)) {
+            nbRemoved.incrementAndGet();
+          }
+        }
+        return null;
+      }));
+    }
+
+    startLatch.countDown();
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    assertThat(nbRemoved.get()).isEqualTo(nbAdUnits);
+    assertThat(cache.getItemCount()).isZero();
+  }
+
+  @Test
+  public void addWithKey_GivenSlotOfAnotherDetectedAdUnit_CacheItUnderGivenKey() throws Exception {
+    AdSize size = new AdSize(1, 2);
+    CacheAdUnit requestedKey = new CacheAdUnit(new AdSize(2, 1), "myAdUnit", CRITEO_INTERSTITIAL);
+    CacheAdUnit detectedKey = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+    CdbResponseSlot slot = givenNativeSlot(size, "myAdUnit");
+
+    boolean isAdded = cache.add(requestedKey, slot, null);
+
+    assertThat(isAdded).isTrue();
+    assertThat(cache.peekAdUnit(requestedKey)).isSameAs(slot);
+    assertThat(cache.peekAdUnit(detectedKey)).isNull();
+  }
+
+  @Test
+  public void addWithKey_GivenUnexpectedHead_DoNothing() throws Exception {
+    AdSize size = new AdSize(1, 2);
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+    CdbResponseSlot cachedSlot = givenNativeSlot(size, "myAdUnit");
+    CdbResponseSlot newSlot = givenNativeSlot(size, "myAdUnit");
+    cache.put(key, cachedSlot);
+
+    boolean isAdded = cache.add(key, newSlot, null);
+
+    assertThat(isAdded).isFalse();
+    assertThat(cache.peekAdUnit(key)).isSameAs(cachedSlot);
+  }
+
+  @Test
+  public void add_GivenDepthOfOneAndExistingSlot_ReplaceIt() throws Exception {
+    AdSize size = new AdSize(1, 2);
+    CdbResponseSlot oldSlot = givenNativeSlot(size, "myAdUnit");
+    CdbResponseSlot newSlot = givenNativeSlot(size, "myAdUnit");
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+
+    cache.add(oldSlot);
+    cache.add(newSlot);
+
+    assertThat(cache.getItemCount()).isEqualTo(1);
+    assertThat(cache.peekAdUnit(key)).isSameAs(newSlot);
+  }
+
+  @Test
+  public void add_GivenDepthOfManySlots_KeepThemOrderedByExpiry() throws Exception {
+    when(buildConfigWrapper.getBidCacheDepth()).thenReturn(3);
+
+    AdSize size = new AdSize(1, 2);
+    CdbResponseSlot slot1 = givenNativeSlot(size, "myAdUnit");
+    CdbResponseSlot slot2 = givenNativeSlot(size, "myAdUnit");
+    CdbResponseSlot slot3 = givenNativeSlot(size, "myAdUnit");
+    when(slot1.getExpiryTimeInMillis()).thenReturn(1000L);
+    when(slot2.getExpiryTimeInMillis()).thenReturn(3000L);
+    when(slot3.getExpiryTimeInMillis()).thenReturn(2000L);
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+
+    cache.add(slot2);
+    cache.add(slot1);
+    cache.add(slot3);
+
+    assertThat(cache.getItemCount()).isEqualTo(3);
+    assertThat(cache.peekAdUnit(key)).isSameAs(slot1);
+    cache.remove(key, slot1);
+    assertThat(cache.peekAdUnit(key)).isSameAs(slot3);
+    cache.remove(key, slot3);
+    assertThat(cache.peekAdUnit(key)).isSameAs(slot2);
+    cache.remove(key, slot2);
+    assertThat(cache.peekAdUnit(key)).isNull();
+  }
+
+  @Test
+  public void add_GivenFullQueue_EvictSlotExpiringFirst() throws Exception {
+    when(buildConfigWrapper.getBidCacheDepth()).thenReturn(2);
+
+    AdSize size = new AdSize(1, 2);
+    CdbResponseSlot slot1 = givenNativeSlot(size, "myAdUnit");
+    CdbResponseSlot slot2 = givenNativeSlot(size, "myAdUnit");
+    CdbResponseSlot slot3 = givenNativeSlot(size, "myAdUnit");
+    when(slot1.getExpiryTimeInMillis()).thenReturn(1000L);
+    when(slot2.getExpiryTimeInMillis()).thenReturn(2000L);
+    when(slot3.getExpiryTimeInMillis()).thenReturn(3000L);
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+
+    cache.add(slot1);
+    cache.add(slot2);
+    cache.add(slot3);
+
+    assertThat(cache.getItemCount()).isEqualTo(2);
+    assertThat(cache.peekAdUnit(key)).isSameAs(slot2);
+    verify(bidLifecycleListener).onBidEvicted(key, slot1);
+    verifyNoMoreInteractions(bidLifecycleListener);
+  }
+
+  @Test
+  public void add_GivenSilentSlot_ReplaceAllCachedSlots() throws Exception {
+    when(buildConfigWrapper.getBidCacheDepth()).thenReturn(3);
+
+    AdSize size = new AdSize(1, 2);
+    CdbResponseSlot slot1 = givenNativeSlot(size, "myAdUnit");
+    CdbResponseSlot slot2 = givenNativeSlot(size, "myAdUnit");
+    CdbResponseSlot silentSlot = givenNativeSlot(size, "myAdUnit");
+    when(silentSlot.getCpmAsNumber()).thenReturn(0.0);
+    when(silentSlot.getTtlInSeconds()).thenReturn(60);
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+
+    cache.add(slot1);
+    cache.add(slot2);
+    cache.add(silentSlot);
+
+    assertThat(cache.getItemCount()).isEqualTo(1);
+    assertThat(cache.peekAdUnit(key)).isSameAs(silentSlot);
+    verify(bidLifecycleListener).onBidEvicted(key, slot1);
+    verify(bidLifecycleListener).onBidEvicted(key, slot2);
+    verifyNoMoreInteractions(bidLifecycleListener);
+  }
+
+  @Test
+  public void addExpected_GivenUnexpectedHead_DoNotReportAnyEviction() throws Exception {
+    AdSize size = new AdSize(1, 2);
+    CdbResponseSlot cachedSlot = givenNativeSlot(size, "myAdUnit");
+    CdbResponseSlot newSlot = givenNativeSlot(size, "myAdUnit");
+    cache.add(cachedSlot);
+
+    boolean isAdded = cache.add(newSlot, mock(CdbResponseSlot.class));
+
+    assertThat(isAdded).isFalse();
+    verifyNoInteractions(bidLifecycleListener);
+  }
+
+  @Test
+  public void isSilentBid_GivenNoCpmAndPositiveTtl_ReturnTrue() throws Exception {
+    CdbResponseSlot slot = mock(CdbResponseSlot.class);
+    when(slot.getCpmAsNumber()).thenReturn(0.0);
+    when(slot.getTtlInSeconds()).thenReturn(60);
+
+    assertThat(SdkCache.isSilentBid(slot)).isTrue();
+
+    when(slot.getTtlInSeconds()).thenReturn(0);
+    assertThat(SdkCache.isSilentBid(slot)).isFalse();
+
+    when(slot.getCpmAsNumber()).thenReturn(1.0);
+    when(slot.getTtlInSeconds()).thenReturn(60);
+    assertThat(SdkCache.isSilentBid(slot)).isFalse();
+  }
+
+  @Test
+  public void getMissingBidCount_GivenNothingCached_ReturnFullDepth() throws Exception {
+    when(buildConfigWrapper.getBidCacheDepth()).thenReturn(3);
+    when(buildConfigWrapper.getBidCacheLowWaterMark()).thenReturn(2);
+    CacheAdUnit key = new CacheAdUnit(new AdSize(1, 2), "myAdUnit", CRITEO_CUSTOM_NATIVE);
+
+    int missingBidCount = cache.getMissingBidCount(key);
+
+    assertThat(missingBidCount).isEqualTo(3);
+  }
+
+  @Test
+  public void getMissingBidCount_GivenCountBelowLowWaterMark_ReturnMissingBidsToFullDepth()
+      throws Exception {
+    when(buildConfigWrapper.getBidCacheDepth()).thenReturn(3);
+    when(buildConfigWrapper.getBidCacheLowWaterMark()).thenReturn(2);
+    AdSize size = new AdSize(1, 2);
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+    cache.add(givenNativeSlot(size, "myAdUnit"));
+
+    int missingBidCount = cache.getMissingBidCount(key);
+
+    assertThat(missingBidCount).isEqualTo(2);
+  }
+
+  @Test
+  public void getMissingBidCount_GivenCountAtLowWaterMark_ReturnZero() throws Exception {
+    when(buildConfigWrapper.getBidCacheDepth()).thenReturn(3);
+    when(buildConfigWrapper.getBidCacheLowWaterMark()).thenReturn(2);
+    AdSize size = new AdSize(1, 2);
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+    cache.add(givenNativeSlot(size, "myAdUnit"));
+    cache.add(givenNativeSlot(size, "myAdUnit"));
+
+    int missingBidCount = cache.getMissingBidCount(key);
+
+    assertThat(missingBidCount).isZero();
+  }
+
+  @Test
+  public void add_GivenSweepIntervalAndFirstAdUnit_StartSweeperOnce() throws Exception {
+    when(buildConfigWrapper.getBidCacheSweepIntervalInMillis()).thenReturn(42);
+    cache = createCache();
+
+    cache.add(givenNativeSlot(new AdSize(1, 2), "myAdUnit1"));
+    cache.add(givenNativeSlot(new AdSize(1, 2), "myAdUnit2"));
+
+    verify(scheduledExecutorService).scheduleWithFixedDelay(
+        any(),
+        eq(42L),
+        eq(42L),
+        eq(TimeUnit.MILLISECONDS)
+    );
+  }
+
+  @Test
+  public void sweepExpiredBids_GivenExpiredAndValidSlots_RemoveAndReportOnlyExpiredOnes()
+      throws Exception {
+    when(buildConfigWrapper.getBidCacheDepth()).thenReturn(2);
+    AdSize size = new AdSize(1, 2);
+    CacheAdUnit key1 = new CacheAdUnit(size, "myAdUnit1", CRITEO_CUSTOM_NATIVE);
+    CacheAdUnit key2 = new CacheAdUnit(size, "myAdUnit2", CRITEO_CUSTOM_NATIVE);
+    CdbResponseSlot expiredSlot1 = givenNativeSlot(size, "myAdUnit1");
+    CdbResponseSlot validSlot1 = givenNativeSlot(size, "myAdUnit1");
+    CdbResponseSlot expiredSlot2 = givenNativeSlot(size, "myAdUnit2");
+    when(expiredSlot1.isExpired(clock)).thenReturn(true);
+    when(expiredSlot2.isExpired(clock)).thenReturn(true);
+    when(validSlot1.getExpiryTimeInMillis()).thenReturn(1L);
+
+    cache.add(expiredSlot1);
+    cache.add(validSlot1);
+    cache.add(expiredSlot2);
+    cache.sweepExpiredBids();
+
+    assertThat(cache.peekAdUnit(key1)).isSameAs(validSlot1);
+    assertThat(cache.peekAdUnit(key2)).isNull();
+    assertThat(cache.getItemCount()).isEqualTo(1);
+    verify(bidLifecycleListener).onBidEvicted(key1, expiredSlot1);
+    verify(bidLifecycleListener).onBidEvicted(key2, expiredSlot2);
+    verifyNoMoreInteractions(bidLifecycleListener);
+  }
+
+  @Test
+  public void add_GivenCapacityReached_EvictLeastRecentlyUsedAdUnit() throws Exception {
+    when(buildConfigWrapper.getBidCacheMaxAdUnitCount()).thenReturn(2);
+    AdSize size = new AdSize(1, 2);
+    CacheAdUnit key1 = new CacheAdUnit(size, "myAdUnit1", CRITEO_CUSTOM_NATIVE);
+    CacheAdUnit key2 = new CacheAdUnit(size, "myAdUnit2", CRITEO_CUSTOM_NATIVE);
+    CacheAdUnit key3 = new CacheAdUnit(size, "myAdUnit3", CRITEO_CUSTOM_NATIVE);
+    CdbResponseSlot slot1 = givenNativeSlot(size, "myAdUnit1");
+    CdbResponseSlot slot2 = givenNativeSlot(size, "myAdUnit2");
+    CdbResponseSlot slot3 = givenNativeSlot(size, "myAdUnit3");
+
+    cache.add(slot1);
+    cache.add(slot2);
+    cache.peekAdUnit(key1);
+    cache.add(slot3);
+
+    assertThat(cache.peekAdUnit(key1)).isSameAs(slot1);
+    assertThat(cache.peekAdUnit(key2)).isNull();
+    assertThat(cache.peekAdUnit(key3)).isSameAs(slot3);
+    verify(bidLifecycleListener).onBidEvicted(key2, slot2);
+    verifyNoMoreInteractions(bidLifecycleListener);
+  }
+
+  private SdkCache createCache() {
+    return new SdkCache(
+        deviceUtil,
+        buildConfigWrapper,
+        clock,
+        bidLifecycleListener,
+        scheduledExecutorService
+    );
+  }
+
   private static CdbResponseSlot givenNativeSlot(AdSize size, String placementId) {
     CdbResponseSlot slot = mock(CdbResponseSlot.class);
     when(slot.isNative()).thenReturn(true);
@@ -0,0 +1,93 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.concurrent
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Rule
+import org.junit.Test
+import org.mockito.Mock
+import org.mockito.junit.MockitoJUnit
+import org.mockito.kotlin.any
+import org.mockito.kotlin.eq
+import org.mockito.kotlin.verify
+import org.mockito.kotlin.verifyNoInteractions
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+
+class ExecutorMetricsTest {
+
+  @Rule
+  @JvmField
+  val mockitoRule = MockitoJUnit.rule()
+
+  @Mock
+  private lateinit var scheduledExecutorService: ScheduledExecutorService
+
+  private val executorMetrics = ExecutorMetrics()
+
+  @Test
+  fun snapshot_GivenRecordedTasks_ReturnCountsAndTimingsPerLane() {
+    executorMetrics.onTaskSubmitted(Lane.PREFETCH)
+    executorMetrics.onTaskSubmitted(Lane.PREFETCH)
+    executorMetrics.onTaskSubmitted(Lane.PREFETCH)
+    executorMetrics.onTaskStarted(Lane.PREFETCH, 100)
+    executorMetrics.onTaskStarted(Lane.PREFETCH, 300)
+    executorMetrics.onTaskFinished(Lane.PREFETCH, 1000)
+
+    val snapshot = executorMetrics.snapshot()
+    val prefetch = snapshot.lanes.single { it.lane == Lane.PREFETCH }
+
+    assertThat(snapshot.activeThreadCount).isEqualTo(1)
+    assertThat(snapshot.peakActiveThreadCount).isEqualTo(2)
+    assertThat(snapshot.queueDepth).isEqualTo(1)
+    assertThat(snapshot.peakQueueDepth).isEqualTo(3)
+    assertThat(prefetch.queueDepth).isEqualTo(1)
+    assertThat(prefetch.averageQueueWaitNanos).isEqualTo(200)
+    assertThat(prefetch.maxQueueWaitNanos).isEqualTo(300)
+    assertThat(prefetch.averageRunNanos).isEqualTo(1000)
+    assertThat(snapshot.lanes.filter { it.lane != Lane.PREFETCH }).allSatisfy {
+      assertThat(it.submittedCount).isZero
+    }
+  }
+
+  @Test
+  fun snapshot_GivenRejectedTask_DoNotCountItAsQueued() {
+    executorMetrics.onTaskSubmitted(Lane.TELEMETRY)
+    executorMetrics.onTaskRejected(Lane.TELEMETRY)
+
+    val snapshot = executorMetrics.snapshot()
+    val telemetry = snapshot.lanes.single { it.lane == Lane.TELEMETRY }
+
+    assertThat(snapshot.queueDepth).isEqualTo(0)
+    assertThat(telemetry.queueDepth).isEqualTo(0)
+    assertThat(telemetry.rejectedCount).isEqualTo(1)
+  }
+
+  @Test
+  fun scheduleDebugDump_GivenPositiveInterval_ScheduleItPeriodically() {
+    executorMetrics.scheduleDebugDump(scheduledExecutorService, 42)
+
+    verify(scheduledExecutorService).scheduleWithFixedDelay(any(), eq(42L), eq(42L), eq(TimeUnit.MILLISECONDS))
+  }
+
+  @Test
+  fun scheduleDebugDump_GivenZeroInterval_DoNothing() {
+    executorMetrics.scheduleDebugDump(scheduledExecutorService, 0)
+
+    verifyNoInteractions(scheduledExecutorService)
+  }
+}
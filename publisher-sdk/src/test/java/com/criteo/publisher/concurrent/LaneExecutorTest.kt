@@ -0,0 +1,156 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.concurrent
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatCode
+import org.junit.Test
+import java.util.concurrent.Executor
+import java.util.concurrent.RejectedExecutionException
+
+class LaneExecutorTest {
+
+  private val delegate = QueueingExecutor()
+
+  @Test
+  fun execute_GivenUnboundedLane_GiveAllTasksTaggedWithTheLane() {
+    val laneExecutor = LaneExecutor(delegate, Lane.LIVE_BID, 0)
+
+    repeat(5) { laneExecutor.execute {} }
+
+    assertThat(delegate.tasks).hasSize(5).allSatisfy {
+      assertThat((it as LaneTask).lane).isEqualTo(Lane.LIVE_BID)
+    }
+  }
+
+  @Test
+  fun execute_GivenBoundedLane_GiveAtMostMaxConcurrencyTasks() {
+    val laneExecutor = LaneExecutor(delegate, Lane.TELEMETRY, 2)
+
+    repeat(5) { laneExecutor.execute {} }
+
+    assertThat(delegate.tasks).hasSize(2).allSatisfy {
+      assertThat((it as LaneTask).lane).isEqualTo(Lane.TELEMETRY)
+    }
+  }
+
+  @Test
+  fun execute_GivenBoundedLaneAndFinishedTask_GiveNextPendingTaskInOrder() {
+    val laneExecutor = LaneExecutor(delegate, Lane.PIXEL, 1)
+    val executedTasks = mutableListOf<Int>()
+
+    repeat(3) { i -> laneExecutor.execute { executedTasks += i } }
+
+    delegate.runAll()
+
+    assertThat(executedTasks).containsExactly(0, 1, 2)
+    assertThat(delegate.tasks).isEmpty()
+  }
+
+  @Test
+  fun execute_GivenBoundedLaneAndThrowingTask_ReleaseItsSlot() {
+    val laneExecutor = LaneExecutor(delegate, Lane.PIXEL, 1)
+    var isExecuted = false
+
+    laneExecutor.execute { throw IllegalStateException() }
+    laneExecutor.execute { isExecuted = true }
+
+    assertThatCode { delegate.runNext() }.isInstanceOf(IllegalStateException::class.java)
+    delegate.runAll()
+
+    assertThat(isExecuted).isTrue
+  }
+
+  @Test
+  fun execute_GivenBoundedLaneAndRejectedTask_ReleaseItsSlot() {
+    val laneExecutor = LaneExecutor(delegate, Lane.CREATIVE, 1)
+
+    delegate.isRejecting = true
+    assertThatCode { laneExecutor.execute {} }.isInstanceOf(RejectedExecutionException::class.java)
+
+    delegate.isRejecting = false
+    laneExecutor.execute {}
+
+    assertThat(delegate.tasks).hasSize(1)
+  }
+
+  @Test
+  fun execute_GivenSharedBudget_GiveAtMostBudgetTasksAcrossLanes() {
+    val budget = LaneBudget(3)
+    val creativeExecutor = LaneExecutor(delegate, Lane.CREATIVE, 2, budget)
+    val prefetchExecutor = LaneExecutor(delegate, Lane.PREFETCH, 0, budget)
+
+    repeat(3) { creativeExecutor.execute {} }
+    repeat(3) { prefetchExecutor.execute {} }
+
+    assertThat(delegate.tasks.map { (it as LaneTask).lane })
+        .containsExactly(Lane.CREATIVE, Lane.CREATIVE, Lane.PREFETCH)
+  }
+
+  @Test
+  fun execute_GivenSharedBudgetAndFinishedTask_GiveFreedThreadToMostUrgentLane() {
+    val budget = LaneBudget(1)
+    val telemetryExecutor = LaneExecutor(delegate, Lane.TELEMETRY, 2, budget)
+    val prefetchExecutor = LaneExecutor(delegate, Lane.PREFETCH, 0, budget)
+    val executedLanes = mutableListOf<Lane>()
+
+    telemetryExecutor.execute { executedLanes += Lane.TELEMETRY }
+    telemetryExecutor.execute { executedLanes += Lane.TELEMETRY }
+    prefetchExecutor.execute { executedLanes += Lane.PREFETCH }
+
+    assertThat(delegate.tasks).hasSize(1)
+    delegate.runAll()
+
+    assertThat(executedLanes).containsExactly(Lane.TELEMETRY, Lane.PREFETCH, Lane.TELEMETRY)
+  }
+
+  @Test
+  fun execute_GivenSharedBudgetAndRejectedTask_ReleaseItsPermit() {
+    val budget = LaneBudget(1)
+    val laneExecutor = LaneExecutor(delegate, Lane.DEFAULT, 0, budget)
+
+    delegate.isRejecting = true
+    assertThatCode { laneExecutor.execute {} }.isInstanceOf(RejectedExecutionException::class.java)
+
+    delegate.isRejecting = false
+    laneExecutor.execute {}
+
+    assertThat(delegate.tasks).hasSize(1)
+  }
+
+  private class QueueingExecutor : Executor {
+    val tasks = ArrayDeque<Runnable>()
+    var isRejecting = false
+
+    override fun execute(command: Runnable) {
+      if (isRejecting) {
+        throw RejectedExecutionException()
+      }
+      tasks.addLast(command)
+    }
+
+    fun runNext() {
+      tasks.removeFirst().run()
+    }
+
+    fun runAll() {
+      while (tasks.isNotEmpty()) {
+        runNext()
+      }
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.concurrent
+
+import com.criteo.publisher.util.BuildConfigWrapper
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.mockito.Mock
+import org.mockito.junit.MockitoJUnit
+import org.mockito.kotlin.whenever
+import java.util.concurrent.Executor
+
+class SdkSchedulerTest {
+
+  @Rule
+  @JvmField
+  val mockitoRule = MockitoJUnit.rule()
+
+  @Mock
+  private lateinit var buildConfigWrapper: BuildConfigWrapper
+
+  private val tasks = mutableListOf<Runnable>()
+
+  private val executor = Executor { tasks += it }
+
+  @Before
+  fun setUp() {
+    whenever(buildConfigWrapper.sdkThreadBudget).thenReturn(8)
+    whenever(buildConfigWrapper.liveBidReservedThreads).thenReturn(2)
+    whenever(buildConfigWrapper.creativeLaneMaxConcurrency).thenReturn(3)
+    whenever(buildConfigWrapper.pixelLaneMaxConcurrency).thenReturn(2)
+    whenever(buildConfigWrapper.telemetryLaneMaxConcurrency).thenReturn(2)
+  }
+
+  @Test
+  fun executorFor_GivenBurstOnAllNonLiveLanes_LeaveReservedThreadsToLiveBids() {
+    val scheduler = SdkScheduler(executor, buildConfigWrapper)
+
+    Lane.values().filter { it != Lane.LIVE_BID }.forEach { lane ->
+      repeat(10) { scheduler.executorFor(lane).execute {} }
+    }
+    repeat(2) { scheduler.executorFor(Lane.LIVE_BID).execute {} }
+
+    assertThat(tasks.count { (it as LaneTask).lane != Lane.LIVE_BID }).isEqualTo(6)
+    assertThat(tasks.count { (it as LaneTask).lane == Lane.LIVE_BID }).isEqualTo(2)
+  }
+
+  @Test
+  fun executorFor_GivenLaneBoundAboveRemainingThreads_CapItToThem() {
+    whenever(buildConfigWrapper.sdkThreadBudget).thenReturn(3)
+    whenever(buildConfigWrapper.liveBidReservedThreads).thenReturn(5)
+    val scheduler = SdkScheduler(executor, buildConfigWrapper)
+
+    repeat(10) { scheduler.executorFor(Lane.CREATIVE).execute {} }
+
+    assertThat(tasks).hasSize(1)
+  }
+
+  @Test
+  fun executorFor_GivenNoReservation_DoNotBoundPrefetch() {
+    whenever(buildConfigWrapper.liveBidReservedThreads).thenReturn(0)
+    val scheduler = SdkScheduler(executor, buildConfigWrapper)
+
+    repeat(10) { scheduler.executorFor(Lane.PREFETCH).execute {} }
+
+    assertThat(tasks).hasSize(10)
+  }
+}
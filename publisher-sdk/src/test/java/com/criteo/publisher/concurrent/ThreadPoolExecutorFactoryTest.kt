@@ -0,0 +1,170 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.concurrent
+
+import com.criteo.publisher.util.BuildConfigWrapper
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatCode
+import org.junit.After
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.mockito.Mock
+import org.mockito.junit.MockitoJUnit
+import org.mockito.kotlin.whenever
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+
+class ThreadPoolExecutorFactoryTest {
+
+  @Rule
+  @JvmField
+  val mockitoRule = MockitoJUnit.rule()
+
+  @Mock
+  private lateinit var buildConfigWrapper: BuildConfigWrapper
+
+  private val executorMetrics = ExecutorMetrics()
+
+  private lateinit var executor: ThreadPoolExecutor
+
+  @Before
+  fun setUp() {
+    whenever(buildConfigWrapper.sdkThreadBudget).thenReturn(1)
+    executor = ThreadPoolExecutorFactory(buildConfigWrapper, executorMetrics).create()
+  }
+
+  @After
+  fun tearDown() {
+    executor.shutdownNow()
+  }
+
+  @Test
+  fun create_GivenThreadBudget_NeverUseMoreThreads() {
+    whenever(buildConfigWrapper.sdkThreadBudget).thenReturn(3)
+    val executor = ThreadPoolExecutorFactory(buildConfigWrapper, executorMetrics).create()
+
+    try {
+      val release = CountDownLatch(1)
+      repeat(10) { executor.execute { release.await() } }
+
+      assertThat(executor.poolSize).isEqualTo(3)
+      assertThat(executor.queue).hasSize(7)
+
+      release.countDown()
+    } finally {
+      executor.shutdown()
+    }
+  }
+
+  @Test
+  fun execute_GivenBusyThreads_StartQueuedTasksByLanePriority() {
+    val executedLanes = Collections.synchronizedList(mutableListOf<Lane>())
+    val release = blockTheOnlyThread()
+
+    executor.execute(LaneTask.wrap({ executedLanes += Lane.TELEMETRY }, Lane.TELEMETRY))
+    executor.execute(LaneTask.wrap({ executedLanes += Lane.PIXEL }, Lane.PIXEL))
+    executor.execute { executedLanes += Lane.DEFAULT }
+    executor.execute(LaneTask.wrap({ executedLanes += Lane.PREFETCH }, Lane.PREFETCH))
+    executor.execute(LaneTask.wrap({ executedLanes += Lane.LIVE_BID }, Lane.LIVE_BID))
+
+    release.countDown()
+    awaitIdleState()
+
+    assertThat(executedLanes).containsExactly(
+        Lane.LIVE_BID,
+        Lane.PREFETCH,
+        Lane.DEFAULT,
+        Lane.PIXEL,
+        Lane.TELEMETRY
+    )
+  }
+
+  @Test
+  fun execute_GivenBusyThreadsAndTasksOfSameLane_StartThemInSubmissionOrder() {
+    val executedTasks = Collections.synchronizedList(mutableListOf<Int>())
+    val release = blockTheOnlyThread()
+
+    repeat(5) { i -> executor.execute(LaneTask.wrap({ executedTasks += i }, Lane.PREFETCH)) }
+
+    release.countDown()
+    awaitIdleState()
+
+    assertThat(executedTasks).containsExactly(0, 1, 2, 3, 4)
+  }
+
+  @Test
+  fun execute_GivenTasksOfLanes_RecordTheirMetrics() {
+    val release = blockTheOnlyThread()
+
+    executor.execute(LaneTask.wrap({ Thread.sleep(10) }, Lane.LIVE_BID))
+    executor.execute(LaneTask.wrap({ throw IllegalStateException() }, Lane.TELEMETRY))
+
+    assertThat(executorMetrics.snapshot().queueDepth).isEqualTo(2)
+
+    Thread.sleep(10)
+    release.countDown()
+    awaitIdleState()
+
+    val snapshot = executorMetrics.snapshot()
+    assertThat(snapshot.activeThreadCount).isEqualTo(0)
+    assertThat(snapshot.peakActiveThreadCount).isEqualTo(1)
+    assertThat(snapshot.queueDepth).isEqualTo(0)
+    assertThat(snapshot.peakQueueDepth).isEqualTo(2)
+
+    val liveBid = snapshot.lanes.single { it.lane == Lane.LIVE_BID }
+    assertThat(liveBid.submittedCount).isEqualTo(1)
+    assertThat(liveBid.completedCount).isEqualTo(1)
+    assertThat(liveBid.maxQueueWaitNanos).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(10))
+    assertThat(liveBid.maxRunNanos).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(10))
+
+    val telemetry = snapshot.lanes.single { it.lane == Lane.TELEMETRY }
+    assertThat(telemetry.submittedCount).isEqualTo(1)
+    assertThat(telemetry.completedCount).isEqualTo(1)
+  }
+
+  @Test
+  fun execute_GivenShutDownPool_RecordRejection() {
+    executor.shutdown()
+
+    assertThatCode { executor.execute(LaneTask.wrap({}, Lane.PIXEL)) }
+        .isInstanceOf(RejectedExecutionException::class.java)
+
+    val pixel = executorMetrics.snapshot().lanes.single { it.lane == Lane.PIXEL }
+    assertThat(pixel.rejectedCount).isEqualTo(1)
+    assertThat(pixel.queueDepth).isEqualTo(0)
+  }
+
+  private fun blockTheOnlyThread(): CountDownLatch {
+    val isStarted = CountDownLatch(1)
+    val release = CountDownLatch(1)
+    executor.execute {
+      isStarted.countDown()
+      release.await()
+    }
+    isStarted.await()
+    return release
+  }
+
+  private fun awaitIdleState() {
+    executor.shutdown()
+    assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue
+  }
+}
@@ -56,6 +56,33 @@ class BoundedSendingQueueTest {
     assertThat(metrics).containsExactly(metric)
   }
 
+  @Test
+  fun pollWithMaxBytes_GivenDelegate_DelegateToIt() {
+    val metric = mock<Metric>()
+
+    delegate.stub {
+      on { poll(42, 1337) } doReturn listOf(metric)
+    }
+
+    val metrics = queue.poll(42, 1337)
+
+    assertThat(metrics).containsExactly(metric)
+  }
+
+  @Test
+  fun rollback_GivenDelegate_DelegateToIt() {
+    val metrics = listOf(mock<Metric>(), mock())
+
+    delegate.stub {
+      on { rollback(metrics) } doReturn true
+    }
+
+    val success = queue.rollback(metrics)
+
+    assertThat(success).isTrue()
+    verify(delegate).rollback(metrics)
+  }
+
   @Test
   fun getTotalSize_GivenDelegate_DelegateToIt() {
     delegate.stub {
@@ -24,6 +24,7 @@ import com.criteo.publisher.model.CdbRequestSlot
 import com.criteo.publisher.model.CdbResponse
 import com.criteo.publisher.model.CdbResponseSlot
 import com.criteo.publisher.model.Config
+import com.criteo.publisher.network.CdbCallAbortedException
 import com.criteo.publisher.privacy.ConsentData
 import com.criteo.publisher.util.AdUnitType.CRITEO_BANNER
 import org.assertj.core.api.Assertions.assertThat
@@ -59,6 +60,9 @@ class CsmBidLifecycleListenerTest {
   @Mock
   private lateinit var repository: MetricRepository
 
+  @Mock
+  private lateinit var writeBehindBuffer: MetricWriteBehindBuffer
+
   @Mock
   private lateinit var sendingQueueProducer: MetricSendingQueueProducer
 
@@ -87,6 +91,7 @@ class CsmBidLifecycleListenerTest {
 
     listener = CsmBidLifecycleListener(
         repository,
+        writeBehindBuffer,
         sendingQueueProducer,
         clock,
         config,
@@ -151,7 +156,7 @@ class CsmBidLifecycleListenerTest {
 
     listener.onCdbCallStarted(request)
 
-    assertRepositoryIsUpdatedByIds("id1", "id2") {
+    assertBufferIsUpdatedByIds("id1", "id2") {
       verify(it).setCdbCallStartTimestamp(42)
       verify(it).setRequestGroupId("myRequestId")
       verify(it).setProfileId(1337)
@@ -168,7 +173,7 @@ class CsmBidLifecycleListenerTest {
   }
 
   @Test
-  fun onCdbCallFinished_GivenOnlyNoBid_PushReadyToSendInQueue() {
+  fun onCdbCallFinished_GivenOnlyNoBid_DoNotPushInQueueDirectly() {
     val request = givenCdbRequestWithSlots("id")
 
     val response = mock<CdbResponse>() {
@@ -177,11 +182,11 @@ class CsmBidLifecycleListenerTest {
 
     listener.onCdbCallFinished(request, response)
 
-    verify(sendingQueueProducer).pushInQueue(repository, "id")
+    verifyNoInteractions(sendingQueueProducer)
   }
 
   @Test
-  fun onCdbCallFinished_GivenOnlyInvalidBid_PushReadyToSendInQueue() {
+  fun onCdbCallFinished_GivenOnlyInvalidBid_DoNotPushInQueueDirectly() {
     val request = givenCdbRequestWithSlots("id")
 
     val invalidSlot = mock<CdbResponseSlot>() {
@@ -194,7 +199,7 @@ class CsmBidLifecycleListenerTest {
 
     listener.onCdbCallFinished(request, response)
 
-    verify(sendingQueueProducer).pushInQueue(repository, "id")
+    verifyNoInteractions(sendingQueueProducer)
   }
 
   @Test
@@ -243,9 +248,7 @@ class CsmBidLifecycleListenerTest {
     assertInvalidBidSlotIsReceived("invalidId")
     assertValidBidSlotIsReceived("validId", 42)
 
-    verify(sendingQueueProducer).pushInQueue(repository, "noBidId")
-    verify(sendingQueueProducer).pushInQueue(repository, "invalidId")
-    verifyNoMoreInteractions(sendingQueueProducer)
+    verifyNoInteractions(sendingQueueProducer)
   }
 
   @Test
@@ -275,8 +278,7 @@ class CsmBidLifecycleListenerTest {
     assertNetworkErrorIsReceived("id1")
     assertNetworkErrorIsReceived("id2")
 
-    verify(sendingQueueProducer).pushInQueue(repository, "id1")
-    verify(sendingQueueProducer).pushInQueue(repository, "id2")
+    verifyNoInteractions(sendingQueueProducer)
   }
 
   @Test
@@ -292,8 +294,7 @@ class CsmBidLifecycleListenerTest {
     assertTimeoutErrorIsReceived("id1")
     assertTimeoutErrorIsReceived("id2")
 
-    verify(sendingQueueProducer).pushInQueue(repository, "id1")
-    verify(sendingQueueProducer).pushInQueue(repository, "id2")
+    verifyNoInteractions(sendingQueueProducer)
   }
 
   @Test
@@ -309,8 +310,31 @@ class CsmBidLifecycleListenerTest {
     assertTimeoutErrorIsReceived("id1")
     assertTimeoutErrorIsReceived("id2")
 
-    verify(sendingQueueProducer).pushInQueue(repository, "id1")
-    verify(sendingQueueProducer).pushInQueue(repository, "id2")
+    verifyNoInteractions(sendingQueueProducer)
+  }
+
+  @Test
+  fun onCdbCallFailed_GivenCallAbortedPastTimeBudget_UpdateAllByIdForTimeout() {
+    val request = givenCdbRequestWithSlots("id1", "id2")
+
+    clock.stub {
+      on { currentTimeInMillis } doReturn 1337
+    }
+
+    listener.onCdbCallFailed(request, CdbCallAbortedException(true, IOException()))
+
+    assertTimeoutErrorIsReceived("id1")
+    assertTimeoutErrorIsReceived("id2")
+  }
+
+  @Test
+  fun onCdbCallFailed_GivenCancelledCall_UpdateAllForNetworkError() {
+    val request = givenCdbRequestWithSlots("id1", "id2")
+
+    listener.onCdbCallFailed(request, CdbCallAbortedException(false, IOException()))
+
+    assertNetworkErrorIsReceived("id1")
+    assertNetworkErrorIsReceived("id2")
   }
 
   @Test
@@ -349,12 +373,12 @@ class CsmBidLifecycleListenerTest {
 
     listener.onBidConsumed(adUnit, slot)
 
-    assertRepositoryIsUpdatedById("id") {
+    assertBufferIsUpdatedById("id") {
       verify(it).setElapsedTimestamp(42)
       verify(it).setReadyToSend(true)
     }
 
-    verify(sendingQueueProducer).pushInQueue(repository, "id")
+    verifyNoInteractions(sendingQueueProducer)
   }
 
   @Test
@@ -368,11 +392,11 @@ class CsmBidLifecycleListenerTest {
 
     listener.onBidConsumed(adUnit, slot)
 
-    assertRepositoryIsUpdatedById("id") {
+    assertBufferIsUpdatedById("id") {
       verify(it).setReadyToSend(true)
     }
 
-    verify(sendingQueueProducer).pushInQueue(repository, "id")
+    verifyNoInteractions(sendingQueueProducer)
   }
 
   @Test
@@ -385,7 +409,49 @@ class CsmBidLifecycleListenerTest {
 
     listener.onBidConsumed(adUnit, slot)
 
-    verifyNoInteractions(repository)
+    verifyNoInteractions(writeBehindBuffer)
+  }
+
+  @Test
+  fun onBidEvicted_GivenDeactivatedFeature_DoNothing() {
+    givenDeactivatedFeature()
+    val adUnit = CacheAdUnit(AdSize(1, 2), "myAdUnit", CRITEO_BANNER)
+
+    listener.onBidEvicted(adUnit, mock())
+
+    verifyFeatureIsDeactivated()
+  }
+
+  @Test
+  fun onBidEvicted_GivenNotExpiredBid_OnlySetReadyToSend() {
+    val adUnit = CacheAdUnit(AdSize(1, 2), "myAdUnit", CRITEO_BANNER)
+
+    val slot = mock<CdbResponseSlot>() {
+      on { impressionId } doReturn "id"
+      on { isExpired(clock) } doReturn false
+    }
+
+    listener.onBidEvicted(adUnit, slot)
+
+    assertBufferIsUpdatedById("id") {
+      verify(it).setReadyToSend(true)
+      verifyNoMoreInteractions(it)
+    }
+
+    verifyNoInteractions(sendingQueueProducer)
+  }
+
+  @Test
+  fun onBidEvicted_GivenBidWithoutImpressionId_DoNothing() {
+    val adUnit = CacheAdUnit(AdSize(1, 2), "myAdUnit", CRITEO_BANNER)
+
+    val slot = mock<CdbResponseSlot>() {
+      on { impressionId } doReturn null
+    }
+
+    listener.onBidEvicted(adUnit, slot)
+
+    verifyNoInteractions(writeBehindBuffer)
   }
 
   @Test
@@ -416,7 +482,7 @@ class CsmBidLifecycleListenerTest {
 
     listener.onBidCached(validSlot)
 
-    assertRepositoryIsUpdatedById("id") {
+    assertBufferIsUpdatedById("id") {
       verify(it).setCachedBidUsed(true)
       verifyNoMoreInteractions(it)
     }
@@ -432,7 +498,7 @@ class CsmBidLifecycleListenerTest {
 
     listener.onBidCached(invalidSlot)
 
-    verify(repository, never()).addOrUpdateById(any(), any())
+    verify(writeBehindBuffer, never()).update(any(), any())
   }
 
   private fun givenCdbRequestWithSlots(vararg impressionIds: String): CdbRequest {
@@ -447,12 +513,12 @@ class CsmBidLifecycleListenerTest {
     }
   }
 
-  private fun assertRepositoryIsUpdatedByIds(
+  private fun assertBufferIsUpdatedByIds(
       vararg impressionIds: String,
       verifier: (Metric.Builder) -> Unit
   ) {
     argumentCaptor<String> {
-      verify(repository, times(impressionIds.size)).addOrUpdateById(
+      verify(writeBehindBuffer, times(impressionIds.size)).update(
           capture(),
           verifier.asArgChecker()
       )
@@ -461,15 +527,15 @@ class CsmBidLifecycleListenerTest {
     }
   }
 
-  private fun assertRepositoryIsUpdatedById(
+  private fun assertBufferIsUpdatedById(
       impressionId: String,
       verifier: (Metric.Builder) -> Unit
   ) {
-    verify(repository).addOrUpdateById(eq(impressionId), verifier.asArgChecker())
+    verify(writeBehindBuffer).update(eq(impressionId), verifier.asArgChecker())
   }
 
   private fun assertValidBidSlotIsReceived(impressionId: String, zoneId: Int) {
-    assertRepositoryIsUpdatedById(impressionId) {
+    assertBufferIsUpdatedById(impressionId) {
       verify(it).setCdbCallEndTimestamp(clock.currentTimeInMillis)
       verify(it).setZoneId(zoneId)
       verifyNoMoreInteractions(it)
@@ -477,7 +543,7 @@ class CsmBidLifecycleListenerTest {
   }
 
   private fun assertTimeoutErrorIsReceived(impressionId: String) {
-    assertRepositoryIsUpdatedById(impressionId) {
+    assertBufferIsUpdatedById(impressionId) {
       verify(it).setCdbCallTimeout(true)
       verify(it).setReadyToSend(true)
       verifyNoMoreInteractions(it)
@@ -488,14 +554,14 @@ class CsmBidLifecycleListenerTest {
       assertInvalidBidSlotIsReceived(impressionId)
 
   private fun assertInvalidBidSlotIsReceived(impressionId: String) {
-    assertRepositoryIsUpdatedById(impressionId) {
+    assertBufferIsUpdatedById(impressionId) {
       verify(it).setReadyToSend(true)
       verifyNoMoreInteractions(it)
     }
   }
 
   private fun assertNoBidSlotIsReceived(impressionId: String) {
-    assertRepositoryIsUpdatedById(impressionId) {
+    assertBufferIsUpdatedById(impressionId) {
       verify(it).setCdbCallEndTimestamp(clock.currentTimeInMillis)
       verify(it).setReadyToSend(true)
       verifyNoMoreInteractions(it)
@@ -524,6 +590,7 @@ class CsmBidLifecycleListenerTest {
 
   private fun verifyFeatureIsDeactivated() {
     verifyNoInteractions(repository)
+    verifyNoInteractions(writeBehindBuffer)
     verifyNoInteractions(clock)
     verifyNoInteractions(sendingQueueProducer)
   }
@@ -14,19 +14,17 @@
  *    limitations under the License.
  */
 
+
 package com.criteo.publisher.csm
 
-import com.criteo.publisher.csm.ObjectQueueFactory.AdapterConverter
-import com.criteo.publisher.csm.TapeSendingQueueTest.Companion.TapeImplementation.EMPTY_QUEUE_FILE
-import com.criteo.publisher.csm.TapeSendingQueueTest.Companion.TapeImplementation.NEW_FILE
+import com.criteo.publisher.csm.FileSendingQueueTest.Companion.QueueImplementation.EXISTING_QUEUE
+import com.criteo.publisher.csm.FileSendingQueueTest.Companion.QueueImplementation.IN_MEMORY
+import com.criteo.publisher.csm.FileSendingQueueTest.Companion.QueueImplementation.NEW_DIRECTORY
 import com.criteo.publisher.mock.MockedDependenciesRule
 import com.criteo.publisher.mock.SpyBean
 import com.criteo.publisher.util.BuildConfigWrapper
 import com.criteo.publisher.util.JsonSerializer
-import com.squareup.tape.FileException
-import com.squareup.tape.FileObjectQueue
-import com.squareup.tape.InMemoryObjectQueue
-import com.squareup.tape.ObjectQueue
+import com.criteo.publisher.util.writeIntoString
 import org.assertj.core.api.Assertions.assertThat
 import org.assertj.core.api.Assumptions.assumeThat
 import org.junit.Before
@@ -35,22 +33,18 @@ import org.junit.Test
 import org.junit.rules.TemporaryFolder
 import org.junit.runner.RunWith
 import org.junit.runners.Parameterized
-import org.mockito.AdditionalAnswers.delegatesTo
 import org.mockito.Mock
 import org.mockito.junit.MockitoJUnit
 import org.mockito.kotlin.any
-import org.mockito.kotlin.doAnswer
-import org.mockito.kotlin.doNothing
 import org.mockito.kotlin.doReturn
 import org.mockito.kotlin.doThrow
-import org.mockito.kotlin.mock
 import org.mockito.kotlin.spy
 import org.mockito.kotlin.stub
 import org.mockito.kotlin.verify
 import org.mockito.kotlin.verifyNoInteractions
 import org.mockito.kotlin.whenever
-import org.mockito.stubbing.Answer
 import java.io.File
+import java.io.IOException
 import java.util.Collections
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.CountDownLatch
@@ -59,7 +53,7 @@ import java.util.concurrent.Executors
 import javax.inject.Inject
 
 @RunWith(Parameterized::class)
-class TapeSendingQueueTest(private val tapeImplementation: TapeImplementation) {
+class FileSendingQueueTest(private val queueImplementation: QueueImplementation) {
 
   @Rule
   @JvmField
@@ -77,12 +71,12 @@ class TapeSendingQueueTest(private val tapeImplementation: TapeImplementation) {
     @JvmStatic
     @Parameterized.Parameters(name = "{index}: {0}")
     fun data(): Collection<Array<out Any>> {
-      return TapeImplementation.values().toList().map { arrayOf(it) }
+      return QueueImplementation.values().toList().map { arrayOf(it) }
     }
 
-    enum class TapeImplementation {
-      NEW_FILE,
-      EMPTY_QUEUE_FILE,
+    enum class QueueImplementation {
+      NEW_DIRECTORY,
+      EXISTING_QUEUE,
       IN_MEMORY
     }
   }
@@ -93,81 +87,74 @@ class TapeSendingQueueTest(private val tapeImplementation: TapeImplementation) {
   @Inject
   private lateinit var jsonSerializer: JsonSerializer
 
-  private lateinit var tapeQueue: ObjectQueue<Metric>
+  private lateinit var byteQueue: ByteQueue
 
-  private lateinit var queue: TapeSendingQueue<Metric>
+  private lateinit var queue: FileSendingQueue<Metric>
 
   @Mock
-  private lateinit var objectQueueFactory: ObjectQueueFactory<Metric>
+  private lateinit var byteQueueFactory: ByteQueueFactory
 
   @Inject
   private lateinit var sendingQueueConfiguration: MetricSendingQueueConfiguration
 
-  private var file: File? = null
+  private var directory: File? = null
 
   @Before
   fun setUp() {
-    tapeQueue = spy(createObjectQueue())
-    doReturn(tapeQueue).whenever(objectQueueFactory).create()
-    queue = TapeSendingQueue(objectQueueFactory, sendingQueueConfiguration)
+    byteQueue = spy(createByteQueue())
+    doReturn(byteQueue).whenever(byteQueueFactory).create()
+    queue = FileSendingQueue(byteQueueFactory, jsonSerializer, sendingQueueConfiguration)
   }
 
   @Test
-  fun getTotalSize_GivenNewQueue_ReturnASmallSize() {
+  fun getTotalSize_GivenNewQueue_ReturnZero() {
     val size = queue.totalSize
 
-    // The queue needs a little bit of metadata even in case if empty.
-    assertThat(size).isLessThan(20)
+    assertThat(size).isZero()
   }
 
   @Test
-  fun getTotalSize_AfterFewOperations_ReturnSizeGreaterThanEstimation() {
-    val estimatedSizePerMetric = 170
-
+  fun getTotalSize_AfterFewOperations_ReturnExactSizeOfRemainingElements() {
     (0 until 1000).forEach {
       queue.offer(mockMetric(it))
     }
 
     queue.poll(1000)
 
-    (0 until 200).forEach {
-      queue.offer(mockMetric(it))
+    val expectedSize = (0 until 200).sumOf {
+      val metric = mockMetric(it)
+      queue.offer(metric)
+      elementSize(metric)
     }
 
-    // Create new instance of TapeMetricSendingQueue to force recreating the queue reference when polling
-    // Since the queue is persistent, we should still find the metrics that were previously saved
-    queue = TapeSendingQueue(objectQueueFactory, sendingQueueConfiguration)
+    givenRecreatedQueue()
 
     val size = queue.totalSize
 
-    assertThat(size).isGreaterThanOrEqualTo(estimatedSizePerMetric * 200)
+    assertThat(size).isEqualTo(expectedSize)
   }
 
   @Test
   fun offer_GivenAcceptedMetric_ReturnTrue() {
-    givenMockedTapeQueue()
     val metric = mockMetric()
 
-    doNothing().whenever(tapeQueue).add(any())
-
     val isOffered = queue.offer(metric)
 
-    verify(tapeQueue).add(metric)
+    verify(byteQueue).add(any())
     assertThat(isOffered).isTrue()
   }
 
   @Test
   fun offer_GivenExceptionWhileAddingMetric_ReturnFalse() {
     givenDeactivatedPreconditionUtils()
-    givenMockedTapeQueue()
     val metric = mockMetric()
 
-    doThrow(FileException::class).whenever(tapeQueue).add(any())
+    doThrow(IOException::class).whenever(byteQueue).add(any())
 
     val isOffered = queue.offer(metric)
 
-    verify(tapeQueue).add(metric)
     assertThat(isOffered).isFalse()
+    assertThat(byteQueue.size()).isZero()
   }
 
   @Test
@@ -194,11 +181,11 @@ class TapeSendingQueueTest(private val tapeImplementation: TapeImplementation) {
     val metrics = queue.poll(0)
 
     assertThat(metrics).isEmpty()
-    verifyNoInteractions(tapeQueue)
+    verifyNoInteractions(byteQueue)
   }
 
   @Test
-  fun poll_GivenQueueWithEnoughCapacity_ReturnListWithFullSize() {
+  fun poll_GivenQueueWithEnoughCapacity_ReturnListWithFullSizeInOneRemoval() {
     val metric1 = mockMetric(1)
     val metric2 = mockMetric(2)
 
@@ -208,25 +195,27 @@ class TapeSendingQueueTest(private val tapeImplementation: TapeImplementation) {
     val metrics = queue.poll(2)
 
     assertThat(metrics).containsExactly(metric1, metric2)
-    assertThat(tapeQueue.size()).isEqualTo(0)
+    assertThat(byteQueue.size()).isEqualTo(0)
+    verify(byteQueue).poll(2, Int.MAX_VALUE)
   }
 
   @Test
   fun poll_GivenQueueInstanceOnWhichOfferWasCalledWasRecreated_ReturnListWithFullSize() {
+    assumeThat(directory).isNotNull()
+
     val metric1 = mockMetric(1)
     val metric2 = mockMetric(2)
 
     queue.offer(metric1)
     queue.offer(metric2)
 
-    // Create new instance of TapeMetricSendingQueue to force recreating the queue reference when polling
     // Since the queue is persistent, we should still find the metrics that were previously saved
-    queue = TapeSendingQueue(objectQueueFactory, sendingQueueConfiguration)
+    givenRecreatedQueue()
 
     val metrics = queue.poll(2)
 
     assertThat(metrics).containsExactly(metric1, metric2)
-    assertThat(tapeQueue.size()).isEqualTo(0)
+    assertThat(byteQueue.size()).isEqualTo(0)
   }
 
   @Test
@@ -238,13 +227,13 @@ class TapeSendingQueueTest(private val tapeImplementation: TapeImplementation) {
     val metrics = queue.poll(2)
 
     assertThat(metrics).containsExactly(metric1)
-    assertThat(tapeQueue.size()).isEqualTo(0)
+    assertThat(byteQueue.size()).isEqualTo(0)
   }
 
   @Test
-  fun poll_GivenExceptionWhileReadingFromTape_SilenceTheExceptionAndReturnEmptyList() {
-    givenDeactivatedPreconditionUtils()
-    doThrow(FileException::class).whenever(tapeQueue).peek()
+  fun poll_GivenExceptionWhileRemovingFromQueue_SilenceTheExceptionAndReturnEmptyList() {
+    queue.offer(mockMetric())
+    doThrow(IOException::class).whenever(byteQueue).poll(any(), any())
 
     val metrics = queue.poll(1)
 
@@ -252,50 +241,84 @@ class TapeSendingQueueTest(private val tapeImplementation: TapeImplementation) {
   }
 
   @Test
-  fun poll_GivenExceptionWhileRemovingFromTape_SilenceTheExceptionAndReturnEmptyList() {
-    givenMockedTapeQueue()
-    doReturn(1).whenever(tapeQueue).size()
-    doThrow(FileException::class).whenever(tapeQueue).remove()
+  fun poll_GivenUndeserializableElements_SkipThemAndReturnOtherMetrics() {
+    val metric1 = Metric.builder("id1").build()
+    val metric4 = Metric.builder("id4").build()
 
-    val metrics = queue.poll(1)
+    queue.offer(metric1)
+    byteQueue.add(ByteArray(42))
+    byteQueue.add("{}".toByteArray())
+    queue.offer(metric4)
+    val metrics = queue.poll(4)
 
-    assertThat(metrics).isEmpty()
+    assertThat(metrics).containsExactly(metric1, metric4)
+    assertThat(byteQueue.size()).isEqualTo(0)
   }
 
   @Test
-  fun poll_GivenZeroByteArrayBeingWritten_RecoverByRemovingBuggyElements() {
-    assumeThat(file).isNotNull()
+  fun poll_GivenMaxBytes_ReturnOnlyMetricsFittingInIt() {
+    val metrics = (0 until 10).map { mockMetric(it) }
+    metrics.forEach { queue.offer(it) }
+    val metricSize = jsonSerializer.writeIntoString(metrics[0]).toByteArray().size
 
-    val metric1 = Metric.builder("id1").build()
-    val metric2 = Metric.builder("id2").build()
-    val metric3 = Metric.builder("id3").build()
-    val metric4 = Metric.builder("id4").build()
+    val polled = queue.poll(10, 3 * metricSize)
 
-    val fileTapeQueue = createFileObjectQueue()
-    givenMockedTapeQueue(delegatesTo(fileTapeQueue))
-    doAnswer {
-      fileTapeQueue.add(it.getArgument(0))
-    }.doAnswer {
-      // Reproduce bug: bytes full of zero are written
-      queue.getQueueFile(fileTapeQueue).add(ByteArray(42))
-    }.doAnswer {
-      // Reproduce bug: empty byte array
-      queue.getQueueFile(fileTapeQueue).add(ByteArray(0))
-    }.doAnswer {
-      fileTapeQueue.add(it.getArgument(0))
-    }.whenever(tapeQueue).add(any())
-
-    val offer1 = queue.offer(metric1) // This writes sane data
-    val offer2 = queue.offer(metric2) // This writes buggy data and should be reverted
-    val offer3 = queue.offer(metric3) // This writes buggy data and should be reverted
-    val offer4 = queue.offer(metric4) // This writes sane data
-    val metrics = queue.poll(4)
+    assertThat(polled).containsExactlyElementsOf(metrics.subList(0, 3))
+    assertThat(queue.poll(10)).containsExactlyElementsOf(metrics.subList(3, 10))
+  }
 
-    assertThat(offer1).isTrue()
-    assertThat(offer2).isTrue()
-    assertThat(offer3).isTrue()
-    assertThat(offer4).isTrue()
-    assertThat(metrics).hasSize(2).containsExactly(metric1, metric4)
+  @Test
+  fun poll_GivenMetricBiggerThanMaxBytes_ReturnItAnyway() {
+    val metric = mockMetric()
+    queue.offer(metric)
+
+    val polled = queue.poll(10, 1)
+
+    assertThat(polled).containsExactly(metric)
+  }
+
+  @Test
+  fun rollback_GivenPolledMetrics_PollThemFirstInSameOrder() {
+    val metrics = (0 until 10).map { mockMetric(it) }
+    metrics.forEach { queue.offer(it) }
+    val polled = queue.poll(4)
+    queue.offer(mockMetric(10))
+
+    val isRolledBack = queue.rollback(polled.subList(1, 4))
+    givenRecreatedQueue()
+
+    assertThat(isRolledBack).isTrue()
+    assertThat(queue.poll(100)).containsExactlyElementsOf(metrics.subList(1, 10) + mockMetric(10))
+  }
+
+  @Test
+  fun rollback_GivenPolledMetrics_CountThemInTotalSize() {
+    val metrics = (0 until 10).map { mockMetric(it) }
+    metrics.forEach { queue.offer(it) }
+    val totalSize = queue.totalSize
+
+    queue.rollback(queue.poll(5))
+
+    assertThat(queue.totalSize).isEqualTo(totalSize)
+  }
+
+  @Test
+  fun rollback_GivenExceptionWhileAddingFirstMetrics_ReturnFalse() {
+    val metric = mockMetric()
+    doThrow(IOException::class).whenever(byteQueue).addFirst(any())
+
+    val isRolledBack = queue.rollback(listOf(metric))
+
+    assertThat(isRolledBack).isFalse()
+    assertThat(byteQueue.size()).isZero()
+  }
+
+  @Test
+  fun rollback_GivenNoMetric_DoNothing() {
+    val isRolledBack = queue.rollback(listOf())
+
+    assertThat(isRolledBack).isTrue()
+    verifyNoInteractions(byteQueue)
   }
 
   @Test
@@ -326,33 +349,30 @@ class TapeSendingQueueTest(private val tapeImplementation: TapeImplementation) {
     assertThat(polledMetric).hasSize(100 * nbWorkers)
   }
 
-  private fun createObjectQueue(): ObjectQueue<Metric> {
-    return when (tapeImplementation) {
-      NEW_FILE -> {
-        file = tempFolder.newFile().apply {
-          delete()
-        }
-        createFileObjectQueue()
+  private fun createByteQueue(): ByteQueue {
+    return when (queueImplementation) {
+      NEW_DIRECTORY -> {
+        directory = File(tempFolder.root, "queue")
+        SegmentedFileQueue(directory!!)
       }
-      EMPTY_QUEUE_FILE -> {
-        file = tempFolder.newFile().apply {
-          delete()
-        }
-        createFileObjectQueue()
-        createFileObjectQueue()
+      EXISTING_QUEUE -> {
+        directory = File(tempFolder.root, "queue")
+        SegmentedFileQueue(directory!!)
+        SegmentedFileQueue(directory!!)
       }
-      TapeImplementation.IN_MEMORY -> {
-        InMemoryObjectQueue()
+      IN_MEMORY -> {
+        InMemoryByteQueue()
       }
     }
   }
 
-  private fun createFileObjectQueue() = FileObjectQueue(file, AdapterConverter(jsonSerializer, Metric::class.java))
-
-  private fun givenMockedTapeQueue(defaultAnswer: Answer<Any>? = null) {
-    tapeQueue = mock(defaultAnswer = defaultAnswer)
-    doReturn(tapeQueue).whenever(objectQueueFactory).create()
-    queue = TapeSendingQueue(objectQueueFactory, sendingQueueConfiguration)
+  private fun givenRecreatedQueue() {
+    // Create new instance of the queue to force recreating the underlying queue when polling
+    directory?.let {
+      byteQueue = spy(SegmentedFileQueue(it))
+      doReturn(byteQueue).whenever(byteQueueFactory).create()
+    }
+    queue = FileSendingQueue(byteQueueFactory, jsonSerializer, sendingQueueConfiguration)
   }
 
   private fun givenDeactivatedPreconditionUtils() {
@@ -361,6 +381,11 @@ class TapeSendingQueueTest(private val tapeImplementation: TapeImplementation) {
     }
   }
 
+  private fun elementSize(metric: Metric): Int {
+    val overhead = if (directory != null) SegmentedFileQueue.FRAME_OVERHEAD else 0
+    return jsonSerializer.writeIntoString(metric).toByteArray().size + overhead
+  }
+
   private fun mockMetric(id: Int = 1): Metric {
     return Metric.builder("id$id")
         .setCdbCallStartTimestamp(42L)
@@ -17,12 +17,15 @@
 package com.criteo.publisher.csm
 
 import com.criteo.publisher.concurrent.DirectMockExecutor
+import com.criteo.publisher.context.ConnectionTypeFetcher
+import com.criteo.publisher.context.ConnectionTypeFetcher.ConnectionType
 import com.criteo.publisher.integration.Integration.FALLBACK
 import com.criteo.publisher.mock.MockedDependenciesRule
 import com.criteo.publisher.mock.SpyBean
 import com.criteo.publisher.model.Config
 import com.criteo.publisher.network.PubSdkApi
 import com.criteo.publisher.util.BuildConfigWrapper
+import com.criteo.publisher.util.JsonSerializer
 import org.junit.Before
 import org.junit.Rule
 import org.junit.Test
@@ -34,13 +37,18 @@ import org.mockito.kotlin.doAnswer
 import org.mockito.kotlin.doNothing
 import org.mockito.kotlin.doReturn
 import org.mockito.kotlin.doThrow
+import org.mockito.kotlin.eq
 import org.mockito.kotlin.never
 import org.mockito.kotlin.stub
+import org.mockito.kotlin.times
 import org.mockito.kotlin.verify
 import org.mockito.kotlin.verifyNoInteractions
 import org.mockito.kotlin.verifyNoMoreInteractions
 import org.mockito.kotlin.whenever
+import java.io.ByteArrayOutputStream
 import java.io.IOException
+import java.util.concurrent.ScheduledExecutorService
+import javax.inject.Inject
 
 class MetricSendingQueueConsumerTest {
 
@@ -64,6 +72,15 @@ class MetricSendingQueueConsumerTest {
   @SpyBean
   private lateinit var config: Config
 
+  @Mock
+  private lateinit var scheduledExecutorService: ScheduledExecutorService
+
+  @Mock
+  private lateinit var connectionTypeFetcher: ConnectionTypeFetcher
+
+  @Inject
+  private lateinit var jsonSerializer: JsonSerializer
+
   private val executor = DirectMockExecutor()
 
   private lateinit var consumer: MetricSendingQueueConsumer
@@ -79,10 +96,49 @@ class MetricSendingQueueConsumerTest {
         api,
         buildConfigWrapper,
         config,
-        executor
+        executor,
+        scheduledExecutorService,
+        connectionTypeFetcher,
+        jsonSerializer
     )
   }
 
+  @Test
+  fun scheduleMetricBatch_GivenDeactivatedFeature_DoNothing() {
+    config.stub {
+      on { isCsmEnabled } doReturn false
+    }
+
+    consumer.scheduleMetricBatch()
+
+    verifyNoInteractions(queue)
+    verifyNoInteractions(api)
+    verifyNoInteractions(scheduledExecutorService)
+  }
+
+  @Test
+  fun scheduleMetricBatch_GivenFewMetrics_DoNotSendThemRightAway() {
+    queue.stub {
+      on { totalSize } doReturn 1
+    }
+
+    consumer.scheduleMetricBatch()
+
+    verify(queue, never()).poll(any(), any())
+    verify(scheduledExecutorService).schedule(any<Runnable>(), any(), any())
+  }
+
+  @Test
+  fun onApplicationStopped_GivenSomeMetrics_SendThem() {
+    queue.stub {
+      on { poll(any(), any()) }.doReturn(listOf(Metric.builder("id1").build()), listOf())
+    }
+
+    consumer.onApplicationStopped()
+
+    verify(api).postCsm(any())
+  }
+
   @Test
   fun sendMetricBatch_GivenDeactivatedFeature_DoNothing() {
     config.stub {
@@ -116,7 +172,7 @@ class MetricSendingQueueConsumerTest {
     val metric2 = Metric.builder("id2").build()
 
     queue.stub {
-      on { poll(any()) } doReturn listOf(metric1, metric2)
+      on { poll(any(), any()) }.doReturn(listOf(metric1, metric2), listOf())
     }
 
     api.stub {
@@ -125,8 +181,8 @@ class MetricSendingQueueConsumerTest {
 
     consumer.sendMetricBatch()
 
-    verify(queue).offer(metric1)
-    verify(queue).offer(metric2)
+    verify(queue).rollback(listOf(metric1, metric2))
+    verify(queue, never()).offer(any())
   }
 
   @Test
@@ -136,7 +192,7 @@ class MetricSendingQueueConsumerTest {
     }
 
     queue.stub {
-      on { poll(42) } doReturn listOf()
+      on { poll(eq(42), any()) } doReturn listOf()
     }
 
     consumer.sendMetricBatch()
@@ -155,7 +211,7 @@ class MetricSendingQueueConsumerTest {
     }
 
     queue.stub {
-      on { poll(42) } doReturn listOf(metric1, metric2)
+      on { poll(eq(42), any()) }.doReturn(listOf(metric1, metric2), listOf())
     }
 
     val expectedRequest = MetricRequest(
@@ -182,17 +238,15 @@ class MetricSendingQueueConsumerTest {
     }
 
     queue.stub {
-      on { poll(42) } doReturn listOf(metric1, metric2, metric3, metric4)
+      on { poll(eq(42), any()) }.doReturn(listOf(metric1, metric2, metric3, metric4), listOf())
     }
 
     doNothing().doThrow(IOException::class.java).whenever(api).postCsm(any())
 
     consumer.sendMetricBatch()
 
-    verify(queue, never()).offer(metric1)
-    verify(queue).offer(metric2)
-    verify(queue, never()).offer(metric3)
-    verify(queue).offer(metric4)
+    verify(queue).rollback(listOf(metric2, metric4))
+    verify(queue, never()).offer(any())
   }
 
   @Test
@@ -208,7 +262,7 @@ class MetricSendingQueueConsumerTest {
     }
 
     queue.stub {
-      on { poll(42) } doReturn listOf(metric1, metric2, metric3, metric4)
+      on { poll(eq(42), any()) }.doReturn(listOf(metric1, metric2, metric3, metric4), listOf())
     }
 
     val expectedRequest1 = MetricRequest(
@@ -230,10 +284,167 @@ class MetricSendingQueueConsumerTest {
     verifyNoMoreInteractions(api)
   }
 
+  @Test
+  fun sendMetricBatch_GivenManyBatchesInQueue_DrainThemAll() {
+    val metric1 = Metric.builder("id1").setProfileId(1337).build()
+    val metric2 = Metric.builder("id2").setProfileId(1337).build()
+    val metric3 = Metric.builder("id3").setProfileId(1337).build()
+
+    buildConfigWrapper.stub {
+      on { sdkVersion } doReturn "1.2.3"
+      on { csmBatchSize } doReturn 2
+    }
+
+    queue.stub {
+      on { poll(any(), any()) }.doReturn(listOf(metric1, metric2), listOf(metric3), listOf())
+    }
+
+    consumer.sendMetricBatch()
+
+    verify(api).postCsm(MetricRequest(listOf(metric1, metric2), "1.2.3", 1337))
+    verify(api).postCsm(MetricRequest(listOf(metric3), "1.2.3", 1337))
+    verifyNoMoreInteractions(api)
+    verify(queue, never()).rollback(any())
+  }
+
+  @Test
+  fun sendMetricBatch_GivenExceptionOnSecondBatch_RollbackOnlyItsMetricsAndStop() {
+    val metric1 = Metric.builder("id1").build()
+    val metric2 = Metric.builder("id2").build()
+    val metric3 = Metric.builder("id3").build()
+
+    buildConfigWrapper.stub {
+      on { csmBatchSize } doReturn 1
+    }
+
+    queue.stub {
+      on { poll(any(), any()) }.doReturn(listOf(metric1), listOf(metric2, metric3), listOf())
+    }
+
+    doNothing().doThrow(IOException::class.java).whenever(api).postCsm(any())
+
+    consumer.sendMetricBatch()
+
+    verify(queue).rollback(listOf(metric2, metric3))
+    verify(queue, never()).offer(any())
+    verify(queue, times(2)).poll(any(), any())
+  }
+
+  @Test
+  fun sendMetricBatch_GivenOccasionalProfile_CarryItsMetricsAcrossBatches() {
+    val metric1 = Metric.builder("id1").setProfileId(1337).build()
+    val metric2 = Metric.builder("id2").setProfileId(1337).build()
+    val metric3 = Metric.builder("id3").build()
+    val metric4 = Metric.builder("id4").setProfileId(1337).build()
+    val metric5 = Metric.builder("id5").setProfileId(1337).build()
+    val metric6 = Metric.builder("id6").build()
+
+    buildConfigWrapper.stub {
+      on { sdkVersion } doReturn "1.2.3"
+    }
+
+    queue.stub {
+      on { poll(any(), any()) }.doReturn(
+          listOf(metric1, metric2, metric3),
+          listOf(metric4, metric5, metric6),
+          listOf()
+      )
+    }
+
+    consumer.sendMetricBatch()
+
+    verify(api).postCsm(MetricRequest(listOf(metric1, metric2, metric4, metric5), "1.2.3", 1337))
+    verify(api).postCsm(MetricRequest(listOf(metric3, metric6), "1.2.3", FALLBACK.profileId))
+    verifyNoMoreInteractions(api)
+  }
+
+  @Test
+  fun sendMetricBatch_GivenCarriedGroupReachingBatchSize_SplitItInFullRequests() {
+    val metrics = (0 until 5).map { Metric.builder("id$it").setProfileId(1337).build() }
+
+    buildConfigWrapper.stub {
+      on { sdkVersion } doReturn "1.2.3"
+      on { csmBatchSize } doReturn 2
+    }
+
+    queue.stub {
+      on { poll(any(), any()) }.doReturn(
+          listOf(metrics[0]),
+          listOf(metrics[1], metrics[2]),
+          listOf(metrics[3], metrics[4]),
+          listOf()
+      )
+    }
+
+    consumer.sendMetricBatch()
+
+    verify(api).postCsm(MetricRequest(metrics.subList(0, 2), "1.2.3", 1337))
+    verify(api).postCsm(MetricRequest(metrics.subList(2, 4), "1.2.3", 1337))
+    verify(api).postCsm(MetricRequest(metrics.subList(4, 5), "1.2.3", 1337))
+    verifyNoMoreInteractions(api)
+  }
+
+  @Test
+  fun sendMetricBatch_GivenCarriedGroupReachingBatchBytes_SplitItInRequestsFittingInBatch() {
+    val metrics = (0 until 3).map { Metric.builder("id$it").setProfileId(1337).build() }
+    val metricSize = ByteArrayOutputStream().also { jsonSerializer.write(metrics[0], it) }.size()
+
+    buildConfigWrapper.stub {
+      on { sdkVersion } doReturn "1.2.3"
+      on { csmBatchSize } doReturn 42
+      on { csmBatchMaxBytesOnFastNetwork } doReturn 2 * metricSize + 1
+    }
+
+    queue.stub {
+      on { poll(any(), any()) }.doReturn(
+          listOf(metrics[0]),
+          listOf(metrics[1]),
+          listOf(metrics[2]),
+          listOf()
+      )
+    }
+
+    consumer.sendMetricBatch()
+
+    verify(api).postCsm(MetricRequest(metrics.subList(0, 2), "1.2.3", 1337))
+    verify(api).postCsm(MetricRequest(metrics.subList(2, 3), "1.2.3", 1337))
+    verifyNoMoreInteractions(api)
+  }
+
+  @Test
+  fun sendMetricBatch_GivenSlowNetwork_PollSmallBatches() {
+    buildConfigWrapper.stub {
+      on { csmBatchSize } doReturn 42
+      on { csmBatchMaxBytesOnSlowNetwork } doReturn 1000
+      on { csmBatchMaxBytesOnFastNetwork } doReturn 5000
+    }
+
+    whenever(connectionTypeFetcher.fetchConnectionType()).thenReturn(ConnectionType.CELLULAR_3G)
+
+    consumer.sendMetricBatch()
+
+    verify(queue).poll(42, 1000)
+  }
+
+  @Test
+  fun sendMetricBatch_GivenFastNetwork_PollLargeBatches() {
+    buildConfigWrapper.stub {
+      on { csmBatchSize } doReturn 42
+      on { csmBatchMaxBytesOnSlowNetwork } doReturn 1000
+      on { csmBatchMaxBytesOnFastNetwork } doReturn 5000
+    }
+
+    whenever(connectionTypeFetcher.fetchConnectionType()).thenReturn(ConnectionType.WIFI)
+
+    consumer.sendMetricBatch()
+
+    verify(queue).poll(42, 5000)
+  }
+
   @Test
   fun sendMetricBatch_GivenExecutor_CallApiInExecutor() {
     queue.stub {
-      on { poll(any()) } doReturn listOf(Metric.builder("id1").build())
+      on { poll(any(), any()) }.doReturn(listOf(Metric.builder("id1").build()), listOf())
     }
 
     doAnswer {
@@ -16,6 +16,7 @@
 
 package com.criteo.publisher.csm
 
+import org.assertj.core.api.Assertions.assertThat
 import org.junit.Rule
 import org.junit.Test
 import org.mockito.InjectMocks
@@ -75,6 +76,17 @@ class MetricSendingQueueProducerTest {
     assertOnlyThoseMetricsAreMoved(shouldBeSent)
   }
 
+  @Test
+  fun pushInQueue_GivenMetric_OfferItToQueue() {
+    val metric = Metric.builder("id").build()
+    whenever(queue.offer(metric)).doReturn(true)
+
+    val isPushed = producer.pushInQueue(metric)
+
+    assertThat(isPushed).isTrue()
+    verify(queue).offer(metric)
+  }
+
   private fun givenMetricInRepository(vararg metrics: Metric) {
     repository.stub {
       doAnswer { invocationOnMock: InvocationOnMock ->
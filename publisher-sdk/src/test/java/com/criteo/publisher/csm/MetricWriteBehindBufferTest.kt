@@ -0,0 +1,237 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.criteo.publisher.csm
+
+import com.criteo.publisher.csm.MetricRepository.MetricUpdater
+import com.criteo.publisher.util.BuildConfigWrapper
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.mockito.Mock
+import org.mockito.junit.MockitoJUnit
+import org.mockito.kotlin.any
+import org.mockito.kotlin.argumentCaptor
+import org.mockito.kotlin.doAnswer
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.eq
+import org.mockito.kotlin.inOrder
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.never
+import org.mockito.kotlin.stub
+import org.mockito.kotlin.verify
+import org.mockito.kotlin.verifyNoInteractions
+import org.mockito.kotlin.whenever
+import java.util.concurrent.Executor
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+
+class MetricWriteBehindBufferTest {
+
+  @Rule
+  @JvmField
+  val mockitoRule = MockitoJUnit.rule()
+
+  @Mock
+  private lateinit var repository: MetricRepository
+
+  @Mock
+  private lateinit var sendingQueueProducer: MetricSendingQueueProducer
+
+  @Mock
+  private lateinit var scheduledExecutorService: ScheduledExecutorService
+
+  @Mock
+  private lateinit var buildConfigWrapper: BuildConfigWrapper
+
+  private lateinit var buffer: MetricWriteBehindBuffer
+
+  @Before
+  fun setUp() {
+    buildConfigWrapper.stub {
+      on { csmWriteBehindBatchSize } doReturn 3
+      on { csmWriteBehindDelayInMillis } doReturn 42
+    }
+
+    buffer = MetricWriteBehindBuffer(
+        repository,
+        sendingQueueProducer,
+        Executor { it.run() },
+        scheduledExecutorService,
+        buildConfigWrapper
+    )
+  }
+
+  @Test
+  fun update_GivenBatchNotFull_DoNotWriteAndScheduleOneDelayedFlush() {
+    buffer.update("id1") { it.setCdbCallStartTimestamp(1L) }
+    buffer.update("id1") { it.setCdbCallEndTimestamp(2L) }
+    buffer.update("id2") { it.setCdbCallStartTimestamp(3L) }
+
+    verify(scheduledExecutorService).schedule(any<Runnable>(), eq(42L), eq(TimeUnit.MILLISECONDS))
+    verifyNoInteractions(repository)
+    verifyNoInteractions(sendingQueueProducer)
+  }
+
+  @Test
+  fun update_GivenDelayedFlushRunning_WriteBufferedUpdates() {
+    buffer.update("id") { it.setCdbCallStartTimestamp(1L) }
+
+    argumentCaptor<Runnable> {
+      verify(scheduledExecutorService).schedule(capture(), any(), any())
+      firstValue.run()
+    }
+
+    verify(repository).addOrUpdateById(eq("id"), any())
+  }
+
+  @Test
+  fun update_GivenFullBatch_WriteAllBufferedUpdates() {
+    buffer.update("id1") { }
+    buffer.update("id2") { }
+    buffer.update("id3") { }
+
+    verify(repository).addOrUpdateById(eq("id1"), any())
+    verify(repository).addOrUpdateById(eq("id2"), any())
+    verify(repository).addOrUpdateById(eq("id3"), any())
+  }
+
+  @Test
+  fun onApplicationStopped_WriteAllBufferedUpdates() {
+    buffer.update("id") { }
+
+    buffer.onApplicationStopped()
+
+    verify(repository).addOrUpdateById(eq("id"), any())
+  }
+
+  @Test
+  fun flushAsync_GivenAction_RunItAfterWritingBufferedUpdates() {
+    val action = mock<Runnable>()
+    buffer.update("id") { }
+
+    buffer.flushAsync(action)
+
+    inOrder(repository, action) {
+      verify(repository).addOrUpdateById(eq("id"), any())
+      verify(action).run()
+    }
+  }
+
+  @Test
+  fun flush_GivenNothingBuffered_DoNothing() {
+    buffer.flush()
+
+    verifyNoInteractions(repository)
+  }
+
+  @Test
+  fun flush_GivenManyUpdatesOfNewMetric_WriteThemInOneUpdate() {
+    buffer.update("id") { it.setCdbCallStartTimestamp(1L) }
+    buffer.update("id") { it.setCdbCallEndTimestamp(2L) }
+
+    buffer.flush()
+
+    argumentCaptor<MetricUpdater> {
+      verify(repository).addOrUpdateById(eq("id"), capture())
+
+      val builder = Metric.builder("id")
+      firstValue.update(builder)
+      assertThat(builder.build()).isEqualTo(Metric.builder("id")
+          .setCdbCallStartTimestamp(1L)
+          .setCdbCallEndTimestamp(2L)
+          .build())
+    }
+    verifyNoInteractions(sendingQueueProducer)
+  }
+
+  @Test
+  fun flush_GivenNewMetricReadyToSend_PushItInQueueWithoutStoringIt() {
+    whenever(sendingQueueProducer.pushInQueue(any<Metric>())).doReturn(true)
+
+    buffer.update("id") { it.setCdbCallStartTimestamp(1L) }
+    buffer.update("id") { it.setReadyToSend(true) }
+
+    buffer.flush()
+
+    verify(sendingQueueProducer).pushInQueue(Metric.builder("id")
+        .setCdbCallStartTimestamp(1L)
+        .setReadyToSend(true)
+        .build())
+    verify(repository, never()).addOrUpdateById(any(), any())
+  }
+
+  @Test
+  fun flush_GivenNewMetricReadyToSendButRejectedByQueue_StoreAndMoveIt() {
+    whenever(sendingQueueProducer.pushInQueue(any<Metric>())).doReturn(false)
+    givenRepositoryApplyingUpdatesOnNewMetric()
+
+    buffer.update("id") { it.setReadyToSend(true) }
+
+    buffer.flush()
+
+    verify(repository).addOrUpdateById(eq("id"), any())
+    verify(sendingQueueProducer).pushInQueue(repository, "id")
+  }
+
+  @Test
+  fun flush_GivenStoredMetricBecomingReadyToSend_UpdateAndMoveIt() {
+    whenever(repository.contains("id")).doReturn(true)
+    givenRepositoryApplyingUpdatesOnNewMetric()
+
+    buffer.update("id") { it.setReadyToSend(true) }
+
+    buffer.flush()
+
+    verify(repository).addOrUpdateById(eq("id"), any())
+    verify(sendingQueueProducer).pushInQueue(repository, "id")
+    verify(sendingQueueProducer, never()).pushInQueue(any<Metric>())
+  }
+
+  @Test
+  fun flush_GivenStoredMetricNotReadyToSend_OnlyUpdateIt() {
+    whenever(repository.contains("id")).doReturn(true)
+    givenRepositoryApplyingUpdatesOnNewMetric()
+
+    buffer.update("id") { it.setCachedBidUsed(true) }
+
+    buffer.flush()
+
+    verify(repository).addOrUpdateById(eq("id"), any())
+    verifyNoInteractions(sendingQueueProducer)
+  }
+
+  @Test
+  fun flush_GivenUpdatesAfterAFlush_WriteThemOnNextFlush() {
+    buffer.update("id1") { }
+    buffer.flush()
+
+    buffer.update("id2") { }
+    buffer.flush()
+
+    verify(repository).addOrUpdateById(eq("id1"), any())
+    verify(repository).addOrUpdateById(eq("id2"), any())
+  }
+
+  private fun givenRepositoryApplyingUpdatesOnNewMetric() {
+    doAnswer {
+      it.getArgument<MetricUpdater>(1).update(Metric.builder(it.getArgument<String>(0)))
+      null
+    }.whenever(repository).addOrUpdateById(any(), any())
+  }
+}
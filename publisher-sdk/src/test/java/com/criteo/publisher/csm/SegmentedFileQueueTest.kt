@@ -0,0 +1,301 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.criteo.publisher.csm
+
+import com.criteo.publisher.mock.MockedDependenciesRule
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatCode
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+
+class SegmentedFileQueueTest {
+
+  @Rule
+  @JvmField
+  val mockedDependenciesRule = MockedDependenciesRule()
+
+  @Rule
+  @JvmField
+  val tempFolder = TemporaryFolder()
+
+  private lateinit var directory: File
+
+  private lateinit var queue: SegmentedFileQueue
+
+  @Before
+  fun setUp() {
+    directory = File(tempFolder.root, "queue")
+    queue = SegmentedFileQueue(directory)
+  }
+
+  @Test
+  fun new_GivenNoDirectory_CreateEmptyQueue() {
+    assertThat(directory).isDirectory
+    assertThat(queue.size()).isZero()
+    assertThat(queue.usedBytes()).isZero()
+    assertThat(queue.poll(10)).isEmpty()
+  }
+
+  @Test
+  fun poll_GivenElementsOnManySegments_ReturnThemInOrder() {
+    val elements = (0 until 500).map { element(it) }
+    elements.forEach { queue.add(it) }
+
+    assertThat(segmentFiles()).hasSizeGreaterThan(1)
+    assertThat(queue.poll(200)).containsExactlyElementsOf(elements.subList(0, 200))
+    assertThat(queue.poll(1000)).containsExactlyElementsOf(elements.subList(200, 500))
+    assertThat(queue.size()).isZero()
+  }
+
+  @Test
+  fun usedBytes_GivenSomeOperations_ReturnExactSizeOfFrames() {
+    val elements = (0 until 300).map { element(it) }
+    elements.forEach { queue.add(it) }
+    queue.poll(100)
+
+    val expected = elements.drop(100).sumOf { it.size + SegmentedFileQueue.FRAME_OVERHEAD }
+
+    assertThat(queue.usedBytes()).isEqualTo(expected)
+    assertThat(SegmentedFileQueue(directory).usedBytes()).isEqualTo(expected)
+  }
+
+  @Test
+  fun poll_GivenConsumedSegments_DeleteThem() {
+    (0 until 500).forEach { queue.add(element(it)) }
+    val segmentCount = segmentFiles().size
+
+    queue.poll(499)
+
+    assertThat(segmentFiles()).hasSizeLessThan(segmentCount)
+    assertThat(segmentFiles().sumOf { it.length() })
+        .isLessThanOrEqualTo(queue.usedBytes() + SegmentedFileQueue.SEGMENT_SIZE.toLong())
+  }
+
+  @Test
+  fun new_GivenExistingQueue_ContinueFromCommittedHead() {
+    (0 until 100).forEach { queue.add(element(it)) }
+    queue.poll(40)
+
+    queue = SegmentedFileQueue(directory)
+    queue.add(element(100))
+
+    assertThat(queue.size()).isEqualTo(61)
+    assertThat(queue.poll(100)).containsExactlyElementsOf((40..100).map { element(it) })
+  }
+
+  @Test
+  fun new_GivenFramePartiallyWritten_TruncateItAndKeepPreviousElements() {
+    queue.add(element(1))
+    queue.add(element(2))
+
+    RandomAccessFile(segmentFiles().last(), "rw").use {
+      it.seek(it.length())
+      it.writeInt(1000)
+      it.write(ByteArray(10))
+    }
+
+    queue = SegmentedFileQueue(directory)
+    queue.add(element(3))
+
+    assertThat(queue.poll(10)).containsExactly(element(1), element(2), element(3))
+  }
+
+  @Test
+  fun new_GivenFrameWithInvalidChecksum_TruncateIt() {
+    queue.add(element(1))
+    queue.add(element(2))
+    val segment = segmentFiles().last()
+    val secondFrameOffset = element(1).size + SegmentedFileQueue.FRAME_OVERHEAD
+
+    RandomAccessFile(segment, "rw").use {
+      it.seek(secondFrameOffset + 4L)
+      it.write(0)
+    }
+
+    queue = SegmentedFileQueue(directory)
+
+    assertThat(queue.poll(10)).containsExactly(element(1))
+  }
+
+  @Test
+  fun poll_GivenElementCorruptedAfterOpening_SkipItButRemoveIt() {
+    queue.add(element(1))
+    queue.add(element(2))
+    queue.add(element(3))
+    val secondFrameOffset = element(1).size + SegmentedFileQueue.FRAME_OVERHEAD
+
+    RandomAccessFile(segmentFiles().last(), "rw").use {
+      it.seek(secondFrameOffset + 4L)
+      it.write(0)
+    }
+
+    assertThat(queue.poll(10)).containsExactly(element(1), element(3))
+    assertThat(queue.size()).isZero()
+  }
+
+  @Test
+  fun new_GivenCorruptedHead_ThrowException() {
+    queue.add(element(1))
+
+    RandomAccessFile(File(directory, SegmentedFileQueue.HEAD_FILENAME), "rw").use {
+      it.seek(3)
+      it.write(42)
+    }
+
+    assertThatCode { SegmentedFileQueue(directory) }.isInstanceOf(IOException::class.java)
+  }
+
+  @Test
+  fun new_GivenMissingHeadSegment_ThrowException() {
+    queue.add(element(1))
+
+    segmentFiles().forEach { it.delete() }
+
+    assertThatCode { SegmentedFileQueue(directory) }.isInstanceOf(IOException::class.java)
+  }
+
+  @Test
+  fun poll_GivenMaxBytes_ReturnElementsFittingInIt() {
+    val elements = (0 until 10).map { element(it) }
+    elements.forEach { queue.add(it) }
+    val maxBytes = elements.take(4).sumOf { it.size }
+
+    assertThat(queue.poll(10, maxBytes)).containsExactlyElementsOf(elements.subList(0, 4))
+    assertThat(queue.poll(10, maxBytes - 1)).containsExactlyElementsOf(elements.subList(4, 7))
+  }
+
+  @Test
+  fun poll_GivenFirstElementBiggerThanMaxBytes_ReturnItAnyway() {
+    queue.add(element(42))
+    queue.add(element(43))
+
+    assertThat(queue.poll(10, 1)).containsExactly(element(42))
+    assertThat(queue.size()).isEqualTo(1)
+  }
+
+  @Test
+  fun addFirst_GivenPolledElements_PollThemFirstInSameOrder() {
+    val elements = (0 until 500).map { element(it) }
+    elements.forEach { queue.add(it) }
+    val polled = queue.poll(300)
+
+    queue.addFirst(polled.subList(100, 300))
+    queue.add(element(500))
+
+    val expected = elements.subList(100, 500) + element(500)
+    val expectedUsedBytes = expected.sumOf { it.size + SegmentedFileQueue.FRAME_OVERHEAD }
+    assertThat(queue.usedBytes()).isEqualTo(expectedUsedBytes)
+
+    queue = SegmentedFileQueue(directory)
+    assertThat(queue.usedBytes()).isEqualTo(expectedUsedBytes)
+    assertThat(queue.poll(1000)).containsExactlyElementsOf(expected)
+  }
+
+  @Test
+  fun addFirst_CalledManyTimes_PollElementsFromLastInsertion() {
+    queue.add(element(3))
+
+    queue.addFirst(listOf(element(2)))
+    queue.addFirst(listOf(element(0), element(1)))
+
+    assertThat(segmentFiles().map { it.nameWithoutExtension }).containsExactly("-2", "-1", "0")
+    assertThat(queue.poll(10)).containsExactly(element(0), element(1), element(2), element(3))
+    assertThat(segmentFiles().map { it.nameWithoutExtension }).containsExactly("0")
+  }
+
+  @Test
+  fun addFirst_GivenPartiallyConsumedHeadSegments_ReopenWithoutConsumedElements() {
+    val elements = (0 until 10).map { element(it) }
+    elements.forEach { queue.add(it) }
+
+    val firstPoll = queue.poll(6)
+    queue.addFirst(firstPoll.subList(4, 6))
+    val secondPoll = queue.poll(1)
+    queue.addFirst(secondPoll)
+    queue.poll(1)
+    queue.addFirst(listOf(element(42)))
+
+    val expected = listOf(element(42)) + elements.subList(5, 10)
+    assertThat(queue.size()).isEqualTo(expected.size)
+
+    queue = SegmentedFileQueue(directory)
+    assertThat(queue.size()).isEqualTo(expected.size)
+    assertThat(queue.poll(1000)).containsExactlyElementsOf(expected)
+
+    queue = SegmentedFileQueue(directory)
+    assertThat(queue.size()).isZero()
+  }
+
+  @Test
+  fun addFirst_GivenEmptiedQueue_ReopenWithoutConsumedElements() {
+    queue.add(element(1))
+    queue.add(element(2))
+    queue.poll(2)
+
+    queue.addFirst(listOf(element(2)))
+
+    queue = SegmentedFileQueue(directory)
+    assertThat(queue.poll(10)).containsExactly(element(2))
+  }
+
+  @Test
+  fun new_GivenHeadFileLongerThanItsRecord_IgnoreRemainingBytes() {
+    queue.add(element(1))
+    queue.add(element(2))
+
+    RandomAccessFile(File(directory, SegmentedFileQueue.HEAD_FILENAME), "rw").use {
+      it.seek(it.length())
+      it.write(ByteArray(42) { 1 })
+    }
+
+    queue = SegmentedFileQueue(directory)
+
+    assertThat(queue.poll(10)).containsExactly(element(1), element(2))
+  }
+
+  @Test
+  fun new_GivenFirstSegmentWrittenButNotCommitted_DeleteIt() {
+    queue.add(element(1))
+    File(directory, "-1.seg").writeBytes(ByteArray(42))
+
+    queue = SegmentedFileQueue(directory)
+
+    assertThat(queue.poll(10)).containsExactly(element(1))
+    assertThat(File(directory, "-1.seg")).doesNotExist()
+  }
+
+  @Test
+  fun add_GivenEmptyElement_ThrowException() {
+    assertThatCode { queue.add(ByteArray(0)) }.isInstanceOf(IllegalArgumentException::class.java)
+    assertThat(queue.size()).isZero()
+  }
+
+  private fun segmentFiles(): List<File> {
+    return directory.listFiles { _, name -> name.endsWith(".seg") }!!
+        .sortedBy { it.nameWithoutExtension.toLong() }
+  }
+
+  private fun element(i: Int): ByteArray {
+    return "{\"element\":$i,\"padding\":\"${"x".repeat(i % 50)}\"}".toByteArray()
+  }
+}
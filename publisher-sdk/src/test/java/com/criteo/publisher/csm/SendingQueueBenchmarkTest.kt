@@ -0,0 +1,128 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.criteo.publisher.csm
+
+import com.criteo.publisher.mock.MockedDependenciesRule
+import com.squareup.tape.QueueFile
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Ignore
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.util.concurrent.TimeUnit
+
+/**
+ * Compare the queue storing the sending queues against the Tape queue file previously used.
+ *
+ * The workload is the one of a bounded sending queue: the used size is read before every offer,
+ * and elements are consumed by batches.
+ */
+@Ignore("Those are test that should only be run manually")
+class SendingQueueBenchmarkTest {
+
+  @Rule
+  @JvmField
+  val mockedDependenciesRule = MockedDependenciesRule()
+
+  @Rule
+  @JvmField
+  val tempFolder = TemporaryFolder()
+
+  @Test
+  fun benchmark() {
+    val tapeNanos = run("tape") { TapeByteQueue(it) }
+    val segmentedNanos = run("segmented") { SegmentedFileQueue(it) }
+
+    println("Tape: ${TimeUnit.NANOSECONDS.toMillis(tapeNanos)}ms")
+    println("Segmented: ${TimeUnit.NANOSECONDS.toMillis(segmentedNanos)}ms")
+  }
+
+  private fun run(name: String, queueFactory: (File) -> ByteQueue): Long {
+    repeat(WARMUP_ITERATIONS) {
+      runOnce(queueFactory(File(tempFolder.root, "$name-warmup-$it")))
+    }
+
+    var totalNanos = 0L
+    repeat(ITERATIONS) {
+      val queue = queueFactory(File(tempFolder.root, "$name-$it"))
+      val start = System.nanoTime()
+      runOnce(queue)
+      totalNanos += System.nanoTime() - start
+    }
+    return totalNanos / ITERATIONS
+  }
+
+  private fun runOnce(queue: ByteQueue) {
+    var polled = 0
+    for (i in 0 until ELEMENTS) {
+      if (queue.usedBytes() >= MAX_SIZE) {
+        polled += queue.poll(1).size
+      }
+      queue.add(element)
+
+      if (i % OFFERS_PER_POLL == OFFERS_PER_POLL - 1) {
+        polled += queue.poll(BATCH_SIZE).size
+      }
+    }
+    polled += queue.poll(Int.MAX_VALUE).size
+
+    assertThat(polled).isEqualTo(ELEMENTS)
+  }
+
+  /**
+   * Same accesses to Tape as the sending queue previously had.
+   */
+  private class TapeByteQueue(file: File) : ByteQueue {
+    private val queueFile = QueueFile(file)
+    private val usedBytesMethod = QueueFile::class.java.getDeclaredMethod("usedBytes").apply {
+      isAccessible = true
+    }
+
+    override fun add(element: ByteArray) = queueFile.add(element)
+
+    override fun poll(max: Int): List<ByteArray> {
+      val elements = mutableListOf<ByteArray>()
+      for (i in 0 until max) {
+        val element = queueFile.peek() ?: break
+        elements += element
+        queueFile.remove()
+      }
+      return elements
+    }
+
+    override fun poll(max: Int, maxBytes: Int) = poll(max)
+
+    override fun addFirst(elements: List<ByteArray>) = throw UnsupportedOperationException()
+
+    override fun size() = queueFile.size()
+
+    override fun usedBytes() = usedBytesMethod.invoke(queueFile) as Int
+  }
+
+  private companion object {
+    const val WARMUP_ITERATIONS = 3
+    const val ITERATIONS = 10
+    const val ELEMENTS = 5000
+    const val OFFERS_PER_POLL = 100
+    const val BATCH_SIZE = 50
+    const val MAX_SIZE = 60 * 1024
+
+    val element = ByteArray(170) { 'a'.code.toByte() }
+  }
+}
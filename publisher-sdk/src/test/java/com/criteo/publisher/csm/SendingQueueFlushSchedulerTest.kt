@@ -0,0 +1,230 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.criteo.publisher.csm
+
+import com.criteo.publisher.util.BuildConfigWrapper
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatCode
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.mockito.Mock
+import org.mockito.junit.MockitoJUnit
+import org.mockito.kotlin.any
+import org.mockito.kotlin.argumentCaptor
+import org.mockito.kotlin.atLeastOnce
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.doThrow
+import org.mockito.kotlin.eq
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.never
+import org.mockito.kotlin.times
+import org.mockito.kotlin.verify
+import org.mockito.kotlin.whenever
+import java.io.IOException
+import java.util.concurrent.Executor
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+
+class SendingQueueFlushSchedulerTest {
+
+  @Rule
+  @JvmField
+  val mockitoRule = MockitoJUnit.rule()
+
+  @Mock
+  private lateinit var sendingQueue: ConcurrentSendingQueue<Any>
+
+  @Mock
+  private lateinit var buildConfigWrapper: BuildConfigWrapper
+
+  @Mock
+  private lateinit var scheduledExecutorService: ScheduledExecutorService
+
+  @Mock
+  private lateinit var batchSender: SendingQueueFlushScheduler.BatchSender
+
+  private val pendingTasks = mutableListOf<Runnable>()
+
+  private lateinit var scheduler: SendingQueueFlushScheduler
+
+  @Before
+  fun setUp() {
+    whenever(buildConfigWrapper.telemetryFlushMaxDelayInMillis).doReturn(30000)
+    whenever(buildConfigWrapper.telemetryRetryBaseDelayInMillis).doReturn(1000)
+    whenever(buildConfigWrapper.telemetryRetryMaxDelayInMillis).doReturn(3000)
+    whenever(scheduledExecutorService.schedule(any<Runnable>(), any(), any())).doReturn(mock<ScheduledFuture<*>>())
+
+    scheduler = SendingQueueFlushScheduler(
+        sendingQueue,
+        100,
+        buildConfigWrapper,
+        Executor { pendingTasks += it },
+        scheduledExecutorService,
+        batchSender
+    )
+  }
+
+  @Test
+  fun requestFlush_GivenFewBytesInQueue_ScheduleFlushAfterMaxDelay() {
+    whenever(sendingQueue.totalSize).doReturn(99)
+
+    scheduler.requestFlush()
+    runPendingTasks()
+
+    verify(batchSender, never()).sendBatch()
+    verify(scheduledExecutorService).schedule(any<Runnable>(), eq(30000L), eq(TimeUnit.MILLISECONDS))
+  }
+
+  @Test
+  fun requestFlush_GivenManyRequestsWithFewBytesInQueue_ScheduleOnlyOneFlush() {
+    whenever(sendingQueue.totalSize).doReturn(99)
+
+    scheduler.requestFlush()
+    scheduler.requestFlush()
+    scheduler.requestFlush()
+
+    verify(scheduledExecutorService, times(1)).schedule(any<Runnable>(), any(), any())
+  }
+
+  @Test
+  fun requestFlush_AfterMaxDelay_SendBatch() {
+    whenever(sendingQueue.totalSize).doReturn(99)
+
+    scheduler.requestFlush()
+    runScheduledTask()
+    runPendingTasks()
+
+    verify(batchSender).sendBatch()
+  }
+
+  @Test
+  fun requestFlush_GivenEnoughBytesInQueue_SendBatchRightAway() {
+    whenever(sendingQueue.totalSize).doReturn(100, 0)
+
+    scheduler.requestFlush()
+    runPendingTasks()
+
+    verify(batchSender).sendBatch()
+  }
+
+  @Test
+  fun flush_GivenBatchInFlight_SendOnlyOneMoreBatchAfterIt() {
+    scheduler.flush()
+    scheduler.flush()
+    scheduler.flush()
+
+    assertThat(pendingTasks).hasSize(1)
+
+    runPendingTasks()
+
+    verify(batchSender, times(2)).sendBatch()
+  }
+
+  @Test
+  fun flush_GivenRemainingBytesAfterBatch_ScheduleFlush() {
+    whenever(sendingQueue.totalSize).doReturn(42)
+
+    scheduler.flush()
+    runPendingTasks()
+
+    verify(batchSender, times(1)).sendBatch()
+    verify(scheduledExecutorService).schedule(any<Runnable>(), eq(30000L), eq(TimeUnit.MILLISECONDS))
+  }
+
+  @Test
+  fun flush_GivenFailure_IgnoreRequestsUntilRetryWithBackoff() {
+    doThrow(IOException::class).whenever(batchSender).sendBatch()
+    whenever(sendingQueue.totalSize).doReturn(1000)
+
+    scheduler.flush()
+    runPendingTasks()
+
+    scheduler.flush()
+    scheduler.requestFlush()
+    runPendingTasks()
+
+    verify(batchSender, times(1)).sendBatch()
+    verify(scheduledExecutorService).schedule(any<Runnable>(), eq(1000L), eq(TimeUnit.MILLISECONDS))
+
+    runScheduledTask()
+    runPendingTasks()
+    runScheduledTask()
+    runPendingTasks()
+
+    verify(batchSender, times(3)).sendBatch()
+    verify(scheduledExecutorService).schedule(any<Runnable>(), eq(2000L), eq(TimeUnit.MILLISECONDS))
+    verify(scheduledExecutorService).schedule(any<Runnable>(), eq(3000L), eq(TimeUnit.MILLISECONDS))
+  }
+
+  @Test
+  fun flush_GivenSuccessAfterFailure_ResetBackoff() {
+    doThrow(IOException::class).doNothing().doThrow(IOException::class).whenever(batchSender).sendBatch()
+
+    scheduler.flush()
+    runPendingTasks()
+    runScheduledTask()
+    runPendingTasks()
+    scheduler.flush()
+    runPendingTasks()
+
+    verify(batchSender, times(3)).sendBatch()
+    verify(scheduledExecutorService, times(2)).schedule(any<Runnable>(), eq(1000L), eq(TimeUnit.MILLISECONDS))
+  }
+
+  @Test
+  fun flush_GivenRejectedExecution_SendBatchAtNextFlush() {
+    var isRejecting = true
+    scheduler = SendingQueueFlushScheduler(
+        sendingQueue,
+        100,
+        buildConfigWrapper,
+        Executor {
+          if (isRejecting) {
+            throw RejectedExecutionException()
+          }
+          pendingTasks += it
+        },
+        scheduledExecutorService,
+        batchSender
+    )
+
+    assertThatCode { scheduler.flush() }.isInstanceOf(RejectedExecutionException::class.java)
+
+    isRejecting = false
+    scheduler.flush()
+    runPendingTasks()
+
+    verify(batchSender).sendBatch()
+  }
+
+  private fun runPendingTasks() {
+    while (pendingTasks.isNotEmpty()) {
+      pendingTasks.removeAt(0).run()
+    }
+  }
+
+  private fun runScheduledTask() {
+    argumentCaptor<Runnable> {
+      verify(scheduledExecutorService, atLeastOnce()).schedule(capture(), any(), any())
+      lastValue.run()
+    }
+  }
+}
@@ -27,11 +27,14 @@ import org.mockito.junit.MockitoJUnit
 import org.mockito.junit.MockitoRule
 import org.mockito.kotlin.any
 import org.mockito.kotlin.argThat
+import org.mockito.kotlin.doReturn
 import org.mockito.kotlin.doThrow
 import org.mockito.kotlin.inOrder
 import org.mockito.kotlin.mock
+import org.mockito.kotlin.never
 import org.mockito.kotlin.spy
 import org.mockito.kotlin.verify
+import org.mockito.kotlin.verifyNoInteractions
 import org.mockito.kotlin.whenever
 
 class LoggerTest {
@@ -79,6 +82,48 @@ class LoggerTest {
     verify(handler2).log("myTag", LogMessage(Log.DEBUG, null, exception))
   }
 
+  @Test
+  fun log_GivenLevelBelowAllHandlers_DoNotBuildMessageNorDelegate() {
+    whenever(handler1.minLogLevel).doReturn(Log.WARN)
+    whenever(handler2.minLogLevel).doReturn(Log.ERROR)
+    val supplier = mock<() -> LogMessage>()
+
+    logger.log(Log.INFO, supplier)
+    logger.log(LogMessage(Log.INFO, "message"))
+    logger.debug("Hello %s", "World")
+
+    verifyNoInteractions(supplier)
+    verify(handler1, never()).log(any(), any())
+    verify(handler2, never()).log(any(), any())
+  }
+
+  @Test
+  fun log_GivenLevelAboveOneHandler_BuildMessageAndDelegateToAllHandlers() {
+    whenever(handler1.minLogLevel).doReturn(Log.WARN)
+    whenever(handler2.minLogLevel).doReturn(Log.ERROR)
+    val logMessage = LogMessage(Log.WARN, "message")
+
+    logger.log(Log.WARN) { logMessage }
+
+    verify(handler1).log("myTag", logMessage)
+    verify(handler2).log("myTag", logMessage)
+  }
+
+  @Test
+  fun log_GivenLevelChangedAndInvalidated_UseNewLevel() {
+    whenever(handler1.minLogLevel).doReturn(Log.WARN)
+    whenever(handler2.minLogLevel).doReturn(Log.WARN)
+    val logMessage = LogMessage(Log.INFO, "message")
+
+    logger.log(logMessage)
+    whenever(handler2.minLogLevel).doReturn(Log.INFO)
+    Logger.invalidateLogLevels()
+    logger.log(logMessage)
+
+    verify(handler1).log("myTag", logMessage)
+    verify(handler2).log("myTag", logMessage)
+  }
+
   @Test
   fun log_GivenOneHandlerThrowing_IgnoreErrorAndKeepLoggingWithOtherHandler() {
     whenever(handler1.log(any(), any())).doThrow(Exception::class)
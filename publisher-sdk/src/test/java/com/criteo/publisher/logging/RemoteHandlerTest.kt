@@ -23,6 +23,7 @@ import com.criteo.publisher.mock.MockBean
 import com.criteo.publisher.mock.MockedDependenciesRule
 import com.criteo.publisher.model.Config
 import com.criteo.publisher.privacy.ConsentData
+import org.assertj.core.api.Assertions.assertThat
 import org.junit.Before
 import org.junit.Rule
 import org.junit.Test
@@ -67,6 +68,18 @@ class RemoteHandlerTest {
     whenever(consentData.isConsentGiven()).thenReturn(true)
   }
 
+  @Test
+  fun minLogLevel_GivenConfiguredRemoteLogLevel_ReturnMatchingAndroidLogLevel() {
+    whenever(config.remoteLogLevel).doReturn(RemoteLogLevel.INFO)
+    assertThat(remoteHandler.minLogLevel).isEqualTo(Log.INFO)
+
+    whenever(config.remoteLogLevel).doReturn(RemoteLogLevel.WARNING)
+    assertThat(remoteHandler.minLogLevel).isEqualTo(Log.WARN)
+
+    whenever(config.remoteLogLevel).doReturn(RemoteLogLevel.NONE)
+    assertThat(remoteHandler.minLogLevel).isGreaterThan(Log.ASSERT)
+  }
+
   @Test
   fun log_GivenConfiguredRemoteLogLevel_OnlyPushMessageWithLogLevelAboveOrEqual() {
     val info = LogMessage(level = Log.INFO, message = "dummy")
@@ -37,6 +37,7 @@ import org.mockito.kotlin.never
 import org.mockito.kotlin.verify
 import org.mockito.kotlin.whenever
 import java.io.IOException
+import java.util.concurrent.ScheduledExecutorService
 
 class RemoteLogSendingQueueConsumerTest {
 
@@ -60,6 +61,9 @@ class RemoteLogSendingQueueConsumerTest {
   @SpyBean
   private lateinit var buildConfigWrapper: BuildConfigWrapper
 
+  @Mock
+  private lateinit var scheduledExecutorService: ScheduledExecutorService
+
   private val executor = DirectMockExecutor()
 
   private lateinit var consumer: RemoteLogSendingQueueConsumer
@@ -73,10 +77,31 @@ class RemoteLogSendingQueueConsumerTest {
         api,
         buildConfigWrapper,
         advertisingInfo,
-        executor
+        executor,
+        scheduledExecutorService
     )
   }
 
+  @Test
+  fun scheduleRemoteLogBatch_GivenFewLogs_DoNotSendThemRightAway() {
+    whenever(queue.totalSize).doReturn(1)
+
+    consumer.scheduleRemoteLogBatch()
+
+    verify(queue, never()).poll(any())
+    verify(scheduledExecutorService).schedule(any<Runnable>(), any(), any())
+  }
+
+  @Test
+  fun onApplicationStopped_GivenSomeLogs_SendThem() {
+    val logs = mock<RemoteLogRecords>()
+    whenever(queue.poll(any())).doReturn(listOf(logs))
+
+    consumer.onApplicationStopped()
+
+    verify(api).postLogs(listOf(logs))
+  }
+
   @Test
   fun sendRemoteLogBatch_GivenSomeLogsAndIOException_RollbackLogs() {
     val logs1 = mock<RemoteLogRecords>()
@@ -28,7 +28,9 @@ import com.criteo.publisher.privacy.gdpr.GdprData
 import com.criteo.publisher.util.AdUnitType.CRITEO_BANNER
 import com.criteo.publisher.util.AdvertisingInfo
 import com.criteo.publisher.util.BuildConfigWrapper
+import com.criteo.publisher.util.CompletableFuture
 import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.entry
 import org.junit.Before
 import org.junit.Rule
 import org.junit.Test
@@ -37,8 +39,9 @@ import org.mockito.junit.MockitoJUnit
 import org.mockito.kotlin.doReturn
 import org.mockito.kotlin.mock
 import org.mockito.kotlin.stub
+import org.mockito.kotlin.times
+import org.mockito.kotlin.verify
 import org.mockito.kotlin.whenever
-import java.util.concurrent.Future
 import java.util.concurrent.atomic.AtomicInteger
 
 class CdbRequestFactoryTest {
@@ -105,7 +108,7 @@ class CdbRequestFactoryTest {
 
   @Test
   fun userAgent_GivenDeviceInfo_DelegateToIt() {
-    val expected: Future<String> = mock()
+    val expected: CompletableFuture<String> = mock()
     whenever(deviceInfo.userAgent).thenReturn(expected)
 
     val userAgent = factory.userAgent
@@ -228,6 +231,7 @@ class CdbRequestFactoryTest {
       on { usPrivacyOptout } doReturn ""
       on { iabUsPrivacyString } doReturn ""
     }
+    factory.onSharedPreferenceChanged(mock(), "IABUSPrivacy_String")
 
     request = factory.createRequest(adUnits, contextData)
 
@@ -235,6 +239,32 @@ class CdbRequestFactoryTest {
     assertThat(request.user.uspOptout).isNull()
   }
 
+  @Test
+  fun createRequest_GivenManyRequests_ComputeInvariantPartsOnlyOnce() {
+    mockRequiredObjects()
+
+    val request1 = factory.createRequest(listOf(createAdUnit()), ContextData())
+    val request2 = factory.createRequest(listOf(createAdUnit(), createAdUnit()), ContextData())
+
+    assertThat(request2.profileId).isEqualTo(request1.profileId)
+    verify(integrationRegistry, times(1)).profileId
+    verify(userPrivacyUtil, times(1)).gdprData
+    verify(config, times(1)).isMraidEnabled
+  }
+
+  @Test
+  fun createRequest_GivenChangedSharedPreferences_ComputeInvariantPartsAgain() {
+    mockRequiredObjects()
+    factory.createRequest(emptyList(), ContextData())
+
+    whenever(integrationRegistry.profileId).thenReturn(1337)
+    factory.onSharedPreferenceChanged(mock(), "CriteoCachedIntegration")
+    val request = factory.createRequest(emptyList(), ContextData())
+
+    assertThat(request.profileId).isEqualTo(1337)
+    verify(integrationRegistry, times(2)).profileId
+  }
+
   @Test
   fun createRequest_GivenAdUnits_MapThemToRequestSlotWithImpressionId() {
     val adUnit1 = createAdUnit()
@@ -274,6 +304,32 @@ class CdbRequestFactoryTest {
     assertThat(request.slots).containsExactlyInAnyOrder(expectedSlot1, expectedSlot2)
   }
 
+  @Test
+  fun createRequest_GivenAdUnits_IndexThemByImpressionId() {
+    val adUnit1 = createAdUnit()
+    val adUnit2 = createAdUnit()
+    val contextData: ContextData = mock()
+
+    uniqueIdGenerator.stub {
+      on { generateId() }.doReturn("myRequestId", "impId1", "impId2")
+    }
+
+    buildConfigWrapper.stub {
+      on { sdkVersion } doReturn "1.2.3"
+    }
+
+    whenever(context.packageName).thenReturn("bundle.id")
+    whenever(integrationRegistry.profileId).thenReturn(1337)
+
+    val request = factory.createRequest(listOf(adUnit1, adUnit2), contextData)
+
+    assertThat(request.adUnitsByImpressionId).containsOnly(
+        entry("impId1", adUnit1),
+        entry("impId2", adUnit2)
+    )
+    assertThat(request.contextData).isSameAs(contextData)
+  }
+
   @Test
   fun mergeToNestedMap_GivenNoMap_ReturnEmpty() {
     val nestedMap = factory.mergeToNestedMap()
@@ -0,0 +1,156 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.model
+
+import com.criteo.publisher.mock.MockedDependenciesRule
+import com.criteo.publisher.util.JsonSerializer
+import com.squareup.moshi.JsonAdapter
+import com.squareup.moshi.JsonReader
+import org.assertj.core.api.Assertions.assertThat
+import org.json.JSONObject
+import org.junit.Rule
+import org.junit.Test
+import org.mockito.kotlin.any
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.doThrow
+import org.mockito.kotlin.mock
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import javax.inject.Inject
+
+class CdbResponseJsonAdapterTest {
+
+  @Rule
+  @JvmField
+  val mockedDependenciesRule = MockedDependenciesRule()
+
+  @Inject
+  private lateinit var jsonSerializer: JsonSerializer
+
+  @Test
+  fun read_GivenEmptyJson_ReturnEmptyResponse() {
+    val response = readFromString("{}")
+
+    assertThat(response.slots).isEmpty()
+    assertThat(response.timeToNextCall).isEqualTo(0)
+    assertThat(response.consentGiven).isNull()
+  }
+
+  @Test
+  fun read_GivenFullJson_ReturnResponseWithAllValidSlots() {
+    val json = """{
+      "timeToNextCall": 300,
+      "consentGiven": true,
+      "unknownProperty": { "ignored": [1, 2] },
+      "slots": [
+        {
+          "impId": "impId1",
+          "placementId": "adUnit1",
+          "cpm": "1.00",
+          "currency": "EUR",
+          "width": 320,
+          "height": 50,
+          "ttl": 3600,
+          "displayUrl": "https://url.com/ad.js"
+        },
+        {
+          "impId": "impId2",
+          "placementId": "adUnit2",
+          "cpm": "0.00",
+          "ttl": 60
+        }
+      ]
+    }""".trimIndent()
+
+    val response = readFromString(json)
+
+    assertThat(response.timeToNextCall).isEqualTo(300)
+    assertThat(response.consentGiven).isTrue()
+    assertThat(response.slots).extracting<String> { it.impressionId }
+        .containsExactly("impId1", "impId2")
+    assertThat(response.slots).isEqualTo(
+        listOf(
+            CdbResponseSlot.fromJson(JSONObject(json).getJSONArray("slots").getJSONObject(0)),
+            CdbResponseSlot.fromJson(JSONObject(json).getJSONArray("slots").getJSONObject(1))
+        )
+    )
+  }
+
+  @Test
+  fun write_GivenResponse_WriteItSoThatItCanBeReadBack() {
+    val expected = readFromString("""{
+      "timeToNextCall": 42,
+      "consentGiven": false,
+      "slots": [{ "impId": "impId1", "placementId": "adUnit1", "cpm": "1.00", "ttl": 60 }]
+    }""".trimIndent())
+
+    val output = ByteArrayOutputStream()
+    jsonSerializer.write(expected, output)
+    val response = readFromString(output.toString(Charsets.UTF_8.name()))
+
+    assertThat(response.timeToNextCall).isEqualTo(42)
+    assertThat(response.consentGiven).isFalse()
+    assertThat(response.slots).isEqualTo(expected.slots)
+  }
+
+  @Test
+  fun read_GivenSlotFailingWithAnyException_SkipItAndKeepOtherSlots() {
+    val failingAdapter = mock<JsonAdapter<CdbResponseSlot>> {
+      on { fromJson(any<JsonReader>()) } doThrow IllegalStateException() doReturn mock()
+    }
+    val adapter = CdbResponseJsonAdapter(failingAdapter)
+
+    val response = adapter.fromJson("""{ "slots": [{ "impId": "1" }, { "impId": "2" }] }""")!!
+
+    assertThat(response.slots).hasSize(1)
+  }
+
+  @Test
+  fun read_GivenInvalidSlot_SkipItAndKeepOtherSlots() {
+    val json = """{
+      "slots": [
+        { "impId": "impId1", "cpm": null },
+        { "impId": "impId2", "cpm": "1.00" }
+      ]
+    }""".trimIndent()
+
+    val response = readFromString(json)
+
+    assertThat(response.slots).extracting<String> { it.impressionId }.containsExactly("impId2")
+  }
+
+  @Test
+  fun read_GivenInvalidTopLevelValues_IgnoreThem() {
+    val json = """{
+      "timeToNextCall": "xyz",
+      "consentGiven": 42,
+      "slots": "notAnArray"
+    }""".trimIndent()
+
+    val response = readFromString(json)
+
+    assertThat(response.slots).isEmpty()
+    assertThat(response.timeToNextCall).isEqualTo(0)
+    assertThat(response.consentGiven).isNull()
+  }
+
+  private fun readFromString(json: String): CdbResponse {
+    ByteArrayInputStream(json.toByteArray()).use {
+      return jsonSerializer.read(CdbResponse::class.java, it)
+    }
+  }
+}
@@ -332,7 +332,10 @@ public class CdbResponseSlotTest {
     // One is missing a displayUrl and the other has a negative cpm
     // Neither bid should be added to the cache
     String json = "{\"slots\":[{\"placementId\":\"/140800857/Endeavour_320x50\",\"cpm\":\"0.00\",\"currency\":\"EUR\",\"width\":320,\"height\":50,\"ttl\":0,\"displayUrl\":\"\"},{\"placementId\":\"/140800857/Endeavour_Interstitial_320x480\",\"cpm\":\"-1.00\",\"currency\":\"EUR\",\"width\":320,\"height\":480,\"ttl\":0,\"displayUrl\":\"https://publisherdirect.criteo.com/publishertag/preprodtest/FakeAJS.js\"}]}";
-    List<CdbResponseSlot> slots = CdbResponse.fromJson(new JSONObject(json)).getSlots();
+    List<CdbResponseSlot> slots = DependencyProvider.getInstance().provideMoshi()
+        .adapter(CdbResponse.class)
+        .fromJson(json)
+        .getSlots();
 
     for (CdbResponseSlot slot : slots) {
       assertThat(slot.isValid()).isFalse();
@@ -385,7 +388,9 @@ public class CdbResponseSlotTest {
         "    }]\n" +
         "}";
 
-    List<CdbResponseSlot> slots = CdbResponse.fromJson(new JSONObject(cdbStringResponse))
+    List<CdbResponseSlot> slots = DependencyProvider.getInstance().provideMoshi()
+        .adapter(CdbResponse.class)
+        .fromJson(cdbStringResponse)
         .getSlots();
 
     for (CdbResponseSlot slot : slots) {
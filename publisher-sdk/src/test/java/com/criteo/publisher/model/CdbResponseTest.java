@@ -23,6 +23,9 @@ import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import com.criteo.publisher.DependencyProvider;
+import com.squareup.moshi.JsonAdapter;
+import java.io.IOException;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -60,22 +63,22 @@ public class CdbResponseTest {
   }
 
   @Test
-  public void testValidTimeToCallInCdbResponse() throws JSONException {
+  public void testValidTimeToCallInCdbResponse() throws Exception {
     this.cdbResponse.put(TIME_TO_NEXT_CALL, 300);
-    CdbResponse cdbResponse = CdbResponse.fromJson(this.cdbResponse);
+    CdbResponse cdbResponse = readCdbResponse(this.cdbResponse.toString());
     assertEquals(300, cdbResponse.getTimeToNextCall());
   }
 
   @Test
-  public void testInValidTimeToCallInCdbResponse() throws JSONException {
+  public void testInValidTimeToCallInCdbResponse() throws Exception {
     this.cdbResponse.put(TIME_TO_NEXT_CALL, "xyz");
-    CdbResponse cdbResponse = CdbResponse.fromJson(this.cdbResponse);
+    CdbResponse cdbResponse = readCdbResponse(this.cdbResponse.toString());
     assertEquals(0, cdbResponse.getTimeToNextCall());
   }
 
   @Test
-  public void testValidSlotInCdbResponse() throws JSONException {
-    CdbResponse cdbResponse = CdbResponse.fromJson(this.cdbResponse);
+  public void testValidSlotInCdbResponse() throws Exception {
+    CdbResponse cdbResponse = readCdbResponse(this.cdbResponse.toString());
     assertEquals(bid.getString(PLACEMENT_ID), cdbResponse.getSlots().get(0).getPlacementId());
     assertEquals(bid.getString(CPM), cdbResponse.getSlots().get(0).getCpm());
     assertEquals(bid.getString(CURRENCY), cdbResponse.getSlots().get(0).getCurrency());
@@ -89,7 +92,7 @@ public class CdbResponseTest {
   @Test
   public void fromJson_GivenUserLevelSilent_ContainsTimeToNextCallAndEmptySlot() throws Exception {
     String json = "{\"slots\":[],\"timeToNextCall\":30}";
-    CdbResponse cdbResponse = CdbResponse.fromJson(new JSONObject(json));
+    CdbResponse cdbResponse = readCdbResponse(json);
 
     assertThat(cdbResponse.getTimeToNextCall()).isEqualTo(30);
     assertThat(cdbResponse.getSlots()).isEmpty();
@@ -98,7 +101,7 @@ public class CdbResponseTest {
   @Test
   public void fromJson_GivenEmptyJson_ContainsNoSlotAndNoTimeToNextCall() throws Exception {
     String json = "{}";
-    CdbResponse cdbResponse = CdbResponse.fromJson(new JSONObject(json));
+    CdbResponse cdbResponse = readCdbResponse(json);
 
     assertThat(cdbResponse.getTimeToNextCall()).isEqualTo(0);
     assertThat(cdbResponse.getSlots()).isEmpty();
@@ -144,7 +147,7 @@ public class CdbResponseTest {
   @Test
   public void fromJson_GivenConsentInfoTrue() throws Exception {
     String json = "{\"slots\":[], \"consentGiven\": true}";
-    CdbResponse cdbResponse = CdbResponse.fromJson(new JSONObject(json));
+    CdbResponse cdbResponse = readCdbResponse(json);
 
     assertThat(cdbResponse.getConsentGiven()).isTrue();
   }
@@ -152,9 +155,30 @@ public class CdbResponseTest {
   @Test
   public void fromJson_GivenNoConsentInfoFalse() throws Exception {
     String json = "{\"slots\":[], \"consentGiven\": false}";
-    CdbResponse cdbResponse = CdbResponse.fromJson(new JSONObject(json));
+    CdbResponse cdbResponse = readCdbResponse(json);
 
     assertThat(cdbResponse.getConsentGiven()).isFalse();
   }
 
+  @Test
+  public void toJson_GivenReadResponse_WriteEquivalentJson() throws Exception {
+    this.cdbResponse.put(TIME_TO_NEXT_CALL, 300);
+    this.cdbResponse.put("consentGiven", true);
+    CdbResponse expected = readCdbResponse(this.cdbResponse.toString());
+
+    CdbResponse cdbResponse = readCdbResponse(cdbResponseAdapter().toJson(expected));
+
+    assertThat(cdbResponse.getTimeToNextCall()).isEqualTo(300);
+    assertThat(cdbResponse.getConsentGiven()).isTrue();
+    assertThat(cdbResponse.getSlots()).isEqualTo(expected.getSlots()).hasSize(1);
+  }
+
+  private static CdbResponse readCdbResponse(String json) throws IOException {
+    return cdbResponseAdapter().fromJson(json);
+  }
+
+  private static JsonAdapter<CdbResponse> cdbResponseAdapter() {
+    return DependencyProvider.getInstance().provideMoshi().adapter(CdbResponse.class);
+  }
+
 }
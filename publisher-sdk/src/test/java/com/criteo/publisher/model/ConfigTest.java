@@ -234,6 +234,16 @@ public class ConfigTest {
     refreshConfig_assertItIsUnchanged(newConfig, Config::isMraid2Enabled);
   }
 
+  @Test
+  public void refreshConfig_GivenMissingIsRequestCompressionEnabled_ItIsUnchanged() throws Exception {
+    givenNewConfig();
+
+    RemoteConfigResponse newConfig = givenFullNewPayload(config);
+    when(newConfig.isRequestCompressionEnabled()).thenReturn(null);
+
+    refreshConfig_assertItIsUnchanged(newConfig, Config::isRequestCompressionEnabled);
+  }
+
   private <T> void refreshConfig_assertItIsUnchanged(
       RemoteConfigResponse newConfig,
       Function<Config, T> projection
@@ -264,7 +274,8 @@ public class ConfigTest {
         false,
         RemoteLogLevel.ERROR,
         false,
-        false
+        false,
+        true
     );
 
     doAnswer(answerVoid((RemoteConfigResponse ignored, OutputStream outputStream) -> {
@@ -308,6 +319,7 @@ public class ConfigTest {
     int liveBiddingTimeBudgetInMillis = config.getLiveBiddingTimeBudgetInMillis();
     boolean isMraidEnabled = config.isMraidEnabled();
     boolean isMraid2Enabled = config.isMraid2Enabled();
+    boolean isRequestCompressionEnabled = config.isRequestCompressionEnabled();
 
     RemoteConfigResponse newConfig = givenFullNewPayload(config);
 
@@ -323,6 +335,7 @@ public class ConfigTest {
     assertEquals(1 + liveBiddingTimeBudgetInMillis, config.getLiveBiddingTimeBudgetInMillis());
     assertEquals(isMraidEnabled, !config.isMraidEnabled());
     assertEquals(isMraid2Enabled, !config.isMraid2Enabled());
+    assertEquals(isRequestCompressionEnabled, !config.isRequestCompressionEnabled());
   }
 
   private void givenNewConfig() {
@@ -349,6 +362,7 @@ public class ConfigTest {
     when(response.getRemoteLogLevel()).thenReturn(otherLogLevel);
     when(response.isMraidEnabled()).thenReturn(!config.isMraidEnabled());
     when(response.isMraid2Enabled()).thenReturn(!config.isMraid2Enabled());
+    when(response.isRequestCompressionEnabled()).thenReturn(!config.isRequestCompressionEnabled());
 
     return response;
   }
@@ -368,6 +382,7 @@ public class ConfigTest {
     assertEquals(8000, config.getLiveBiddingTimeBudgetInMillis());
     assertFalse(config.isMraidEnabled());
     assertFalse(config.isMraid2Enabled());
+    assertFalse(config.isRequestCompressionEnabled());
   }
 
 }
\ No newline at end of file
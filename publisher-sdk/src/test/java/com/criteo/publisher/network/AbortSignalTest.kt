@@ -0,0 +1,109 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Rule
+import org.junit.Test
+import org.mockito.Mock
+import org.mockito.junit.MockitoJUnit
+import org.mockito.kotlin.never
+import org.mockito.kotlin.verify
+import java.io.IOException
+import java.net.HttpURLConnection
+
+class AbortSignalTest {
+
+  @Rule
+  @JvmField
+  val mockitoRule = MockitoJUnit.rule()
+
+  @Mock
+  private lateinit var connection: HttpURLConnection
+
+  private val abortSignal = AbortSignal()
+
+  @Test
+  fun abort_GivenRegisteredConnection_DisconnectIt() {
+    abortSignal.register(connection)
+
+    abortSignal.abort(isTimeBudgetExceeded = true)
+
+    verify(connection).disconnect()
+  }
+
+  @Test
+  fun register_GivenAlreadyAborted_DisconnectRightAway() {
+    abortSignal.abort(isTimeBudgetExceeded = true)
+
+    abortSignal.register(connection)
+
+    verify(connection).disconnect()
+  }
+
+  @Test
+  fun abort_GivenUnregisteredConnection_DoNotDisconnectIt() {
+    abortSignal.register(connection)
+    abortSignal.unregister()
+
+    abortSignal.abort(isTimeBudgetExceeded = true)
+
+    verify(connection, never()).disconnect()
+  }
+
+  @Test
+  fun abort_GivenAbortedTwice_DisconnectOnlyOnce() {
+    abortSignal.register(connection)
+
+    abortSignal.abort(isTimeBudgetExceeded = true)
+    abortSignal.abort(isTimeBudgetExceeded = true)
+
+    verify(connection).disconnect()
+  }
+
+  @Test
+  fun onFailure_GivenNotAborted_ReturnSameException() {
+    val exception = IOException()
+
+    assertThat(abortSignal.onFailure(exception)).isSameAs(exception)
+  }
+
+  @Test
+  fun onFailure_GivenAbortedOnTimeBudget_ReturnAbortedTimeout() {
+    val exception = IOException()
+    abortSignal.abort(isTimeBudgetExceeded = true)
+
+    val failure = abortSignal.onFailure(exception)
+
+    assertThat(failure).isInstanceOfSatisfying(CdbCallAbortedException::class.java) {
+      assertThat(it.isTimeBudgetExceeded).isTrue()
+      assertThat(it).hasCause(exception)
+    }
+  }
+
+  @Test
+  fun onFailure_GivenCancelled_ReturnAbortedNotTimeout() {
+    abortSignal.abort(isTimeBudgetExceeded = false)
+    abortSignal.abort(isTimeBudgetExceeded = true)
+
+    val failure = abortSignal.onFailure(IOException())
+
+    assertThat(failure).isInstanceOfSatisfying(CdbCallAbortedException::class.java) {
+      assertThat(it.isTimeBudgetExceeded).isFalse()
+    }
+  }
+}
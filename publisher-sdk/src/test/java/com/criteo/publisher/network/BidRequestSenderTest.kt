@@ -19,20 +19,28 @@ package com.criteo.publisher.network
 import com.criteo.publisher.CdbCallListener
 import com.criteo.publisher.Clock
 import com.criteo.publisher.concurrent.DirectMockExecutor
+import com.criteo.publisher.concurrent.NoOpAsyncResources
 import com.criteo.publisher.context.ContextData
 import com.criteo.publisher.model.AdSize
 import com.criteo.publisher.model.CacheAdUnit
 import com.criteo.publisher.model.CdbRequest
 import com.criteo.publisher.model.CdbRequestFactory
+import com.criteo.publisher.model.CdbRequestSlot
 import com.criteo.publisher.model.CdbResponse
+import com.criteo.publisher.model.CdbResponseSlot
 import com.criteo.publisher.model.Config
+import com.criteo.publisher.model.Publisher
 import com.criteo.publisher.model.RemoteConfigRequest
 import com.criteo.publisher.model.RemoteConfigRequestFactory
 import com.criteo.publisher.model.RemoteConfigResponse
+import com.criteo.publisher.model.User
 import com.criteo.publisher.util.AdUnitType.CRITEO_BANNER
+import com.criteo.publisher.util.BuildConfigWrapper
+import com.criteo.publisher.util.CompletableFuture
 import com.criteo.publisher.util.CompletableFuture.completedFuture
 import org.assertj.core.api.Assertions.assertThat
 import org.assertj.core.api.Assertions.assertThatCode
+import org.assertj.core.api.Assertions.entry
 import org.junit.Before
 import org.junit.Rule
 import org.junit.Test
@@ -41,11 +49,14 @@ import org.mockito.junit.MockitoJUnit
 import org.mockito.kotlin.any
 import org.mockito.kotlin.anyOrNull
 import org.mockito.kotlin.argumentCaptor
+import org.mockito.kotlin.check
 import org.mockito.kotlin.doAnswer
 import org.mockito.kotlin.doReturn
 import org.mockito.kotlin.doThrow
+import org.mockito.kotlin.eq
 import org.mockito.kotlin.inOrder
 import org.mockito.kotlin.mock
+import org.mockito.kotlin.never
 import org.mockito.kotlin.spy
 import org.mockito.kotlin.stub
 import org.mockito.kotlin.times
@@ -58,6 +69,8 @@ import java.util.concurrent.CyclicBarrier
 import java.util.concurrent.Executor
 import java.util.concurrent.Executors
 import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
 import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicInteger
 
@@ -79,8 +92,19 @@ class BidRequestSenderTest {
     @Mock
     private lateinit var api: PubSdkApi
 
+    @Mock
+    private lateinit var scheduledExecutorService: ScheduledExecutorService
+
+    @Mock
+    private lateinit var buildConfigWrapper: BuildConfigWrapper
+
+    @Mock
+    private lateinit var batchTimer: ScheduledFuture<*>
+
     private var executor = Executor(Runnable::run)
 
+    private val asyncResources = NoOpAsyncResources()
+
     private lateinit var sender: BidRequestSender
 
     private val adUnitId = AtomicInteger(0)
@@ -88,6 +112,8 @@ class BidRequestSenderTest {
     @Before
     fun setUp() {
         whenever(cdbRequestFactory.userAgent).doReturn(completedFuture(""))
+        whenever(buildConfigWrapper.bidRequestBatchMaxAdUnitCount).doReturn(8)
+        whenever(scheduledExecutorService.schedule(any<Runnable>(), any(), any())).doReturn(batchTimer)
 
         givenNewSender()
     }
@@ -98,7 +124,10 @@ class BidRequestSenderTest {
             remoteConfigRequestFactory,
             clock,
             api,
-            executor
+            executor,
+            scheduledExecutorService,
+            buildConfigWrapper,
+            asyncResources
         )
     }
 
@@ -191,6 +220,25 @@ class BidRequestSenderTest {
         inOrder.verifyNoMoreInteractions()
     }
 
+    @Test
+    fun sendBidRequest_GivenUserAgentNotResolvedYet_ExecuteCallOnlyOnceResolved() {
+        val adUnits = listOf(createAdUnit())
+        val listener: CdbCallListener = mock()
+        val userAgentFuture = CompletableFuture<String>()
+        val executor: Executor = mock()
+        givenNewSender(executor = executor)
+        whenever(cdbRequestFactory.userAgent).doReturn(userAgentFuture)
+
+        sender.sendBidRequest(adUnits, mock(), listener)
+
+        verifyNoInteractions(executor)
+        assertThat(sender.pendingTaskAdUnits).containsExactlyElementsOf(adUnits)
+
+        userAgentFuture.complete("myUserAgent")
+
+        verify(executor).execute(any())
+    }
+
     @Test
     fun sendBidRequest_GivenExecutor_IsWorkingInExecutor() {
         val executor = DirectMockExecutor()
@@ -333,6 +381,143 @@ class BidRequestSenderTest {
         assertThat(bothCallsAreInterrupted.await(1, TimeUnit.SECONDS)).isTrue()
     }
 
+    @Test
+    fun enqueueBidRequest_GivenBatchingDisabled_SendImmediately() {
+        whenever(buildConfigWrapper.bidRequestBatchingWindowInMillis).doReturn(0)
+
+        sender.enqueueBidRequest(listOf(createAdUnit()), mock(), mock())
+
+        verify(api).loadCdb(anyOrNull(), any())
+        verifyNoInteractions(scheduledExecutorService)
+    }
+
+    @Test
+    fun enqueueBidRequest_GivenAdUnitsWithinWindow_SendThemInSingleCallAndDispatchSlots() {
+        whenever(buildConfigWrapper.bidRequestBatchingWindowInMillis).doReturn(20)
+        val adUnit1 = createAdUnit()
+        val adUnit2 = createAdUnit()
+        val contextData: ContextData = mock()
+        val listener1: CdbCallListener = mock()
+        val listener2: CdbCallListener = mock()
+        val slot1 = givenResponseSlot("imp1")
+        val slot2 = givenResponseSlot("imp2")
+
+        val request = givenRequest(adUnit1 to "imp1", adUnit2 to "imp2")
+        whenever(cdbRequestFactory.createRequest(listOf(adUnit1, adUnit2), contextData)).doReturn(request)
+        whenever(api.loadCdb(eq(request), any())).doReturn(CdbResponse(listOf(slot2, slot1), 0, null))
+
+        sender.enqueueBidRequest(listOf(adUnit1), contextData, listener1)
+        sender.enqueueBidRequest(listOf(adUnit2), contextData, listener2)
+
+        verify(api, never()).loadCdb(anyOrNull(), any())
+        assertThat(sender.pendingTaskAdUnits).containsExactlyInAnyOrder(adUnit1, adUnit2)
+
+        fireBatchTimer()
+
+        verify(api, times(1)).loadCdb(anyOrNull(), any())
+        verify(listener1).onCdbResponse(check {
+            assertThat(it.id).isEqualTo(request.id)
+            assertThat(it.slots.map { slot -> slot.impressionId }).containsExactly("imp1")
+            assertThat(it.adUnitsByImpressionId).containsExactly(entry("imp1", adUnit1))
+        }, check {
+            assertThat(it.slots).containsExactly(slot1)
+        })
+        verify(listener2).onCdbResponse(check {
+            assertThat(it.slots.map { slot -> slot.impressionId }).containsExactly("imp2")
+        }, check {
+            assertThat(it.slots).containsExactly(slot2)
+        })
+        assertThat(sender.pendingTaskAdUnits).isEmpty()
+    }
+
+    @Test
+    fun enqueueBidRequest_GivenDifferentContextData_SendPreviousBatchRightAway() {
+        whenever(buildConfigWrapper.bidRequestBatchingWindowInMillis).doReturn(20)
+
+        sender.enqueueBidRequest(listOf(createAdUnit()), mock(), mock())
+        sender.enqueueBidRequest(listOf(createAdUnit()), mock(), mock())
+
+        verify(api, times(1)).loadCdb(anyOrNull(), any())
+        verify(batchTimer).cancel(false)
+    }
+
+    @Test
+    fun enqueueBidRequest_GivenFullBatch_SendWithoutWaitingForWindow() {
+        whenever(buildConfigWrapper.bidRequestBatchingWindowInMillis).doReturn(20)
+        whenever(buildConfigWrapper.bidRequestBatchMaxAdUnitCount).doReturn(2)
+        val adUnit1 = createAdUnit()
+        val adUnit2 = createAdUnit()
+        val contextData: ContextData = mock()
+        whenever(cdbRequestFactory.createRequest(any(), any()))
+            .doReturn(givenRequest(adUnit1 to "imp1", adUnit2 to "imp2"))
+
+        sender.enqueueBidRequest(listOf(adUnit1), contextData, mock())
+        sender.enqueueBidRequest(listOf(adUnit2), contextData, mock())
+
+        verify(api, times(1)).loadCdb(anyOrNull(), any())
+        verify(batchTimer).cancel(false)
+
+        fireBatchTimer()
+
+        verify(api, times(1)).loadCdb(anyOrNull(), any())
+    }
+
+    @Test
+    fun enqueueBidRequest_GivenPendingAdUnit_IgnoreIt() {
+        whenever(buildConfigWrapper.bidRequestBatchingWindowInMillis).doReturn(20)
+        val adUnit = createAdUnit()
+        val contextData: ContextData = mock()
+
+        sender.enqueueBidRequest(listOf(adUnit), contextData, mock())
+        sender.enqueueBidRequest(listOf(adUnit), contextData, mock())
+        fireBatchTimer()
+
+        verify(cdbRequestFactory).createRequest(listOf(adUnit), contextData)
+    }
+
+    @Test
+    fun cancelAllPendingTasks_GivenOpenBatch_DropIt() {
+        whenever(buildConfigWrapper.bidRequestBatchingWindowInMillis).doReturn(20)
+
+        sender.enqueueBidRequest(listOf(createAdUnit()), mock(), mock())
+        sender.cancelAllPendingTasks()
+        fireBatchTimer()
+
+        verify(batchTimer).cancel(false)
+        verifyNoInteractions(api)
+        assertThat(sender.pendingTaskAdUnits).isEmpty()
+    }
+
+    private fun fireBatchTimer() {
+        argumentCaptor<Runnable> {
+            verify(scheduledExecutorService).schedule(capture(), eq(20L), eq(TimeUnit.MILLISECONDS))
+            lastValue.run()
+        }
+    }
+
+    private fun givenRequest(vararg adUnits: Pair<CacheAdUnit, String>): CdbRequest {
+        val request = CdbRequest(
+            "myRequestId",
+            Publisher("myBundleId", "myCpId", null, mapOf()),
+            User(null, null, null, mapOf()),
+            "1.2.3",
+            456,
+            null,
+            adUnits.map { (adUnit, impressionId) ->
+                CdbRequestSlot(impressionId, adUnit.placementId, adUnit.adUnitType, adUnit.size, emptyList())
+            },
+            null
+        )
+        request.adUnitsByImpressionId = adUnits.associate { (adUnit, impressionId) -> impressionId to adUnit }
+        return request
+    }
+
+    private fun givenResponseSlot(impressionId: String): CdbResponseSlot {
+        val slot: CdbResponseSlot = mock()
+        whenever(slot.impressionId).doReturn(impressionId)
+        return slot
+    }
+
     private fun createAdUnit(): CacheAdUnit {
         val id = "id" + adUnitId.incrementAndGet()
         return CacheAdUnit(AdSize(1, 2), id, CRITEO_BANNER)
@@ -0,0 +1,154 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network
+
+import com.criteo.publisher.Clock
+import com.criteo.publisher.context.ConnectionTypeFetcher
+import com.criteo.publisher.context.ConnectionTypeFetcher.ConnectionType
+import com.criteo.publisher.model.CdbRequest
+import com.criteo.publisher.model.Config
+import com.criteo.publisher.util.BuildConfigWrapper
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.mockito.Mock
+import org.mockito.junit.MockitoJUnit
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.whenever
+import java.io.IOException
+import java.net.SocketTimeoutException
+
+class CdbLatencyTrackerTest {
+
+  @Rule
+  @JvmField
+  val mockitoRule = MockitoJUnit.rule()
+
+  @Mock
+  private lateinit var clock: Clock
+
+  @Mock
+  private lateinit var connectionTypeFetcher: ConnectionTypeFetcher
+
+  @Mock
+  private lateinit var config: Config
+
+  @Mock
+  private lateinit var buildConfigWrapper: BuildConfigWrapper
+
+  private lateinit var tracker: CdbLatencyTracker
+
+  private var requestId = 0
+
+  @Before
+  fun setUp() {
+    whenever(connectionTypeFetcher.fetchConnectionType()).thenReturn(ConnectionType.WIFI)
+    whenever(buildConfigWrapper.liveBidLatencySampleCount).thenReturn(4)
+    whenever(buildConfigWrapper.liveBidLatencyMinSampleCount).thenReturn(2)
+
+    whenever(config.liveBiddingTimeBudgetInMillis).thenReturn(8000)
+
+    tracker = CdbLatencyTracker(clock, connectionTypeFetcher, config, buildConfigWrapper)
+  }
+
+  @Test
+  fun getLatencyPercentile_GivenNotEnoughCalls_ReturnNull() {
+    givenSuccessfulCall(100)
+
+    assertThat(tracker.getLatencyPercentile(50)).isNull()
+  }
+
+  @Test
+  fun getLatencyPercentile_GivenCalls_ReturnPercentileOfLatencies() {
+    givenSuccessfulCall(400)
+    givenSuccessfulCall(100)
+    givenSuccessfulCall(300)
+    givenSuccessfulCall(200)
+
+    assertThat(tracker.getLatencyPercentile(50)).isEqualTo(200L)
+    assertThat(tracker.getLatencyPercentile(95)).isEqualTo(400L)
+  }
+
+  @Test
+  fun getLatencyPercentile_GivenMoreCallsThanWindow_OnlyKeepMostRecentOnes() {
+    givenSuccessfulCall(5000)
+    givenSuccessfulCall(100)
+    givenSuccessfulCall(100)
+    givenSuccessfulCall(100)
+    givenSuccessfulCall(100)
+
+    assertThat(tracker.getLatencyPercentile(100)).isEqualTo(100L)
+  }
+
+  @Test
+  fun getLatencyPercentile_GivenCallsOnOtherConnectionType_ReturnNull() {
+    givenSuccessfulCall(100)
+    givenSuccessfulCall(100)
+
+    whenever(connectionTypeFetcher.fetchConnectionType()).thenReturn(ConnectionType.CELLULAR_3G)
+
+    assertThat(tracker.getLatencyPercentile(50)).isNull()
+  }
+
+  @Test
+  fun getLatencyPercentile_GivenTimeoutsAndOtherErrors_OnlyRecordTimeouts() {
+    givenFailedCall(2000, SocketTimeoutException())
+    givenFailedCall(10, IOException())
+    givenFailedCall(3000, SocketTimeoutException())
+
+    assertThat(tracker.getLatencyPercentile(50)).isEqualTo(2000L)
+  }
+
+  @Test
+  fun getLatencyPercentile_GivenCallsAbortedPastBudget_RecordAtLeastBudget() {
+    givenFailedCall(7990, CdbCallAbortedException(true, IOException()))
+    givenFailedCall(7995, CdbCallAbortedException(true, IOException()))
+    givenSuccessfulCall(100)
+
+    assertThat(tracker.getLatencyPercentile(50)).isEqualTo(8000L)
+  }
+
+  @Test
+  fun getLatencyPercentile_GivenCancelledCalls_IgnoreThem() {
+    givenFailedCall(10, CdbCallAbortedException(false, IOException()))
+    givenFailedCall(20, CdbCallAbortedException(false, IOException()))
+
+    assertThat(tracker.getLatencyPercentile(50)).isNull()
+  }
+
+  private fun givenSuccessfulCall(latency: Long) {
+    val request = givenStartedCall(latency)
+    tracker.onCdbCallFinished(request, mock())
+  }
+
+  private fun givenFailedCall(latency: Long, exception: Exception) {
+    val request = givenStartedCall(latency)
+    tracker.onCdbCallFailed(request, exception)
+  }
+
+  private fun givenStartedCall(latency: Long): CdbRequest {
+    val request = mock<CdbRequest> {
+      on { id } doReturn "request${requestId++}"
+    }
+    whenever(clock.currentTimeInMillis).thenReturn(0)
+    tracker.onCdbCallStarted(request)
+    whenever(clock.currentTimeInMillis).thenReturn(latency)
+    return request
+  }
+}
@@ -24,17 +24,30 @@ import com.criteo.publisher.model.CdbRequest
 import com.criteo.publisher.model.CdbRequestFactory
 import com.criteo.publisher.model.CdbResponse
 import com.criteo.publisher.model.Config
+import com.criteo.publisher.util.BuildConfigWrapper
+import com.criteo.publisher.util.CompletableFuture
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Before
 import org.junit.Rule
 import org.junit.Test
 import org.mockito.ArgumentMatchers.any
+import org.mockito.ArgumentMatchers.anyInt
+import org.mockito.ArgumentMatchers.anyLong
 import org.mockito.ArgumentMatchers.eq
 import org.mockito.Mock
 import org.mockito.junit.MockitoJUnit
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.never
+import org.mockito.kotlin.times
 import org.mockito.kotlin.verify
+import org.mockito.kotlin.verifyNoInteractions
 import org.mockito.kotlin.whenever
 import java.util.concurrent.Executor
 import java.util.concurrent.Executors
 import java.util.concurrent.Future
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
 
 class LiveBidRequestSenderTest {
 
@@ -66,16 +79,24 @@ class LiveBidRequestSenderTest {
   @Mock
   private lateinit var cdbResponse: CdbResponse
 
-  @Mock
-  private lateinit var userAgentFuture: Future<String>
+  private val userAgentFuture = CompletableFuture.completedFuture("fake_user_agent")
 
   @Mock
   private lateinit var clock: Clock
 
+  @Mock
+  private lateinit var cdbLatencyTracker: CdbLatencyTracker
+
+  @Mock
+  private lateinit var buildConfigWrapper: BuildConfigWrapper
+
+  @Before
+  fun setUp() {
+    whenever(cdbRequestFactory.userAgent).thenReturn(userAgentFuture)
+  }
+
   @Test
   fun timeBudgetTimerKicksOff_ThenTimeBudgetExceededTrigger() {
-    whenever(cdbRequestFactory.userAgent).thenReturn(userAgentFuture)
-    whenever(userAgentFuture.get()).thenReturn("fake_user_agent")
     whenever(cdbRequestFactory.createRequest(eq(listOf(cacheAdUnit)), eq(contextData))).thenReturn(cdbRequest)
     whenever(pubSdkApi.loadCdb(eq(cdbRequest), any())).thenReturn(cdbResponse)
     whenever(config.liveBiddingTimeBudgetInMillis).thenReturn(1)
@@ -86,7 +107,9 @@ class LiveBidRequestSenderTest {
         clock,
         getDelayedExecutor(config.liveBiddingTimeBudgetInMillis.toLong() + 100),
         getScheduledExecutorService(),
-        config
+        config,
+        cdbLatencyTracker,
+        buildConfigWrapper
     )
 
     liveBidRequestSender.sendLiveBidRequest(
@@ -98,6 +121,159 @@ class LiveBidRequestSenderTest {
     verify(liveCdbCallListener).onTimeBudgetExceeded()
   }
 
+  @Test
+  fun computeTimeBudget_GivenAdaptiveBudgetDisabled_ReturnConfiguredBudget() {
+    whenever(config.liveBiddingTimeBudgetInMillis).thenReturn(8000)
+    whenever(buildConfigWrapper.liveBidLatencyTargetPercentile).thenReturn(0)
+
+    assertThat(createSender().computeTimeBudgetInMillis()).isEqualTo(8000L)
+    verifyNoInteractions(cdbLatencyTracker)
+  }
+
+  @Test
+  fun computeTimeBudget_GivenNotEnoughRecentCalls_ReturnConfiguredBudget() {
+    whenever(config.liveBiddingTimeBudgetInMillis).thenReturn(8000)
+    whenever(buildConfigWrapper.liveBidLatencyTargetPercentile).thenReturn(95)
+    whenever(cdbLatencyTracker.getLatencyPercentile(anyInt())).thenReturn(null)
+
+    assertThat(createSender().computeTimeBudgetInMillis()).isEqualTo(8000L)
+  }
+
+  @Test
+  fun computeTimeBudget_GivenFastRecentCalls_ShortenToTargetPercentile() {
+    whenever(config.liveBiddingTimeBudgetInMillis).thenReturn(8000)
+    whenever(buildConfigWrapper.liveBidLatencyTargetPercentile).thenReturn(95)
+    whenever(cdbLatencyTracker.getLatencyPercentile(50)).thenReturn(300L)
+    whenever(cdbLatencyTracker.getLatencyPercentile(95)).thenReturn(900L)
+
+    assertThat(createSender().computeTimeBudgetInMillis()).isEqualTo(900L)
+  }
+
+  @Test
+  fun computeTimeBudget_GivenMedianLatencyAboveBudget_ReturnZero() {
+    whenever(config.liveBiddingTimeBudgetInMillis).thenReturn(8000)
+    whenever(buildConfigWrapper.liveBidLatencyTargetPercentile).thenReturn(95)
+    whenever(cdbLatencyTracker.getLatencyPercentile(50)).thenReturn(9000L)
+
+    assertThat(createSender().computeTimeBudgetInMillis()).isEqualTo(0L)
+  }
+
+  @Test
+  fun computeTimeBudget_GivenMedianLatencyAtBudget_ReturnZero() {
+    whenever(config.liveBiddingTimeBudgetInMillis).thenReturn(8000)
+    whenever(buildConfigWrapper.liveBidLatencyTargetPercentile).thenReturn(95)
+    whenever(cdbLatencyTracker.getLatencyPercentile(50)).thenReturn(8000L)
+
+    assertThat(createSender().computeTimeBudgetInMillis()).isEqualTo(0L)
+  }
+
+  @Test
+  fun scheduleTimeBudgetExceeded_GivenPredictedTimeout_NotifyRightAway() {
+    whenever(config.liveBiddingTimeBudgetInMillis).thenReturn(8000)
+    whenever(buildConfigWrapper.liveBidLatencyTargetPercentile).thenReturn(95)
+    whenever(cdbLatencyTracker.getLatencyPercentile(50)).thenReturn(9000L)
+    val scheduledExecutorService = mock<ScheduledExecutorService>()
+
+    createSender(scheduledExecutorService).scheduleTimeBudgetExceeded(liveCdbCallListener)
+
+    verify(liveCdbCallListener).onTimeBudgetExceeded()
+    verifyNoInteractions(scheduledExecutorService)
+  }
+
+  @Test
+  fun sendLiveBidRequest_GivenCallFinished_CancelTimersAndNotifyOnlyOnce() {
+    givenSuccessfulCall()
+    whenever(config.liveBiddingTimeBudgetInMillis).thenReturn(8000)
+    val timer = mock<ScheduledFuture<*>>()
+    val scheduledExecutorService = givenScheduledExecutorService(timer)
+
+    createSender(scheduledExecutorService).sendLiveBidRequest(
+        cacheAdUnit,
+        contextData,
+        liveCdbCallListener
+    )
+
+    verify(liveCdbCallListener).onCdbResponse(cdbRequest, cdbResponse)
+    verify(timer, times(2)).cancel(false)
+    verify(cdbRequest).abortSignal = any()
+  }
+
+  @Test
+  fun cancelAllPendingTasks_GivenPendingCall_AbortItAndAnswerCaller() {
+    whenever(config.liveBiddingTimeBudgetInMillis).thenReturn(8000)
+    val timer = mock<ScheduledFuture<*>>()
+    whenever(timer.cancel(false)).thenReturn(true)
+    val scheduledExecutorService = givenScheduledExecutorService(timer)
+    val executedTasks = mutableListOf<Runnable>()
+    val sender = createSender(scheduledExecutorService, Executor { executedTasks += it })
+
+    sender.sendLiveBidRequest(cacheAdUnit, contextData, liveCdbCallListener)
+    sender.cancelAllPendingTasks()
+    sender.cancelAllPendingTasks()
+
+    verify(liveCdbCallListener).onTimeBudgetExceeded()
+    assertThat(executedTasks).hasSize(1)
+    assertThat((executedTasks[0] as Future<*>).isCancelled).isTrue()
+
+    executedTasks[0].run()
+    verifyNoInteractions(pubSdkApi)
+  }
+
+  @Test
+  fun cancelAllPendingTasks_GivenTimeBudgetAlreadyExceeded_DoNotAnswerCallerAgain() {
+    whenever(config.liveBiddingTimeBudgetInMillis).thenReturn(8000)
+    val timer = mock<ScheduledFuture<*>>()
+    whenever(timer.cancel(false)).thenReturn(false)
+    val scheduledExecutorService = givenScheduledExecutorService(timer)
+    val sender = createSender(scheduledExecutorService, Executor { })
+
+    sender.sendLiveBidRequest(cacheAdUnit, contextData, liveCdbCallListener)
+    sender.cancelAllPendingTasks()
+
+    verify(liveCdbCallListener, never()).onTimeBudgetExceeded()
+  }
+
+  @Test
+  fun sendLiveBidRequest_GivenUserAgentNotResolvedYet_ExecuteCallOnlyOnceResolved() {
+    val userAgentFuture = CompletableFuture<String>()
+    whenever(cdbRequestFactory.userAgent).thenReturn(userAgentFuture)
+    val executor = mock<Executor>()
+
+    createSender(executor = executor).sendLiveBidRequest(cacheAdUnit, contextData, liveCdbCallListener)
+
+    verifyNoInteractions(executor)
+
+    userAgentFuture.complete("fake_user_agent")
+
+    verify(executor).execute(any())
+  }
+
+  private fun givenSuccessfulCall() {
+    whenever(cdbRequestFactory.createRequest(eq(listOf(cacheAdUnit)), eq(contextData))).thenReturn(cdbRequest)
+    whenever(pubSdkApi.loadCdb(eq(cdbRequest), any())).thenReturn(cdbResponse)
+  }
+
+  private fun givenScheduledExecutorService(timer: ScheduledFuture<*>): ScheduledExecutorService {
+    val scheduledExecutorService = mock<ScheduledExecutorService>()
+    whenever(scheduledExecutorService.schedule(any<Runnable>(), anyLong(), any<TimeUnit>()))
+        .thenAnswer { timer }
+    return scheduledExecutorService
+  }
+
+  private fun createSender(
+      scheduledExecutorService: ScheduledExecutorService = getScheduledExecutorService(),
+      executor: Executor = Executor(Runnable::run)
+  ) = LiveBidRequestSender(
+      pubSdkApi,
+      cdbRequestFactory,
+      clock,
+      executor,
+      scheduledExecutorService,
+      config,
+      cdbLatencyTracker,
+      buildConfigWrapper
+  )
+
   private fun getDelayedExecutor(delayInMillis: Long) =
       Executor {
         Thread.sleep(delayInMillis)
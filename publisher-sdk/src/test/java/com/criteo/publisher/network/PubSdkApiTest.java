@@ -33,10 +33,12 @@ import com.criteo.publisher.mock.MockedDependenciesRule;
 import com.criteo.publisher.mock.SpyBean;
 import com.criteo.publisher.model.CdbRequest;
 import com.criteo.publisher.model.CdbResponse;
+import com.criteo.publisher.model.Config;
 import com.criteo.publisher.model.RemoteConfigRequest;
 import com.criteo.publisher.privacy.gdpr.GdprData;
 import com.criteo.publisher.util.BuildConfigWrapper;
 import com.criteo.publisher.util.JsonSerializer;
+import com.criteo.publisher.util.StreamUtil;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -46,9 +48,12 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -78,6 +83,9 @@ public class PubSdkApiTest {
   @SpyBean
   private JsonSerializer serializer;
 
+  @Mock
+  private Config config;
+
   private PubSdkApi api;
 
   @Before
@@ -91,7 +99,12 @@ public class PubSdkApiTest {
     when(gdprData.getGdprApplies()).thenReturn(false);
     when(gdprData.getVersion()).thenReturn(1);
 
-    api = new PubSdkApi(buildConfigWrapper, serializer);
+    api = new PubSdkApi(
+        buildConfigWrapper,
+        serializer,
+        new KeepAliveHttpTransport(buildConfigWrapper),
+        config
+    );
   }
 
   @Test
@@ -161,6 +174,23 @@ public class PubSdkApiTest {
     assertThat(webRequest.getBody().snapshot().utf8()).isEqualTo(json);
   }
 
+  @Test
+  public void postCsm_GivenCompressionEnabled_SendGzippedPayload() throws Exception {
+    MetricRequest request = givenMetricRequest();
+    String json = "{\"expectedJson\": 42}";
+
+    givenSerializerWriting(request, json);
+    when(config.isRequestCompressionEnabled()).thenReturn(true);
+
+    mockWebServer.enqueue(new MockResponse().setResponseCode(204));
+
+    api.postCsm(request);
+
+    RecordedRequest webRequest = mockWebServer.takeRequest();
+    assertThat(webRequest.getHeader("Content-Encoding")).isEqualTo("gzip");
+    assertThat(gunzip(webRequest.getBody())).isEqualTo(json);
+  }
+
   @Test
   public void postCsm_GivenConnectionError_ThrowIOException() throws Exception {
     MetricRequest request = givenMetricRequest();
@@ -281,6 +311,84 @@ public class PubSdkApiTest {
     assertThat(webRequest.getBody().snapshot().utf8()).isEqualTo(json);
   }
 
+  @Test
+  public void loadCdb_GivenCdbRequest_SendPayloadWithFixedLength() throws Exception {
+    String json = "{\"payload\":\"my awesome payload\"}";
+    CdbRequest cdbRequest = mock(CdbRequest.class);
+    givenSerializerWriting(cdbRequest, json);
+
+    mockWebServer.enqueue(new MockResponse().setResponseCode(204));
+
+    api.loadCdb(cdbRequest, "");
+
+    RecordedRequest webRequest = mockWebServer.takeRequest();
+    assertThat(webRequest.getHeader("Content-Length")).isEqualTo(String.valueOf(json.length()));
+    assertThat(webRequest.getHeader("Transfer-Encoding")).isNull();
+  }
+
+  @Test
+  public void postCsm_GivenCompressionEnabled_SendCompressedPayloadWithFixedLength() throws Exception {
+    MetricRequest request = givenMetricRequest();
+    String json = "{\"expectedJson\": 42}";
+
+    givenSerializerWriting(request, json);
+    when(config.isRequestCompressionEnabled()).thenReturn(true);
+
+    mockWebServer.enqueue(new MockResponse().setResponseCode(204));
+
+    api.postCsm(request);
+
+    RecordedRequest webRequest = mockWebServer.takeRequest();
+    assertThat(webRequest.getHeader("Content-Length")).isEqualTo(String.valueOf(webRequest.getBodySize()));
+    assertThat(webRequest.getHeader("Transfer-Encoding")).isNull();
+  }
+
+  @Test
+  public void loadCdb_GivenCompressionEnabled_SendGzippedPayload() throws Exception {
+    String json = "{\"payload\":\"my awesome payload\"}";
+    CdbRequest cdbRequest = mock(CdbRequest.class);
+    givenSerializerWriting(cdbRequest, json);
+    when(config.isRequestCompressionEnabled()).thenReturn(true);
+
+    mockWebServer.enqueue(new MockResponse().setResponseCode(204));
+
+    api.loadCdb(cdbRequest, "");
+
+    RecordedRequest webRequest = mockWebServer.takeRequest();
+    assertThat(webRequest.getHeader("Content-Type")).isEqualTo("text/plain");
+    assertThat(webRequest.getHeader("Content-Encoding")).isEqualTo("gzip");
+    assertThat(gunzip(webRequest.getBody())).isEqualTo(json);
+  }
+
+  @Test
+  public void loadCdb_GivenGzippedResponse_DecodeIt() throws Exception {
+    CdbRequest cdbRequest = givenEmptyCdbRequest();
+    String json = "{\"slots\":[],\"timeToNextCall\":300}";
+
+    mockWebServer.enqueue(new MockResponse()
+        .setHeader("Content-Encoding", "gzip")
+        .setBody(gzip(json)));
+
+    CdbResponse cdbResponse = api.loadCdb(cdbRequest, "");
+
+    assertThat(cdbResponse.getTimeToNextCall()).isEqualTo(300);
+  }
+
+  @Test
+  public void loadConfig_GivenCompressionEnabled_SendPlainPayload() throws Exception {
+    RemoteConfigRequest request = mock(RemoteConfigRequest.class);
+    givenSerializerWriting(request, "{}");
+    when(config.isRequestCompressionEnabled()).thenReturn(true);
+
+    mockWebServer.enqueue(new MockResponse().setBody("{}"));
+
+    api.loadConfig(request);
+
+    RecordedRequest webRequest = mockWebServer.takeRequest();
+    assertThat(webRequest.getHeader("Content-Encoding")).isNull();
+    assertThat(webRequest.getBody().snapshot().utf8()).isEqualTo("{}");
+  }
+
   @Test
   public void loadCdb_GivenBids_ReturnResponseWithBids() throws Exception {
     CdbRequest cdbRequest = givenEmptyCdbRequest();
@@ -482,6 +590,60 @@ public class PubSdkApiTest {
     assertThat(response).hasContent("myResponse");
   }
 
+  @Test
+  public void preconnect_GivenSameCdbAndEventOrigin_SendSingleHeadRequest() throws Exception {
+    mockWebServer.enqueue(new MockResponse());
+
+    api.preconnect();
+
+    RecordedRequest webRequest = mockWebServer.takeRequest();
+    assertThat(webRequest.getPath()).isEqualTo("/");
+    assertThat(webRequest.getMethod()).isEqualTo("HEAD");
+    assertThat(mockWebServer.getRequestCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void preconnect_GivenDisabled_DoNothing() throws Exception {
+    when(buildConfigWrapper.getPreconnectTimeoutInMillis()).thenReturn(0);
+
+    api.preconnect();
+
+    assertThat(mockWebServer.getRequestCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void preconnect_GivenConnectionError_DoNotThrow() throws Exception {
+    givenConnectionError();
+
+    assertThatCode(() -> api.preconnect()).doesNotThrowAnyException();
+  }
+
+  @Test
+  public void loadCdb_GivenPreconnected_ReuseConnection() throws Exception {
+    CdbRequest cdbRequest = givenEmptyCdbRequest();
+    mockWebServer.enqueue(new MockResponse());
+    mockWebServer.enqueue(new MockResponse().setBody("{}"));
+
+    api.preconnect();
+    api.loadCdb(cdbRequest, "");
+
+    assertThat(mockWebServer.takeRequest().getSequenceNumber()).isEqualTo(0);
+    assertThat(mockWebServer.takeRequest().getSequenceNumber()).isEqualTo(1);
+  }
+
+  @Test
+  public void loadCdb_GivenPreviousHttpError_ReuseConnection() throws Exception {
+    CdbRequest cdbRequest = givenEmptyCdbRequest();
+    mockWebServer.enqueue(new MockResponse().setResponseCode(400).setBody("error"));
+    mockWebServer.enqueue(new MockResponse().setBody("{}"));
+
+    assertThatCode(() -> api.loadCdb(cdbRequest, "")).isInstanceOf(HttpResponseException.class);
+    api.loadCdb(cdbRequest, "");
+
+    assertThat(mockWebServer.takeRequest().getSequenceNumber()).isEqualTo(0);
+    assertThat(mockWebServer.takeRequest().getSequenceNumber()).isEqualTo(1);
+  }
+
   @NonNull
   private CdbRequest givenEmptyCdbRequest() throws Exception {
     CdbRequest cdbRequest = mock(CdbRequest.class);
@@ -495,6 +657,18 @@ public class PubSdkApiTest {
     })).when(serializer).write(eq(expected), any());
   }
 
+  private static String gunzip(Buffer buffer) throws IOException {
+    return StreamUtil.readStream(new GZIPInputStream(buffer.inputStream()));
+  }
+
+  private static Buffer gzip(String content) throws IOException {
+    Buffer buffer = new Buffer();
+    try (OutputStream outputStream = new GZIPOutputStream(buffer.outputStream())) {
+      outputStream.write(content.getBytes(StandardCharsets.UTF_8));
+    }
+    return buffer;
+  }
+
   private void givenConnectionError() throws IOException {
     mockWebServer.shutdown();
   }
@@ -0,0 +1,118 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.util
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatCode
+import org.junit.Test
+import java.io.IOException
+import java.util.concurrent.CancellationException
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+
+class CompletableFutureTest {
+
+  @Test
+  fun whenComplete_GivenNotCompletedFuture_CallCallbackOnlyOnceCompleted() {
+    val future = CompletableFuture<String>()
+    val values = mutableListOf<String?>()
+
+    future.whenComplete { value, _ -> values += value }
+    assertThat(values).isEmpty()
+
+    future.complete("value")
+    future.complete("ignored")
+
+    assertThat(values).containsExactly("value")
+  }
+
+  @Test
+  fun whenComplete_GivenCompletedFuture_CallCallbackRightAway() {
+    val values = mutableListOf<String?>()
+
+    CompletableFuture.completedFuture("value").whenComplete { value, _ -> values += value }
+
+    assertThat(values).containsExactly("value")
+  }
+
+  @Test
+  fun whenComplete_GivenExceptionallyCompletedFuture_GiveException() {
+    val future = CompletableFuture<String>()
+    val exception = IOException()
+    var givenException: Exception? = null
+
+    future.whenComplete { _, e -> givenException = e }
+    future.completeExceptionally(exception)
+
+    assertThat(givenException).isSameAs(exception)
+  }
+
+  @Test
+  fun whenComplete_GivenCancelledFuture_GiveCancellationException() {
+    val future = CompletableFuture<String>()
+    var givenException: Exception? = null
+
+    future.whenComplete { _, e -> givenException = e }
+
+    assertThat(future.cancel(true)).isTrue
+    assertThat(future.isCancelled).isTrue
+    assertThat(givenException).isInstanceOf(CancellationException::class.java)
+  }
+
+  @Test
+  fun complete_GivenThrowingCallback_CallOtherCallbacksAndDoNotThrow() {
+    val future = CompletableFuture<String>()
+    var isCalled = false
+
+    future.whenComplete { _, _ -> throw IllegalStateException() }
+    future.whenComplete { _, _ -> isCalled = true }
+
+    assertThatCode { future.complete("value") }.doesNotThrowAnyException()
+    assertThat(isCalled).isTrue
+  }
+
+  @Test
+  fun thenApply_GivenCompletedFuture_CompleteWithAppliedValue() {
+    val future = CompletableFuture<String>()
+
+    val length = future.thenApply { it!!.length }
+    assertThat(length.isDone).isFalse
+
+    future.complete("value")
+
+    assertThat(length.get()).isEqualTo(5)
+  }
+
+  @Test
+  fun thenApply_GivenThrowingFunction_CompleteExceptionally() {
+    val exception = IOException()
+
+    val future = CompletableFuture.completedFuture("value").thenApply<Int> { throw exception }
+
+    assertThatCode { future.get() }
+        .isInstanceOf(ExecutionException::class.java)
+        .hasCause(exception)
+  }
+
+  @Test
+  fun get_GivenNotCompletedFuture_TimeoutAfterGivenDuration() {
+    val future = CompletableFuture<String>()
+
+    assertThatCode { future.get(10, TimeUnit.MILLISECONDS) }.isInstanceOf(TimeoutException::class.java)
+  }
+}
@@ -307,6 +307,7 @@ public class MockedDependenciesRule implements MethodRule {
     // Clear CSM
     MetricHelper.cleanState(dependencyProvider);
     ConcurrentSendingQueueHelper.emptyQueue(dependencyProvider.provideRemoteLogSendingQueue());
+    ConcurrentSendingQueueHelper.emptyQueue(dependencyProvider.provideImpressionPixelSendingQueue());
   }
 
   private void clearInternalState() {